@@ -0,0 +1,75 @@
+package com.mysite.benchmarks;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.sling.servlethelpers.MockRequestPathInfo;
+import org.apache.sling.testing.mock.sling.servlet.MockSlingHttpServletRequest;
+import org.apache.sling.testing.mock.sling.servlet.MockSlingHttpServletResponse;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.mysite.core.servlets.AuthorInfoServlet;
+
+/**
+ * Author info requests in every response format, from the page lookup to the
+ * serialized response body. The servlet runs without the author page index,
+ * so the child pages come from its JCR query.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AuthorInfoServletBenchmark {
+
+    @Param({ "100", "1000" })
+    public int pages;
+
+    @Param({ "json", "xml", "cbor", "smile" })
+    public String format;
+
+    private BenchmarkRepository repository;
+    private AuthorInfoServlet servlet;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        repository = BenchmarkRepository.start();
+        repository.createPages(pages);
+        servlet = repository.registerInjectActivateService(new AuthorInfoServlet());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        repository.stop();
+    }
+
+    @Benchmark
+    public byte[] doGet() throws Exception {
+        MockSlingHttpServletRequest request =
+                new MockSlingHttpServletRequest(repository.resourceResolver(), repository.bundleContext());
+        request.setParameterMap(Collections.singletonMap("path", BenchmarkRepository.SITE));
+        MockRequestPathInfo pathInfo = (MockRequestPathInfo) request.getRequestPathInfo();
+        pathInfo.setSelectorString("authorinfo");
+        pathInfo.setExtension(format);
+        MockSlingHttpServletResponse response = new MockSlingHttpServletResponse();
+
+        servlet.service(request, response);
+        if (response.getStatus() != 200) {
+            throw new IllegalStateException("Author info request failed with " + response.getStatus());
+        }
+        return response.getOutput();
+    }
+}
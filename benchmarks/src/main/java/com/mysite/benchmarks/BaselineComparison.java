@@ -0,0 +1,136 @@
+package com.mysite.benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Compares two JMH JSON result files, typically one of the target branch and
+ * one of a pull request. For every benchmark and parameter combination the
+ * primary score and the allocation per operation are compared; a result is a
+ * regression when it got worse by more than the threshold. Throughput is
+ * better when higher, all other modes and allocations when lower.
+ */
+public final class BaselineComparison {
+
+    static final String ALLOCATION = "gc.alloc.rate.norm";
+
+    /** Allocation differences below this many bytes per operation are noise. */
+    private static final double MIN_ALLOCATION_DELTA = 16;
+
+    private final List<String> lines = new ArrayList<>();
+    private int regressions;
+
+    private BaselineComparison() {
+    }
+
+    public static BaselineComparison compare(Path baseline, Path current, double thresholdPercent)
+            throws IOException {
+        ObjectMapper mapper = new ObjectMapper();
+        return compare(mapper.readTree(baseline.toFile()), mapper.readTree(current.toFile()), thresholdPercent);
+    }
+
+    static BaselineComparison compare(JsonNode baseline, JsonNode current, double thresholdPercent) {
+        Map<String, JsonNode> baselineResults = new HashMap<>();
+        for (JsonNode result : baseline) {
+            baselineResults.put(key(result), result);
+        }
+
+        BaselineComparison comparison = new BaselineComparison();
+        for (JsonNode result : current) {
+            String key = key(result);
+            JsonNode base = baselineResults.get(key);
+            if (base == null) {
+                comparison.lines.add("NEW         " + key);
+                continue;
+            }
+            boolean higherIsBetter = "thrpt".equals(result.path("mode").asText());
+            comparison.compareMetric(key, base.path("primaryMetric"), result.path("primaryMetric"),
+                    higherIsBetter, thresholdPercent, 0);
+
+            JsonNode baseAllocation = allocation(base);
+            JsonNode allocation = allocation(result);
+            if (baseAllocation != null && allocation != null) {
+                comparison.compareMetric(key + " " + ALLOCATION, baseAllocation, allocation,
+                        false, thresholdPercent, MIN_ALLOCATION_DELTA);
+            }
+        }
+        return comparison;
+    }
+
+    private void compareMetric(String name, JsonNode base, JsonNode current, boolean higherIsBetter,
+                               double thresholdPercent, double minDelta) {
+        double before = base.path("score").asDouble();
+        double after = current.path("score").asDouble();
+        double change = Math.abs(after - before) <= minDelta || before == 0
+                ? 0 : (after - before) / before * 100;
+        boolean regression = higherIsBetter ? change < -thresholdPercent : change > thresholdPercent;
+        if (regression) {
+            regressions++;
+        }
+        lines.add(String.format(Locale.ROOT, "%-11s %s: %.3f -> %.3f %s (%+.1f%%)",
+                regression ? "REGRESSION" : "OK", name, before, after,
+                current.path("scoreUnit").asText(), change));
+    }
+
+    private static JsonNode allocation(JsonNode result) {
+        Iterator<Map.Entry<String, JsonNode>> metrics = result.path("secondaryMetrics").fields();
+        while (metrics.hasNext()) {
+            Map.Entry<String, JsonNode> metric = metrics.next();
+            // older JMH versions prefix the profiler metrics with a middle dot
+            if (metric.getKey().endsWith(ALLOCATION)) {
+                return metric.getValue();
+            }
+        }
+        return null;
+    }
+
+    static String key(JsonNode result) {
+        StringBuilder key = new StringBuilder(result.path("benchmark").asText())
+                .append(" [").append(result.path("mode").asText()).append(']');
+        Map<String, String> params = new TreeMap<>();
+        result.path("params").fields().forEachRemaining(param -> params.put(param.getKey(), param.getValue().asText()));
+        params.forEach((name, value) -> key.append(' ').append(name).append('=').append(value));
+        return key.toString();
+    }
+
+    public List<String> getLines() {
+        return Collections.unmodifiableList(lines);
+    }
+
+    public int getRegressions() {
+        return regressions;
+    }
+
+    public boolean hasRegressions() {
+        return regressions > 0;
+    }
+
+    /**
+     * Compares two existing result files: {@code <baseline.json> <current.json> [threshold %]}.
+     * Exits with status 1 if there are regressions.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: BaselineComparison <baseline.json> <current.json> [threshold %]");
+            System.exit(2);
+        }
+        double threshold = args.length > 2 ? Double.parseDouble(args[2]) : BenchmarkRunner.DEFAULT_THRESHOLD;
+        BaselineComparison comparison = compare(Paths.get(args[0]), Paths.get(args[1]), threshold);
+        comparison.getLines().forEach(System.out::println);
+        if (comparison.hasRegressions()) {
+            System.exit(1);
+        }
+    }
+}
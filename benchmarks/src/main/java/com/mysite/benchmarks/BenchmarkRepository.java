@@ -0,0 +1,70 @@
+package com.mysite.benchmarks;
+
+import java.util.Calendar;
+
+import javax.jcr.Node;
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+
+import org.apache.sling.testing.mock.sling.ResourceResolverType;
+
+import com.day.cq.commons.jcr.JcrConstants;
+
+import io.wcm.testing.mock.aem.context.AemContextImpl;
+
+/**
+ * In-memory Oak repository with the core bundle's services and models, set up
+ * once per benchmark trial. This is the same mock context the unit tests use,
+ * started and stopped by hand instead of by the JUnit extension.
+ */
+final class BenchmarkRepository extends AemContextImpl {
+
+    static final String SITE = "/content/mysite/en";
+    static final String AUTHOR = "benchmark";
+    static final String MATCH = "benchmark";
+
+    private BenchmarkRepository() {
+        resourceResolverType(ResourceResolverType.JCR_OAK);
+    }
+
+    static BenchmarkRepository start() {
+        BenchmarkRepository repository = new BenchmarkRepository();
+        repository.setUp();
+        // the manifest scan is not relied upon, the models are registered explicitly
+        repository.addModelsForPackage("com.mysite.core.models");
+        return repository;
+    }
+
+    void stop() {
+        tearDown();
+    }
+
+    /**
+     * Creates {@code count} child pages under {@link #SITE}, all last modified by
+     * {@link #AUTHOR} and published. Every tenth page has {@link #MATCH} in its title.
+     */
+    void createPages(int count) throws RepositoryException {
+        create().page(SITE, null, "Site");
+        Session session = resourceResolver().adaptTo(Session.class);
+        Node site = session.getNode(SITE);
+        site.getNode(JcrConstants.JCR_CONTENT).setProperty("jcr:lastModifiedBy", AUTHOR);
+
+        Calendar now = Calendar.getInstance();
+        for (int i = 0; i < count; i++) {
+            String title = (i % 10 == 0 ? "A " + MATCH + " page " : "Page ") + i;
+            create().page(SITE + "/page-" + i, null, title);
+            Node page = session.getNode(SITE + "/page-" + i);
+            // the search and the published pages query read the page node, the servlet its content
+            page.setProperty(JcrConstants.JCR_TITLE, title);
+            page.setProperty("jcr:description", "Description of page " + i);
+            page.setProperty("cq:lastReplicated", now);
+            Node content = page.getNode(JcrConstants.JCR_CONTENT);
+            content.setProperty("jcr:lastModifiedBy", AUTHOR);
+            content.setProperty(JcrConstants.JCR_LASTMODIFIED, now);
+        }
+
+        create().resource("/home/users/b/" + AUTHOR + "/profile",
+                "givenName", "Bench", "familyName", "Mark");
+        session.save();
+    }
+}
@@ -0,0 +1,76 @@
+package com.mysite.benchmarks;
+
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks with the GC profiler, so every result reports the
+ * allocation per operation next to throughput and latency, and writes the
+ * results as JSON. All JMH command line options are supported, plus:
+ * <ul>
+ *     <li>{@code --baseline <file>} compares the results with an earlier result file
+ *     and exits with status 1 on regressions, see {@link BaselineComparison}</li>
+ *     <li>{@code --threshold <percent>} the tolerated change, default 10</li>
+ * </ul>
+ */
+public final class BenchmarkRunner {
+
+    static final double DEFAULT_THRESHOLD = 10;
+
+    private static final String DEFAULT_RESULT = "target/jmh-result.json";
+
+    private BenchmarkRunner() {
+        // static methods only
+    }
+
+    public static void main(String[] args) throws Exception {
+        String baseline = null;
+        double threshold = DEFAULT_THRESHOLD;
+        List<String> jmhArgs = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            if ("--baseline".equals(args[i]) && i + 1 < args.length) {
+                baseline = args[++i];
+            } else if ("--threshold".equals(args[i]) && i + 1 < args.length) {
+                threshold = Double.parseDouble(args[++i]);
+            } else {
+                jmhArgs.add(args[i]);
+            }
+        }
+
+        CommandLineOptions commandLine = new CommandLineOptions(jmhArgs.toArray(new String[0]));
+        if (commandLine.shouldHelp()) {
+            commandLine.showHelp();
+            return;
+        }
+        if (commandLine.shouldList()) {
+            new Runner(commandLine).list();
+            return;
+        }
+
+        String result = commandLine.getResult().orElse(DEFAULT_RESULT);
+        Options options = new OptionsBuilder()
+                .parent(commandLine)
+                .addProfiler(GCProfiler.class)
+                .resultFormat(ResultFormatType.JSON)
+                .result(result)
+                .build();
+        new Runner(options).run();
+
+        if (baseline != null) {
+            BaselineComparison comparison = BaselineComparison.compare(Paths.get(baseline), Paths.get(result),
+                    threshold);
+            comparison.getLines().forEach(System.out::println);
+            if (comparison.hasRegressions()) {
+                System.exit(1);
+            }
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package com.mysite.benchmarks;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Requests and JCR queries read from the capture files of the core bundle's
+ * QueryCaptureRecorder, which documents the format. Identical statements and
+ * URLs are folded into one {@link Entry} that counts them and sums their
+ * captured durations. A file cut off while it was still being written is read
+ * up to where it ends.
+ */
+final class CapturedWorkload {
+
+    private final Map<String, Entry> queries = new LinkedHashMap<>();
+    private final Map<String, Entry> requests = new LinkedHashMap<>();
+
+    private CapturedWorkload() {
+    }
+
+    /**
+     * Reads capture files; directories are read file by file in name order,
+     * which is the order they were written in.
+     */
+    static CapturedWorkload read(List<Path> paths) throws IOException {
+        CapturedWorkload workload = new CapturedWorkload();
+        for (Path path : paths) {
+            if (Files.isDirectory(path)) {
+                List<Path> files = new ArrayList<>();
+                try (DirectoryStream<Path> stream = Files.newDirectoryStream(path, "capture-*")) {
+                    stream.forEach(files::add);
+                }
+                Collections.sort(files);
+                for (Path file : files) {
+                    workload.readFile(file);
+                }
+            } else {
+                workload.readFile(path);
+            }
+        }
+        return workload;
+    }
+
+    private void readFile(Path file) throws IOException {
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+        try (InputStream in = open(file)) {
+            in.transferTo(content);
+        } catch (EOFException e) {
+            // a file that was not finished, what was read so far is used
+        }
+        String[] lines = content.toString(StandardCharsets.UTF_8.name()).split("\n", -1);
+        // the last element is empty after a complete line, otherwise a cut off line
+        for (int i = 0; i < lines.length - 1; i++) {
+            parse(lines[i]);
+        }
+    }
+
+    private static InputStream open(Path file) throws IOException {
+        InputStream in = Files.newInputStream(file);
+        return file.getFileName().toString().endsWith(".gz") ? new GZIPInputStream(in) : in;
+    }
+
+    private void parse(String line) {
+        String[] fields = line.split("\t", -1);
+        if ("R".equals(fields[0]) && fields.length == 6) {
+            add(requests, fields[3] + ' ' + unescape(fields[5]), fields[2], "0");
+        } else if ("Q".equals(fields[0]) && fields.length == 4) {
+            add(queries, unescape(fields[3]), fields[1], fields[2]);
+        }
+    }
+
+    private static void add(Map<String, Entry> entries, String key, String micros, String rows) {
+        long parsedMicros;
+        long parsedRows;
+        try {
+            parsedMicros = Long.parseLong(micros);
+            parsedRows = Long.parseLong(rows);
+        } catch (NumberFormatException e) {
+            // a torn line, skipped like one cut off at the end
+            return;
+        }
+        entries.computeIfAbsent(key, Entry::new).add(parsedMicros, parsedRows);
+    }
+
+    static String unescape(String value) {
+        if (value.indexOf('\\') < 0) {
+            return value;
+        }
+        StringBuilder out = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '\\' && i + 1 < value.length()) {
+                char escaped = value.charAt(++i);
+                out.append(escaped == 't' ? '\t' : escaped == 'n' ? '\n' : escaped == 'r' ? '\r' : escaped);
+            } else {
+                out.append(c);
+            }
+        }
+        return out.toString();
+    }
+
+    /**
+     * @return the distinct statements, most frequent first
+     */
+    List<Entry> getQueries() {
+        return sorted(queries);
+    }
+
+    /**
+     * @return the distinct requests as method and URL, most frequent first
+     */
+    List<Entry> getRequests() {
+        return sorted(requests);
+    }
+
+    private static List<Entry> sorted(Map<String, Entry> entries) {
+        List<Entry> sorted = new ArrayList<>(entries.values());
+        sorted.sort(Comparator.comparingLong(Entry::getCount).reversed());
+        return sorted;
+    }
+
+    /**
+     * One distinct statement or request with what was captured of it.
+     */
+    static final class Entry {
+        private final String key;
+        private long count;
+        private long totalMicros;
+        private long totalRows;
+
+        Entry(String key) {
+            this.key = key;
+        }
+
+        private void add(long micros, long rows) {
+            count++;
+            totalMicros += micros;
+            totalRows += rows;
+        }
+
+        String getKey() {
+            return key;
+        }
+
+        long getCount() {
+            return count;
+        }
+
+        double getMeanMillis() {
+            return count > 0 ? totalMicros / 1000.0 / count : 0;
+        }
+
+        double getMeanRows() {
+            return count > 0 ? (double) totalRows / count : 0;
+        }
+    }
+}
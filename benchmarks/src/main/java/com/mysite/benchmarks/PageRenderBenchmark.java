@@ -0,0 +1,82 @@
+package com.mysite.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.resource.ResourceResolverFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.mysite.core.models.HelloWorldModel;
+
+/**
+ * Models of one page render: every component on the page is adapted with the
+ * same resource resolver, like the components of one request. A new resolver
+ * is opened per operation so nothing is memoized across renders. With
+ * {@code memo=false} the models' per-request memo is switched off on the
+ * resolver, for a comparison with every model doing its own lookups.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PageRenderBenchmark {
+
+    private static final String ROOT = BenchmarkRepository.SITE + "/jcr:content/root";
+
+    /** The resolver property that switches off the core bundle's RequestMemo. */
+    private static final String MEMO_DISABLED = "com.mysite.core.models.RequestMemo.disabled";
+
+    @Param({ "50" })
+    public int components;
+
+    @Param({ "true", "false" })
+    public boolean memo;
+
+    private BenchmarkRepository repository;
+    private ResourceResolverFactory resolverFactory;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        repository = BenchmarkRepository.start();
+        repository.createPages(0);
+        for (int i = 0; i < components; i++) {
+            repository.create().resource(ROOT + "/helloworld-" + i,
+                    "sling:resourceType", "mysite/components/helloworld");
+        }
+        repository.resourceResolver().commit();
+        resolverFactory = repository.getService(ResourceResolverFactory.class);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        repository.stop();
+    }
+
+    @Benchmark
+    public void render(Blackhole blackhole) throws Exception {
+        try (ResourceResolver resolver = resolverFactory.getServiceResourceResolver(null)) {
+            if (!memo) {
+                resolver.getPropertyMap().put(MEMO_DISABLED, Boolean.TRUE);
+            }
+            for (Resource component : resolver.getResource(ROOT).getChildren()) {
+                blackhole.consume(component.adaptTo(HelloWorldModel.class).getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package com.mysite.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.jcr.Node;
+import javax.jcr.NodeIterator;
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.mysite.core.services.PublishedPagesProcessorService;
+
+/**
+ * One run of the published pages processor over all published pages. The
+ * processed dates are removed before every run, so each operation queries and
+ * updates every page instead of skipping recently processed ones.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class PublishedPagesProcessorBenchmark {
+
+    @Param({ "100", "1000" })
+    public int pages;
+
+    private BenchmarkRepository repository;
+    private PublishedPagesProcessorService processor;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        repository = BenchmarkRepository.start();
+        repository.createPages(pages);
+        processor = repository.registerInjectActivateService(new PublishedPagesProcessorService(),
+                "contentPath", BenchmarkRepository.SITE);
+    }
+
+    @Setup(Level.Invocation)
+    public void resetProcessedDates() throws RepositoryException {
+        Session session = repository.resourceResolver().adaptTo(Session.class);
+        session.refresh(false);
+        NodeIterator children = session.getNode(BenchmarkRepository.SITE).getNodes();
+        while (children.hasNext()) {
+            Node page = children.nextNode();
+            if (page.hasProperty("processedDate")) {
+                page.getProperty("processedDate").remove();
+            }
+        }
+        session.save();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        repository.stop();
+    }
+
+    @Benchmark
+    public void processPublishedPages() throws Exception {
+        processor.execute();
+    }
+}
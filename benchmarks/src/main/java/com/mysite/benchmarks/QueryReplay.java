@@ -0,0 +1,277 @@
+package com.mysite.benchmarks;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import javax.jcr.Session;
+import javax.jcr.query.Query;
+import javax.jcr.query.QueryManager;
+import javax.jcr.query.RowIterator;
+
+import org.apache.sling.servlethelpers.MockRequestPathInfo;
+import org.apache.sling.testing.mock.sling.servlet.MockSlingHttpServletRequest;
+import org.apache.sling.testing.mock.sling.servlet.MockSlingHttpServletResponse;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.mysite.core.servlets.AuthorInfoServlet;
+
+/**
+ * Replays a workload captured by the core bundle's QueryCaptureRecorder
+ * against an in-memory Oak repository of synthetic pages, see
+ * {@link BenchmarkRepository}. Every distinct JCR-SQL2 statement is executed
+ * and all its rows are read; every distinct author info request is served by
+ * the servlet of the core build on the classpath. Other requests need the
+ * Sling request processing and are only counted. The most frequent entries
+ * are measured after a warm up, and their median and 95th percentile are
+ * written as a JMH-style JSON result, so the results of two builds of core are
+ * compared with {@link BaselineComparison}.
+ * <p>
+ * Arguments are capture files or directories of them, plus:
+ * <ul>
+ *     <li>{@code --map <captured>=<replayed>} rewrites a path prefix of the captured
+ *     statements and URLs, for example onto {@value BenchmarkRepository#SITE}; repeatable</li>
+ *     <li>{@code --pages <n>} synthetic pages to create, default 1000</li>
+ *     <li>{@code --top <n>} distinct statements and requests to replay each, default 50</li>
+ *     <li>{@code --warmup <n>} and {@code --iterations <n>} runs per entry, default 5 and 20</li>
+ *     <li>{@code --result <file>} default {@value #DEFAULT_RESULT}</li>
+ *     <li>{@code --baseline <file>} and {@code --threshold <percent>} as for the {@link BenchmarkRunner}</li>
+ * </ul>
+ */
+public final class QueryReplay {
+
+    private static final String DEFAULT_RESULT = "target/replay-result.json";
+    private static final String AUTHOR_INFO_SELECTOR = "authorinfo";
+
+    private QueryReplay() {
+        // static methods only
+    }
+
+    /**
+     * One replayed statement or request, returning the rows or bytes it read.
+     */
+    private interface Operation {
+        long run() throws Exception;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> mappings = new LinkedHashMap<>();
+        int pages = 1000;
+        int top = 50;
+        int warmup = 5;
+        int iterations = 20;
+        String result = DEFAULT_RESULT;
+        String baseline = null;
+        double threshold = BenchmarkRunner.DEFAULT_THRESHOLD;
+        List<Path> captures = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            boolean hasValue = i + 1 < args.length;
+            if ("--map".equals(args[i]) && hasValue) {
+                String[] mapping = args[++i].split("=", 2);
+                mappings.put(mapping[0], mapping.length > 1 ? mapping[1] : "");
+            } else if ("--pages".equals(args[i]) && hasValue) {
+                pages = Integer.parseInt(args[++i]);
+            } else if ("--top".equals(args[i]) && hasValue) {
+                top = Integer.parseInt(args[++i]);
+            } else if ("--warmup".equals(args[i]) && hasValue) {
+                warmup = Integer.parseInt(args[++i]);
+            } else if ("--iterations".equals(args[i]) && hasValue) {
+                iterations = Integer.parseInt(args[++i]);
+            } else if ("--result".equals(args[i]) && hasValue) {
+                result = args[++i];
+            } else if ("--baseline".equals(args[i]) && hasValue) {
+                baseline = args[++i];
+            } else if ("--threshold".equals(args[i]) && hasValue) {
+                threshold = Double.parseDouble(args[++i]);
+            } else {
+                captures.add(Paths.get(args[i]));
+            }
+        }
+        if (captures.isEmpty()) {
+            System.err.println("Usage: QueryReplay [options] <capture file or directory>...");
+            System.exit(2);
+        }
+
+        CapturedWorkload workload = CapturedWorkload.read(captures);
+        ObjectMapper mapper = new ObjectMapper();
+        ArrayNode results = mapper.createArrayNode();
+        BenchmarkRepository repository = BenchmarkRepository.start();
+        try {
+            repository.createPages(pages);
+            AuthorInfoServlet servlet = repository.registerInjectActivateService(new AuthorInfoServlet());
+            QueryManager queryManager = repository.resourceResolver().adaptTo(Session.class)
+                    .getWorkspace().getQueryManager();
+
+            System.out.println(String.format(Locale.ROOT, "%8s %10s %10s %10s %8s  %s",
+                    "captured", "capt. ms", "p50 ms", "p95 ms", "rows", "query"));
+            for (CapturedWorkload.Entry entry : limit(workload.getQueries(), top)) {
+                String statement = map(entry.getKey(), mappings);
+                replay(results, "query", statement, entry, warmup, iterations, () -> {
+                    RowIterator rows = queryManager.createQuery(statement, Query.JCR_SQL2).execute().getRows();
+                    long read = 0;
+                    while (rows.hasNext()) {
+                        rows.nextRow();
+                        read++;
+                    }
+                    return read;
+                });
+            }
+
+            System.out.println(String.format(Locale.ROOT, "%8s %10s %10s %10s %8s  %s",
+                    "captured", "capt. ms", "p50 ms", "p95 ms", "bytes", "request"));
+            long skipped = 0;
+            for (CapturedWorkload.Entry entry : limit(workload.getRequests(), top)) {
+                String request = map(entry.getKey(), mappings);
+                if (!request.startsWith("GET ") || !isAuthorInfo(request.substring(4))) {
+                    skipped += entry.getCount();
+                    continue;
+                }
+                String url = request.substring(4);
+                replay(results, "request", url, entry, warmup, iterations,
+                        () -> serveAuthorInfo(repository, servlet, url));
+            }
+            System.out.println(skipped
+                    + " of the captured requests above need the Sling request processing and were not replayed");
+        } finally {
+            repository.stop();
+        }
+
+        Path resultFile = Paths.get(result);
+        if (resultFile.getParent() != null) {
+            Files.createDirectories(resultFile.getParent());
+        }
+        mapper.writerWithDefaultPrettyPrinter().writeValue(resultFile.toFile(), results);
+
+        if (baseline != null) {
+            BaselineComparison comparison = BaselineComparison.compare(Paths.get(baseline), resultFile, threshold);
+            comparison.getLines().forEach(System.out::println);
+            if (comparison.hasRegressions()) {
+                System.exit(1);
+            }
+        }
+    }
+
+    private static void replay(ArrayNode results, String kind, String key, CapturedWorkload.Entry entry,
+                               int warmup, int iterations, Operation operation) {
+        long[] nanos = new long[Math.max(1, iterations)];
+        long read = 0;
+        try {
+            for (int i = 0; i < warmup; i++) {
+                operation.run();
+            }
+            for (int i = 0; i < nanos.length; i++) {
+                long start = System.nanoTime();
+                read = operation.run();
+                nanos[i] = System.nanoTime() - start;
+            }
+        } catch (Exception e) {
+            System.out.println(String.format(Locale.ROOT, "%8d %10s  %s: %s",
+                    entry.getCount(), "FAILED", key, e));
+            return;
+        }
+        Arrays.sort(nanos);
+        double median = percentile(nanos, 50);
+        double p95 = percentile(nanos, 95);
+        System.out.println(String.format(Locale.ROOT, "%8d %10.3f %10.3f %10.3f %8d  %s",
+                entry.getCount(), entry.getMeanMillis(), median, p95, read, key.replaceAll("\\s+", " ")));
+
+        ObjectNode result = results.addObject();
+        result.put("benchmark", QueryReplay.class.getName() + "." + kind);
+        result.put("mode", "sample");
+        result.putObject("params").put(kind, key);
+        ObjectNode primary = result.putObject("primaryMetric");
+        primary.put("score", median);
+        primary.put("scoreUnit", "ms/op");
+        primary.putObject("scorePercentiles").put("50.0", median).put("95.0", p95);
+        ObjectNode secondary = result.putObject("secondaryMetrics");
+        secondary.putObject("captured").put("score", entry.getMeanMillis()).put("scoreUnit", "ms/op");
+        secondary.putObject("capturedCount").put("score", entry.getCount()).put("scoreUnit", "ops");
+        secondary.putObject("read").put("score", read).put("scoreUnit", "query".equals(kind) ? "rows" : "bytes");
+    }
+
+    /**
+     * @return the percentile of sorted nanoseconds, in milliseconds
+     */
+    private static double percentile(long[] sortedNanos, int percent) {
+        int index = (int) Math.ceil(sortedNanos.length * percent / 100.0) - 1;
+        return sortedNanos[Math.max(0, index)] / 1_000_000.0;
+    }
+
+    private static List<CapturedWorkload.Entry> limit(List<CapturedWorkload.Entry> entries, int top) {
+        return entries.subList(0, Math.min(Math.max(0, top), entries.size()));
+    }
+
+    private static String map(String value, Map<String, String> mappings) {
+        String mapped = value;
+        for (Map.Entry<String, String> mapping : mappings.entrySet()) {
+            mapped = mapped.replace(mapping.getKey(), mapping.getValue());
+        }
+        return mapped;
+    }
+
+    private static boolean isAuthorInfo(String url) {
+        String path = url.split("\\?", 2)[0];
+        String[] segments = path.substring(path.lastIndexOf('/') + 1).split("\\.");
+        // the first segment is the resource name and the last the extension
+        for (int i = 1; i < segments.length - 1; i++) {
+            if (AUTHOR_INFO_SELECTOR.equals(segments[i])) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static long serveAuthorInfo(BenchmarkRepository repository, AuthorInfoServlet servlet, String url)
+            throws Exception {
+        String[] parts = url.split("\\?", 2);
+        String path = parts[0];
+        int nameStart = path.lastIndexOf('/') + 1;
+        int firstDot = path.indexOf('.', nameStart);
+        int lastDot = path.lastIndexOf('.');
+
+        MockSlingHttpServletRequest request =
+                new MockSlingHttpServletRequest(repository.resourceResolver(), repository.bundleContext());
+        MockRequestPathInfo pathInfo = (MockRequestPathInfo) request.getRequestPathInfo();
+        pathInfo.setResourcePath(path.substring(0, firstDot));
+        pathInfo.setSelectorString(path.substring(firstDot + 1, lastDot));
+        pathInfo.setExtension(path.substring(lastDot + 1));
+        if (parts.length > 1) {
+            request.setQueryString(parts[1]);
+            request.setParameterMap(parameters(parts[1]));
+        }
+        MockSlingHttpServletResponse response = new MockSlingHttpServletResponse();
+
+        servlet.service(request, response);
+        if (response.getStatus() != 200) {
+            throw new IllegalStateException("status " + response.getStatus());
+        }
+        return response.getOutput().length;
+    }
+
+    private static Map<String, Object> parameters(String queryString) throws UnsupportedEncodingException {
+        Map<String, List<String>> values = new LinkedHashMap<>();
+        for (String pair : queryString.split("&")) {
+            if (pair.isEmpty()) {
+                continue;
+            }
+            String[] nameValue = pair.split("=", 2);
+            String name = URLDecoder.decode(nameValue[0], StandardCharsets.UTF_8.name());
+            String value = nameValue.length > 1 ? URLDecoder.decode(nameValue[1], StandardCharsets.UTF_8.name()) : "";
+            values.computeIfAbsent(name, key -> new ArrayList<>()).add(value);
+        }
+        Map<String, Object> parameters = new LinkedHashMap<>();
+        values.forEach((name, list) -> parameters.put(name, list.toArray(new String[0])));
+        return parameters;
+    }
+}
@@ -0,0 +1,62 @@
+package com.mysite.benchmarks;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.sling.api.resource.Resource;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.mysite.core.models.SearchComponent;
+
+/**
+ * Search of the search component over repositories of increasing size. The
+ * model runs its query when it is adapted, so each operation adapts a freshly
+ * resolved resource to bypass the adapter cache.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SearchComponentBenchmark {
+
+    private static final String COMPONENT = BenchmarkRepository.SITE + "/jcr:content/search";
+
+    @Param({ "100", "1000" })
+    public int pages;
+
+    private BenchmarkRepository repository;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        repository = BenchmarkRepository.start();
+        repository.createPages(pages);
+        repository.create().resource(COMPONENT,
+                "sling:resourceType", "mysite/components/search-component",
+                "searchTerm", BenchmarkRepository.MATCH);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        repository.stop();
+    }
+
+    @Benchmark
+    public List<SearchComponent.SearchResult> performSearch() {
+        Resource resource = repository.resourceResolver().getResource(COMPONENT);
+        return resource.adaptTo(SearchComponent.class).getSearchResults();
+    }
+}
@@ -0,0 +1,94 @@
+package com.mysite.benchmarks;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+class BaselineComparisonTest {
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    @Test
+    void throughputDropBeyondThresholdIsRegression() throws Exception {
+        BaselineComparison comparison = BaselineComparison.compare(
+                results(result("thrpt", 100, 1000)), results(result("thrpt", 85, 1000)), 10);
+
+        assertTrue(comparison.hasRegressions());
+        assertTrue(comparison.getLines().get(0).startsWith("REGRESSION"));
+    }
+
+    @Test
+    void throughputGainIsNotRegression() throws Exception {
+        BaselineComparison comparison = BaselineComparison.compare(
+                results(result("thrpt", 100, 1000)), results(result("thrpt", 150, 1000)), 10);
+
+        assertFalse(comparison.hasRegressions());
+    }
+
+    @Test
+    void latencyIncreaseBeyondThresholdIsRegression() throws Exception {
+        BaselineComparison comparison = BaselineComparison.compare(
+                results(result("sample", 2.0, 1000)), results(result("sample", 2.5, 1000)), 10);
+
+        assertEquals(1, comparison.getRegressions());
+    }
+
+    @Test
+    void changeWithinThresholdIsNotRegression() throws Exception {
+        BaselineComparison comparison = BaselineComparison.compare(
+                results(result("sample", 2.0, 1000)), results(result("sample", 2.1, 1050)), 10);
+
+        assertFalse(comparison.hasRegressions());
+    }
+
+    @Test
+    void allocationIncreaseIsRegression() throws Exception {
+        BaselineComparison comparison = BaselineComparison.compare(
+                results(result("thrpt", 100, 1000)), results(result("thrpt", 100, 2000)), 10);
+
+        assertEquals(1, comparison.getRegressions());
+        assertTrue(comparison.getLines().get(1).contains(BaselineComparison.ALLOCATION));
+    }
+
+    @Test
+    void smallAllocationChangeIsNoise() throws Exception {
+        BaselineComparison comparison = BaselineComparison.compare(
+                results(result("thrpt", 100, 0)), results(result("thrpt", 100, 8)), 10);
+
+        assertFalse(comparison.hasRegressions());
+    }
+
+    @Test
+    void benchmarkWithoutBaselineIsReportedAsNew() throws Exception {
+        BaselineComparison comparison = BaselineComparison.compare(
+                results(), results(result("thrpt", 100, 1000)), 10);
+
+        assertFalse(comparison.hasRegressions());
+        assertTrue(comparison.getLines().get(0).startsWith("NEW"));
+    }
+
+    @Test
+    void keyIncludesModeAndSortedParams() throws Exception {
+        JsonNode result = mapper.readTree("{\"benchmark\":\"b.Search\",\"mode\":\"thrpt\","
+                + "\"params\":{\"pages\":\"100\",\"format\":\"json\"}}");
+
+        assertEquals("b.Search [thrpt] format=json pages=100", BaselineComparison.key(result));
+    }
+
+    private JsonNode results(String... results) throws Exception {
+        return mapper.readTree("[" + String.join(",", results) + "]");
+    }
+
+    private static String result(String mode, double score, double allocation) {
+        return "{\"benchmark\":\"com.mysite.benchmarks.SearchComponentBenchmark.performSearch\","
+                + "\"mode\":\"" + mode + "\",\"params\":{\"pages\":\"100\"},"
+                + "\"primaryMetric\":{\"score\":" + score + ",\"scoreUnit\":\"ops/ms\"},"
+                + "\"secondaryMetrics\":{\"gc.alloc.rate.norm\":{\"score\":" + allocation
+                + ",\"scoreUnit\":\"B/op\"}}}";
+    }
+}
@@ -0,0 +1,82 @@
+package com.mysite.benchmarks;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class CapturedWorkloadTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void foldsIdenticalStatementsAndRequests() throws Exception {
+        write("capture-0000000000001.tsv.gz",
+                "R\t1\t5000\tGET\t1\t/content/en.authorinfo.json?path=/content/en\n"
+                        + "Q\t3000\t10\tSELECT * FROM [cq:Page]\\n WHERE [jcr:title] = 'a\\tb'\n"
+                        + "R\t2\t4000\tGET\t1\t/content/en.authorinfo.json?path=/content/en\n"
+                        + "Q\t1000\t20\tSELECT * FROM [cq:Page]\\n WHERE [jcr:title] = 'a\\tb'\n"
+                        + "R\t3\t2000\tGET\t0\t/content/en.html\n");
+
+        CapturedWorkload workload = CapturedWorkload.read(Collections.singletonList(directory));
+
+        List<CapturedWorkload.Entry> queries = workload.getQueries();
+        assertEquals(1, queries.size());
+        assertEquals("SELECT * FROM [cq:Page]\n WHERE [jcr:title] = 'a\tb'", queries.get(0).getKey());
+        assertEquals(2, queries.get(0).getCount());
+        assertEquals(2.0, queries.get(0).getMeanMillis(), 0.001);
+        assertEquals(15.0, queries.get(0).getMeanRows(), 0.001);
+
+        List<CapturedWorkload.Entry> requests = workload.getRequests();
+        assertEquals(2, requests.size());
+        assertEquals("GET /content/en.authorinfo.json?path=/content/en", requests.get(0).getKey());
+        assertEquals(4.5, requests.get(0).getMeanMillis(), 0.001);
+    }
+
+    @Test
+    void readsUnfinishedFilesAndSkipsTornLines() throws Exception {
+        Path finished = write("capture-0000000000001.tsv.gz", "Q\t1000\t1\tSELECT 1\n");
+        byte[] complete = gzip("Q\t1000\t1\tSELECT 2\nQ\t10x\t1\tSELECT 3\nQ\t1000\t1\tSELECT 4");
+        Path unfinished = directory.resolve("capture-0000000000002.tsv.gz");
+        Files.write(unfinished, Arrays.copyOf(complete, complete.length - 8));
+
+        CapturedWorkload workload = CapturedWorkload.read(Arrays.asList(finished, unfinished));
+
+        assertEquals(2, workload.getQueries().size());
+        assertEquals("SELECT 2", workload.getQueries().get(1).getKey());
+    }
+
+    @Test
+    void unescapesFields() {
+        assertEquals("a\\b\tc\nd", CapturedWorkload.unescape("a\\\\b\\tc\\nd"));
+        assertEquals("plain", CapturedWorkload.unescape("plain"));
+    }
+
+    private Path write(String name, String content) throws Exception {
+        Path file = directory.resolve(name);
+        Files.write(file, gzip(content));
+        return file;
+    }
+
+    private static byte[] gzip(String content) throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (OutputStream gzip = new GZIPOutputStream(bytes);
+             Writer writer = new OutputStreamWriter(gzip, StandardCharsets.UTF_8)) {
+            writer.write(content);
+        }
+        return bytes.toByteArray();
+    }
+}
@@ -0,0 +1,327 @@
+package com.mysite.core.filters;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+
+import javax.management.NotCompliantMBeanException;
+import javax.management.StandardMBean;
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.sling.api.SlingHttpServletRequest;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.engine.EngineConstants;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Modified;
+import org.osgi.service.component.propertytypes.ServiceDescription;
+import org.osgi.service.component.propertytypes.ServiceRanking;
+import org.osgi.service.metatype.annotations.AttributeDefinition;
+import org.osgi.service.metatype.annotations.Designate;
+import org.osgi.service.metatype.annotations.ObjectClassDefinition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Sheds load on expensive endpoints before they use up the request threads.
+ * Each configured limit applies to requests with a given selector or to
+ * requests for a given resource type, and combines a token bucket (rejected
+ * with 429) with a cap on concurrent requests (rejected with 503 once a short
+ * wait for a free slot times out). Both rejections carry a Retry-After header.
+ * Requests no limit applies to pass straight through, so cheap pages are not
+ * slowed down. Runs after {@link LoggingFilter}, so rejected requests still
+ * show up in the latency histograms.
+ */
+@Component(service = { Filter.class, AdmissionControlMBean.class },
+           property = {
+                   EngineConstants.SLING_FILTER_SCOPE + "=" + EngineConstants.FILTER_SCOPE_REQUEST,
+                   "jmx.objectname=com.mysite:type=AdmissionControl"
+           })
+@Designate(ocd = AdmissionControlFilter.Config.class)
+@ServiceDescription("Limits concurrency and rate of expensive requests")
+@ServiceRanking(-800)
+public class AdmissionControlFilter extends StandardMBean implements Filter, AdmissionControlMBean {
+
+    public static final int SC_TOO_MANY_REQUESTS = 429;
+
+    public static final String RETRY_AFTER = "Retry-After";
+
+    static final String SELECTOR = "selector:";
+
+    static final String TYPE = "type:";
+
+    @ObjectClassDefinition(name = "Admission control",
+                           description = "Concurrency and rate limits for expensive selectors and resource types")
+    public static @interface Config {
+
+        @AttributeDefinition(name = "Limits",
+                             description = "selector:<name> or type:<resource type>, followed by "
+                                     + "|max concurrent|requests per second|burst; 0 disables a limit")
+        String[] limits() default {
+                "selector:authorinfo|8|20|40",
+                "type:mysite/components/search-component|4|10|20"
+        };
+
+        @AttributeDefinition(name = "Queue timeout (ms)",
+                             description = "How long a request waits for a concurrency slot before it is rejected")
+        long queueTimeoutMs() default 100;
+
+        @AttributeDefinition(name = "Retry after (s)",
+                             description = "Retry-After sent with 503 responses")
+        int retryAfterSeconds() default 1;
+    }
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private volatile Map<String, Limit> bySelector = Collections.emptyMap();
+    private volatile Map<String, Limit> byType = Collections.emptyMap();
+    private volatile long queueTimeoutMs = 100;
+    private volatile int retryAfterSeconds = 1;
+
+    public AdmissionControlFilter() throws NotCompliantMBeanException {
+        super(AdmissionControlMBean.class);
+    }
+
+    @Activate
+    @Modified
+    protected void activate(final Config config) {
+        final Map<String, Limit> selectors = new HashMap<>();
+        final Map<String, Limit> types = new HashMap<>();
+        for (String definition : config.limits() != null ? config.limits() : new String[0]) {
+            final Limit limit = Limit.parse(definition);
+            if (limit == null) {
+                logger.warn("Ignoring invalid admission limit {}", definition);
+            } else if (limit.key.startsWith(SELECTOR)) {
+                selectors.put(limit.key.substring(SELECTOR.length()), limit);
+            } else {
+                types.put(limit.key.substring(TYPE.length()), limit);
+            }
+        }
+        bySelector = selectors;
+        byType = types;
+        queueTimeoutMs = Math.max(0, config.queueTimeoutMs());
+        retryAfterSeconds = Math.max(1, config.retryAfterSeconds());
+    }
+
+    @Override
+    public void doFilter(final ServletRequest request, final ServletResponse response,
+                         final FilterChain filterChain) throws IOException, ServletException {
+        final Limit limit = limitFor((SlingHttpServletRequest) request);
+        if (limit == null) {
+            filterChain.doFilter(request, response);
+            return;
+        }
+
+        final long waitNanos = limit.acquireRate(System.nanoTime());
+        if (waitNanos > 0) {
+            limit.rejectedRate.increment();
+            reject((HttpServletResponse) response, SC_TOO_MANY_REQUESTS,
+                    (int) Math.max(1, TimeUnit.NANOSECONDS.toSeconds(waitNanos + 999_999_999L)), limit);
+            return;
+        }
+        if (!acquireSlot(limit)) {
+            limit.rejectedConcurrency.increment();
+            reject((HttpServletResponse) response, HttpServletResponse.SC_SERVICE_UNAVAILABLE,
+                    retryAfterSeconds, limit);
+            return;
+        }
+        limit.admitted.increment();
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            if (limit.slots != null) {
+                limit.slots.release();
+            }
+        }
+    }
+
+    Limit limitFor(final SlingHttpServletRequest request) {
+        final Map<String, Limit> selectors = bySelector;
+        if (!selectors.isEmpty()) {
+            for (String selector : request.getRequestPathInfo().getSelectors()) {
+                final Limit limit = selectors.get(selector);
+                if (limit != null) {
+                    return limit;
+                }
+            }
+        }
+        final Map<String, Limit> types = byType;
+        final Resource resource = request.getResource();
+        return types.isEmpty() || resource == null ? null : types.get(resource.getResourceType());
+    }
+
+    private boolean acquireSlot(final Limit limit) {
+        if (limit.slots == null || limit.slots.tryAcquire()) {
+            return true;
+        }
+        final long timeout = queueTimeoutMs;
+        if (timeout == 0) {
+            return false;
+        }
+        // only as many requests may wait as may run, the rest is rejected right away
+        if (limit.waiting.incrementAndGet() > limit.maxConcurrent) {
+            limit.waiting.decrementAndGet();
+            return false;
+        }
+        limit.queued.increment();
+        try {
+            return limit.slots.tryAcquire(timeout, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } finally {
+            limit.waiting.decrementAndGet();
+        }
+    }
+
+    private void reject(final HttpServletResponse response, final int status, final int retryAfter,
+                        final Limit limit) throws IOException {
+        logger.debug("Rejecting request for {} with {}", limit.key, status);
+        response.setStatus(status);
+        response.setHeader(RETRY_AFTER, String.valueOf(retryAfter));
+        response.setContentType("text/plain");
+        response.setCharacterEncoding("UTF-8");
+        response.getWriter().write(status == SC_TOO_MANY_REQUESTS ? "Too many requests" : "Service unavailable");
+    }
+
+    @Override
+    public void init(FilterConfig filterConfig) {
+    }
+
+    @Override
+    public void destroy() {
+    }
+
+    @Override
+    public String[] getLimits() {
+        return limits().map(limit -> String.format(
+                "%s maxConcurrent=%d rate=%d/s burst=%d inFlight=%d admitted=%d queued=%d "
+                        + "rejectedRate=%d rejectedConcurrency=%d",
+                limit.key, limit.maxConcurrent, limit.permitsPerSecond, limit.burst,
+                limit.slots != null ? limit.maxConcurrent - limit.slots.availablePermits() : 0,
+                limit.admitted.sum(), limit.queued.sum(),
+                limit.rejectedRate.sum(), limit.rejectedConcurrency.sum()))
+                .toArray(String[]::new);
+    }
+
+    @Override
+    public long getAdmitted() {
+        return limits().mapToLong(limit -> limit.admitted.sum()).sum();
+    }
+
+    @Override
+    public long getRejected() {
+        return limits().mapToLong(limit -> limit.rejectedRate.sum() + limit.rejectedConcurrency.sum()).sum();
+    }
+
+    @Override
+    public long getQueued() {
+        return limits().mapToLong(limit -> limit.queued.sum()).sum();
+    }
+
+    @Override
+    public void reset() {
+        limits().forEach(limit -> {
+            limit.admitted.reset();
+            limit.queued.reset();
+            limit.rejectedRate.reset();
+            limit.rejectedConcurrency.reset();
+        });
+    }
+
+    private Stream<Limit> limits() {
+        return Stream.concat(bySelector.values().stream(), byType.values().stream())
+                .sorted((a, b) -> a.key.compareTo(b.key));
+    }
+
+    /**
+     * One configured limit. The token bucket is kept as the theoretical arrival
+     * time of the next request (GCRA), so taking a token is a single CAS.
+     */
+    static final class Limit {
+        final String key;
+        final int maxConcurrent;
+        final int permitsPerSecond;
+        final int burst;
+        final Semaphore slots;
+        private final long intervalNanos;
+        private final long toleranceNanos;
+        private final AtomicLong nextArrival = new AtomicLong(Long.MIN_VALUE);
+        private final AtomicInteger waiting = new AtomicInteger();
+        private final LongAdder admitted = new LongAdder();
+        private final LongAdder queued = new LongAdder();
+        private final LongAdder rejectedRate = new LongAdder();
+        private final LongAdder rejectedConcurrency = new LongAdder();
+
+        Limit(final String key, final int maxConcurrent, final int permitsPerSecond, final int burst) {
+            this.key = key;
+            this.maxConcurrent = maxConcurrent;
+            this.permitsPerSecond = permitsPerSecond;
+            this.burst = Math.max(1, burst);
+            this.slots = maxConcurrent > 0 ? new Semaphore(maxConcurrent) : null;
+            this.intervalNanos = permitsPerSecond > 0 ? TimeUnit.SECONDS.toNanos(1) / permitsPerSecond : 0;
+            this.toleranceNanos = intervalNanos * (this.burst - 1);
+        }
+
+        /**
+         * Parses {@code selector:<name>|maxConcurrent|permitsPerSecond[|burst]}
+         * or the same with {@code type:<resource type>}.
+         *
+         * @return the limit, {@code null} if the definition is invalid
+         */
+        static Limit parse(final String definition) {
+            final String[] parts = definition == null ? new String[0] : definition.trim().split("\\|");
+            if (parts.length < 3 || parts.length > 4
+                    || !(parts[0].startsWith(SELECTOR) || parts[0].startsWith(TYPE))
+                    || parts[0].endsWith(":")) {
+                return null;
+            }
+            try {
+                final int maxConcurrent = Integer.parseInt(parts[1].trim());
+                final int permitsPerSecond = Integer.parseInt(parts[2].trim());
+                final int burst = parts.length == 4 ? Integer.parseInt(parts[3].trim()) : permitsPerSecond;
+                if (maxConcurrent < 0 || permitsPerSecond < 0 || burst < 0) {
+                    return null;
+                }
+                return new Limit(parts[0].trim(), maxConcurrent, permitsPerSecond, burst);
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+
+        /**
+         * Takes a token from the bucket.
+         *
+         * @return 0 if a token was taken, otherwise the nanoseconds until the next one is available
+         */
+        long acquireRate(final long now) {
+            if (intervalNanos == 0) {
+                return 0;
+            }
+            while (true) {
+                final long next = nextArrival.get();
+                final long arrival = Math.max(next, now);
+                final long wait = arrival - now - toleranceNanos;
+                if (wait > 0) {
+                    return wait;
+                }
+                if (nextArrival.compareAndSet(next, arrival + intervalNanos)) {
+                    return 0;
+                }
+            }
+        }
+    }
+}
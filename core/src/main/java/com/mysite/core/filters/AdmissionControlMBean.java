@@ -0,0 +1,32 @@
+package com.mysite.core.filters;
+
+/**
+ * JMX view of the limits applied by {@link AdmissionControlFilter}.
+ */
+public interface AdmissionControlMBean {
+
+    /**
+     * @return one line per limit with its settings, in-flight requests and counters
+     */
+    String[] getLimits();
+
+    /**
+     * @return requests admitted by any limit
+     */
+    long getAdmitted();
+
+    /**
+     * @return requests rejected by any limit, rate or concurrency
+     */
+    long getRejected();
+
+    /**
+     * @return requests that had to wait for a concurrency permit
+     */
+    long getQueued();
+
+    /**
+     * Clears the counters.
+     */
+    void reset();
+}
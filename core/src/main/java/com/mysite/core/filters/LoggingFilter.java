@@ -16,16 +16,24 @@
 package com.mysite.core.filters;
 
 import java.io.IOException;
+import java.io.PrintWriter;
 import javax.servlet.Filter;
 import javax.servlet.FilterChain;
 import javax.servlet.FilterConfig;
 import javax.servlet.ServletException;
 import javax.servlet.ServletRequest;
+import javax.servlet.ServletOutputStream;
 import javax.servlet.ServletResponse;
 
 import org.apache.sling.api.SlingHttpServletRequest;
+import org.apache.sling.api.SlingHttpServletResponse;
+import org.apache.sling.api.request.RequestPathInfo;
+import org.apache.sling.api.wrappers.SlingHttpServletResponseWrapper;
 import org.apache.sling.engine.EngineConstants;
 import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Reference;
+import org.osgi.service.component.annotations.ReferenceCardinality;
+import org.osgi.service.component.annotations.ReferencePolicyOption;
 import org.osgi.service.component.propertytypes.ServiceDescription;
 import org.osgi.service.component.propertytypes.ServiceRanking;
 import org.osgi.service.component.propertytypes.ServiceVendor;
@@ -33,7 +41,13 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
- * Simple servlet filter component that logs incoming requests.
+ * Simple servlet filter component that logs incoming requests, times
+ * them into the per-endpoint histograms of the {@link RequestLatencyRecorder}
+ * and accounts the repository work done for them in the
+ * {@link RepositoryAccountingStats}. Requests over the slow threshold are
+ * kept by the {@link SlowRequestRecorder}, and while the
+ * {@link QueryCaptureRecorder} is capturing every request is written to it
+ * with its queries.
  */
 @Component(service = Filter.class,
            property = {
@@ -46,6 +60,22 @@ public class LoggingFilter implements Filter {
 
     private final Logger logger = LoggerFactory.getLogger(getClass());
 
+    @Reference(cardinality = ReferenceCardinality.OPTIONAL,
+               policyOption = ReferencePolicyOption.GREEDY)
+    private volatile RequestLatencyRecorder latencyRecorder;
+
+    @Reference(cardinality = ReferenceCardinality.OPTIONAL,
+               policyOption = ReferencePolicyOption.GREEDY)
+    private volatile RepositoryAccountingStats accountingStats;
+
+    @Reference(cardinality = ReferenceCardinality.OPTIONAL,
+               policyOption = ReferencePolicyOption.GREEDY)
+    private volatile SlowRequestRecorder slowRequestRecorder;
+
+    @Reference(cardinality = ReferenceCardinality.OPTIONAL,
+               policyOption = ReferencePolicyOption.GREEDY)
+    private volatile QueryCaptureRecorder queryCaptureRecorder;
+
     @Override
     public void doFilter(final ServletRequest request, final ServletResponse response,
                          final FilterChain filterChain) throws IOException, ServletException {
@@ -55,7 +85,67 @@ public class LoggingFilter implements Filter {
                 .getRequestPathInfo().getResourcePath(), slingRequest
                 .getRequestPathInfo().getSelectorString());
 
-        filterChain.doFilter(request, response);
+        final RequestLatencyRecorder recorder = latencyRecorder;
+        final RepositoryAccountingStats accounting = accountingStats;
+        final SlowRequestRecorder slowRequests = slowRequestRecorder;
+        final QueryCaptureRecorder capture = queryCaptureRecorder;
+        final boolean timed = recorder != null && recorder.sample();
+        final boolean captured = capture != null && capture.isCapturing();
+        final boolean accounted = accounting != null || slowRequests != null || captured;
+        if (!timed && !accounted) {
+            filterChain.doFilter(request, response);
+            return;
+        }
+
+        ServletResponse target = response;
+        AccountingHeaderResponse headerResponse = null;
+        if (accounted) {
+            RepositoryAccounting.begin();
+        }
+        if (accounting != null && accounting.isDebugHeader()) {
+            headerResponse = new AccountingHeaderResponse((SlingHttpServletResponse) response);
+            target = headerResponse;
+        }
+        if (slowRequests != null) {
+            slowRequests.begin();
+        }
+
+        final long startMillis = captured ? System.currentTimeMillis() : 0;
+        final long start = System.nanoTime();
+        try {
+            filterChain.doFilter(request, target);
+        } finally {
+            final long duration = System.nanoTime() - start;
+            if (timed) {
+                recorder.record(slingRequest, duration);
+            }
+            final RepositoryAccounting.Counters counters = accounted ? RepositoryAccounting.end() : null;
+            if (accounting != null) {
+                if (headerResponse != null) {
+                    headerResponse.addAccountingHeader();
+                }
+                accounting.record(urlOf(slingRequest.getRequestPathInfo()), counters);
+            }
+            if (slowRequests != null) {
+                slowRequests.end(slingRequest, duration, counters);
+            }
+            if (captured) {
+                final String query = slingRequest.getQueryString();
+                capture.capture(slingRequest.getMethod(), urlOf(slingRequest.getRequestPathInfo())
+                        + (query != null ? "?" + query : ""), startMillis, duration, counters);
+            }
+        }
+    }
+
+    private static String urlOf(final RequestPathInfo pathInfo) {
+        final StringBuilder url = new StringBuilder(String.valueOf(pathInfo.getResourcePath()));
+        if (pathInfo.getSelectorString() != null) {
+            url.append('.').append(pathInfo.getSelectorString());
+        }
+        if (pathInfo.getExtension() != null) {
+            url.append('.').append(pathInfo.getExtension());
+        }
+        return url.toString();
     }
 
     @Override
@@ -66,4 +156,43 @@ public class LoggingFilter implements Filter {
     public void destroy() {
     }
 
+    /**
+     * Adds the accounting header as late as possible: right before the body is
+     * first written, or at the end of the request if nothing was written. Work
+     * done after the first write is only reflected in the aggregated statistics.
+     */
+    private static final class AccountingHeaderResponse extends SlingHttpServletResponseWrapper {
+
+        private boolean headerAdded;
+
+        AccountingHeaderResponse(final SlingHttpServletResponse response) {
+            super(response);
+        }
+
+        @Override
+        public PrintWriter getWriter() throws IOException {
+            addAccountingHeader();
+            return super.getWriter();
+        }
+
+        @Override
+        public ServletOutputStream getOutputStream() throws IOException {
+            addAccountingHeader();
+            return super.getOutputStream();
+        }
+
+        @Override
+        public void flushBuffer() throws IOException {
+            addAccountingHeader();
+            super.flushBuffer();
+        }
+
+        void addAccountingHeader() {
+            if (!headerAdded && !isCommitted()) {
+                headerAdded = true;
+                setHeader(RepositoryAccountingStats.HEADER, RepositoryAccounting.current().toHeaderValue());
+            }
+        }
+    }
+
 }
\ No newline at end of file
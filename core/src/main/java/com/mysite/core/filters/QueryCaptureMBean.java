@@ -0,0 +1,37 @@
+package com.mysite.core.filters;
+
+/**
+ * JMX view of the {@link QueryCaptureRecorder}.
+ */
+public interface QueryCaptureMBean {
+
+    /**
+     * @return whether requests are being captured
+     */
+    boolean isCapturing();
+
+    /**
+     * Starts or stops capturing until the next activation.
+     */
+    void setCapturing(boolean capturing);
+
+    /**
+     * @return the number of requests written since activation
+     */
+    long getCapturedRequests();
+
+    /**
+     * @return the number of requests dropped because the writer fell behind
+     */
+    long getDroppedRequests();
+
+    /**
+     * @return the capture files, oldest first
+     */
+    String[] getFiles();
+
+    /**
+     * Finishes the current capture file so it can be copied, and starts a new one.
+     */
+    void rotate();
+}
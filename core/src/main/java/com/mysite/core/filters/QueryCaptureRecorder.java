@@ -0,0 +1,319 @@
+package com.mysite.core.filters;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPOutputStream;
+
+import javax.management.NotCompliantMBeanException;
+import javax.management.StandardMBean;
+
+import org.osgi.framework.BundleContext;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Deactivate;
+import org.osgi.service.metatype.annotations.AttributeDefinition;
+import org.osgi.service.metatype.annotations.Designate;
+import org.osgi.service.metatype.annotations.ObjectClassDefinition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Captures the requests seen by the {@link LoggingFilter} together with the
+ * JCR queries project code ran for them, so a production workload can be
+ * replayed elsewhere (see the query replay of the benchmarks module).
+ * <p>
+ * Request threads only format the entry and offer it to a bounded queue;
+ * entries are dropped when the queue is full. A writer thread appends them to
+ * gzipped files in the bundle data area and starts a new file when one
+ * reaches the configured size, keeping the newest files. Each entry is a
+ * request line followed by one line per recorded query, tab separated, with
+ * tabs, line breaks and backslashes escaped by a backslash:
+ * <pre>
+ * R  start (epoch ms)  duration (microseconds)  method  queries  url
+ * Q  duration (microseconds)  rows  JCR-SQL2 statement
+ * </pre>
+ * Only the first {@link RepositoryAccounting#MAX_STATEMENTS} queries of a
+ * request are listed, the request line counts all of them. Capturing is off
+ * by default; query strings and statements can contain what users searched for.
+ */
+@Component(service = { QueryCaptureRecorder.class, QueryCaptureMBean.class },
+           property = {
+                   "jmx.objectname=com.mysite:type=QueryCapture"
+           })
+@Designate(ocd = QueryCaptureRecorder.Config.class)
+public class QueryCaptureRecorder extends StandardMBean implements QueryCaptureMBean {
+
+    static final String PREFIX = "capture-";
+    static final String SUFFIX = ".tsv.gz";
+
+    @ObjectClassDefinition(name = "Query capture",
+                           description = "Captures requests and their JCR queries for replay")
+    public static @interface Config {
+
+        @AttributeDefinition(name = "Enabled", description = "Capture requests from activation on")
+        boolean enabled() default false;
+
+        @AttributeDefinition(name = "Directory", description = "Where the capture files are kept, empty for the bundle data area")
+        String directory() default "";
+
+        @AttributeDefinition(name = "Max file size (KB)", description = "Uncompressed size at which a new file is started")
+        int maxFileSizeKb() default 10240;
+
+        @AttributeDefinition(name = "Max files", description = "Capture files kept, older ones are deleted")
+        int maxFiles() default 10;
+
+        @AttributeDefinition(name = "Queue size", description = "Requests waiting to be written before new ones are dropped")
+        int queueSize() default 10000;
+    }
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final AtomicLong captured = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+
+    private BlockingQueue<String> queue;
+    private Path directory;
+    private long maxFileBytes;
+    private int maxFiles;
+    private volatile boolean capturing;
+    private volatile boolean running;
+    private volatile boolean rotateRequested;
+    private Thread writer;
+
+    // only used by the writer thread
+    private Writer out;
+    private long written;
+    private long lastFileMillis;
+
+    public QueryCaptureRecorder() throws NotCompliantMBeanException {
+        super(QueryCaptureMBean.class);
+    }
+
+    @Activate
+    protected void activate(final Config config, final BundleContext bundleContext) throws IOException {
+        directory = config.directory().isEmpty()
+                ? bundleContext.getDataFile("query-capture").toPath() : Paths.get(config.directory());
+        Files.createDirectories(directory);
+        maxFileBytes = Math.max(1, config.maxFileSizeKb()) * 1024L;
+        maxFiles = Math.max(1, config.maxFiles());
+        queue = new ArrayBlockingQueue<>(Math.max(1, config.queueSize()));
+        capturing = config.enabled();
+
+        running = true;
+        writer = new Thread(this::writeLoop, "mysite-query-capture");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    @Deactivate
+    protected void deactivate() throws InterruptedException {
+        capturing = false;
+        running = false;
+        writer.join(TimeUnit.SECONDS.toMillis(5));
+    }
+
+    @Override
+    public boolean isCapturing() {
+        return capturing;
+    }
+
+    @Override
+    public void setCapturing(final boolean capturing) {
+        this.capturing = capturing;
+    }
+
+    /**
+     * Queues one finished request for writing.
+     *
+     * @param counters the request's repository accounting, may be {@code null}
+     */
+    public void capture(final String method, final String url, final long startMillis, final long durationNanos,
+                        final RepositoryAccounting.Counters counters) {
+        if (!capturing) {
+            return;
+        }
+        if (!queue.offer(format(method, url, startMillis, durationNanos, counters))) {
+            dropped.incrementAndGet();
+        }
+    }
+
+    static String format(final String method, final String url, final long startMillis, final long durationNanos,
+                         final RepositoryAccounting.Counters counters) {
+        final StringBuilder entry = new StringBuilder(128)
+                .append("R\t").append(startMillis)
+                .append('\t').append(TimeUnit.NANOSECONDS.toMicros(durationNanos))
+                .append('\t').append(method)
+                .append('\t').append(counters != null ? counters.getQueries() : 0)
+                .append('\t');
+        escape(entry, url);
+        entry.append('\n');
+        if (counters != null) {
+            for (int i = 0; i < RepositoryAccounting.MAX_STATEMENTS; i++) {
+                final String statement = counters.getStatement(i);
+                if (statement != null) {
+                    entry.append("Q\t").append(TimeUnit.NANOSECONDS.toMicros(counters.getStatementNanos(i)))
+                            .append('\t').append(counters.getStatementRows(i))
+                            .append('\t');
+                    escape(entry, statement);
+                    entry.append('\n');
+                }
+            }
+        }
+        return entry.toString();
+    }
+
+    private static void escape(final StringBuilder out, final String value) {
+        for (int i = 0; i < value.length(); i++) {
+            final char c = value.charAt(i);
+            switch (c) {
+                case '\\':
+                    out.append("\\\\");
+                    break;
+                case '\t':
+                    out.append("\\t");
+                    break;
+                case '\n':
+                    out.append("\\n");
+                    break;
+                case '\r':
+                    out.append("\\r");
+                    break;
+                default:
+                    out.append(c);
+            }
+        }
+    }
+
+    private void writeLoop() {
+        final List<String> batch = new ArrayList<>();
+        while (running || !queue.isEmpty()) {
+            try {
+                final String first = queue.poll(500, TimeUnit.MILLISECONDS);
+                if (rotateRequested) {
+                    rotateRequested = false;
+                    finishFile();
+                }
+                if (first == null) {
+                    // make what was captured so far readable while the file stays open
+                    flush();
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, 1000);
+                for (String entry : batch) {
+                    write(entry);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (IOException e) {
+                logger.warn("Could not write query capture, dropping {} requests", batch.size(), e);
+                dropped.addAndGet(batch.size());
+                closeQuietly();
+            } finally {
+                batch.clear();
+            }
+        }
+        try {
+            finishFile();
+        } catch (IOException e) {
+            logger.warn("Could not finish query capture file", e);
+        }
+    }
+
+    private void write(final String entry) throws IOException {
+        if (out == null) {
+            startFile();
+        }
+        out.write(entry);
+        written += entry.length();
+        captured.incrementAndGet();
+        if (written >= maxFileBytes) {
+            finishFile();
+        }
+    }
+
+    private void startFile() throws IOException {
+        // file names sort by time, never reusing one within the same millisecond
+        lastFileMillis = Math.max(System.currentTimeMillis(), lastFileMillis + 1);
+        final Path file = directory.resolve(String.format("%s%013d%s", PREFIX, lastFileMillis, SUFFIX));
+        out = new BufferedWriter(new OutputStreamWriter(
+                new GZIPOutputStream(Files.newOutputStream(file), 8192, true), StandardCharsets.UTF_8));
+        written = 0;
+        final List<Path> files = listFiles();
+        for (int i = 0; i < files.size() - maxFiles; i++) {
+            Files.deleteIfExists(files.get(i));
+        }
+        logger.debug("Started query capture file {}", file);
+    }
+
+    private void flush() throws IOException {
+        if (out != null) {
+            out.flush();
+        }
+    }
+
+    private void finishFile() throws IOException {
+        if (out != null) {
+            final Writer finished = out;
+            out = null;
+            finished.close();
+        }
+    }
+
+    private void closeQuietly() {
+        try {
+            finishFile();
+        } catch (IOException e) {
+            // the file is given up either way
+        }
+    }
+
+    private List<Path> listFiles() throws IOException {
+        final List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, PREFIX + "*" + SUFFIX)) {
+            stream.forEach(files::add);
+        }
+        Collections.sort(files);
+        return files;
+    }
+
+    @Override
+    public long getCapturedRequests() {
+        return captured.get();
+    }
+
+    @Override
+    public long getDroppedRequests() {
+        return dropped.get();
+    }
+
+    @Override
+    public String[] getFiles() {
+        try {
+            return listFiles().stream().map(Path::toString).toArray(String[]::new);
+        } catch (IOException e) {
+            logger.warn("Could not list query capture files in {}", directory, e);
+            return new String[0];
+        }
+    }
+
+    @Override
+    public void rotate() {
+        rotateRequested = true;
+    }
+}
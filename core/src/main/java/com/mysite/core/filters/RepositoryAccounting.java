@@ -0,0 +1,139 @@
+package com.mysite.core.filters;
+
+import java.util.Arrays;
+
+/**
+ * Per-request counters of the repository work done by project code: JCR
+ * queries executed, time spent in them and nodes read. The request filter
+ * opens the counters for the request's thread; code on the request path
+ * reports into them through the static methods, which do nothing when no
+ * request is being accounted (for example in background jobs).
+ * The counters object is reused per thread, so accounting does not allocate;
+ * the statements of the first {@link #MAX_STATEMENTS} queries are kept by
+ * reference, with their own time and rows, for the slow request recorder and
+ * the query capture.
+ */
+public final class RepositoryAccounting {
+
+    public static final int MAX_STATEMENTS = 16;
+
+    private static final ThreadLocal<Counters> CURRENT = ThreadLocal.withInitial(Counters::new);
+
+    private RepositoryAccounting() {
+        // static methods only
+    }
+
+    /**
+     * Starts accounting for the current thread's request.
+     */
+    static Counters begin() {
+        final Counters counters = CURRENT.get();
+        counters.reset();
+        counters.active = true;
+        return counters;
+    }
+
+    /**
+     * Stops accounting for the current thread; the returned counters stay
+     * valid until the thread's next {@link #begin()}.
+     */
+    static Counters end() {
+        final Counters counters = CURRENT.get();
+        counters.active = false;
+        return counters;
+    }
+
+    /**
+     * @return the current thread's counters, possibly from a finished request
+     */
+    static Counters current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Records one executed query, its execution time and the rows read from its result.
+     */
+    public static void recordQuery(final long nanos, final long rows) {
+        recordQuery(null, nanos, rows);
+    }
+
+    /**
+     * Records one executed query together with its statement.
+     */
+    public static void recordQuery(final String statement, final long nanos, final long rows) {
+        final Counters counters = CURRENT.get();
+        if (counters.active) {
+            if (statement != null && counters.queries < MAX_STATEMENTS) {
+                counters.statements[counters.queries] = statement;
+                counters.statementNanos[counters.queries] = nanos;
+                counters.statementRows[counters.queries] = rows;
+            }
+            counters.queries++;
+            counters.queryNanos += nanos;
+            counters.nodesRead += rows;
+        }
+    }
+
+    /**
+     * Records nodes read outside of queries, e.g. resolved resources.
+     */
+    public static void recordReads(final long nodes) {
+        final Counters counters = CURRENT.get();
+        if (counters.active) {
+            counters.nodesRead += nodes;
+        }
+    }
+
+    /**
+     * Mutable counters of one request.
+     */
+    public static final class Counters {
+        private boolean active;
+        private int queries;
+        private long queryNanos;
+        private long nodesRead;
+        private final String[] statements = new String[MAX_STATEMENTS];
+        private final long[] statementNanos = new long[MAX_STATEMENTS];
+        private final long[] statementRows = new long[MAX_STATEMENTS];
+
+        private void reset() {
+            queries = 0;
+            queryNanos = 0;
+            nodesRead = 0;
+            Arrays.fill(statements, null);
+        }
+
+        public int getQueries() { return queries; }
+
+        /**
+         * @return the statement of the given query, {@code null} if it was not recorded
+         */
+        public String getStatement(final int index) {
+            return index < MAX_STATEMENTS ? statements[index] : null;
+        }
+
+        /**
+         * @return the execution time of the given query, 0 if its statement was not recorded
+         */
+        public long getStatementNanos(final int index) {
+            return getStatement(index) != null ? statementNanos[index] : 0;
+        }
+
+        /**
+         * @return the rows read from the result of the given query, 0 if its statement was not recorded
+         */
+        public long getStatementRows(final int index) {
+            return getStatement(index) != null ? statementRows[index] : 0;
+        }
+
+        public long getQueryNanos() { return queryNanos; }
+        public long getNodesRead() { return nodesRead; }
+
+        /**
+         * @return the counters in the format of the debug response header
+         */
+        public String toHeaderValue() {
+            return "queries=" + queries + ";queryMs=" + (queryNanos / 1_000_000) + ";nodes=" + nodesRead;
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package com.mysite.core.filters;
+
+/**
+ * JMX view of the per-URL repository accounting kept by {@link LoggingFilter}.
+ */
+public interface RepositoryAccountingMBean {
+
+    /**
+     * @return the most expensive URLs by total query time, one line each
+     */
+    String[] getTopUrls();
+
+    /**
+     * Clears the collected statistics.
+     */
+    void reset();
+}
@@ -0,0 +1,219 @@
+package com.mysite.core.filters;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import javax.management.NotCompliantMBeanException;
+import javax.management.StandardMBean;
+
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Modified;
+import org.osgi.service.metatype.annotations.AttributeDefinition;
+import org.osgi.service.metatype.annotations.Designate;
+import org.osgi.service.metatype.annotations.ObjectClassDefinition;
+
+/**
+ * Aggregates the {@link RepositoryAccounting} counters of finished requests
+ * per URL (resource path, selectors and extension) and reports the most
+ * expensive ones by total query time. The number of tracked URLs is capped;
+ * once it is reached, a new URL replaces the cheapest of a few randomly
+ * sampled tracked URLs, whose totals are folded into {@link #OTHER}, so URLs
+ * that only become expensive later are still reported. Eviction takes no lock
+ * and looks at a fixed number of entries, so a scan of unique URLs does not
+ * serialize the request threads.
+ */
+@Component(service = { RepositoryAccountingStats.class, RepositoryAccountingMBean.class },
+           property = {
+                   "jmx.objectname=com.mysite:type=RepositoryAccounting"
+           })
+@Designate(ocd = RepositoryAccountingStats.Config.class)
+public class RepositoryAccountingStats extends StandardMBean implements RepositoryAccountingMBean {
+
+    public static final String OTHER = "other";
+
+    public static final String HEADER = "X-Repository-Accounting";
+
+    @ObjectClassDefinition(name = "Repository accounting",
+                           description = "Per-request JCR query and node read accounting")
+    public static @interface Config {
+
+        @AttributeDefinition(name = "Debug header",
+                             description = "Add the " + HEADER + " header to responses")
+        boolean debugHeader() default false;
+
+        @AttributeDefinition(name = "Top N", description = "Number of URLs reported as most expensive")
+        int topN() default 20;
+
+        @AttributeDefinition(name = "Max URLs", description = "Number of distinct URLs tracked")
+        int maxUrls() default 1000;
+    }
+
+    static final int EVICTION_SAMPLES = 5;
+
+    private final UrlStats other = new UrlStats(OTHER);
+
+    private volatile Table table = new Table(1000);
+
+    private volatile boolean debugHeader;
+    private volatile int topN = 20;
+    private volatile int maxUrls = 1000;
+
+    public RepositoryAccountingStats() throws NotCompliantMBeanException {
+        super(RepositoryAccountingMBean.class);
+    }
+
+    @Activate
+    @Modified
+    protected void activate(final Config config) {
+        debugHeader = config.debugHeader();
+        topN = Math.max(1, config.topN());
+        maxUrls = Math.max(1, config.maxUrls());
+        if (table.slots.length() != maxUrls) {
+            table = new Table(maxUrls);
+        }
+    }
+
+    public boolean isDebugHeader() {
+        return debugHeader;
+    }
+
+    public void record(final String url, final RepositoryAccounting.Counters counters) {
+        final Table current = table;
+        UrlStats stats = current.urls.get(url);
+        if (stats == null) {
+            stats = current.track(url, other);
+        }
+        stats.requests.increment();
+        stats.queries.add(counters.getQueries());
+        stats.queryNanos.add(counters.getQueryNanos());
+        stats.nodesRead.add(counters.getNodesRead());
+    }
+
+    /**
+     * @return the URLs with the highest total query time, most expensive first
+     */
+    public List<UrlStats> getTop() {
+        return Stream.concat(table.urls.values().stream(), Stream.of(other))
+                .filter(stats -> stats.getRequests() > 0)
+                .sorted(Comparator.comparingLong(UrlStats::getQueryNanos).reversed()
+                        .thenComparing(Comparator.comparingLong(UrlStats::getNodesRead).reversed()))
+                .limit(topN)
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public String[] getTopUrls() {
+        return getTop().stream()
+                .map(stats -> String.format(Locale.ROOT, "%s requests=%d queries=%d queryMs=%.1f nodes=%d",
+                        stats.getUrl(), stats.getRequests(), stats.getQueries(),
+                        stats.getQueryNanos() / 1_000_000.0, stats.getNodesRead()))
+                .toArray(String[]::new);
+    }
+
+    @Override
+    public void reset() {
+        table = new Table(maxUrls);
+        other.requests.reset();
+        other.queries.reset();
+        other.queryNanos.reset();
+        other.nodesRead.reset();
+    }
+
+    /**
+     * The tracked URLs, and the same entries in slots that eviction samples
+     * from. Replaced as a whole on reset.
+     */
+    private static final class Table {
+        private final ConcurrentMap<String, UrlStats> urls = new ConcurrentHashMap<>();
+        private final AtomicReferenceArray<UrlStats> slots;
+        private final AtomicInteger filled = new AtomicInteger();
+
+        Table(final int size) {
+            slots = new AtomicReferenceArray<>(size);
+        }
+
+        /**
+         * Starts tracking a URL, replacing the cheapest sampled entry once all
+         * slots are taken. A request counted on an entry while it is being
+         * evicted may be lost to the totals.
+         */
+        UrlStats track(final String url, final UrlStats other) {
+            final UrlStats fresh = new UrlStats(url);
+            final UrlStats existing = urls.putIfAbsent(url, fresh);
+            if (existing != null) {
+                return existing;
+            }
+            if (filled.get() < slots.length()) {
+                final int slot = filled.getAndIncrement();
+                if (slot < slots.length()) {
+                    slots.set(slot, fresh);
+                    return fresh;
+                }
+            }
+            while (true) {
+                final int slot = cheapestSampledSlot();
+                final UrlStats victim = slots.get(slot);
+                if (victim != null && slots.compareAndSet(slot, victim, fresh)) {
+                    urls.remove(victim.url, victim);
+                    other.add(victim);
+                    return fresh;
+                }
+            }
+        }
+
+        private int cheapestSampledSlot() {
+            final int length = slots.length();
+            final boolean all = length <= EVICTION_SAMPLES;
+            int cheapest = -1;
+            long cheapestNanos = Long.MAX_VALUE;
+            for (int i = 0; i < (all ? length : EVICTION_SAMPLES); i++) {
+                final int slot = all ? i : ThreadLocalRandom.current().nextInt(length);
+                final UrlStats candidate = slots.get(slot);
+                final long nanos = candidate != null ? candidate.getQueryNanos() : Long.MAX_VALUE;
+                if (cheapest < 0 || nanos < cheapestNanos) {
+                    cheapest = slot;
+                    cheapestNanos = nanos;
+                }
+            }
+            return cheapest;
+        }
+    }
+
+    /**
+     * Totals of all accounted requests to one URL.
+     */
+    public static final class UrlStats {
+        private final String url;
+        private final LongAdder requests = new LongAdder();
+        private final LongAdder queries = new LongAdder();
+        private final LongAdder queryNanos = new LongAdder();
+        private final LongAdder nodesRead = new LongAdder();
+
+        UrlStats(final String url) {
+            this.url = url;
+        }
+
+        private void add(final UrlStats stats) {
+            requests.add(stats.getRequests());
+            queries.add(stats.getQueries());
+            queryNanos.add(stats.getQueryNanos());
+            nodesRead.add(stats.getNodesRead());
+        }
+
+        public String getUrl() { return url; }
+        public long getRequests() { return requests.sum(); }
+        public long getQueries() { return queries.sum(); }
+        public long getQueryNanos() { return queryNanos.sum(); }
+        public long getNodesRead() { return nodesRead.sum(); }
+    }
+}
@@ -0,0 +1,27 @@
+package com.mysite.core.filters;
+
+/**
+ * JMX view of the request latency histograms kept by {@link LoggingFilter}.
+ */
+public interface RequestLatencyMBean {
+
+    /**
+     * @return the recorded endpoint keys
+     */
+    String[] getEndpoints();
+
+    /**
+     * @return one line per endpoint with count, p50, p99, p999 and max in milliseconds
+     */
+    String[] getSummary();
+
+    /**
+     * @return the given percentile (0-100) for an endpoint in milliseconds, -1 if unknown
+     */
+    double getPercentile(String endpoint, double percentile);
+
+    /**
+     * Clears all histograms.
+     */
+    void reset();
+}
@@ -0,0 +1,184 @@
+package com.mysite.core.filters;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.management.NotCompliantMBeanException;
+import javax.management.StandardMBean;
+
+import org.apache.sling.api.SlingHttpServletRequest;
+import org.apache.sling.api.request.RequestPathInfo;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Modified;
+import org.osgi.service.metatype.annotations.AttributeDefinition;
+import org.osgi.service.metatype.annotations.Designate;
+import org.osgi.service.metatype.annotations.ObjectClassDefinition;
+
+/**
+ * Keeps one {@link LatencyHistogram} per endpoint, keyed by resource type,
+ * selectors and extension (for example
+ * {@code mysite/components/page.authorinfo.json}). Lookups on the request
+ * path reuse the strings Sling already holds, so recording a sampled request
+ * allocates nothing once its endpoint has been seen. The number of endpoints
+ * is capped; anything beyond the cap is recorded under {@link #OTHER}.
+ * The histograms are exposed over JMX and by the latency stats servlet.
+ */
+@Component(service = { RequestLatencyRecorder.class, RequestLatencyMBean.class },
+           property = {
+                   "jmx.objectname=com.mysite:type=RequestLatency"
+           })
+@Designate(ocd = RequestLatencyRecorder.Config.class)
+public class RequestLatencyRecorder extends StandardMBean implements RequestLatencyMBean {
+
+    public static final String OTHER = "other";
+
+    private static final String NONE = "";
+
+    @ObjectClassDefinition(name = "Request latency recorder",
+                           description = "Per-endpoint request latency histograms")
+    public static @interface Config {
+
+        @AttributeDefinition(name = "Sample rate",
+                             description = "Record one in N requests, 1 records every request")
+        int sampleRate() default 1;
+
+        @AttributeDefinition(name = "Max endpoints",
+                             description = "Number of distinct endpoints with their own histogram")
+        int maxEndpoints() default 200;
+    }
+
+    private final ConcurrentMap<String, ConcurrentMap<String, ConcurrentMap<String, LatencyHistogram>>> byType =
+            new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, LatencyHistogram> byKey = new ConcurrentHashMap<>();
+    private final AtomicInteger endpoints = new AtomicInteger();
+    private final LatencyHistogram other = new LatencyHistogram();
+
+    private volatile int sampleRate = 1;
+    private volatile int maxEndpoints = 200;
+
+    public RequestLatencyRecorder() throws NotCompliantMBeanException {
+        super(RequestLatencyMBean.class);
+    }
+
+    @Activate
+    @Modified
+    protected void activate(final Config config) {
+        sampleRate = Math.max(1, config.sampleRate());
+        maxEndpoints = Math.max(1, config.maxEndpoints());
+    }
+
+    /**
+     * @return whether the current request should be timed
+     */
+    public boolean sample() {
+        final int rate = sampleRate;
+        return rate == 1 || ThreadLocalRandom.current().nextInt(rate) == 0;
+    }
+
+    public void record(final SlingHttpServletRequest request, final long nanos) {
+        final RequestPathInfo pathInfo = request.getRequestPathInfo();
+        final String resourceType = request.getResource() != null ? request.getResource().getResourceType() : null;
+        histogram(resourceType, pathInfo.getSelectorString(), pathInfo.getExtension()).recordNanos(nanos);
+    }
+
+    LatencyHistogram histogram(final String resourceType, final String selectors, final String extension) {
+        final String type = resourceType != null ? resourceType : NONE;
+        final String selector = selectors != null ? selectors : NONE;
+        final String ext = extension != null ? extension : NONE;
+
+        // once the cap is reached unseen values must not grow the maps, they all share OTHER
+        ConcurrentMap<String, ConcurrentMap<String, LatencyHistogram>> bySelector = byType.get(type);
+        if (bySelector == null) {
+            if (isFull()) {
+                return other;
+            }
+            bySelector = byType.computeIfAbsent(type, k -> new ConcurrentHashMap<>());
+        }
+        ConcurrentMap<String, LatencyHistogram> byExtension = bySelector.get(selector);
+        if (byExtension == null) {
+            if (isFull()) {
+                return other;
+            }
+            byExtension = bySelector.computeIfAbsent(selector, k -> new ConcurrentHashMap<>());
+        }
+        final LatencyHistogram histogram = byExtension.get(ext);
+        return histogram != null ? histogram : create(byExtension, type, selector, ext);
+    }
+
+    private LatencyHistogram create(final ConcurrentMap<String, LatencyHistogram> byExtension,
+                                    final String type, final String selector, final String ext) {
+        if (isFull()) {
+            return other;
+        }
+        return byExtension.computeIfAbsent(ext, k -> {
+            endpoints.incrementAndGet();
+            final LatencyHistogram histogram = new LatencyHistogram();
+            byKey.put(key(type, selector, ext), histogram);
+            return histogram;
+        });
+    }
+
+    private boolean isFull() {
+        return endpoints.get() >= maxEndpoints;
+    }
+
+    /**
+     * @return all histograms by endpoint key, sorted, including {@link #OTHER} once it was used
+     */
+    public Map<String, LatencyHistogram> getHistograms() {
+        final Map<String, LatencyHistogram> histograms = new TreeMap<>(byKey);
+        if (other.getCount() > 0) {
+            histograms.put(OTHER, other);
+        }
+        return histograms;
+    }
+
+    @Override
+    public String[] getEndpoints() {
+        return getHistograms().keySet().toArray(new String[0]);
+    }
+
+    @Override
+    public String[] getSummary() {
+        return getHistograms().entrySet().stream()
+                .map(entry -> String.format("%s count=%d p50=%.3fms p99=%.3fms p999=%.3fms max=%.3fms",
+                        entry.getKey(), entry.getValue().getCount(),
+                        millis(entry.getValue().getPercentileMicros(50)),
+                        millis(entry.getValue().getPercentileMicros(99)),
+                        millis(entry.getValue().getPercentileMicros(99.9)),
+                        millis(entry.getValue().getMaxMicros())))
+                .toArray(String[]::new);
+    }
+
+    @Override
+    public double getPercentile(final String endpoint, final double percentile) {
+        final LatencyHistogram histogram = getHistograms().get(endpoint);
+        return histogram != null ? millis(histogram.getPercentileMicros(percentile)) : -1;
+    }
+
+    @Override
+    public void reset() {
+        byKey.values().forEach(LatencyHistogram::reset);
+        other.reset();
+    }
+
+    static String key(final String type, final String selectors, final String extension) {
+        final StringBuilder key = new StringBuilder(type.isEmpty() ? "-" : type);
+        if (!selectors.isEmpty()) {
+            key.append('.').append(selectors);
+        }
+        if (!extension.isEmpty()) {
+            key.append('.').append(extension);
+        }
+        return key.toString();
+    }
+
+    static double millis(final long micros) {
+        return micros / 1000.0;
+    }
+}
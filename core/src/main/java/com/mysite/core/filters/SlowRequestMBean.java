@@ -0,0 +1,22 @@
+package com.mysite.core.filters;
+
+/**
+ * JMX view of the slow requests kept by the {@link SlowRequestRecorder}.
+ */
+public interface SlowRequestMBean {
+
+    /**
+     * @return the recorded slow requests, newest first, with their queries and stack snapshot
+     */
+    String[] getSlowRequests();
+
+    /**
+     * @return the number of slow requests seen since activation or the last reset
+     */
+    long getSlowRequestCount();
+
+    /**
+     * Clears the recorded requests.
+     */
+    void reset();
+}
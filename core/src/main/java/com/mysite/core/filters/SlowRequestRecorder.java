@@ -0,0 +1,258 @@
+package com.mysite.core.filters;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.NotCompliantMBeanException;
+import javax.management.StandardMBean;
+
+import org.apache.sling.api.SlingHttpServletRequest;
+import org.apache.sling.api.request.RequestPathInfo;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Deactivate;
+import org.osgi.service.metatype.annotations.AttributeDefinition;
+import org.osgi.service.metatype.annotations.Designate;
+import org.osgi.service.metatype.annotations.ObjectClassDefinition;
+
+/**
+ * Flight recorder for slow requests. Every request over the threshold is
+ * copied into a fixed-size ring buffer of preallocated entries together with
+ * its thread CPU time and the JCR queries it ran. A sampler thread takes one
+ * stack snapshot of each request that is still running past the threshold,
+ * which shows where it was stuck. Requests under the threshold only cost two
+ * clock reads and a thread-local lookup and do not allocate.
+ * The buffer can be dumped through JMX (com.mysite:type=SlowRequests).
+ */
+@Component(service = { SlowRequestRecorder.class, SlowRequestMBean.class },
+           property = {
+                   "jmx.objectname=com.mysite:type=SlowRequests"
+           })
+@Designate(ocd = SlowRequestRecorder.Config.class)
+public class SlowRequestRecorder extends StandardMBean implements SlowRequestMBean {
+
+    @ObjectClassDefinition(name = "Slow request recorder",
+                           description = "Keeps the most recent requests slower than a threshold")
+    public static @interface Config {
+
+        @AttributeDefinition(name = "Threshold (ms)", description = "Requests taking longer are recorded")
+        long thresholdMs() default 1000;
+
+        @AttributeDefinition(name = "Capacity", description = "Number of slow requests kept")
+        int capacity() default 50;
+
+        @AttributeDefinition(name = "Stack snapshots",
+                             description = "Sample the stack of requests running past the threshold")
+        boolean stackSnapshots() default true;
+    }
+
+    private final ThreadLocal<InFlight> inFlight = ThreadLocal.withInitial(this::register);
+    private final List<InFlight> threads = new CopyOnWriteArrayList<>();
+    private final ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+    private final AtomicLong slowCount = new AtomicLong();
+
+    private Entry[] ring = new Entry[0];
+    private int next;
+    private volatile long thresholdNanos = Long.MAX_VALUE;
+    private boolean cpuTime;
+    private ScheduledExecutorService sampler;
+
+    public SlowRequestRecorder() throws NotCompliantMBeanException {
+        super(SlowRequestMBean.class);
+    }
+
+    @Activate
+    protected void activate(final Config config) {
+        synchronized (this) {
+            ring = new Entry[Math.max(1, config.capacity())];
+            for (int i = 0; i < ring.length; i++) {
+                ring[i] = new Entry();
+            }
+            next = 0;
+        }
+        cpuTime = threadBean.isCurrentThreadCpuTimeSupported();
+        final long thresholdMs = Math.max(1, config.thresholdMs());
+        thresholdNanos = TimeUnit.MILLISECONDS.toNanos(thresholdMs);
+        if (config.stackSnapshots()) {
+            sampler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                final Thread thread = new Thread(runnable, "mysite-slow-request-sampler");
+                thread.setDaemon(true);
+                return thread;
+            });
+            final long period = Math.max(10, thresholdMs / 2);
+            sampler.scheduleAtFixedRate(this::sampleStacks, period, period, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @Deactivate
+    protected void deactivate() {
+        if (sampler != null) {
+            sampler.shutdownNow();
+        }
+        threads.clear();
+    }
+
+    /**
+     * Marks the start of a request on the current thread.
+     */
+    public void begin() {
+        final InFlight current = inFlight.get();
+        current.cpuStart = cpuTime ? threadBean.getCurrentThreadCpuTime() : 0;
+        current.start = System.nanoTime();
+    }
+
+    /**
+     * Marks the end of the current thread's request and records it if it was slow.
+     *
+     * @param counters the request's repository accounting, may be {@code null}
+     */
+    public void end(final SlingHttpServletRequest request, final long durationNanos,
+                    final RepositoryAccounting.Counters counters) {
+        final InFlight current = inFlight.get();
+        final long start = current.start;
+        current.start = 0;
+        if (durationNanos < thresholdNanos) {
+            return;
+        }
+        final long cpuNanos = cpuTime ? threadBean.getCurrentThreadCpuTime() - current.cpuStart : -1;
+        final StackTraceElement[] stack = current.stackStart == start ? current.stack : null;
+        record(request.getRequestPathInfo(), durationNanos, cpuNanos, counters, stack);
+    }
+
+    private synchronized void record(final RequestPathInfo pathInfo, final long durationNanos, final long cpuNanos,
+                                     final RepositoryAccounting.Counters counters, final StackTraceElement[] stack) {
+        slowCount.incrementAndGet();
+        final Entry entry = ring[next];
+        next = (next + 1) % ring.length;
+        entry.timestamp = System.currentTimeMillis();
+        entry.resourcePath = pathInfo.getResourcePath();
+        entry.selectors = pathInfo.getSelectorString();
+        entry.extension = pathInfo.getExtension();
+        entry.durationNanos = durationNanos;
+        entry.cpuNanos = cpuNanos;
+        entry.queries = counters != null ? counters.getQueries() : -1;
+        for (int i = 0; i < entry.statements.length; i++) {
+            entry.statements[i] = counters != null ? counters.getStatement(i) : null;
+        }
+        entry.stack = stack;
+    }
+
+    /**
+     * Takes one stack snapshot of every request running past the threshold.
+     */
+    void sampleStacks() {
+        final long now = System.nanoTime();
+        for (InFlight request : threads) {
+            if (!request.thread.isAlive()) {
+                threads.remove(request);
+                continue;
+            }
+            final long start = request.start;
+            if (start != 0 && request.stackStart != start && now - start >= thresholdNanos) {
+                request.stack = request.thread.getStackTrace();
+                request.stackStart = start;
+            }
+        }
+    }
+
+    @Override
+    public synchronized String[] getSlowRequests() {
+        final List<String> requests = new ArrayList<>();
+        for (int i = 1; i <= ring.length; i++) {
+            final Entry entry = ring[(next - i + ring.length) % ring.length];
+            if (entry.timestamp != 0) {
+                requests.add(entry.toString());
+            }
+        }
+        return requests.toArray(new String[0]);
+    }
+
+    @Override
+    public long getSlowRequestCount() {
+        return slowCount.get();
+    }
+
+    @Override
+    public synchronized void reset() {
+        for (Entry entry : ring) {
+            entry.timestamp = 0;
+        }
+        slowCount.set(0);
+    }
+
+    private InFlight register() {
+        final InFlight request = new InFlight(Thread.currentThread());
+        threads.add(request);
+        return request;
+    }
+
+    /**
+     * State of the request currently running on one thread, created once per thread.
+     */
+    private static final class InFlight {
+        private final Thread thread;
+        private volatile long start;
+        private long cpuStart;
+        private volatile long stackStart;
+        private volatile StackTraceElement[] stack;
+
+        InFlight(final Thread thread) {
+            this.thread = thread;
+        }
+    }
+
+    /**
+     * Preallocated ring buffer slot.
+     */
+    private static final class Entry {
+        private long timestamp;
+        private String resourcePath;
+        private String selectors;
+        private String extension;
+        private long durationNanos;
+        private long cpuNanos;
+        private int queries;
+        private final String[] statements = new String[RepositoryAccounting.MAX_STATEMENTS];
+        private StackTraceElement[] stack;
+
+        @Override
+        public String toString() {
+            final StringBuilder out = new StringBuilder()
+                    .append(Instant.ofEpochMilli(timestamp)).append(' ')
+                    .append(resourcePath);
+            if (selectors != null) {
+                out.append('.').append(selectors);
+            }
+            if (extension != null) {
+                out.append('.').append(extension);
+            }
+            out.append(" duration=").append(TimeUnit.NANOSECONDS.toMillis(durationNanos)).append("ms");
+            if (cpuNanos >= 0) {
+                out.append(" cpu=").append(TimeUnit.NANOSECONDS.toMillis(cpuNanos)).append("ms");
+            }
+            if (queries >= 0) {
+                out.append(" queries=").append(queries);
+            }
+            for (String statement : statements) {
+                if (statement != null) {
+                    out.append("\n  query: ").append(statement);
+                }
+            }
+            if (stack != null) {
+                out.append("\n  stack at threshold:");
+                for (StackTraceElement element : stack) {
+                    out.append("\n    at ").append(element);
+                }
+            }
+            return out.toString();
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package com.mysite.core.listeners;
+
+import java.util.List;
+
+/**
+ * Tails the {@link ContentChangeLog}. Register implementations as OSGi
+ * services; the log delivers every record after the consumer's checkpoint in
+ * offset order, and moves the checkpoint past a batch once {@link #consume}
+ * returned. A batch that failed is delivered again, so consumers must cope
+ * with seeing a record more than once.
+ */
+public interface ChangeLogConsumer {
+
+    /**
+     * @return the name the checkpoint is stored under, unique and stable across restarts
+     */
+    String getName();
+
+    /**
+     * @param records at least one record, in offset order
+     * @throws Exception to have the batch delivered again after a back-off
+     */
+    void consume(List<ChangeRecord> records) throws Exception;
+}
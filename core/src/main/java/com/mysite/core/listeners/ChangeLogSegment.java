@@ -0,0 +1,238 @@
+package com.mysite.core.listeners;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import org.apache.sling.api.resource.observation.ResourceChange.ChangeType;
+
+/**
+ * One file of the {@link ContentChangeLog}, memory-mapped at its full size
+ * when opened. Records are appended back to back:
+ * length, CRC-32 of the rest, offset, timestamp, change type and the page
+ * path in UTF-8. The bytes after the last record stay zero, so reopening a
+ * segment finds the end at the first record that is empty, torn or does not
+ * have the next offset. A sparse index of every {@value #INDEX_INTERVAL}th
+ * record lets readers start close to the offset they ask for.
+ * <p>
+ * A single writer appends while any number of readers read; readers never
+ * look past the end position published by the last completed append.
+ */
+final class ChangeLogSegment implements Closeable {
+
+    static final String SUFFIX = ".log";
+    static final int HEADER = 25;
+    static final int INDEX_INTERVAL = 128;
+
+    private static final int CRC = 4;
+    private static final int OFFSET = 8;
+    private static final int TIMESTAMP = 16;
+    private static final int TYPE = 24;
+
+    private final Path file;
+    private final long baseOffset;
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+
+    private volatile int end;
+    private volatile long nextOffset;
+    private long[] indexOffsets = new long[16];
+    private int[] indexPositions = new int[16];
+    private int indexSize;
+
+    private ChangeLogSegment(final Path file, final long baseOffset, final int size) throws IOException {
+        this.file = file;
+        this.baseOffset = baseOffset;
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(size, channel.size()));
+        this.nextOffset = baseOffset;
+        recover();
+    }
+
+    /**
+     * Opens the segment starting at {@code baseOffset} in {@code directory},
+     * creating it with {@code size} bytes if it does not exist.
+     */
+    static ChangeLogSegment open(final Path directory, final long baseOffset, final int size) throws IOException {
+        return new ChangeLogSegment(directory.resolve(fileName(baseOffset)), baseOffset, size);
+    }
+
+    static String fileName(final long baseOffset) {
+        return String.format("%020d%s", baseOffset, SUFFIX);
+    }
+
+    /**
+     * @return the base offset encoded in a segment file name, -1 if it is not one
+     */
+    static long parseBaseOffset(final String fileName) {
+        if (!fileName.endsWith(SUFFIX) || fileName.length() != 20 + SUFFIX.length()) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(fileName.substring(0, 20));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private void recover() {
+        int position = 0;
+        long offset = baseOffset;
+        while (position + HEADER < buffer.capacity()) {
+            final int length = buffer.getInt(position);
+            if (length <= HEADER || position + length > buffer.capacity()
+                    || buffer.getLong(position + OFFSET) != offset
+                    || toType(buffer.get(position + TYPE)) == null
+                    || buffer.getInt(position + CRC) != crc(position, length)) {
+                break;
+            }
+            index(offset, position);
+            position += length;
+            offset++;
+        }
+        end = position;
+        nextOffset = offset;
+    }
+
+    /**
+     * @return {@code false} if the segment has no room left for the record
+     */
+    boolean append(final long offset, final long timestamp, final ChangeType type, final byte[] path) {
+        final int position = end;
+        final int length = HEADER + path.length;
+        if (position + length > buffer.capacity()) {
+            return false;
+        }
+        buffer.putInt(position, length);
+        buffer.putLong(position + OFFSET, offset);
+        buffer.putLong(position + TIMESTAMP, timestamp);
+        buffer.put(position + TYPE, toCode(type));
+        for (int i = 0; i < path.length; i++) {
+            buffer.put(position + HEADER + i, path[i]);
+        }
+        buffer.putInt(position + CRC, crc(position, length));
+        // clears what a torn write of an earlier run may have left behind
+        if (position + length + 4 <= buffer.capacity()) {
+            buffer.putInt(position + length, 0);
+        }
+        index(offset, position);
+        nextOffset = offset + 1;
+        end = position + length;
+        return true;
+    }
+
+    /**
+     * Adds records from {@code fromOffset} on to {@code records} until it holds {@code maxRecords}.
+     */
+    void read(final long fromOffset, final int maxRecords, final List<ChangeRecord> records) {
+        final int limit = end;
+        int position = startPosition(fromOffset);
+        while (position < limit && records.size() < maxRecords) {
+            final int length = buffer.getInt(position);
+            final long offset = buffer.getLong(position + OFFSET);
+            if (offset >= fromOffset) {
+                final byte[] path = new byte[length - HEADER];
+                for (int i = 0; i < path.length; i++) {
+                    path[i] = buffer.get(position + HEADER + i);
+                }
+                records.add(new ChangeRecord(offset, buffer.getLong(position + TIMESTAMP),
+                        toType(buffer.get(position + TYPE)), new String(path, StandardCharsets.UTF_8)));
+            }
+            position += length;
+        }
+    }
+
+    /**
+     * Writes the appended records through to the disk.
+     */
+    void force() {
+        buffer.force();
+    }
+
+    long getBaseOffset() {
+        return baseOffset;
+    }
+
+    /**
+     * @return the offset the next record appended to this segment gets
+     */
+    long getNextOffset() {
+        return nextOffset;
+    }
+
+    int getSize() {
+        return buffer.capacity();
+    }
+
+    @Override
+    public void close() throws IOException {
+        // the mapping itself is released once the buffer is collected
+        channel.close();
+    }
+
+    void delete() throws IOException {
+        close();
+        Files.deleteIfExists(file);
+    }
+
+    private synchronized void index(final long offset, final int position) {
+        if ((offset - baseOffset) % INDEX_INTERVAL != 0) {
+            return;
+        }
+        if (indexSize == indexOffsets.length) {
+            indexOffsets = Arrays.copyOf(indexOffsets, indexSize * 2);
+            indexPositions = Arrays.copyOf(indexPositions, indexSize * 2);
+        }
+        indexOffsets[indexSize] = offset;
+        indexPositions[indexSize] = position;
+        indexSize++;
+    }
+
+    private synchronized int startPosition(final long offset) {
+        final int found = Arrays.binarySearch(indexOffsets, 0, indexSize, offset);
+        final int entry = found >= 0 ? found : -found - 2;
+        return entry >= 0 ? indexPositions[entry] : 0;
+    }
+
+    private int crc(final int position, final int length) {
+        final ByteBuffer record = buffer.duplicate();
+        record.limit(position + length).position(position + OFFSET);
+        final CRC32 crc = new CRC32();
+        crc.update(record);
+        return (int) crc.getValue();
+    }
+
+    private static byte toCode(final ChangeType type) {
+        switch (type) {
+            case ADDED:
+                return 1;
+            case REMOVED:
+                return 3;
+            default:
+                return 2;
+        }
+    }
+
+    private static ChangeType toType(final byte code) {
+        switch (code) {
+            case 1:
+                return ChangeType.ADDED;
+            case 2:
+                return ChangeType.CHANGED;
+            case 3:
+                return ChangeType.REMOVED;
+            default:
+                return null;
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package com.mysite.core.listeners;
+
+import org.apache.sling.api.resource.observation.ResourceChange.ChangeType;
+
+/**
+ * One page change in the {@link ContentChangeLog}. Offsets grow by one per
+ * record and are never reused, so a consumer can resume after the last
+ * offset it handled.
+ */
+public final class ChangeRecord {
+
+    private final long offset;
+    private final long timestamp;
+    private final ChangeType type;
+    private final String path;
+
+    public ChangeRecord(final long offset, final long timestamp, final ChangeType type, final String path) {
+        this.offset = offset;
+        this.timestamp = timestamp;
+        this.type = type;
+        this.path = path;
+    }
+
+    public long getOffset() {
+        return offset;
+    }
+
+    /**
+     * @return when the change was written to the log, in milliseconds since the epoch
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public ChangeType getType() {
+        return type;
+    }
+
+    /**
+     * @return the page path
+     */
+    public String getPath() {
+        return path;
+    }
+
+    @Override
+    public String toString() {
+        return offset + " " + type + " " + path;
+    }
+}
@@ -0,0 +1,447 @@
+package com.mysite.core.listeners;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javax.management.NotCompliantMBeanException;
+import javax.management.StandardMBean;
+
+import org.apache.sling.api.resource.observation.ResourceChange;
+import org.apache.sling.api.resource.observation.ResourceChange.ChangeType;
+import org.osgi.framework.BundleContext;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Deactivate;
+import org.osgi.service.component.annotations.Reference;
+import org.osgi.service.component.annotations.ReferenceCardinality;
+import org.osgi.service.component.annotations.ReferencePolicy;
+import org.osgi.service.component.annotations.ReferencePolicyOption;
+import org.osgi.service.metatype.annotations.AttributeDefinition;
+import org.osgi.service.metatype.annotations.Designate;
+import org.osgi.service.metatype.annotations.ObjectClassDefinition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Durable, ordered log of page changes. The coalesced batches of the
+ * {@link ResourceChangePipeline} are appended to memory-mapped segment files
+ * in the bundle data area, every record with the next of a sequence of
+ * offsets that keeps growing across restarts. When the active segment is
+ * full a new one is started, and the oldest segments beyond the configured
+ * number are deleted.
+ * <p>
+ * Registered {@link ChangeLogConsumer} services are fed in batches from a
+ * single worker thread, each from its own checkpoint, which is stored next
+ * to the segments once a batch was consumed. A consumer seen for the first
+ * time starts at the end of the log; after a restart every consumer
+ * continues where it left off, replaying what it had not confirmed. Other
+ * code can {@link #read} the log directly.
+ */
+@Component(service = { ContentChangeLog.class, ContentChangeLogMBean.class, ResourceChangeConsumer.class },
+           immediate = true,
+           property = {
+                   "jmx.objectname=com.mysite:type=ContentChangeLog"
+           })
+@Designate(ocd = ContentChangeLog.Config.class)
+public class ContentChangeLog extends StandardMBean implements ContentChangeLogMBean, ResourceChangeConsumer {
+
+    static final String CHECKPOINTS_FILE = "checkpoints.properties";
+    private static final long MAX_BACKOFF_MS = TimeUnit.MINUTES.toMillis(1);
+
+    @ObjectClassDefinition(name = "Content Change Log",
+                           description = "Durable log of page changes tailed by change log consumers")
+    public @interface Config {
+
+        @AttributeDefinition(name = "Directory", description = "Where the segments are kept, empty for the bundle data area")
+        String directory() default "";
+
+        @AttributeDefinition(name = "Segment size (KB)", description = "Size of one memory-mapped segment file")
+        int segmentSizeKb() default 16384;
+
+        @AttributeDefinition(name = "Max segments", description = "Segments kept, older ones are deleted")
+        int maxSegments() default 8;
+
+        @AttributeDefinition(name = "Batch size", description = "Records delivered to a consumer at a time")
+        int batchSize() default 500;
+
+        @AttributeDefinition(name = "Poll interval (ms)",
+                             description = "How often consumers are checked without new records, also the first retry back-off")
+        long pollIntervalMs() default 1000;
+
+        @AttributeDefinition(name = "Sync on append", description = "Force every appended batch to disk")
+        boolean syncOnAppend() default true;
+    }
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final ConcurrentNavigableMap<Long, ChangeLogSegment> segments = new ConcurrentSkipListMap<>();
+    private final List<ChangeLogConsumer> consumers = new CopyOnWriteArrayList<>();
+    private final Map<String, Long> checkpoints = new ConcurrentHashMap<>();
+    private final Map<String, Integer> failures = new ConcurrentHashMap<>();
+    private final Map<String, Long> retryAt = new ConcurrentHashMap<>();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition appended = lock.newCondition();
+    private final AtomicLong appendedCount = new AtomicLong();
+
+    private Path directory;
+    private int segmentSize;
+    private int maxSegments;
+    private int batchSize;
+    private long pollIntervalMs;
+    private boolean syncOnAppend;
+    private volatile ChangeLogSegment active;
+    private volatile boolean running;
+    private Thread worker;
+
+    public ContentChangeLog() throws NotCompliantMBeanException {
+        super(ContentChangeLogMBean.class);
+    }
+
+    @Activate
+    protected void activate(final Config config, final BundleContext bundleContext) throws IOException {
+        directory = config.directory().isEmpty()
+                ? bundleContext.getDataFile("change-log").toPath() : Paths.get(config.directory());
+        segmentSize = (int) Math.min(Integer.MAX_VALUE, Math.max(4, config.segmentSizeKb()) * 1024L);
+        maxSegments = Math.max(1, config.maxSegments());
+        batchSize = Math.max(1, config.batchSize());
+        pollIntervalMs = Math.max(1, config.pollIntervalMs());
+        syncOnAppend = config.syncOnAppend();
+        Files.createDirectories(directory);
+
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + ChangeLogSegment.SUFFIX)) {
+            for (Path file : files) {
+                final long baseOffset = ChangeLogSegment.parseBaseOffset(file.getFileName().toString());
+                if (baseOffset >= 0) {
+                    segments.put(baseOffset, ChangeLogSegment.open(directory, baseOffset, segmentSize));
+                }
+            }
+        }
+        if (segments.isEmpty()) {
+            segments.put(0L, ChangeLogSegment.open(directory, 0, segmentSize));
+        }
+        active = segments.lastEntry().getValue();
+        loadCheckpoints();
+        logger.info("Content change log opened with {} segments, offsets {} to {}", segments.size(),
+                getFirstOffset(), getNextOffset());
+
+        running = true;
+        worker = new Thread(this::deliverLoop, "mysite-content-change-log");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    @Deactivate
+    protected void deactivate() throws InterruptedException {
+        running = false;
+        lock.lock();
+        try {
+            appended.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        worker.join(TimeUnit.SECONDS.toMillis(5));
+        synchronized (this) {
+            active = null;
+            for (ChangeLogSegment segment : segments.values()) {
+                try {
+                    segment.force();
+                    segment.close();
+                } catch (IOException e) {
+                    logger.warn("Could not close change log segment {}", segment.getBaseOffset(), e);
+                }
+            }
+            segments.clear();
+        }
+    }
+
+    @Reference(cardinality = ReferenceCardinality.MULTIPLE,
+               policy = ReferencePolicy.DYNAMIC,
+               policyOption = ReferencePolicyOption.GREEDY)
+    protected void bindConsumer(final ChangeLogConsumer consumer) {
+        consumers.add(consumer);
+        signal();
+    }
+
+    protected void unbindConsumer(final ChangeLogConsumer consumer) {
+        consumers.remove(consumer);
+    }
+
+    @Override
+    public void consume(final List<ResourceChange> changes) {
+        synchronized (this) {
+            if (active == null) {
+                return;
+            }
+            for (ResourceChange change : changes) {
+                append(change.getType(), change.getPath());
+            }
+            if (syncOnAppend) {
+                active.force();
+            }
+        }
+        signal();
+    }
+
+    /**
+     * Appends one record, starting a new segment if the active one is full.
+     *
+     * @return the offset of the record, -1 if the log is closed or the path is too long
+     */
+    public synchronized long append(final ChangeType type, final String path) {
+        final ChangeLogSegment segment = active;
+        if (segment == null) {
+            return -1;
+        }
+        final byte[] bytes = path.getBytes(StandardCharsets.UTF_8);
+        if (ChangeLogSegment.HEADER + bytes.length > segmentSize / 2) {
+            logger.warn("Not logging change of {}, the path is too long", path);
+            return -1;
+        }
+        final long offset = segment.getNextOffset();
+        final long timestamp = System.currentTimeMillis();
+        if (!segment.append(offset, timestamp, type, bytes)) {
+            rotate(offset).append(offset, timestamp, type, bytes);
+        }
+        appendedCount.incrementAndGet();
+        return offset;
+    }
+
+    private ChangeLogSegment rotate(final long baseOffset) {
+        active.force();
+        final ChangeLogSegment segment;
+        try {
+            segment = ChangeLogSegment.open(directory, baseOffset, segmentSize);
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not start change log segment " + baseOffset, e);
+        }
+        segments.put(baseOffset, segment);
+        active = segment;
+        while (segments.size() > maxSegments) {
+            final ChangeLogSegment oldest = segments.pollFirstEntry().getValue();
+            try {
+                oldest.delete();
+            } catch (IOException e) {
+                logger.warn("Could not delete change log segment {}", oldest.getBaseOffset(), e);
+            }
+        }
+        logger.debug("Started change log segment at offset {}", baseOffset);
+        return segment;
+    }
+
+    /**
+     * Reads records in offset order. Records older than the oldest kept
+     * segment are gone; reading starts at {@link #getFirstOffset()} then.
+     *
+     * @return up to {@code maxRecords} records from {@code fromOffset} on, empty at the end of the log
+     */
+    public List<ChangeRecord> read(final long fromOffset, final int maxRecords) {
+        final List<ChangeRecord> records = new ArrayList<>(Math.min(maxRecords, 1024));
+        final Long start = segments.floorKey(fromOffset);
+        final Map<Long, ChangeLogSegment> from = start != null ? segments.tailMap(start) : segments;
+        for (ChangeLogSegment segment : from.values()) {
+            if (records.size() >= maxRecords) {
+                break;
+            }
+            segment.read(fromOffset, maxRecords, records);
+        }
+        return records;
+    }
+
+    /**
+     * @return the offset a consumer continues at, -1 if it has not been seen yet
+     */
+    public long getCheckpoint(final String consumer) {
+        return checkpoints.getOrDefault(consumer, -1L);
+    }
+
+    @Override
+    public void setCheckpoint(final String consumer, final long offset) {
+        checkpoints.put(consumer, Math.max(0, offset));
+        failures.remove(consumer);
+        retryAt.remove(consumer);
+        saveCheckpoints();
+        signal();
+    }
+
+    private void deliverLoop() {
+        while (running) {
+            try {
+                if (!deliver()) {
+                    lock.lock();
+                    try {
+                        appended.await(pollIntervalMs, TimeUnit.MILLISECONDS);
+                    } finally {
+                        lock.unlock();
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException e) {
+                logger.error("Content change log worker failed", e);
+            }
+        }
+    }
+
+    /**
+     * Hands every consumer its next batch.
+     *
+     * @return whether any consumer got records
+     */
+    boolean deliver() {
+        boolean delivered = false;
+        final long now = System.currentTimeMillis();
+        for (ChangeLogConsumer consumer : consumers) {
+            final String name = consumer.getName();
+            if (retryAt.getOrDefault(name, 0L) > now) {
+                continue;
+            }
+            final Long checkpoint = checkpoints.get(name);
+            if (checkpoint == null) {
+                setCheckpoint(name, getNextOffset());
+                continue;
+            }
+            long from = checkpoint;
+            if (from > getNextOffset()) {
+                // the segments were removed behind our back, nothing before the new end can be delivered
+                logger.warn("Change log consumer {} is at {} past the end of the log, moving it to {}",
+                        name, from, getNextOffset());
+                setCheckpoint(name, getNextOffset());
+                continue;
+            }
+            if (from < getFirstOffset()) {
+                logger.warn("Change log consumer {} missed records {} to {}, they were deleted",
+                        name, from, getFirstOffset() - 1);
+                from = getFirstOffset();
+            }
+            final List<ChangeRecord> batch = read(from, batchSize);
+            if (batch.isEmpty()) {
+                continue;
+            }
+            try {
+                consumer.consume(batch);
+                checkpoints.put(name, batch.get(batch.size() - 1).getOffset() + 1);
+                failures.remove(name);
+                saveCheckpoints();
+                delivered = true;
+            } catch (Exception e) {
+                final int failed = failures.merge(name, 1, Integer::sum);
+                final long backoff = Math.min(MAX_BACKOFF_MS, pollIntervalMs << Math.min(failed - 1, 16));
+                retryAt.put(name, now + backoff);
+                logger.warn("Change log consumer {} failed on records from {}, retrying in {}ms",
+                        name, from, backoff, e);
+            }
+        }
+        return delivered;
+    }
+
+    private void signal() {
+        lock.lock();
+        try {
+            appended.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void loadCheckpoints() {
+        final Path file = directory.resolve(CHECKPOINTS_FILE);
+        if (!Files.isRegularFile(file)) {
+            return;
+        }
+        final Properties properties = new Properties();
+        try (InputStream in = Files.newInputStream(file)) {
+            properties.load(in);
+        } catch (IOException e) {
+            logger.warn("Could not read change log checkpoints from {}", file, e);
+            return;
+        }
+        for (String name : properties.stringPropertyNames()) {
+            try {
+                checkpoints.put(name, Long.parseLong(properties.getProperty(name)));
+            } catch (NumberFormatException e) {
+                logger.warn("Ignoring checkpoint {} of change log consumer {}", properties.getProperty(name), name);
+            }
+        }
+    }
+
+    private synchronized void saveCheckpoints() {
+        if (directory == null) {
+            return;
+        }
+        final Properties properties = new Properties();
+        checkpoints.forEach((name, offset) -> properties.setProperty(name, Long.toString(offset)));
+        final Path file = directory.resolve(CHECKPOINTS_FILE);
+        final Path temp = directory.resolve(CHECKPOINTS_FILE + ".tmp");
+        try {
+            try (OutputStream out = Files.newOutputStream(temp)) {
+                properties.store(out, null);
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            logger.warn("Could not save change log checkpoints to {}", file, e);
+        }
+    }
+
+    @Override
+    public long getFirstOffset() {
+        final Map.Entry<Long, ChangeLogSegment> first = segments.firstEntry();
+        return first != null ? first.getKey() : 0;
+    }
+
+    @Override
+    public long getNextOffset() {
+        final ChangeLogSegment segment = active;
+        return segment != null ? segment.getNextOffset() : 0;
+    }
+
+    @Override
+    public int getSegmentCount() {
+        return segments.size();
+    }
+
+    @Override
+    public long getDiskBytes() {
+        long bytes = 0;
+        for (ChangeLogSegment segment : segments.values()) {
+            bytes += segment.getSize();
+        }
+        return bytes;
+    }
+
+    @Override
+    public long getAppendedCount() {
+        return appendedCount.get();
+    }
+
+    @Override
+    public String[] getConsumers() {
+        final long next = getNextOffset();
+        final List<String> lines = new ArrayList<>();
+        for (Map.Entry<String, Long> checkpoint : checkpoints.entrySet()) {
+            lines.add(checkpoint.getKey() + ": checkpoint " + checkpoint.getValue()
+                    + ", lag " + Math.max(0, next - checkpoint.getValue())
+                    + ", failures " + failures.getOrDefault(checkpoint.getKey(), 0));
+        }
+        return lines.toArray(new String[0]);
+    }
+}
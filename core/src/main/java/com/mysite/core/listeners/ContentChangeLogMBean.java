@@ -0,0 +1,36 @@
+package com.mysite.core.listeners;
+
+/**
+ * JMX view of the {@link ContentChangeLog}.
+ */
+public interface ContentChangeLogMBean {
+
+    /**
+     * @return offset of the oldest record still kept
+     */
+    long getFirstOffset();
+
+    /**
+     * @return offset the next appended record gets
+     */
+    long getNextOffset();
+
+    int getSegmentCount();
+
+    /**
+     * @return bytes of disk taken by the segment files
+     */
+    long getDiskBytes();
+
+    long getAppendedCount();
+
+    /**
+     * @return one line per consumer with its checkpoint, lag and consecutive failures
+     */
+    String[] getConsumers();
+
+    /**
+     * Moves the checkpoint of a consumer, for example back to replay records.
+     */
+    void setCheckpoint(String consumer, long offset);
+}
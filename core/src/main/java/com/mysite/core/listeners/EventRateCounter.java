@@ -0,0 +1,93 @@
+package com.mysite.core.listeners;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts observation events per configured path prefix, in total and per
+ * fixed time window, so the event rate a listener subscribes to can be shown
+ * and kept small. Events outside all prefixes are counted under {@link #OTHER}.
+ */
+public final class EventRateCounter {
+
+    public static final String OTHER = "other";
+
+    private final String[] prefixes;
+    private final Map<String, Bucket> buckets = new LinkedHashMap<>();
+    private final long windowMillis;
+
+    public EventRateCounter(final String[] prefixes, final long windowMillis) {
+        // longest prefix first, so the most specific bucket wins
+        this.prefixes = prefixes.clone();
+        Arrays.sort(this.prefixes, Comparator.comparingInt(String::length).reversed());
+        this.windowMillis = Math.max(1, windowMillis);
+        final long now = System.currentTimeMillis();
+        for (String prefix : prefixes) {
+            buckets.put(prefix, new Bucket(now));
+        }
+        buckets.put(OTHER, new Bucket(now));
+    }
+
+    public void record(final String path) {
+        final Bucket bucket = buckets.get(prefixOf(path));
+        bucket.total.increment();
+        bucket.roll(System.currentTimeMillis(), windowMillis);
+        bucket.window.incrementAndGet();
+    }
+
+    /**
+     * @return total events per prefix since this counter was created
+     */
+    public Map<String, Long> getTotals() {
+        final Map<String, Long> totals = new LinkedHashMap<>();
+        buckets.forEach((prefix, bucket) -> totals.put(prefix, bucket.total.sum()));
+        return totals;
+    }
+
+    /**
+     * @return events per second per prefix, measured over the last complete window
+     */
+    public Map<String, Double> getRates() {
+        final long now = System.currentTimeMillis();
+        final Map<String, Double> rates = new LinkedHashMap<>();
+        buckets.forEach((prefix, bucket) -> {
+            bucket.roll(now, windowMillis);
+            rates.put(prefix, bucket.lastRate);
+        });
+        return rates;
+    }
+
+    private String prefixOf(final String path) {
+        for (String prefix : prefixes) {
+            if (path.equals(prefix) || path.startsWith(prefix.endsWith("/") ? prefix : prefix + "/")) {
+                return prefix;
+            }
+        }
+        return OTHER;
+    }
+
+    private static final class Bucket {
+        private final LongAdder total = new LongAdder();
+        private final AtomicLong window = new AtomicLong();
+        private final AtomicLong windowStart;
+        private volatile double lastRate;
+
+        Bucket(final long now) {
+            this.windowStart = new AtomicLong(now);
+        }
+
+        void roll(final long now, final long windowMillis) {
+            final long start = windowStart.get();
+            final long elapsed = now - start;
+            if (elapsed >= windowMillis && windowStart.compareAndSet(start, now)) {
+                // an idle gap longer than one window counts as a window with no events
+                final long count = window.getAndSet(0);
+                lastRate = elapsed >= 2 * windowMillis ? 0 : count * 1000.0 / elapsed;
+            }
+        }
+    }
+}
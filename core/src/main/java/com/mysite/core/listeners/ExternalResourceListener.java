@@ -0,0 +1,54 @@
+package com.mysite.core.listeners;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.apache.sling.api.resource.observation.ExternalResourceChangeListener;
+import org.apache.sling.api.resource.observation.ResourceChange;
+import org.apache.sling.api.resource.observation.ResourceChangeListener;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.ConfigurationPolicy;
+import org.osgi.service.component.annotations.Reference;
+import org.osgi.service.metatype.annotations.AttributeDefinition;
+import org.osgi.service.metatype.annotations.Designate;
+import org.osgi.service.metatype.annotations.ObjectClassDefinition;
+
+/**
+ * Hands changes made on other cluster instances to the
+ * {@link SimpleResourceListener}, which only receives local ones. Sling
+ * delivers external events only to listeners that implement
+ * {@link ExternalResourceChangeListener}, and such a listener observes the
+ * writes of the whole cluster, so this component requires a configuration
+ * and is only active where external changes are wanted.
+ */
+@Designate(ocd = ExternalResourceListener.Config.class)
+@Component(service = ResourceChangeListener.class, configurationPolicy = ConfigurationPolicy.REQUIRE)
+public class ExternalResourceListener implements ExternalResourceChangeListener {
+
+    @ObjectClassDefinition(name = "External resource listener",
+                           description = "Adds changes made on other cluster instances to the resource change pipeline")
+    public static @interface Config {
+
+        @AttributeDefinition(name = "Paths",
+                             description = "Paths to observe, prefix with glob: for patterns")
+        String[] resource_paths() default { "/content" };
+
+        @AttributeDefinition(name = "Change types",
+                             description = "ADDED, CHANGED, REMOVED, PROVIDER_ADDED or PROVIDER_REMOVED")
+        String[] resource_change_types() default { "ADDED", "CHANGED", "REMOVED" };
+    }
+
+    @Reference
+    private SimpleResourceListener listener;
+
+    @Override
+    public void onChange(final List<ResourceChange> changes) {
+        // local changes reach the SimpleResourceListener directly
+        final List<ResourceChange> external = changes.stream()
+                .filter(ResourceChange::isExternal)
+                .collect(Collectors.toList());
+        if (!external.isEmpty()) {
+            listener.process(external);
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package com.mysite.core.listeners;
+
+import java.util.List;
+
+import org.apache.sling.api.resource.observation.ResourceChange;
+
+/**
+ * Receives coalesced batches of resource changes from the
+ * {@link ResourceChangePipeline}. Register implementations as OSGi services;
+ * they are called on the pipeline's worker thread, never on the observation
+ * thread, so they may do repository work.
+ */
+public interface ResourceChangeConsumer {
+
+    /**
+     * @param changes one change per page path, in the order the paths were first seen
+     */
+    void consume(List<ResourceChange> changes);
+}
@@ -0,0 +1,364 @@
+package com.mysite.core.listeners;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javax.management.NotCompliantMBeanException;
+import javax.management.StandardMBean;
+
+import org.apache.sling.api.resource.observation.ResourceChange;
+import org.apache.sling.api.resource.observation.ResourceChange.ChangeType;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Deactivate;
+import org.osgi.service.component.annotations.Reference;
+import org.osgi.service.component.annotations.ReferenceCardinality;
+import org.osgi.service.component.annotations.ReferencePolicy;
+import org.osgi.service.component.annotations.ReferencePolicyOption;
+import org.osgi.service.metatype.annotations.AttributeDefinition;
+import org.osgi.service.metatype.annotations.Designate;
+import org.osgi.service.metatype.annotations.ObjectClassDefinition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Moves resource change handling off the observation thread. Changes are
+ * coalesced per page path into a bounded queue and delivered in batches to all
+ * registered {@link ResourceChangeConsumer} services, either when a batch is
+ * full or when the oldest pending change reaches the flush interval.
+ * When the queue is full, submitters wait up to the offer timeout for space
+ * and the change is dropped (and counted) after that.
+ */
+@Component(service = { ResourceChangePipeline.class, ResourceChangePipelineMBean.class },
+           immediate = true,
+           property = "jmx.objectname=com.mysite:type=ResourceChangePipeline")
+@Designate(ocd = ResourceChangePipeline.Config.class)
+public class ResourceChangePipeline extends StandardMBean implements ResourceChangePipelineMBean {
+
+    private static final String JCR_CONTENT = "/jcr:content";
+
+    @ObjectClassDefinition(name = "Resource Change Pipeline",
+                           description = "Batches and coalesces resource changes for registered consumers")
+    public @interface Config {
+
+        @AttributeDefinition(name = "Max pending paths",
+                             description = "Distinct page paths held before submitters are slowed down")
+        int maxPending() default 10000;
+
+        @AttributeDefinition(name = "Batch size", description = "Maximum changes delivered per batch")
+        int batchSize() default 500;
+
+        @AttributeDefinition(name = "Flush interval (ms)",
+                             description = "Maximum time a change waits before its batch is delivered")
+        long flushIntervalMs() default 1000;
+
+        @AttributeDefinition(name = "Offer timeout (ms)",
+                             description = "How long a submitter waits for space before changes are dropped")
+        long offerTimeoutMs() default 100;
+    }
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final List<ResourceChangeConsumer> consumers = new CopyOnWriteArrayList<>();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notFull = lock.newCondition();
+    private final Condition flushNeeded = lock.newCondition();
+    private final Map<String, Pending> pending = new LinkedHashMap<>();
+
+    private final AtomicLong received = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong delivered = new AtomicLong();
+    private final AtomicLong totalBatchLatency = new AtomicLong();
+    private final AtomicLong maxBatchLatency = new AtomicLong();
+    private volatile long lastBatchLatency;
+
+    private int maxPending;
+    private int batchSize;
+    private long flushIntervalMs;
+    private long offerTimeoutNanos;
+    private volatile boolean running;
+    private Thread worker;
+
+    public ResourceChangePipeline() throws NotCompliantMBeanException {
+        super(ResourceChangePipelineMBean.class);
+    }
+
+    @Activate
+    protected void activate(final Config config) {
+        maxPending = Math.max(1, config.maxPending());
+        // a full queue must always be enough to trigger a flush
+        batchSize = Math.min(maxPending, Math.max(1, config.batchSize()));
+        flushIntervalMs = Math.max(1, config.flushIntervalMs());
+        offerTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, config.offerTimeoutMs()));
+        running = true;
+        worker = new Thread(this::drainLoop, "mysite-resource-change-pipeline");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    @Deactivate
+    protected void deactivate() throws InterruptedException {
+        running = false;
+        lock.lock();
+        try {
+            flushNeeded.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        worker.join(TimeUnit.SECONDS.toMillis(5));
+        // deliver what is left so a restart does not lose the tail of a bulk operation
+        List<ResourceChange> batch;
+        while (!(batch = nextBatch()).isEmpty()) {
+            deliver(batch, System.currentTimeMillis());
+        }
+    }
+
+    @Reference(cardinality = ReferenceCardinality.MULTIPLE,
+               policy = ReferencePolicy.DYNAMIC,
+               policyOption = ReferencePolicyOption.GREEDY)
+    protected void bindConsumer(final ResourceChangeConsumer consumer) {
+        consumers.add(consumer);
+    }
+
+    protected void unbindConsumer(final ResourceChangeConsumer consumer) {
+        consumers.remove(consumer);
+    }
+
+    /**
+     * Queues changes for asynchronous delivery. Blocks at most the configured
+     * offer timeout for the whole list.
+     *
+     * @return {@code false} if at least one change was dropped
+     */
+    public boolean submit(final List<ResourceChange> changes) {
+        final long deadline = System.nanoTime() + offerTimeoutNanos;
+        boolean accepted = true;
+        lock.lock();
+        try {
+            for (ResourceChange change : changes) {
+                received.incrementAndGet();
+                if (!enqueue(change, deadline)) {
+                    dropped.incrementAndGet();
+                    accepted = false;
+                }
+            }
+            if (pending.size() >= batchSize) {
+                flushNeeded.signal();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            accepted = false;
+        } finally {
+            lock.unlock();
+        }
+        return accepted;
+    }
+
+    private boolean enqueue(final ResourceChange change, final long deadline) throws InterruptedException {
+        final String key = toPagePath(change.getPath());
+        // adding or removing something inside a page's content is a change of the page
+        final ChangeType type = key.equals(change.getPath()) ? change.getType() : ChangeType.CHANGED;
+        final Pending existing = pending.get(key);
+        if (existing != null) {
+            existing.merge(type, change.isExternal());
+            coalesced.incrementAndGet();
+            return true;
+        }
+        long remaining = deadline - System.nanoTime();
+        while (pending.size() >= maxPending) {
+            if (remaining <= 0) {
+                return false;
+            }
+            flushNeeded.signal();
+            remaining = notFull.awaitNanos(remaining);
+        }
+        pending.put(key, new Pending(type, change.isExternal()));
+        return true;
+    }
+
+    private void drainLoop() {
+        while (running) {
+            try {
+                final long oldest = awaitBatch();
+                final List<ResourceChange> batch = nextBatch();
+                if (!batch.isEmpty()) {
+                    deliver(batch, oldest);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException e) {
+                logger.error("Resource change pipeline worker failed", e);
+            }
+        }
+    }
+
+    /**
+     * Waits until a full batch is pending or the oldest change is due.
+     *
+     * @return the time the oldest pending change was first seen
+     */
+    private long awaitBatch() throws InterruptedException {
+        lock.lock();
+        try {
+            while (running) {
+                if (pending.isEmpty()) {
+                    flushNeeded.await();
+                    continue;
+                }
+                final long oldest = pending.values().iterator().next().firstSeen;
+                final long wait = oldest + flushIntervalMs - System.currentTimeMillis();
+                if (pending.size() >= batchSize || wait <= 0) {
+                    return oldest;
+                }
+                flushNeeded.await(wait, TimeUnit.MILLISECONDS);
+            }
+            return System.currentTimeMillis();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private List<ResourceChange> nextBatch() {
+        lock.lock();
+        try {
+            final List<ResourceChange> batch = new ArrayList<>(Math.min(batchSize, pending.size()));
+            final Iterator<Map.Entry<String, Pending>> entries = pending.entrySet().iterator();
+            while (entries.hasNext() && batch.size() < batchSize) {
+                final Map.Entry<String, Pending> entry = entries.next();
+                batch.add(entry.getValue().toChange(entry.getKey()));
+                entries.remove();
+            }
+            notFull.signalAll();
+            return batch;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void deliver(final List<ResourceChange> batch, final long oldest) {
+        for (ResourceChangeConsumer consumer : consumers) {
+            try {
+                consumer.consume(batch);
+            } catch (RuntimeException e) {
+                logger.error("Resource change consumer {} failed on a batch of {}", consumer, batch.size(), e);
+            }
+        }
+        final long latency = System.currentTimeMillis() - oldest;
+        batches.incrementAndGet();
+        delivered.addAndGet(batch.size());
+        totalBatchLatency.addAndGet(latency);
+        maxBatchLatency.accumulateAndGet(latency, Math::max);
+        lastBatchLatency = latency;
+        logger.debug("Delivered batch of {} changes to {} consumers after {}ms", batch.size(), consumers.size(), latency);
+    }
+
+    @Override
+    public int getQueueDepth() {
+        lock.lock();
+        try {
+            return pending.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public long getReceivedCount() {
+        return received.get();
+    }
+
+    @Override
+    public long getCoalescedCount() {
+        return coalesced.get();
+    }
+
+    @Override
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    @Override
+    public long getBatchCount() {
+        return batches.get();
+    }
+
+    @Override
+    public long getDeliveredCount() {
+        return delivered.get();
+    }
+
+    /**
+     * @return time from the first change of the last batch being seen to its delivery, in ms
+     */
+    @Override
+    public long getLastBatchLatency() {
+        return lastBatchLatency;
+    }
+
+    @Override
+    public long getMaxBatchLatency() {
+        return maxBatchLatency.get();
+    }
+
+    @Override
+    public long getAverageBatchLatency() {
+        final long count = batches.get();
+        return count == 0 ? 0 : totalBatchLatency.get() / count;
+    }
+
+    /**
+     * Maps a change inside a page's {@code jcr:content} to the page itself, so all
+     * edits to one page coalesce into a single event.
+     */
+    static String toPagePath(final String path) {
+        final int index = path.indexOf(JCR_CONTENT);
+        if (index > 0 && (path.length() == index + JCR_CONTENT.length()
+                || path.charAt(index + JCR_CONTENT.length()) == '/')) {
+            return path.substring(0, index);
+        }
+        return path;
+    }
+
+    /**
+     * Coalesced state of all changes seen for one path since the last flush.
+     */
+    private static final class Pending {
+        private final long firstSeen = System.currentTimeMillis();
+        private final boolean firstAdded;
+        private ChangeType type;
+        private boolean external;
+
+        Pending(final ChangeType type, final boolean external) {
+            this.firstAdded = type == ChangeType.ADDED;
+            this.type = type;
+            this.external = external;
+        }
+
+        void merge(final ChangeType next, final boolean nextExternal) {
+            if (next == ChangeType.REMOVED) {
+                type = ChangeType.REMOVED;
+            } else if (type == ChangeType.REMOVED) {
+                // removed and re-created within one window: consumers only need to re-read it
+                type = ChangeType.CHANGED;
+            } else {
+                type = firstAdded ? ChangeType.ADDED : ChangeType.CHANGED;
+            }
+            external &= nextExternal;
+        }
+
+        ResourceChange toChange(final String path) {
+            return new ResourceChange(type, path, external);
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package com.mysite.core.listeners;
+
+/**
+ * JMX view of the {@link ResourceChangePipeline}.
+ */
+public interface ResourceChangePipelineMBean {
+
+    /**
+     * @return page paths waiting for delivery
+     */
+    int getQueueDepth();
+
+    long getReceivedCount();
+
+    /**
+     * @return changes merged into a path that was already pending
+     */
+    long getCoalescedCount();
+
+    /**
+     * @return changes dropped because the queue stayed full for the offer timeout
+     */
+    long getDroppedCount();
+
+    long getBatchCount();
+
+    long getDeliveredCount();
+
+    /**
+     * @return time from the first change of the last batch being seen to its delivery, in ms
+     */
+    long getLastBatchLatency();
+
+    long getMaxBatchLatency();
+
+    long getAverageBatchLatency();
+}
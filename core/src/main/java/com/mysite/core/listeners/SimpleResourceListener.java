@@ -15,12 +15,25 @@
  */
 package com.mysite.core.listeners;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import javax.management.NotCompliantMBeanException;
+import javax.management.StandardMBean;
 
 import org.apache.sling.api.resource.observation.ResourceChange;
 import org.apache.sling.api.resource.observation.ResourceChangeListener;
+import org.osgi.service.component.annotations.Activate;
 import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Reference;
+import org.osgi.service.component.annotations.ReferenceCardinality;
+import org.osgi.service.component.annotations.ReferencePolicyOption;
 import org.osgi.service.component.propertytypes.ServiceDescription;
+import org.osgi.service.metatype.annotations.AttributeDefinition;
+import org.osgi.service.metatype.annotations.Designate;
+import org.osgi.service.metatype.annotations.ObjectClassDefinition;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -29,21 +42,104 @@ import org.slf4j.LoggerFactory;
  * can be listened for. 
  * Please note, that apart from EventHandler services,
  * the immediate flag should not be set on a service.
+ * Any real work is left to {@link ResourceChangeConsumer} services; the
+ * changes are handed to the {@link ResourceChangePipeline} so the
+ * observation thread is never held up by them.
+ * The subscription (paths and change types) is configured in
+ * /system/console/configMgr and should be kept as narrow as possible, the
+ * per-prefix event rates show what it costs. There is no property names
+ * hint: the consumers read different properties and the dispatcher
+ * invalidation and change log need every change of a page.
+ * Only local changes are received; changes made on other cluster instances
+ * are added by the {@link ExternalResourceListener} when it is configured.
  */
-@Component(service = ResourceChangeListener.class,
-           immediate = true
+@Designate(ocd=SimpleResourceListener.Config.class)
+@Component(service = { ResourceChangeListener.class, SimpleResourceListener.class, SimpleResourceListenerMBean.class },
+           immediate = true,
+           property = "jmx.objectname=com.mysite:type=SimpleResourceListener"
 )
 @ServiceDescription("Demo to listen on changes in the resource tree")
-public class SimpleResourceListener implements ResourceChangeListener {
+public class SimpleResourceListener extends StandardMBean implements ResourceChangeListener, SimpleResourceListenerMBean {
+
+    @ObjectClassDefinition(name="Simple resource listener",
+                           description = "Subscription of the project's resource change listener")
+    public static @interface Config {
+
+        @AttributeDefinition(name = "Paths",
+                             description = "Paths to observe, prefix with glob: for patterns")
+        String[] resource_paths() default { "/content" };
+
+        @AttributeDefinition(name = "Change types",
+                             description = "ADDED, CHANGED, REMOVED, PROVIDER_ADDED or PROVIDER_REMOVED")
+        String[] resource_change_types() default { "ADDED", "CHANGED", "REMOVED" };
+
+        @AttributeDefinition(name = "Rate prefixes",
+                             description = "Path prefixes for which event rates are counted")
+        String[] ratePrefixes() default { "/content/dam", "/content" };
+
+        @AttributeDefinition(name = "Rate window (s)",
+                             description = "Window over which event rates are computed")
+        long rateWindowSeconds() default 60;
+    }
 
     private final Logger logger = LoggerFactory.getLogger(getClass());
 
+    @Reference(cardinality = ReferenceCardinality.OPTIONAL,
+               policyOption = ReferencePolicyOption.GREEDY)
+    private volatile ResourceChangePipeline pipeline;
+
+    private EventRateCounter rates = new EventRateCounter(new String[] { "/content" }, 60000);
+
+    public SimpleResourceListener() throws NotCompliantMBeanException {
+        super(SimpleResourceListenerMBean.class);
+    }
+
+    @Activate
+    protected void activate(final Config config) {
+        rates = new EventRateCounter(config.ratePrefixes(), config.rateWindowSeconds() * 1000);
+    }
+
     @Override
     public void onChange(List<ResourceChange> changes) {
+        process(changes);
+    }
+
+    /**
+     * Counts, logs and queues changes, local ones from {@link #onChange(List)}
+     * and external ones from the {@link ExternalResourceListener}.
+     */
+    void process(final List<ResourceChange> changes) {
         changes.forEach(change -> {
+            rates.record(change.getPath());
             logger.debug("Resource event: {} at: {} isExternal", change.getType(), change.getPath(), change.isExternal());
         });
-        
+
+        final ResourceChangePipeline target = pipeline;
+        if (target != null && !changes.isEmpty()) {
+            target.submit(changes);
+        }
+    }
+
+    /**
+     * @return events per second per path prefix over the last complete window
+     */
+    public Map<String, Double> getEventRates() {
+        return rates.getRates();
+    }
+
+    /**
+     * @return events per path prefix since activation
+     */
+    public Map<String, Long> getEventTotals() {
+        return rates.getTotals();
     }
-}
 
+    @Override
+    public String[] getSummary() {
+        final Map<String, Double> eventRates = rates.getRates();
+        final List<String> lines = new ArrayList<>();
+        rates.getTotals().forEach((prefix, total) -> lines.add(String.format(Locale.ROOT,
+                "%s: %.2f/s, %d total", prefix, eventRates.getOrDefault(prefix, 0.0), total)));
+        return lines.toArray(new String[0]);
+    }
+}
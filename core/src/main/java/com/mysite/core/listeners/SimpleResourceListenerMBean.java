@@ -0,0 +1,13 @@
+package com.mysite.core.listeners;
+
+/**
+ * JMX view of the event rates seen by the {@link SimpleResourceListener}.
+ */
+public interface SimpleResourceListenerMBean {
+
+    /**
+     * @return one line per path prefix with events per second over the last
+     *         complete window and the total since activation
+     */
+    String[] getSummary();
+}
@@ -0,0 +1,114 @@
+package com.mysite.core.models;
+
+/**
+ * Cuts a short HTML fragment out of a page description around the first
+ * occurrence of the search term, with every occurrence inside the fragment
+ * wrapped in {@code <strong>}, the markup of the repository's own excerpts.
+ * The text is scanned in place and written into one builder of about the
+ * fragment's size, so a long description costs no copies of itself.
+ */
+final class ExcerptHighlighter {
+
+    static final String HIGHLIGHT_START = "<strong>";
+    static final String HIGHLIGHT_END = "</strong>";
+
+    private static final String ELLIPSIS = "&hellip;";
+
+    private ExcerptHighlighter() {
+        // static methods only
+    }
+
+    /**
+     * @param maxLength the most characters of {@code text} the fragment shows
+     * @return the escaped, highlighted fragment, empty if there is no text
+     */
+    static String highlight(final String text, final String term, final int maxLength) {
+        if (text == null || text.isEmpty()) {
+            return "";
+        }
+        final int length = text.length();
+        final int termLength = term != null ? term.length() : 0;
+        final int match = termLength > 0 ? indexOf(text, term, 0) : -1;
+
+        int start = 0;
+        if (match > 0 && match + termLength > maxLength) {
+            // centre the match, starting at a word if one begins close enough
+            start = Math.max(0, match - Math.max(0, maxLength - termLength) / 2);
+            final int space = text.indexOf(' ', start);
+            if (space >= 0 && space < match) {
+                start = space + 1;
+            }
+        }
+        int end = Math.min(length, start + maxLength);
+        if (end < length) {
+            final int space = text.lastIndexOf(' ', end);
+            if (space > start && (match < 0 || space >= match + termLength)) {
+                end = space;
+            }
+        }
+
+        final StringBuilder out = new StringBuilder(end - start + 32);
+        if (start > 0) {
+            out.append(ELLIPSIS);
+        }
+        int position = start;
+        int next = match >= start ? match : -1;
+        while (position < end) {
+            if (next == position && position + termLength <= end) {
+                out.append(HIGHLIGHT_START);
+                escape(text, position, position + termLength, out);
+                out.append(HIGHLIGHT_END);
+                position += termLength;
+                next = indexOf(text, term, position);
+            } else {
+                final int until = next >= 0 && next < end ? next : end;
+                escape(text, position, until, out);
+                position = until;
+                if (position == next && position + termLength > end) {
+                    // a match cut off by the end of the fragment is not highlighted
+                    escape(text, position, end, out);
+                    position = end;
+                }
+            }
+        }
+        if (end < length) {
+            out.append(ELLIPSIS);
+        }
+        return out.toString();
+    }
+
+    /**
+     * Case-insensitive {@link String#indexOf(String, int)}.
+     */
+    private static int indexOf(final String text, final String term, final int from) {
+        final int last = text.length() - term.length();
+        for (int i = from; i <= last; i++) {
+            if (text.regionMatches(true, i, term, 0, term.length())) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static void escape(final String text, final int from, final int to, final StringBuilder out) {
+        for (int i = from; i < to; i++) {
+            final char c = text.charAt(i);
+            switch (c) {
+                case '<':
+                    out.append("&lt;");
+                    break;
+                case '>':
+                    out.append("&gt;");
+                    break;
+                case '&':
+                    out.append("&amp;");
+                    break;
+                case '"':
+                    out.append("&quot;");
+                    break;
+                default:
+                    out.append(c);
+            }
+        }
+    }
+}
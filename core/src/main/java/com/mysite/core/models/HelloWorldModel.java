@@ -29,11 +29,8 @@ import org.apache.sling.models.annotations.injectorspecific.SlingObject;
 import org.apache.sling.models.annotations.injectorspecific.ValueMapValue;
 
 import com.day.cq.wcm.api.Page;
-import com.day.cq.wcm.api.PageManager;
 
-import java.util.Optional;
-
-@Model(adaptables = Resource.class)
+@Model(adaptables = Resource.class, cache = true)
 public class HelloWorldModel {
 
     @ValueMapValue(name=PROPERTY_RESOURCE_TYPE, injectionStrategy=InjectionStrategy.OPTIONAL)
@@ -49,10 +46,9 @@ public class HelloWorldModel {
 
     @PostConstruct
     protected void init() {
-        PageManager pageManager = resourceResolver.adaptTo(PageManager.class);
-        String currentPagePath = Optional.ofNullable(pageManager)
-                .map(pm -> pm.getContainingPage(currentResource))
-                .map(Page::getPath).orElse("");
+        // shared with the other components of the render, see RequestMemo
+        Page currentPage = RequestMemo.of(resourceResolver).getContainingPage(currentResource);
+        String currentPagePath = currentPage != null ? currentPage.getPath() : "";
 
         message = "Hello World!\n"
             + "Resource type is: " + resourceType + "\n"
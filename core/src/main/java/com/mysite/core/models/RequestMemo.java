@@ -0,0 +1,119 @@
+package com.mysite.core.models;
+
+import com.day.cq.commons.jcr.JcrConstants;
+import com.day.cq.wcm.api.Page;
+import com.day.cq.wcm.api.PageManager;
+import com.mysite.core.filters.RepositoryAccounting;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceResolver;
+
+import javax.jcr.Session;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Per-request memo of the lookups every model repeats: the {@link PageManager},
+ * the {@link Session} and the containing page of a component. It is kept in
+ * the resource resolver's property map, which lives exactly as long as the
+ * request's resolver, so all models of one render share it. All components
+ * inside the same {@code jcr:content} share one containing page lookup. The
+ * most recently used {@link #MAX_PAGES} pages are kept, so a long-lived
+ * resolver, such as a warm-up service's, does not collect every page it sees.
+ * A resolver whose property map has {@link #DISABLED} set to {@code true}
+ * gets a fresh memo on every call, which shares nothing between models.
+ * Like the resolver itself, a memo must only be used by one thread.
+ */
+final class RequestMemo {
+
+    private static final String KEY = RequestMemo.class.getName();
+
+    static final String DISABLED = KEY + ".disabled";
+
+    static final int MAX_PAGES = 64;
+
+    private static final String JCR_CONTENT_SEGMENT = "/" + JcrConstants.JCR_CONTENT;
+
+    private final ResourceResolver resolver;
+    private final Map<String, Optional<Page>> containingPages =
+            new LinkedHashMap<String, Optional<Page>>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Optional<Page>> eldest) {
+                    return size() > MAX_PAGES;
+                }
+            };
+    private PageManager pageManager;
+    private boolean pageManagerResolved;
+    private Session session;
+    private boolean sessionResolved;
+    private int pageLookups;
+
+    private RequestMemo(ResourceResolver resolver) {
+        this.resolver = resolver;
+    }
+
+    /**
+     * @return the memo of the resolver, created on first use
+     */
+    static RequestMemo of(ResourceResolver resolver) {
+        Map<String, Object> properties = resolver.getPropertyMap();
+        if (properties == null || Boolean.TRUE.equals(properties.get(DISABLED))) {
+            return new RequestMemo(resolver);
+        }
+        Object memo = properties.get(KEY);
+        if (memo instanceof RequestMemo) {
+            return (RequestMemo) memo;
+        }
+        RequestMemo created = new RequestMemo(resolver);
+        properties.put(KEY, created);
+        return created;
+    }
+
+    PageManager getPageManager() {
+        if (!pageManagerResolved) {
+            pageManager = resolver.adaptTo(PageManager.class);
+            pageManagerResolved = true;
+        }
+        return pageManager;
+    }
+
+    Session getSession() {
+        if (!sessionResolved) {
+            session = resolver.adaptTo(Session.class);
+            sessionResolved = true;
+        }
+        return session;
+    }
+
+    /**
+     * @return the page containing the resource, {@code null} if there is none
+     */
+    Page getContainingPage(Resource resource) {
+        String key = pageKey(resource.getPath());
+        Optional<Page> page = containingPages.get(key);
+        if (page == null) {
+            PageManager manager = getPageManager();
+            page = Optional.ofNullable(manager != null ? manager.getContainingPage(key) : null);
+            pageLookups++;
+            RepositoryAccounting.recordReads(1);
+            containingPages.put(key, page);
+        }
+        return page.orElse(null);
+    }
+
+    /**
+     * Resources below a {@code jcr:content} node have the same containing page
+     * as the node's parent, since pages cannot be nested in page content.
+     */
+    static String pageKey(String path) {
+        int content = path.indexOf(JCR_CONTENT_SEGMENT + "/");
+        if (content < 0 && path.endsWith(JCR_CONTENT_SEGMENT)) {
+            content = path.length() - JCR_CONTENT_SEGMENT.length();
+        }
+        return content > 0 ? path.substring(0, content) : path;
+    }
+
+    int getPageLookups() {
+        return pageLookups;
+    }
+}
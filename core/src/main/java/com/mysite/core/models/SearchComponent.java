@@ -1,9 +1,15 @@
 package com.mysite.core.models;
 
+import com.mysite.core.filters.RepositoryAccounting;
+import com.mysite.core.services.PageMetadataCache;
+import com.mysite.core.services.PageMetadataCache.PageMetadata;
+import com.mysite.core.services.RequestCoalescer;
 import org.apache.sling.api.resource.Resource;
 import org.apache.sling.api.resource.ResourceResolver;
 import org.apache.sling.models.annotations.DefaultInjectionStrategy;
+import org.apache.sling.models.annotations.Default;
 import org.apache.sling.models.annotations.Model;
+import org.apache.sling.models.annotations.injectorspecific.OSGiService;
 import org.apache.sling.models.annotations.injectorspecific.SlingObject;
 import org.apache.sling.models.annotations.injectorspecific.ValueMapValue;
 
@@ -11,6 +17,7 @@ import javax.annotation.PostConstruct;
 import javax.jcr.Node;
 import javax.jcr.RepositoryException;
 import javax.jcr.Session;
+import javax.jcr.Value;
 import javax.jcr.query.Query;
 import javax.jcr.query.QueryManager;
 import javax.jcr.query.QueryResult;
@@ -18,11 +25,17 @@ import javax.jcr.query.Row;
 import javax.jcr.query.RowIterator;
 import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.Collections;
 import java.util.List;
 
-@Model(adaptables = Resource.class, defaultInjectionStrategy = DefaultInjectionStrategy.OPTIONAL)
+@Model(adaptables = Resource.class, defaultInjectionStrategy = DefaultInjectionStrategy.OPTIONAL, cache = true)
 public class SearchComponent {
 
+    public static final int DEFAULT_EXCERPT_LENGTH = 160;
+
+    private static final int MIN_EXCERPT_LENGTH = 20;
+    private static final String REP_EXCERPT = "rep:excerpt";
+
     @SlingObject
     public Resource resource;
 
@@ -38,6 +51,16 @@ public class SearchComponent {
     @ValueMapValue
     public String searchTerm;
 
+    @ValueMapValue
+    @Default(intValues = DEFAULT_EXCERPT_LENGTH)
+    public int excerptLength;
+
+    @OSGiService
+    private RequestCoalescer requestCoalescer;
+
+    @OSGiService
+    private PageMetadataCache pageMetadataCache;
+
     private List<SearchResult> searchResults;
     private boolean hasResults;
     private String noResultsMessage = "No pages found matching your search term.";
@@ -53,60 +76,135 @@ public class SearchComponent {
         searchResults = new ArrayList<>();
         
         try {
-            Session session = resourceResolver.adaptTo(Session.class);
+            Session session = RequestMemo.of(resourceResolver).getSession();
             if (session == null) {
                 return;
             }
 
-            QueryManager queryManager = session.getWorkspace().getQueryManager();
-            
-            // Search in title and description (jcr:title and jcr:description)
-            String query = "SELECT * FROM [cq:Page] AS page WHERE " +
-                          "ISDESCENDANTNODE(page, '/content') AND " +
-                          "(page.[jcr:title] LIKE '%" + searchTerm + "%' OR " +
-                          "page.[jcr:description] LIKE '%" + searchTerm + "%')";
-            
-            Query jcrQuery = queryManager.createQuery(query, Query.JCR_SQL2);
-            QueryResult result = jcrQuery.execute();
-            RowIterator rows = result.getRows();
+            // Identical searches running at the same time share one query
+            RequestCoalescer coalescer = requestCoalescer;
+            searchResults = coalescer != null
+                    ? coalescer.execute(RequestCoalescer.key("search", resourceResolver, searchTerm,
+                            String.valueOf(getExcerptLength())),
+                            () -> runSearch(session))
+                    : runSearch(session);
+            hasResults = !searchResults.isEmpty();
             
+        } catch (Exception e) {
+            // Log error but don't fail the component
+            hasResults = false;
+        }
+    }
+
+    private List<SearchResult> runSearch(Session session) throws RepositoryException {
+        List<SearchResult> results = new ArrayList<>();
+        String term = searchTerm.trim();
+        int maxExcerptLength = getExcerptLength();
+
+        QueryManager queryManager = session.getWorkspace().getQueryManager();
+        String query = buildQuery(term);
+        
+        long start = System.nanoTime();
+        Query jcrQuery = queryManager.createQuery(query, Query.JCR_SQL2);
+        QueryResult result = jcrQuery.execute();
+        RowIterator rows = result.getRows();
+        long rowsRead = 0;
+        
+        try {
             while (rows.hasNext()) {
                 Row row = rows.nextRow();
                 Node pageNode = row.getNode();
+                rowsRead++;
                 
-                SearchResult resultItem = createSearchResult(pageNode);
+                SearchResult resultItem = getSearchResult(pageNode);
                 if (resultItem != null) {
-                    searchResults.add(resultItem);
+                    String excerpt = getIndexExcerpt(row);
+                    resultItem.excerpt = excerpt != null ? excerpt
+                            : ExcerptHighlighter.highlight(resultItem.getDescription(), term, maxExcerptLength);
+                    results.add(resultItem);
                 }
             }
-            
-            hasResults = !searchResults.isEmpty();
-            
-        } catch (RepositoryException e) {
-            // Log error but don't fail the component
-            hasResults = false;
+        } finally {
+            RepositoryAccounting.recordQuery(query, System.nanoTime() - start, rowsRead);
         }
+        
+        // The list may be shared with coalesced requests, so it is read-only
+        return Collections.unmodifiableList(results);
+    }
+
+    /**
+     * @return the JCR-SQL2 statement of a search for the given term, also used to warm up the search
+     */
+    public static String buildQuery(String term) {
+        // Search in title and description where the results read them: on the page content,
+        // or on the page node for older pages
+        return "SELECT * FROM [cq:Page] AS page WHERE " +
+                "ISDESCENDANTNODE(page, '/content') AND " +
+                "(page.[jcr:content/jcr:title] LIKE '%" + term + "%' OR " +
+                "page.[jcr:content/jcr:description] LIKE '%" + term + "%' OR " +
+                "page.[jcr:title] LIKE '%" + term + "%' OR " +
+                "page.[jcr:description] LIKE '%" + term + "%')";
+    }
+
+    /**
+     * @return the highlighted excerpt of the fulltext index, {@code null} if it has none for the row
+     */
+    private static String getIndexExcerpt(Row row) {
+        try {
+            Value value = row.getValue(REP_EXCERPT);
+            String excerpt = value != null ? value.getString() : null;
+            // Without a fulltext condition the index returns the start of the text, nothing highlighted
+            return excerpt != null && excerpt.contains(ExcerptHighlighter.HIGHLIGHT_START) ? excerpt : null;
+        } catch (RepositoryException | UnsupportedOperationException e) {
+            // Excerpts are an Oak extension
+            return null;
+        }
+    }
+
+    /**
+     * Builds the result from the page metadata cache, reading the page only on a miss.
+     */
+    private SearchResult getSearchResult(Node pageNode) throws RepositoryException {
+        PageMetadataCache cache = pageMetadataCache;
+        if (cache == null) {
+            return createSearchResult(pageNode);
+        }
+        String path = pageNode.getPath();
+        PageMetadata metadata = cache.get(path);
+        if (metadata != null) {
+            return new SearchResult(orEmpty(metadata.getTitle()), orEmpty(metadata.getDescription()),
+                    metadata.getFileReference(), path, metadata.getLastModifiedCalendar());
+        }
+        SearchResult result = createSearchResult(pageNode);
+        if (result != null) {
+            cache.put(path, new PageMetadata(result.getTitle(), result.getDescription(),
+                    result.getLastModified() != null ? result.getLastModified().getTimeInMillis() : 0L,
+                    result.getImagePath()));
+        }
+        return result;
     }
 
     private SearchResult createSearchResult(Node pageNode) throws RepositoryException {
         try {
             String path = pageNode.getPath();
-            String title = pageNode.hasProperty("jcr:title") ? 
-                    pageNode.getProperty("jcr:title").getString() : "";
-            String description = pageNode.hasProperty("jcr:description") ? 
-                    pageNode.getProperty("jcr:description").getString() : "";
+            Node contentNode = pageNode.hasNode("jcr:content") ? pageNode.getNode("jcr:content") : null;
+
+            // Title and description live on the page content, older pages may have them on the page node
+            String title = getString(contentNode, pageNode, "jcr:title");
+            String description = getString(contentNode, pageNode, "jcr:description");
             
             // Get image path if available
             String imagePath = null;
-            if (pageNode.hasNode("jcr:content")) {
-                Node contentNode = pageNode.getNode("jcr:content");
-                if (contentNode.hasProperty("fileReference")) {
-                    imagePath = contentNode.getProperty("fileReference").getString();
-                }
+            if (contentNode != null && contentNode.hasProperty("fileReference")) {
+                imagePath = contentNode.getProperty("fileReference").getString();
             }
             
-            Calendar lastModified = pageNode.hasProperty("jcr:lastModified") ? 
-                    pageNode.getProperty("jcr:lastModified").getDate() : null;
+            Calendar lastModified = null;
+            if (contentNode != null && contentNode.hasProperty("cq:lastModified")) {
+                lastModified = contentNode.getProperty("cq:lastModified").getDate();
+            } else if (pageNode.hasProperty("jcr:lastModified")) {
+                lastModified = pageNode.getProperty("jcr:lastModified").getDate();
+            }
             
             return new SearchResult(title, description, imagePath, path, lastModified);
             
@@ -115,6 +213,17 @@ public class SearchComponent {
         }
     }
 
+    private static String orEmpty(String value) {
+        return value != null ? value : "";
+    }
+
+    private static String getString(Node contentNode, Node pageNode, String name) throws RepositoryException {
+        if (contentNode != null && contentNode.hasProperty(name)) {
+            return contentNode.getProperty(name).getString();
+        }
+        return pageNode.hasProperty(name) ? pageNode.getProperty(name).getString() : "";
+    }
+
     // Getters
     public String getInputLabel() {
         return inputLabel != null ? inputLabel : "Search Pages";
@@ -128,6 +237,10 @@ public class SearchComponent {
         return searchTerm;
     }
 
+    public int getExcerptLength() {
+        return Math.max(MIN_EXCERPT_LENGTH, excerptLength);
+    }
+
     public List<SearchResult> getSearchResults() {
         return searchResults;
     }
@@ -146,6 +259,7 @@ public class SearchComponent {
         private String imagePath;
         private String pagePath;
         private Calendar lastModified;
+        private String excerpt;
 
         public SearchResult(String title, String description, String imagePath, String pagePath, Calendar lastModified) {
             this.title = title;
@@ -161,5 +275,11 @@ public class SearchComponent {
         public String getImagePath() { return imagePath; }
         public String getPagePath() { return pagePath; }
         public Calendar getLastModified() { return lastModified; }
+
+        /**
+         * @return an HTML fragment of the description around the search term, with the
+         *         term in {@code strong}, to be rendered in the html context
+         */
+        public String getExcerpt() { return excerpt != null ? excerpt : ""; }
     }
 } 
\ No newline at end of file
@@ -0,0 +1,250 @@
+package com.mysite.core.schedulers;
+
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs one {@link ManagedJob} for the {@link ManagedJobScheduler}: skips
+ * triggers while a run is busy (including a timed out attempt that ignored
+ * the interrupt), retries failed attempts with exponential backoff, enforces
+ * the per-attempt timeout and keeps the counters and the recent history.
+ * A trigger is run on the scheduler's thread; each attempt runs on a worker
+ * thread so it can be timed out.
+ */
+final class JobRunner implements Runnable {
+
+    static final int HISTORY_SIZE = 20;
+
+    private static final long MAX_BACKOFF_MILLIS = TimeUnit.MINUTES.toMillis(10);
+
+    enum Outcome { SUCCEEDED, FAILED, TIMED_OUT, CANCELLED }
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final ManagedJob job;
+    private final JobSettings settings;
+    private final ExecutorService workers;
+
+    private final AtomicBoolean running = new AtomicBoolean();
+    private final AtomicInteger attemptsInFlight = new AtomicInteger();
+    private final Deque<Execution> history = new ArrayDeque<>(HISTORY_SIZE);
+
+    private final LongAdder runs = new LongAdder();
+    private final LongAdder succeeded = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder timedOut = new LongAdder();
+    private final LongAdder retried = new LongAdder();
+    private final LongAdder skipped = new LongAdder();
+    private final AtomicLong totalMillis = new AtomicLong();
+    private final AtomicLong maxMillis = new AtomicLong();
+    private volatile long lastEnd;
+
+    JobRunner(ManagedJob job, JobSettings settings, ExecutorService workers) {
+        this.job = job;
+        this.settings = settings;
+        this.workers = workers;
+    }
+
+    @Override
+    public void run() {
+        if (!settings.isCron() && lastEnd != 0
+                && System.currentTimeMillis() - lastEnd < TimeUnit.SECONDS.toMillis(settings.getDelaySeconds())) {
+            // fixed delay jobs are triggered more often than they run, this trigger is not due yet
+            return;
+        }
+        if (attemptsInFlight.get() > 0 || !running.compareAndSet(false, true)) {
+            skipped.increment();
+            logger.info("Skipping job {}, the previous run is still busy", settings.getName());
+            return;
+        }
+        final long start = System.currentTimeMillis();
+        int attempts = 0;
+        Outcome outcome = Outcome.FAILED;
+        Throwable error = null;
+        try {
+            while (true) {
+                attempts++;
+                try {
+                    runAttempt();
+                    outcome = Outcome.SUCCEEDED;
+                    break;
+                } catch (TimeoutException e) {
+                    // the attempt may still be running, a retry would overlap with it
+                    outcome = Outcome.TIMED_OUT;
+                    error = e;
+                    break;
+                } catch (InterruptedException | CancellationException e) {
+                    Thread.currentThread().interrupt();
+                    outcome = Outcome.CANCELLED;
+                    error = e;
+                    break;
+                } catch (ExecutionException e) {
+                    error = e.getCause();
+                    if (attempts > settings.getRetries()) {
+                        break;
+                    }
+                    retried.increment();
+                    final long backoff = backoffMillis(attempts);
+                    logger.warn("Job {} failed on attempt {}, retrying in {}ms: {}",
+                            settings.getName(), attempts, backoff, String.valueOf(error));
+                    if (!sleep(backoff)) {
+                        outcome = Outcome.CANCELLED;
+                        break;
+                    }
+                }
+            }
+        } finally {
+            final long end = System.currentTimeMillis();
+            record(new Execution(start, end - start, outcome, attempts, error));
+            lastEnd = end;
+            running.set(false);
+        }
+    }
+
+    private void runAttempt() throws InterruptedException, ExecutionException, TimeoutException {
+        final Future<?> attempt;
+        try {
+            attempt = workers.submit(() -> {
+                attemptsInFlight.incrementAndGet();
+                try {
+                    job.execute();
+                    return null;
+                } finally {
+                    attemptsInFlight.decrementAndGet();
+                }
+            });
+        } catch (RuntimeException e) {
+            throw new ExecutionException(e);
+        }
+        try {
+            if (settings.getTimeoutMillis() > 0) {
+                attempt.get(settings.getTimeoutMillis(), TimeUnit.MILLISECONDS);
+            } else {
+                attempt.get();
+            }
+        } catch (TimeoutException | InterruptedException e) {
+            attempt.cancel(true);
+            throw e;
+        }
+    }
+
+    long backoffMillis(int attempt) {
+        final long initial = Math.min(MAX_BACKOFF_MILLIS, settings.getInitialBackoffMillis());
+        final int shift = Math.min(attempt - 1, 30);
+        return Math.min(MAX_BACKOFF_MILLIS, initial << shift);
+    }
+
+    private static boolean sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private void record(Execution execution) {
+        runs.increment();
+        switch (execution.outcome) {
+            case SUCCEEDED:
+                succeeded.increment();
+                break;
+            case TIMED_OUT:
+                timedOut.increment();
+                break;
+            default:
+                failed.increment();
+        }
+        totalMillis.addAndGet(execution.durationMillis);
+        maxMillis.accumulateAndGet(execution.durationMillis, Math::max);
+        synchronized (history) {
+            if (history.size() == HISTORY_SIZE) {
+                history.removeLast();
+            }
+            history.addFirst(execution);
+        }
+        if (execution.outcome == Outcome.SUCCEEDED) {
+            logger.debug("Job {} finished: {}", settings.getName(), execution);
+        } else {
+            logger.error("Job {} did not succeed: {}", settings.getName(), execution, execution.error);
+        }
+    }
+
+    JobSettings getSettings() {
+        return settings;
+    }
+
+    boolean isRunning() {
+        return running.get() || attemptsInFlight.get() > 0;
+    }
+
+    long getRuns() { return runs.sum(); }
+    long getSucceeded() { return succeeded.sum(); }
+    long getFailed() { return failed.sum(); }
+    long getTimedOut() { return timedOut.sum(); }
+    long getRetried() { return retried.sum(); }
+    long getSkipped() { return skipped.sum(); }
+    long getMaxMillis() { return maxMillis.get(); }
+
+    long getAverageMillis() {
+        final long count = runs.sum();
+        return count == 0 ? 0 : totalMillis.get() / count;
+    }
+
+    /**
+     * @return the recent executions, newest first
+     */
+    Execution[] getHistory() {
+        synchronized (history) {
+            return history.toArray(new Execution[0]);
+        }
+    }
+
+    String summary() {
+        return String.format("%s [%s] running=%s runs=%d succeeded=%d failed=%d timedOut=%d retried=%d "
+                        + "skipped=%d avg=%dms max=%dms",
+                settings.getName(), settings, isRunning(), getRuns(), getSucceeded(), getFailed(), getTimedOut(),
+                getRetried(), getSkipped(), getAverageMillis(), getMaxMillis());
+    }
+
+    /**
+     * One finished run of the job, over all its attempts.
+     */
+    static final class Execution {
+        final long start;
+        final long durationMillis;
+        final Outcome outcome;
+        final int attempts;
+        final Throwable error;
+
+        Execution(long start, long durationMillis, Outcome outcome, int attempts, Throwable error) {
+            this.start = start;
+            this.durationMillis = durationMillis;
+            this.outcome = outcome;
+            this.attempts = attempts;
+            this.error = error;
+        }
+
+        @Override
+        public String toString() {
+            return Instant.ofEpochMilli(start) + " " + outcome + " in " + durationMillis + "ms after "
+                    + attempts + (attempts == 1 ? " attempt" : " attempts")
+                    + (error != null ? ": " + error : "");
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package com.mysite.core.schedulers;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Scheduling settings of a {@link ManagedJob}: a cron expression or a fixed
+ * delay between runs, plus retries, timeout and whether the job only runs on
+ * the cluster leader. Instances are immutable, the {@code with} methods
+ * return changed copies.
+ */
+public final class JobSettings {
+
+    private final String name;
+    private final String cronExpression;
+    private final long delaySeconds;
+    private final int retries;
+    private final long initialBackoffMillis;
+    private final long timeoutMillis;
+    private final boolean leaderOnly;
+
+    private JobSettings(String name, String cronExpression, long delaySeconds, int retries,
+                        long initialBackoffMillis, long timeoutMillis, boolean leaderOnly) {
+        if (name == null || name.isEmpty()) {
+            throw new IllegalArgumentException("job name is required");
+        }
+        this.name = name;
+        this.cronExpression = cronExpression;
+        this.delaySeconds = delaySeconds;
+        this.retries = Math.max(0, retries);
+        this.initialBackoffMillis = Math.max(0, initialBackoffMillis);
+        this.timeoutMillis = Math.max(0, timeoutMillis);
+        this.leaderOnly = leaderOnly;
+    }
+
+    /**
+     * @return settings for a job triggered by a Quartz cron expression
+     */
+    public static JobSettings cron(String name, String cronExpression) {
+        if (cronExpression == null || cronExpression.trim().isEmpty()) {
+            throw new IllegalArgumentException("cron expression is required for " + name);
+        }
+        return new JobSettings(name, cronExpression.trim(), 0, 0, 0, 0, false);
+    }
+
+    /**
+     * @return settings for a job that waits at least {@code delaySeconds}
+     *         between the end of a run and the start of the next one
+     */
+    public static JobSettings fixedDelay(String name, long delaySeconds) {
+        if (delaySeconds < 1) {
+            throw new IllegalArgumentException("delay must be at least one second for " + name);
+        }
+        return new JobSettings(name, null, delaySeconds, 0, 0, 0, false);
+    }
+
+    /**
+     * @return a copy that retries a failed run up to {@code retries} times,
+     *         doubling the wait between attempts, starting at {@code initialBackoffMillis}
+     */
+    public JobSettings withRetries(int retries, long initialBackoffMillis) {
+        return new JobSettings(name, cronExpression, delaySeconds, retries, initialBackoffMillis,
+                timeoutMillis, leaderOnly);
+    }
+
+    /**
+     * @return a copy that cancels an attempt after the timeout, 0 for no timeout
+     */
+    public JobSettings withTimeout(long timeout, TimeUnit unit) {
+        return new JobSettings(name, cronExpression, delaySeconds, retries, initialBackoffMillis,
+                unit.toMillis(timeout), leaderOnly);
+    }
+
+    /**
+     * @return a copy that only runs on one instance of a cluster
+     */
+    public JobSettings withLeaderOnly(boolean leaderOnly) {
+        return new JobSettings(name, cronExpression, delaySeconds, retries, initialBackoffMillis,
+                timeoutMillis, leaderOnly);
+    }
+
+    public String getName() { return name; }
+    public String getCronExpression() { return cronExpression; }
+    public long getDelaySeconds() { return delaySeconds; }
+    public int getRetries() { return retries; }
+    public long getInitialBackoffMillis() { return initialBackoffMillis; }
+    public long getTimeoutMillis() { return timeoutMillis; }
+    public boolean isLeaderOnly() { return leaderOnly; }
+
+    public boolean isCron() {
+        return cronExpression != null;
+    }
+
+    @Override
+    public String toString() {
+        return (isCron() ? "cron '" + cronExpression + "'" : "every " + delaySeconds + "s after the last run")
+                + ", retries=" + retries + ", timeout=" + timeoutMillis + "ms" + (leaderOnly ? ", leader only" : "");
+    }
+}
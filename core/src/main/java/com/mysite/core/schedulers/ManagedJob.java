@@ -0,0 +1,22 @@
+package com.mysite.core.schedulers;
+
+/**
+ * A job run by the {@link ManagedJobScheduler}. Register implementations as
+ * OSGi services; the scheduler picks them up and schedules them according to
+ * their {@link JobSettings}. A job never runs twice at the same time, a run
+ * that is still busy when the next trigger fires makes that trigger skip.
+ */
+public interface ManagedJob {
+
+    /**
+     * @return how and when the job runs, read once when the job is bound
+     */
+    JobSettings getSettings();
+
+    /**
+     * Runs the job once. Throwing makes the scheduler retry the run, if the
+     * settings allow it. Long running jobs should check for interruption,
+     * which is how a timed out run is cancelled.
+     */
+    void execute() throws Exception;
+}
@@ -0,0 +1,170 @@
+package com.mysite.core.schedulers;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.management.NotCompliantMBeanException;
+import javax.management.StandardMBean;
+
+import org.apache.sling.commons.scheduler.ScheduleOptions;
+import org.apache.sling.commons.scheduler.Scheduler;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Deactivate;
+import org.osgi.service.component.annotations.Reference;
+import org.osgi.service.component.annotations.ReferenceCardinality;
+import org.osgi.service.component.annotations.ReferencePolicy;
+import org.osgi.service.component.annotations.ReferencePolicyOption;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Schedules all {@link ManagedJob} services with the Sling scheduler. Every
+ * job gets overlap protection, retries, a timeout and execution metrics (see
+ * {@link JobRunner}), and can be restricted to the cluster leader. Cron jobs
+ * use the cron trigger; fixed delay jobs are triggered every tenth of their
+ * delay and only run once the delay has passed since the end of the last run.
+ * The jobs can be inspected and triggered over JMX (com.mysite:type=ManagedJobs);
+ * a leader only job triggered there is handed to the scheduler as a one-off
+ * run, so it still only runs on the leader.
+ */
+@Component(service = { ManagedJobScheduler.class, ManagedJobsMBean.class },
+           immediate = true,
+           property = {
+                   "jmx.objectname=com.mysite:type=ManagedJobs"
+           })
+public class ManagedJobScheduler extends StandardMBean implements ManagedJobsMBean {
+
+    private static final String JOB_PREFIX = "mysite.managed.";
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final Map<ManagedJob, JobRunner> runners = new ConcurrentHashMap<>();
+    private final ExecutorService workers = newWorkers();
+
+    @Reference
+    private Scheduler scheduler;
+
+    private boolean active;
+
+    public ManagedJobScheduler() throws NotCompliantMBeanException {
+        super(ManagedJobsMBean.class);
+    }
+
+    @Activate
+    protected synchronized void activate() {
+        active = true;
+        runners.values().forEach(this::schedule);
+    }
+
+    @Deactivate
+    protected synchronized void deactivate() {
+        active = false;
+        runners.values().forEach(runner -> scheduler.unschedule(jobName(runner)));
+        workers.shutdownNow();
+    }
+
+    @Reference(cardinality = ReferenceCardinality.MULTIPLE,
+               policy = ReferencePolicy.DYNAMIC,
+               policyOption = ReferencePolicyOption.GREEDY)
+    protected synchronized void bindJob(final ManagedJob job) {
+        final JobSettings settings;
+        try {
+            settings = job.getSettings();
+        } catch (RuntimeException e) {
+            logger.error("Not scheduling {}, its settings are invalid", job.getClass().getName(), e);
+            return;
+        }
+        final JobRunner runner = new JobRunner(job, settings, workers);
+        runners.put(job, runner);
+        if (active) {
+            schedule(runner);
+        }
+    }
+
+    protected synchronized void unbindJob(final ManagedJob job) {
+        final JobRunner runner = runners.remove(job);
+        if (runner != null && active) {
+            scheduler.unschedule(jobName(runner));
+        }
+    }
+
+    private void schedule(final JobRunner runner) {
+        final JobSettings settings = runner.getSettings();
+        final ScheduleOptions options = settings.isCron()
+                ? scheduler.EXPR(settings.getCronExpression())
+                : scheduler.NOW(-1, Math.max(1, settings.getDelaySeconds() / 10));
+        options.name(jobName(runner))
+                .canRunConcurrently(false)
+                .onSingleInstanceOnly(settings.isLeaderOnly());
+        if (scheduler.schedule(runner, options)) {
+            logger.info("Scheduled job {}: {}", settings.getName(), settings);
+        } else {
+            logger.error("Could not schedule job {}: {}", settings.getName(), settings);
+        }
+    }
+
+    private static ExecutorService newWorkers() {
+        final AtomicInteger threads = new AtomicInteger();
+        return Executors.newCachedThreadPool(runnable -> {
+            final Thread thread = new Thread(runnable, "mysite-managed-job-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    private static String jobName(final JobRunner runner) {
+        return JOB_PREFIX + runner.getSettings().getName();
+    }
+
+    JobRunner getRunner(final String name) {
+        return runners.values().stream()
+                .filter(runner -> runner.getSettings().getName().equals(name))
+                .findFirst()
+                .orElse(null);
+    }
+
+    @Override
+    public String[] getJobs() {
+        return runners.values().stream()
+                .map(JobRunner::summary)
+                .sorted()
+                .toArray(String[]::new);
+    }
+
+    @Override
+    public String[] getHistory(final String job) {
+        final JobRunner runner = getRunner(job);
+        if (runner == null) {
+            return new String[0];
+        }
+        final JobRunner.Execution[] history = runner.getHistory();
+        final String[] lines = new String[history.length];
+        for (int i = 0; i < history.length; i++) {
+            lines[i] = history[i].toString();
+        }
+        return lines;
+    }
+
+    @Override
+    public void runNow(final String job) {
+        final JobRunner runner = getRunner(job);
+        if (runner == null) {
+            throw new IllegalArgumentException("Unknown job " + job);
+        }
+        if (!runner.getSettings().isLeaderOnly()) {
+            runner.run();
+            return;
+        }
+        final ScheduleOptions options = scheduler.NOW()
+                .name(jobName(runner) + ".now")
+                .canRunConcurrently(false)
+                .onSingleInstanceOnly(true);
+        if (!scheduler.schedule(runner, options)) {
+            throw new IllegalStateException("Could not trigger job " + job);
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package com.mysite.core.schedulers;
+
+/**
+ * JMX view of the jobs run by the {@link ManagedJobScheduler}.
+ */
+public interface ManagedJobsMBean {
+
+    /**
+     * @return one line per job with its settings, state and counters
+     */
+    String[] getJobs();
+
+    /**
+     * @return the recent executions of a job, newest first
+     */
+    String[] getHistory(String job);
+
+    /**
+     * Triggers a job now, unless it is already running. A leader only job is
+     * run on the cluster leader, whichever instance it is triggered on.
+     */
+    void runNow(String job);
+}
@@ -27,10 +27,12 @@ import org.slf4j.LoggerFactory;
  * A simple demo for cron-job like tasks that get executed regularly.
  * It also demonstrates how property values can be set. Users can
  * set the property values in /system/console/configMgr
+ * The task is run by the {@link ManagedJobScheduler}, which keeps runs
+ * from overlapping.
  */
 @Designate(ocd=SimpleScheduledTask.Config.class)
-@Component(service=Runnable.class)
-public class SimpleScheduledTask implements Runnable {
+@Component(service=ManagedJob.class)
+public class SimpleScheduledTask implements ManagedJob {
 
     @ObjectClassDefinition(name="A scheduled task",
                            description = "Simple demo for cron-job like task with properties")
@@ -39,10 +41,6 @@ public class SimpleScheduledTask implements Runnable {
         @AttributeDefinition(name = "Cron-job expression")
         String scheduler_expression() default "*/30 * * * * ?";
 
-        @AttributeDefinition(name = "Concurrent task",
-                             description = "Whether or not to schedule this task concurrently")
-        boolean scheduler_concurrent() default false;
-
         @AttributeDefinition(name = "A parameter",
                              description = "Can be configured in /system/console/configMgr")
         String myParameter() default "";
@@ -51,15 +49,23 @@ public class SimpleScheduledTask implements Runnable {
     private final Logger logger = LoggerFactory.getLogger(getClass());
 
     private String myParameter;
+
+    private String expression;
+
+    @Override
+    public JobSettings getSettings() {
+        return JobSettings.cron(getClass().getSimpleName(), expression);
+    }
     
     @Override
-    public void run() {
+    public void execute() {
         logger.debug("SimpleScheduledTask is now running, myParameter='{}'", myParameter);
     }
 
     @Activate
     protected void activate(final Config config) {
         myParameter = config.myParameter();
+        expression = config.scheduler_expression();
     }
 
 }
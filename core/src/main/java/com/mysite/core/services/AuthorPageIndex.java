@@ -0,0 +1,469 @@
+package com.mysite.core.services;
+
+import org.apache.sling.api.resource.LoginException;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.resource.ResourceResolverFactory;
+import org.apache.sling.api.resource.ValueMap;
+import org.apache.sling.api.resource.observation.ResourceChange;
+import org.apache.sling.api.resource.observation.ResourceChangeListener;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Deactivate;
+import org.osgi.service.component.annotations.Reference;
+import org.osgi.service.metatype.annotations.AttributeDefinition;
+import org.osgi.service.metatype.annotations.Designate;
+import org.osgi.service.metatype.annotations.ObjectClassDefinition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.jcr.query.Query;
+import javax.management.NotCompliantMBeanException;
+import javax.management.StandardMBean;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Materialized view of author ID to the pages that author last modified.
+ * The index is built in the background after activation and then kept up to
+ * date from resource change events on {@code cq:PageContent} nodes below
+ * the observed paths, so author-activity lookups never have to traverse the repository at request
+ * time. It is read with the service user's permissions; callers filter the
+ * entries through the requesting user's resolver before returning them.
+ */
+@Component(service = { AuthorPageIndex.class, AuthorPageIndexMBean.class, ResourceChangeListener.class },
+        immediate = true,
+        property = {
+                "jmx.objectname=com.mysite:type=AuthorPageIndex",
+                ResourceChangeListener.PATHS + "=/content",
+                ResourceChangeListener.CHANGES + "=ADDED",
+                ResourceChangeListener.CHANGES + "=CHANGED",
+                ResourceChangeListener.CHANGES + "=REMOVED",
+                ResourceChangeListener.PROPERTY_NAMES_HINT + "=" + AuthorPageIndex.JCR_LAST_MODIFIED_BY,
+                ResourceChangeListener.PROPERTY_NAMES_HINT + "=" + AuthorPageIndex.JCR_TITLE,
+                ResourceChangeListener.PROPERTY_NAMES_HINT + "=" + AuthorPageIndex.CQ_LAST_MODIFIED
+        })
+@Designate(ocd = AuthorPageIndex.Config.class)
+public class AuthorPageIndex extends StandardMBean implements AuthorPageIndexMBean, ResourceChangeListener {
+
+    private static final Logger LOG = LoggerFactory.getLogger(AuthorPageIndex.class);
+
+    static final String JCR_LAST_MODIFIED_BY = "jcr:lastModifiedBy";
+    static final String JCR_TITLE = "jcr:title";
+    static final String CQ_LAST_MODIFIED = "cq:lastModified";
+    private static final String JCR_CONTENT = "jcr:content";
+    private static final String JCR_PRIMARY_TYPE = "jcr:primaryType";
+    private static final String CQ_PAGE_CONTENT = "cq:PageContent";
+    private static final String SUBSERVICE = "author-index";
+
+    // Rough per-object overheads used for the footprint estimate (64-bit JVM, compressed oops)
+    private static final int ENTRY_OVERHEAD = 32;
+    private static final int STRING_OVERHEAD = 40;
+    private static final int MAP_NODE_OVERHEAD = 48;
+
+    /**
+     * {@code EMPTY} until a build is started, {@code FAILED} if the last build did not finish.
+     */
+    public enum State { EMPTY, BUILDING, READY, FAILED }
+
+    @Reference
+    public ResourceResolverFactory resourceResolverFactory;
+
+    // Pages changed while a rebuild runs; they are read again once its result is swapped in
+    private final Set<String> changedDuringRebuild = new HashSet<>();
+    private final Object rebuildLock = new Object();
+    private boolean rebuilding;
+
+    private volatile Contents contents = new Contents();
+    private volatile String rootPath = "/content";
+    private volatile State state = State.EMPTY;
+    private volatile long buildStarted;
+    private volatile long lastRebuild;
+    private volatile long lastRebuildDuration;
+    private volatile long lastUpdate;
+
+    @ObjectClassDefinition(name = "Author Page Index", description = "Materialized index of author ID to modified pages")
+    public @interface Config {
+        @AttributeDefinition(name = "Root Path", description = "Subtree whose pages are indexed")
+        String rootPath() default "/content";
+
+        @AttributeDefinition(name = "Rebuild On Activate", description = "Build the full index when the component is activated")
+        boolean rebuildOnActivate() default true;
+
+        @AttributeDefinition(name = "Observed Paths", description = "Subtrees whose changes are received; set to the root path")
+        String[] resource_paths() default { "/content" };
+    }
+
+    private ExecutorService executor;
+
+    public AuthorPageIndex() throws NotCompliantMBeanException {
+        super(AuthorPageIndexMBean.class);
+    }
+
+    @Activate
+    protected void activate(Config config) {
+        this.rootPath = config.rootPath();
+        if (config.rebuildOnActivate()) {
+            executor = Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "mysite-author-page-index");
+                thread.setDaemon(true);
+                return thread;
+            });
+            buildStarted = System.currentTimeMillis();
+            state = State.BUILDING;
+            executor.submit(this::rebuild);
+        }
+    }
+
+    @Deactivate
+    protected void deactivate() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+        state = State.EMPTY;
+        contents = new Contents();
+    }
+
+    /**
+     * Re-reads every page below the root path into a new index and swaps it
+     * in once complete, so lookups keep being answered from the previous
+     * contents while the query runs.
+     */
+    @Override
+    public synchronized void rebuild() {
+        long start = System.currentTimeMillis();
+        State previousState = state;
+        if (previousState != State.READY) {
+            // A built index keeps answering lookups from its current contents
+            if (previousState != State.BUILDING) {
+                buildStarted = start;
+            }
+            state = State.BUILDING;
+        }
+        synchronized (rebuildLock) {
+            rebuilding = true;
+            changedDuringRebuild.clear();
+        }
+        try (ResourceResolver resolver = getServiceResolver()) {
+            Contents fresh = new Contents();
+            String query = "SELECT * FROM [" + CQ_PAGE_CONTENT + "] AS content WHERE ISDESCENDANTNODE(content, '"
+                    + rootPath + "') AND content.[" + JCR_LAST_MODIFIED_BY + "] IS NOT NULL";
+            Iterator<Resource> results = resolver.findResources(query, Query.JCR_SQL2);
+            while (results.hasNext()) {
+                if (Thread.currentThread().isInterrupted()) {
+                    throw new InterruptedException("Author page index build cancelled");
+                }
+                Resource content = results.next();
+                Resource page = content.getParent();
+                if (page != null) {
+                    fresh.put(page.getPath(), content.getValueMap());
+                }
+            }
+            Set<String> changed;
+            synchronized (rebuildLock) {
+                contents = fresh;
+                rebuilding = false;
+                changed = new HashSet<>(changedDuringRebuild);
+                changedDuringRebuild.clear();
+            }
+            // The query may have read these pages before or after their change
+            for (String pagePath : changed) {
+                fresh.refresh(resolver, pagePath);
+            }
+            state = State.READY;
+            LOG.info("Author page index built with {} pages for {} authors in {}ms",
+                    fresh.pagesByPath.size(), fresh.pagesByAuthor.size(), System.currentTimeMillis() - start);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            state = previousState == State.READY ? State.READY : State.EMPTY;
+            LOG.info("Author page index build below {} cancelled", rootPath);
+        } catch (Exception e) {
+            // A previously built index stays in use and keeps following changes
+            state = previousState == State.READY ? State.READY : State.FAILED;
+            LOG.error("Could not build author page index below {}", rootPath, e);
+        } finally {
+            synchronized (rebuildLock) {
+                rebuilding = false;
+                changedDuringRebuild.clear();
+            }
+            lastRebuild = System.currentTimeMillis();
+            lastRebuildDuration = lastRebuild - start;
+            lastUpdate = lastRebuild;
+        }
+    }
+
+    @Override
+    public void onChange(List<ResourceChange> changes) {
+        Map<String, ResourceChange.ChangeType> pages = new HashMap<>();
+        for (ResourceChange change : changes) {
+            String pagePath = toPagePath(change.getPath());
+            if (pagePath == null || !isBelowRoot(pagePath)) {
+                continue;
+            }
+            // A removal of the page itself wins over any content change in the same batch
+            if (change.getType() == ResourceChange.ChangeType.REMOVED && pagePath.equals(change.getPath())) {
+                pages.put(pagePath, ResourceChange.ChangeType.REMOVED);
+            } else {
+                pages.putIfAbsent(pagePath, ResourceChange.ChangeType.CHANGED);
+            }
+        }
+        if (pages.isEmpty()) {
+            return;
+        }
+        synchronized (rebuildLock) {
+            if (rebuilding) {
+                changedDuringRebuild.addAll(pages.keySet());
+            }
+        }
+
+        Contents current = contents;
+        try (ResourceResolver resolver = getServiceResolver()) {
+            for (Map.Entry<String, ResourceChange.ChangeType> page : pages.entrySet()) {
+                if (page.getValue() == ResourceChange.ChangeType.REMOVED) {
+                    current.removeSubtree(page.getKey());
+                } else {
+                    current.refresh(resolver, page.getKey());
+                }
+            }
+            lastUpdate = System.currentTimeMillis();
+        } catch (LoginException e) {
+            LOG.error("Could not update author page index for {} pages", pages.size(), e);
+        }
+    }
+
+    /**
+     * @return every indexed page last modified by the given author
+     */
+    public List<PageEntry> getPagesByAuthor(String authorId) {
+        Map<String, PageEntry> pages = authorId != null ? contents.pagesByAuthor.get(authorId) : null;
+        return pages != null ? new ArrayList<>(pages.values()) : Collections.emptyList();
+    }
+
+    /**
+     * @return the direct children of {@code parentPath} last modified by the given author
+     */
+    public List<PageEntry> getChildPagesByAuthor(String parentPath, String authorId) {
+        Map<String, PageEntry> pages = authorId != null ? contents.pagesByAuthor.get(authorId) : null;
+        if (pages == null) {
+            return Collections.emptyList();
+        }
+        List<PageEntry> children = new ArrayList<>();
+        for (PageEntry entry : pages.values()) {
+            if (entry.isChildOf(parentPath)) {
+                children.add(entry);
+            }
+        }
+        return children;
+    }
+
+    /**
+     * @return {@code true} once a full build has completed; before that the
+     *         index only holds pages changed since activation
+     */
+    @Override
+    public boolean isReady() {
+        return state == State.READY;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    /**
+     * @return when the index last went into {@link State#BUILDING}, in ms since the epoch
+     */
+    public long getBuildStarted() {
+        return buildStarted;
+    }
+
+    @Override
+    public String getStatus() {
+        return state.name();
+    }
+
+    @Override
+    public int getPageCount() {
+        return contents.pagesByPath.size();
+    }
+
+    @Override
+    public int getAuthorCount() {
+        return contents.pagesByAuthor.size();
+    }
+
+    /**
+     * @return an estimate of the heap retained by the index, in bytes
+     */
+    @Override
+    public long getMemoryFootprint() {
+        Contents current = contents;
+        long bytes = 0;
+        for (PageEntry entry : current.pagesByPath.values()) {
+            // One node in the path map and one in the author map per entry
+            bytes += ENTRY_OVERHEAD + 2L * MAP_NODE_OVERHEAD
+                    + stringSize(entry.path) + stringSize(entry.title);
+        }
+        for (String authorId : current.authorIds.keySet()) {
+            bytes += MAP_NODE_OVERHEAD * 2L + stringSize(authorId);
+        }
+        return bytes;
+    }
+
+    /**
+     * @return milliseconds since the index last applied a rebuild or change event
+     */
+    @Override
+    public long getStalenessMillis() {
+        return lastUpdate == 0 ? -1 : System.currentTimeMillis() - lastUpdate;
+    }
+
+    @Override
+    public long getLastRebuild() {
+        return lastRebuild;
+    }
+
+    @Override
+    public long getLastRebuildDuration() {
+        return lastRebuildDuration;
+    }
+
+    private boolean isBelowRoot(String path) {
+        return path.equals(rootPath) || path.startsWith(rootPath + "/");
+    }
+
+    private ResourceResolver getServiceResolver() throws LoginException {
+        Map<String, Object> authInfo = new HashMap<>();
+        authInfo.put(ResourceResolverFactory.SUBSERVICE, SUBSERVICE);
+        return resourceResolverFactory.getServiceResourceResolver(authInfo);
+    }
+
+    /**
+     * Maps a changed resource path to the path of the page it belongs to, or
+     * {@code null} if the change is not inside a page's content.
+     */
+    static String toPagePath(String path) {
+        int index = path.indexOf("/" + JCR_CONTENT);
+        if (index < 0) {
+            return path;
+        }
+        int end = index + JCR_CONTENT.length() + 1;
+        if (end == path.length() || path.charAt(end) == '/') {
+            return path.substring(0, index);
+        }
+        return null;
+    }
+
+    private static long stringSize(String value) {
+        return value == null ? 0 : STRING_OVERHEAD + value.length();
+    }
+
+    /**
+     * One generation of the index. A rebuild fills a new instance and swaps it
+     * in, change events are applied to whichever instance is current.
+     */
+    private static final class Contents {
+        private final ConcurrentMap<String, PageEntry> pagesByPath = new ConcurrentHashMap<>();
+        private final ConcurrentMap<String, ConcurrentMap<String, PageEntry>> pagesByAuthor = new ConcurrentHashMap<>();
+        private final ConcurrentMap<String, String> authorIds = new ConcurrentHashMap<>();
+
+        /**
+         * Reads a page again; like the rebuild query, only {@code cq:PageContent}
+         * is indexed, so assets and other nodes with a {@code jcr:content} are not.
+         */
+        private void refresh(ResourceResolver resolver, String pagePath) {
+            Resource content = resolver.getResource(pagePath + "/" + JCR_CONTENT);
+            ValueMap properties = content != null ? content.getValueMap() : null;
+            if (properties == null || !CQ_PAGE_CONTENT.equals(properties.get(JCR_PRIMARY_TYPE, String.class))) {
+                remove(pagePath);
+            } else {
+                put(pagePath, properties);
+            }
+        }
+
+        private void put(String pagePath, ValueMap properties) {
+            String authorId = properties.get(JCR_LAST_MODIFIED_BY, String.class);
+            if (authorId == null) {
+                remove(pagePath);
+                return;
+            }
+            Calendar lastModified = properties.get(CQ_LAST_MODIFIED, Calendar.class);
+            PageEntry entry = new PageEntry(pagePath, properties.get(JCR_TITLE, String.class),
+                    lastModified != null ? lastModified.getTimeInMillis() : 0L, intern(authorId));
+
+            PageEntry previous = pagesByPath.put(pagePath, entry);
+            if (previous != null && !previous.authorId.equals(entry.authorId)) {
+                removeFromAuthor(previous);
+            }
+            pagesByAuthor.computeIfAbsent(entry.authorId, k -> new ConcurrentHashMap<>()).put(pagePath, entry);
+        }
+
+        private void remove(String pagePath) {
+            PageEntry previous = pagesByPath.remove(pagePath);
+            if (previous != null) {
+                removeFromAuthor(previous);
+            }
+        }
+
+        private void removeSubtree(String pagePath) {
+            String prefix = pagePath + "/";
+            for (String path : new ArrayList<>(pagesByPath.keySet())) {
+                if (path.equals(pagePath) || path.startsWith(prefix)) {
+                    remove(path);
+                }
+            }
+        }
+
+        private void removeFromAuthor(PageEntry entry) {
+            pagesByAuthor.computeIfPresent(entry.authorId, (author, pages) -> {
+                pages.remove(entry.path);
+                return pages.isEmpty() ? null : pages;
+            });
+        }
+
+        private String intern(String authorId) {
+            String existing = authorIds.putIfAbsent(authorId, authorId);
+            return existing != null ? existing : authorId;
+        }
+    }
+
+    /**
+     * Compact, immutable index entry. The author ID is interned so all entries
+     * of one author share a single string instance.
+     */
+    public static final class PageEntry {
+        private final String path;
+        private final String title;
+        private final long lastModified;
+        private final String authorId;
+
+        public PageEntry(String path, String title, long lastModified, String authorId) {
+            this.path = path;
+            this.title = title;
+            this.lastModified = lastModified;
+            this.authorId = authorId;
+        }
+
+        public String getPath() { return path; }
+        public String getTitle() { return title; }
+        public long getLastModified() { return lastModified; }
+        public String getAuthorId() { return authorId; }
+
+        boolean isChildOf(String parentPath) {
+            return path.length() > parentPath.length() + 1
+                    && path.startsWith(parentPath)
+                    && path.charAt(parentPath.length()) == '/'
+                    && path.indexOf('/', parentPath.length() + 1) < 0;
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package com.mysite.core.services;
+
+/**
+ * JMX view of the {@link AuthorPageIndex}.
+ */
+public interface AuthorPageIndexMBean {
+
+    /**
+     * @return {@code EMPTY}, {@code BUILDING}, {@code READY} or {@code FAILED}
+     */
+    String getStatus();
+
+    boolean isReady();
+
+    int getPageCount();
+
+    int getAuthorCount();
+
+    /**
+     * @return an estimate of the heap retained by the index, in bytes
+     */
+    long getMemoryFootprint();
+
+    /**
+     * @return milliseconds since the index last applied a rebuild or change event
+     */
+    long getStalenessMillis();
+
+    /**
+     * @return when the last full build finished, in epoch milliseconds
+     */
+    long getLastRebuild();
+
+    /**
+     * @return how long the last full build took, in milliseconds
+     */
+    long getLastRebuildDuration();
+
+    /**
+     * Re-reads every page below the root path and swaps the result in.
+     */
+    void rebuild();
+}
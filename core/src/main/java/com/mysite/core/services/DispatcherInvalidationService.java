@@ -0,0 +1,346 @@
+package com.mysite.core.services;
+
+import com.day.cq.replication.ReplicationAction;
+import com.day.cq.replication.ReplicationActionType;
+import com.mysite.core.listeners.ResourceChangeConsumer;
+import org.apache.sling.api.resource.observation.ResourceChange;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Deactivate;
+import org.osgi.service.event.Event;
+import org.osgi.service.event.EventConstants;
+import org.osgi.service.event.EventHandler;
+import org.osgi.service.metatype.annotations.AttributeDefinition;
+import org.osgi.service.metatype.annotations.Designate;
+import org.osgi.service.metatype.annotations.ObjectClassDefinition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.NotCompliantMBeanException;
+import javax.management.StandardMBean;
+
+/**
+ * Batches dispatcher cache invalidation. Paths are collected from replication
+ * events (on author) or from the batched resource changes of the
+ * {@link com.mysite.core.listeners.ResourceChangePipeline} (on publish) and
+ * flushed once per time window. Each window is reduced to the pages that
+ * changed: paths inside a page's {@code jcr:content} are cut to the page, and
+ * pages below another changed page are dropped, so the dispatcher deletes the
+ * files of every changed page, including those it does not auto-invalidate.
+ * A window with more pages than {@link Config#maxHandles()} is cut further to
+ * the ancestors at the stat files level, which touches the same .stat files
+ * with a handful of requests. Every handle is then sent once to each
+ * configured dispatcher endpoint.
+ */
+@Component(service = { DispatcherInvalidationService.class, DispatcherInvalidationServiceMBean.class,
+                ResourceChangeConsumer.class, EventHandler.class },
+        immediate = true,
+        property = {
+                EventConstants.EVENT_TOPIC + "=" + ReplicationAction.EVENT_TOPIC,
+                "jmx.objectname=com.mysite:type=DispatcherInvalidationService"
+        })
+@Designate(ocd = DispatcherInvalidationService.Config.class)
+public class DispatcherInvalidationService extends StandardMBean
+        implements DispatcherInvalidationServiceMBean, ResourceChangeConsumer, EventHandler {
+
+    private static final Logger LOG = LoggerFactory.getLogger(DispatcherInvalidationService.class);
+
+    static final String CQ_ACTION = "CQ-Action";
+    static final String CQ_HANDLE = "CQ-Handle";
+    static final String CQ_PATH = "CQ-Path";
+
+    private static final String JCR_CONTENT_SEGMENT = "/jcr:content";
+
+    @ObjectClassDefinition(name = "Dispatcher Invalidation Service",
+            description = "Collects changed paths and flushes the dispatcher cache in batches")
+    public @interface Config {
+        @AttributeDefinition(name = "Endpoints",
+                description = "Dispatcher flush URLs, e.g. http://dispatcher:80/dispatcher/invalidate.cache")
+        String[] endpoints() default {};
+
+        @AttributeDefinition(name = "Stat Files Level", description = "The /statfileslevel of the dispatcher farm")
+        int statFilesLevel() default 2;
+
+        @AttributeDefinition(name = "Max Handles",
+                description = "A window with more changed pages is flushed at the stat files level instead")
+        int maxHandles() default 100;
+
+        @AttributeDefinition(name = "Window (ms)", description = "How long paths are collected before a flush")
+        long windowMs() default 2000;
+
+        @AttributeDefinition(name = "Paths", description = "Only paths below these roots are invalidated")
+        String[] paths() default { "/content" };
+
+        @AttributeDefinition(name = "Replication Events",
+                description = "Collect the paths of replication actions, for author instances")
+        boolean replicationEvents() default false;
+
+        @AttributeDefinition(name = "Resource Events",
+                description = "Collect the paths of resource changes, for publish instances")
+        boolean resourceEvents() default false;
+
+        @AttributeDefinition(name = "Connect Timeout (ms)")
+        int connectTimeoutMs() default 2000;
+
+        @AttributeDefinition(name = "Read Timeout (ms)")
+        int readTimeoutMs() default 5000;
+    }
+
+    private final Set<String> pending = new LinkedHashSet<>();
+    private final AtomicLong received = new AtomicLong();
+    private final AtomicLong flushes = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+
+    private volatile List<String> endpoints = new ArrayList<>();
+    private volatile String[] roots = new String[0];
+    private volatile int statFilesLevel;
+    private volatile int maxHandles;
+    private volatile boolean replicationEvents;
+    private volatile boolean resourceEvents;
+    private int connectTimeoutMs;
+    private int readTimeoutMs;
+    private ScheduledExecutorService flusher;
+
+    public DispatcherInvalidationService() throws NotCompliantMBeanException {
+        super(DispatcherInvalidationServiceMBean.class);
+    }
+
+    @Activate
+    protected void activate(Config config) {
+        endpoints = Arrays.asList(config.endpoints());
+        roots = config.paths();
+        statFilesLevel = Math.max(0, config.statFilesLevel());
+        maxHandles = Math.max(1, config.maxHandles());
+        replicationEvents = config.replicationEvents();
+        resourceEvents = config.resourceEvents();
+        connectTimeoutMs = config.connectTimeoutMs();
+        readTimeoutMs = config.readTimeoutMs();
+        long windowMs = Math.max(1, config.windowMs());
+        flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "mysite-dispatcher-invalidation");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flusher.scheduleWithFixedDelay(this::flush, windowMs, windowMs, TimeUnit.MILLISECONDS);
+        LOG.info("DispatcherInvalidationService activated for {} endpoints, window {}ms",
+                endpoints.size(), windowMs);
+    }
+
+    @Deactivate
+    protected void deactivate() throws InterruptedException {
+        if (flusher != null) {
+            flusher.shutdownNow();
+            // let a flush in progress finish before the tail is sent
+            flusher.awaitTermination(connectTimeoutMs + readTimeoutMs, TimeUnit.MILLISECONDS);
+        }
+        // the tail of a bulk activation is still flushed
+        flush();
+    }
+
+    @Override
+    public void handleEvent(Event event) {
+        if (!replicationEvents) {
+            return;
+        }
+        ReplicationAction action = ReplicationAction.fromEvent(event);
+        if (action != null && action.getType() != ReplicationActionType.TEST && action.getPaths() != null) {
+            invalidate(Arrays.asList(action.getPaths()));
+        }
+    }
+
+    @Override
+    public void consume(List<ResourceChange> changes) {
+        if (!resourceEvents) {
+            return;
+        }
+        List<String> paths = new ArrayList<>(changes.size());
+        for (ResourceChange change : changes) {
+            paths.add(change.getPath());
+        }
+        invalidate(paths);
+    }
+
+    /**
+     * Queues paths for the next flush.
+     */
+    public void invalidate(Collection<String> paths) {
+        synchronized (pending) {
+            for (String path : paths) {
+                if (isBelowRoot(path)) {
+                    received.incrementAndGet();
+                    pending.add(path);
+                }
+            }
+        }
+    }
+
+    /**
+     * Sends the handles for all queued paths to every endpoint.
+     */
+    void flush() {
+        List<String> paths;
+        synchronized (pending) {
+            if (pending.isEmpty()) {
+                return;
+            }
+            paths = new ArrayList<>(pending);
+            pending.clear();
+        }
+        Set<String> handles = handlesFor(paths, statFilesLevel, maxHandles);
+        for (String endpoint : endpoints) {
+            for (String handle : handles) {
+                send(endpoint, handle);
+            }
+        }
+        LOG.debug("Invalidated {} handles for {} paths", handles.size(), paths.size());
+    }
+
+    /**
+     * @return the changed pages without their descendants or, if there are more
+     *         than {@code maxHandles}, their ancestors at the stat files level
+     */
+    static Set<String> handlesFor(Collection<String> paths, int statFilesLevel, int maxHandles) {
+        Set<String> pages = new TreeSet<>();
+        for (String path : paths) {
+            pages.add(pageOf(path));
+        }
+        Set<String> handles = withoutDescendants(pages);
+        if (handles.size() <= maxHandles) {
+            return handles;
+        }
+        Set<String> cut = new TreeSet<>();
+        for (String handle : handles) {
+            cut.add(ancestorAtLevel(handle, statFilesLevel));
+        }
+        return withoutDescendants(cut);
+    }
+
+    private static Set<String> withoutDescendants(Set<String> paths) {
+        Set<String> handles = new TreeSet<>();
+        for (String path : paths) {
+            if (!hasAncestorIn(path, paths)) {
+                handles.add(path);
+            }
+        }
+        return handles;
+    }
+
+    static String pageOf(String path) {
+        int content = path.indexOf(JCR_CONTENT_SEGMENT);
+        while (content >= 0) {
+            int end = content + JCR_CONTENT_SEGMENT.length();
+            if (end == path.length() || path.charAt(end) == '/') {
+                return content == 0 ? "/" : path.substring(0, content);
+            }
+            content = path.indexOf(JCR_CONTENT_SEGMENT, end);
+        }
+        return path;
+    }
+
+    private static boolean hasAncestorIn(String path, Set<String> paths) {
+        if (!path.equals("/") && paths.contains("/")) {
+            return true;
+        }
+        for (int end = path.lastIndexOf('/'); end > 0; end = path.lastIndexOf('/', end - 1)) {
+            if (paths.contains(path.substring(0, end))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    static String ancestorAtLevel(String path, int level) {
+        int end = 0;
+        for (int depth = 0; depth < level; depth++) {
+            end = path.indexOf('/', end + 1);
+            if (end < 0) {
+                return path;
+            }
+        }
+        return end == 0 ? "/" : path.substring(0, end);
+    }
+
+    private void send(String endpoint, String handle) {
+        try {
+            HttpURLConnection connection = (HttpURLConnection) new URL(endpoint).openConnection();
+            connection.setRequestMethod("POST");
+            connection.setConnectTimeout(connectTimeoutMs);
+            connection.setReadTimeout(readTimeoutMs);
+            connection.setRequestProperty(CQ_ACTION, ReplicationActionType.ACTIVATE.getName());
+            connection.setRequestProperty(CQ_HANDLE, handle);
+            connection.setRequestProperty(CQ_PATH, handle);
+            connection.setDoOutput(true);
+            connection.getOutputStream().close();
+            int status = connection.getResponseCode();
+            try (InputStream body = status < 400 ? connection.getInputStream() : connection.getErrorStream()) {
+                // the body is read so the connection can be reused
+                if (body != null) {
+                    while (body.read() >= 0) {
+                        // discard
+                    }
+                }
+            }
+            flushes.incrementAndGet();
+            if (status >= 300) {
+                failures.incrementAndGet();
+                LOG.warn("Dispatcher {} answered {} for {}", endpoint, status, handle);
+            }
+        } catch (IOException e) {
+            flushes.incrementAndGet();
+            failures.incrementAndGet();
+            LOG.warn("Could not invalidate {} on {}: {}", handle, endpoint, e.getMessage());
+        }
+    }
+
+    private boolean isBelowRoot(String path) {
+        for (String root : roots) {
+            if (path.equals(root) || path.startsWith(root.endsWith("/") ? root : root + "/")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public long getReceivedCount() {
+        return received.get();
+    }
+
+    @Override
+    public int getPendingCount() {
+        synchronized (pending) {
+            return pending.size();
+        }
+    }
+
+    @Override
+    public long getFlushCount() {
+        return flushes.get();
+    }
+
+    @Override
+    public long getFailureCount() {
+        return failures.get();
+    }
+
+    @Override
+    public String[] getEndpoints() {
+        return endpoints.toArray(new String[0]);
+    }
+}
@@ -0,0 +1,26 @@
+package com.mysite.core.services;
+
+/**
+ * JMX view of the {@link DispatcherInvalidationService}.
+ */
+public interface DispatcherInvalidationServiceMBean {
+
+    /**
+     * @return paths accepted for invalidation since activation
+     */
+    long getReceivedCount();
+
+    /**
+     * @return paths waiting for the next flush
+     */
+    int getPendingCount();
+
+    /**
+     * @return flush requests sent, one per handle and endpoint
+     */
+    long getFlushCount();
+
+    long getFailureCount();
+
+    String[] getEndpoints();
+}
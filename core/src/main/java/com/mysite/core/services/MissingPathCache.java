@@ -0,0 +1,256 @@
+package com.mysite.core.services;
+
+import org.apache.sling.api.resource.observation.ResourceChange;
+import org.apache.sling.api.resource.observation.ResourceChangeListener;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Modified;
+import org.osgi.service.metatype.annotations.AttributeDefinition;
+import org.osgi.service.metatype.annotations.Designate;
+import org.osgi.service.metatype.annotations.ObjectClassDefinition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.NotCompliantMBeanException;
+import javax.management.StandardMBean;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded negative cache of recently requested paths that did not exist.
+ * A miss is remembered per user, since a path hidden from one user by its
+ * ACLs may well exist for another. Entries expire after a short TTL and are
+ * dropped as soon as a resource is added at, above or below the cached
+ * path, so a path created after a miss is served again without waiting for
+ * the TTL. The entries are indexed by path, so an added resource only
+ * touches the entries of its ancestors and descendants.
+ */
+@Component(service = { MissingPathCache.class, MissingPathCacheMBean.class, ResourceChangeListener.class },
+        property = {
+                "jmx.objectname=com.mysite:type=MissingPathCache",
+                ResourceChangeListener.CHANGES + "=ADDED"
+        })
+@Designate(ocd = MissingPathCache.Config.class)
+public class MissingPathCache extends StandardMBean implements MissingPathCacheMBean, ResourceChangeListener {
+
+    private static final Logger LOG = LoggerFactory.getLogger(MissingPathCache.class);
+
+    @ObjectClassDefinition(name = "Missing Path Cache", description = "Negative cache for nonexistent request paths")
+    public @interface Config {
+        @AttributeDefinition(name = "Enabled", description = "Enable the negative cache")
+        boolean enabled() default true;
+
+        @AttributeDefinition(name = "Max Entries", description = "Maximum number of missing paths kept, counted per user")
+        int maxEntries() default 10000;
+
+        @AttributeDefinition(name = "TTL Seconds", description = "How long a missing path is remembered")
+        int ttlSeconds() default 30;
+
+        @AttributeDefinition(name = "Paths", description = "Only paths below these roots are cached and observed")
+        String[] resource_paths() default { "/content" };
+    }
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+
+    // Least recently used first; both maps are guarded by this
+    private Map<Key, Long> entries = new LinkedHashMap<>();
+    private final TreeMap<String, Set<Key>> keysByPath = new TreeMap<>();
+    private volatile boolean enabled;
+    private volatile long ttlMillis;
+    private volatile String[] roots = new String[0];
+
+    public MissingPathCache() throws NotCompliantMBeanException {
+        super(MissingPathCacheMBean.class);
+    }
+
+    @Activate
+    @Modified
+    protected void activate(Config config) {
+        final int maxEntries = config.maxEntries();
+        synchronized (this) {
+            entries = new LinkedHashMap<Key, Long>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Key, Long> eldest) {
+                    if (size() > maxEntries) {
+                        unindex(eldest.getKey());
+                        return true;
+                    }
+                    return false;
+                }
+            };
+            keysByPath.clear();
+        }
+        enabled = config.enabled();
+        ttlMillis = config.ttlSeconds() * 1000L;
+        roots = config.resource_paths();
+        LOG.info("MissingPathCache activated with {} entries, ttl {}s", maxEntries, config.ttlSeconds());
+    }
+
+    /**
+     * @param userId the ID of the requesting user, {@code null} for none
+     * @return {@code true} if the path was recently found missing for this user
+     *         and can be answered without a repository lookup
+     */
+    public boolean isKnownMissing(String userId, String path) {
+        if (!enabled || !isCacheable(path)) {
+            return false;
+        }
+        Key key = new Key(userId, path);
+        synchronized (this) {
+            Long expires = entries.get(key);
+            if (expires != null) {
+                if (expires > System.currentTimeMillis()) {
+                    hits.incrementAndGet();
+                    return true;
+                }
+                remove(key);
+            }
+        }
+        misses.incrementAndGet();
+        return false;
+    }
+
+    /**
+     * Remembers that a lookup for {@code path} with the given user's
+     * permissions found nothing.
+     */
+    public void recordMissing(String userId, String path) {
+        if (enabled && isCacheable(path)) {
+            Key key = new Key(userId, path);
+            synchronized (this) {
+                if (entries.put(key, System.currentTimeMillis() + ttlMillis) == null) {
+                    keysByPath.computeIfAbsent(path, p -> new HashSet<>()).add(key);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void onChange(List<ResourceChange> changes) {
+        synchronized (this) {
+            if (entries.isEmpty()) {
+                return;
+            }
+            for (ResourceChange change : changes) {
+                String added = change.getPath();
+                List<Set<Key>> affected = new ArrayList<>();
+                // the added path itself and every ancestor of it
+                for (String path = added; !path.isEmpty(); path = parent(path)) {
+                    Set<Key> keys = keysByPath.get(path);
+                    if (keys != null) {
+                        affected.add(keys);
+                    }
+                }
+                // every descendant, '0' being the character after '/'
+                String prefix = "/".equals(added) ? "/" : added + "/";
+                affected.addAll(keysByPath.subMap(prefix, true, prefix.substring(0, prefix.length() - 1) + '0', false)
+                        .values());
+                for (Set<Key> keys : affected) {
+                    for (Key key : new ArrayList<>(keys)) {
+                        remove(key);
+                        invalidations.incrementAndGet();
+                    }
+                }
+            }
+        }
+    }
+
+    @Override
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    @Override
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    @Override
+    public long getInvalidationCount() {
+        return invalidations.get();
+    }
+
+    @Override
+    public synchronized int getSize() {
+        return entries.size();
+    }
+
+    @Override
+    public synchronized void clear() {
+        entries.clear();
+        keysByPath.clear();
+    }
+
+    private void remove(Key key) {
+        if (entries.remove(key) != null) {
+            unindex(key);
+        }
+    }
+
+    private void unindex(Key key) {
+        Set<Key> keys = keysByPath.get(key.path);
+        if (keys != null && keys.remove(key) && keys.isEmpty()) {
+            keysByPath.remove(key.path);
+        }
+    }
+
+    private boolean isCacheable(String path) {
+        for (String root : roots) {
+            if (isSameOrDescendant(path, root)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isSameOrDescendant(String path, String ancestor) {
+        return path.equals(ancestor) || ancestor.equals("/")
+                || (path.startsWith(ancestor) && path.charAt(ancestor.length()) == '/');
+    }
+
+    /**
+     * @return the parent of an absolute path, the empty string for the root
+     */
+    private static String parent(String path) {
+        if ("/".equals(path)) {
+            return "";
+        }
+        int slash = path.lastIndexOf('/');
+        return slash > 0 ? path.substring(0, slash) : "/";
+    }
+
+    /**
+     * A path as seen by one user.
+     */
+    private static final class Key {
+        private final String userId;
+        private final String path;
+
+        Key(String userId, String path) {
+            this.userId = userId != null ? userId : "";
+            this.path = path;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) other;
+            return path.equals(key.path) && userId.equals(key.userId);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * path.hashCode() + userId.hashCode();
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package com.mysite.core.services;
+
+/**
+ * JMX view of the {@link MissingPathCache}.
+ */
+public interface MissingPathCacheMBean {
+
+    /**
+     * @return lookups answered from the cache without touching the repository
+     */
+    long getHitCount();
+
+    long getMissCount();
+
+    /**
+     * @return entries dropped because a resource was added at, above or below them
+     */
+    long getInvalidationCount();
+
+    /**
+     * @return the number of cached user and path pairs
+     */
+    int getSize();
+
+    /**
+     * Drops all entries.
+     */
+    void clear();
+}
@@ -0,0 +1,398 @@
+package com.mysite.core.services;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.function.Predicate;
+
+/**
+ * Page metadata records kept in direct buffers outside the Java heap, so a
+ * large cache adds nothing for the garbage collector to trace or copy.
+ * <p>
+ * Records are appended to a data buffer in the order they are written. A
+ * replaced or removed record is only flagged as dead; when the data buffer
+ * runs full it is compacted in place, dropping the oldest records if that
+ * does not free enough room. The path index is an open addressing table of
+ * {@code (hash, offset)} pairs in a second direct buffer. Not thread safe,
+ * {@link PageMetadataCache} guards it with a read-write lock.
+ */
+final class OffHeapPageStore {
+
+    // record: length, live flag, hash, stored at, last modified, then path, title, description and file reference
+    private static final int LENGTH = 0;
+    private static final int LIVE = 4;
+    private static final int HASH = 5;
+    private static final int STORED_AT = 9;
+    private static final int LAST_MODIFIED = 17;
+    static final int HEADER = 25;
+
+    private static final int SLOT = 8;
+    private static final int EMPTY = 0;
+    private static final int DELETED = -1;
+    private static final double MAX_LOAD = 0.75;
+    private static final int MAX_SLOTS = 1 << 24;
+    // share of the records dropped when compacting alone does not make room
+    private static final double EVICT_SHARE = 0.25;
+
+    private final ByteBuffer data;
+    private final ByteBuffer index;
+    private final int slots;
+    private final int maxEntries;
+
+    private int end;
+    private int size;
+    private int deleted;
+    private long liveBytes;
+    private long evictions;
+    private long compactions;
+
+    OffHeapPageStore(int capacityBytes, int maxEntries) {
+        this.maxEntries = (int) Math.max(1, Math.min(maxEntries, (long) (MAX_SLOTS * MAX_LOAD)));
+        long needed = Math.min(MAX_SLOTS, Math.max(2L, (long) (this.maxEntries / MAX_LOAD) + 1));
+        this.slots = Integer.highestOneBit((int) needed * 2 - 1);
+        this.data = ByteBuffer.allocateDirect(Math.max(HEADER, capacityBytes));
+        this.index = ByteBuffer.allocateDirect(slots * SLOT);
+    }
+
+    /**
+     * @return the record of the path, {@code null} if there is none
+     */
+    PageMetadataCache.PageMetadata get(String path) {
+        byte[] key = path.getBytes(StandardCharsets.UTF_8);
+        int offset = find(key, hash(key));
+        return offset >= 0 ? read(offset) : null;
+    }
+
+    /**
+     * Stores the record of the path, replacing an earlier one.
+     *
+     * @return {@code false} if the record does not fit into the store at all
+     */
+    boolean put(String path, PageMetadataCache.PageMetadata metadata) {
+        byte[] key = path.getBytes(StandardCharsets.UTF_8);
+        byte[][] values = {
+                key, encode(metadata.getTitle()), encode(metadata.getDescription()), encode(metadata.getFileReference())
+        };
+        int length = HEADER;
+        for (byte[] value : values) {
+            length += 4 + (value != null ? value.length : 0);
+        }
+        if (length > data.capacity() / 4) {
+            return false;
+        }
+
+        int hash = hash(key);
+        remove(key, hash);
+        if (end + length > data.capacity() || size >= maxEntries || size + deleted + 1 > slots * MAX_LOAD) {
+            // evict as well when compacting alone would leave the store nearly full again
+            compact(liveBytes + length > data.capacity() - data.capacity() / 4 || size >= maxEntries);
+            while (end + length > data.capacity() || size >= maxEntries) {
+                compact(true);
+            }
+        }
+
+        int offset = end;
+        data.putInt(offset + LENGTH, length);
+        data.put(offset + LIVE, (byte) 1);
+        data.putInt(offset + HASH, hash);
+        data.putLong(offset + STORED_AT, metadata.getStoredAt());
+        data.putLong(offset + LAST_MODIFIED, metadata.getLastModified());
+        int position = offset + HEADER;
+        for (byte[] value : values) {
+            data.putInt(position, value != null ? value.length : -1);
+            position += 4;
+            if (value != null) {
+                for (byte b : value) {
+                    data.put(position++, b);
+                }
+            }
+        }
+        end = offset + length;
+        insert(hash, offset);
+        size++;
+        liveBytes += length;
+        return true;
+    }
+
+    /**
+     * @return whether the path had a record
+     */
+    boolean remove(String path) {
+        byte[] key = path.getBytes(StandardCharsets.UTF_8);
+        return remove(key, hash(key));
+    }
+
+    /**
+     * Removes every record whose path matches, for example all pages of a subtree.
+     *
+     * @return the number of records removed
+     */
+    int removeIf(Predicate<String> pathFilter) {
+        int removed = 0;
+        for (int offset = 0; offset < end; offset += data.getInt(offset + LENGTH)) {
+            if (data.get(offset + LIVE) == 1) {
+                byte[] key = copyString(data, offset + HEADER);
+                if (pathFilter.test(new String(key, StandardCharsets.UTF_8))) {
+                    remove(key, data.getInt(offset + HASH));
+                    removed++;
+                }
+            }
+        }
+        return removed;
+    }
+
+    void clear() {
+        for (int slot = 0; slot < slots; slot++) {
+            index.putLong(slot * SLOT, 0L);
+        }
+        end = 0;
+        size = 0;
+        deleted = 0;
+        liveBytes = 0;
+    }
+
+    /**
+     * Copies the live records, oldest first, in the layout {@link #load} reads.
+     *
+     * @return the number of bytes written to {@code target}
+     */
+    int copyLiveRecords(ByteBuffer target) {
+        int written = 0;
+        for (int offset = 0; offset < end; offset += data.getInt(offset + LENGTH)) {
+            int length = data.getInt(offset + LENGTH);
+            if (data.get(offset + LIVE) == 1 && target.remaining() >= length) {
+                ByteBuffer record = data.duplicate();
+                record.limit(offset + length).position(offset);
+                target.put(record);
+                written += length;
+            }
+        }
+        return written;
+    }
+
+    /**
+     * Appends records previously written by {@link #copyLiveRecords}.
+     *
+     * @return the number of records loaded, stops at the first malformed record or when full
+     */
+    int load(ByteBuffer records) {
+        int loaded = 0;
+        while (records.remaining() >= HEADER) {
+            int start = records.position();
+            int length = records.getInt(start + LENGTH);
+            if (length < HEADER || length > records.remaining() || !isValid(records, start, length)) {
+                break;
+            }
+            if (end + length > data.capacity() || size >= maxEntries || size + deleted + 1 > slots * MAX_LOAD) {
+                break;
+            }
+            byte[] key = copyString(records, start + HEADER);
+            int hash = hash(key);
+            // a later record of the same path wins
+            remove(key, hash);
+            ByteBuffer record = records.duplicate();
+            record.limit(start + length);
+            data.position(end);
+            data.put(record);
+            data.put(end + LIVE, (byte) 1);
+            data.putInt(end + HASH, hash);
+            insert(hash, end);
+            end += length;
+            size++;
+            liveBytes += length;
+            loaded++;
+            records.position(start + length);
+        }
+        return loaded;
+    }
+
+    int size() {
+        return size;
+    }
+
+    long getLiveBytes() {
+        return liveBytes;
+    }
+
+    /**
+     * @return the off-heap memory held by the data buffer and the index
+     */
+    long getAllocatedBytes() {
+        return (long) data.capacity() + index.capacity();
+    }
+
+    long getEvictions() {
+        return evictions;
+    }
+
+    long getCompactions() {
+        return compactions;
+    }
+
+    /**
+     * Moves the live records to the start of the data buffer and rebuilds
+     * the index, dropping the oldest quarter of them if {@code evict} is set.
+     */
+    private void compact(boolean evict) {
+        int drop = evict ? Math.max(1, (int) (size * EVICT_SHARE)) : 0;
+        byte[] buffer = new byte[256];
+        int target = 0;
+        for (int slot = 0; slot < slots; slot++) {
+            index.putLong(slot * SLOT, 0L);
+        }
+        int kept = 0;
+        liveBytes = 0;
+        for (int offset = 0; offset < end; ) {
+            int length = data.getInt(offset + LENGTH);
+            if (data.get(offset + LIVE) == 1) {
+                if (drop > 0) {
+                    drop--;
+                    evictions++;
+                } else {
+                    if (target != offset) {
+                        if (buffer.length < length) {
+                            buffer = new byte[Math.max(length, buffer.length * 2)];
+                        }
+                        // records only move towards the start, so copying through a buffer is safe
+                        for (int i = 0; i < length; i++) {
+                            buffer[i] = data.get(offset + i);
+                        }
+                        for (int i = 0; i < length; i++) {
+                            data.put(target + i, buffer[i]);
+                        }
+                    }
+                    insert(data.getInt(target + HASH), target);
+                    target += length;
+                    kept++;
+                    liveBytes += length;
+                }
+            }
+            offset += length;
+        }
+        end = target;
+        size = kept;
+        deleted = 0;
+        compactions++;
+    }
+
+    private boolean remove(byte[] key, int hash) {
+        int slot = findSlot(key, hash);
+        if (slot < 0) {
+            return false;
+        }
+        int offset = index.getInt(slot * SLOT + 4) - 1;
+        data.put(offset + LIVE, (byte) 0);
+        liveBytes -= data.getInt(offset + LENGTH);
+        index.putInt(slot * SLOT + 4, DELETED);
+        size--;
+        deleted++;
+        return true;
+    }
+
+    private int find(byte[] key, int hash) {
+        int slot = findSlot(key, hash);
+        return slot >= 0 ? index.getInt(slot * SLOT + 4) - 1 : -1;
+    }
+
+    private int findSlot(byte[] key, int hash) {
+        for (int probe = 0, slot = hash & (slots - 1); probe < slots; probe++, slot = (slot + 1) & (slots - 1)) {
+            int stored = index.getInt(slot * SLOT + 4);
+            if (stored == EMPTY) {
+                return -1;
+            }
+            if (stored != DELETED && index.getInt(slot * SLOT) == hash && pathEquals(stored - 1, key)) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    private void insert(int hash, int offset) {
+        for (int slot = hash & (slots - 1); ; slot = (slot + 1) & (slots - 1)) {
+            int stored = index.getInt(slot * SLOT + 4);
+            if (stored == EMPTY || stored == DELETED) {
+                if (stored == DELETED) {
+                    deleted--;
+                }
+                index.putInt(slot * SLOT, hash);
+                // offsets are stored plus one so zero marks an empty slot
+                index.putInt(slot * SLOT + 4, offset + 1);
+                return;
+            }
+        }
+    }
+
+    private boolean pathEquals(int offset, byte[] key) {
+        int position = offset + HEADER;
+        if (data.getInt(position) != key.length) {
+            return false;
+        }
+        position += 4;
+        for (int i = 0; i < key.length; i++) {
+            if (data.get(position + i) != key[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private PageMetadataCache.PageMetadata read(int offset) {
+        int position = offset + HEADER;
+        position += 4 + Math.max(0, data.getInt(position));
+        String title = readString(position);
+        position += 4 + Math.max(0, data.getInt(position));
+        String description = readString(position);
+        position += 4 + Math.max(0, data.getInt(position));
+        String fileReference = readString(position);
+        return new PageMetadataCache.PageMetadata(title, description, data.getLong(offset + LAST_MODIFIED),
+                fileReference, data.getLong(offset + STORED_AT));
+    }
+
+    private String readString(int position) {
+        int length = data.getInt(position);
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = data.get(position + 4 + i);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static byte[] copyString(ByteBuffer buffer, int position) {
+        byte[] bytes = new byte[Math.max(0, buffer.getInt(position))];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = buffer.get(position + 4 + i);
+        }
+        return bytes;
+    }
+
+    /**
+     * @return whether the four strings of a record stay inside its length
+     */
+    private static boolean isValid(ByteBuffer buffer, int start, int length) {
+        int position = start + HEADER;
+        for (int i = 0; i < 4; i++) {
+            if (position + 4 > start + length) {
+                return false;
+            }
+            int value = buffer.getInt(position);
+            position += 4 + Math.max(0, value);
+            if (value < -1 || (i == 0 && value < 0)) {
+                return false;
+            }
+        }
+        return position == start + length;
+    }
+
+    private static byte[] encode(String value) {
+        return value != null ? value.getBytes(StandardCharsets.UTF_8) : null;
+    }
+
+    private static int hash(byte[] key) {
+        int hash = Arrays.hashCode(key);
+        // spread the bits, the table size is a power of two
+        return hash ^ (hash >>> 16);
+    }
+}
@@ -0,0 +1,387 @@
+package com.mysite.core.services;
+
+import com.day.cq.commons.jcr.JcrConstants;
+import com.day.cq.wcm.api.NameConstants;
+import com.mysite.core.listeners.ResourceChangeConsumer;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ValueMap;
+import org.apache.sling.api.resource.observation.ResourceChange;
+import org.osgi.framework.BundleContext;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Deactivate;
+import org.osgi.service.metatype.annotations.AttributeDefinition;
+import org.osgi.service.metatype.annotations.Designate;
+import org.osgi.service.metatype.annotations.ObjectClassDefinition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.NotCompliantMBeanException;
+import javax.management.StandardMBean;
+import java.io.File;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Calendar;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Cache of the page metadata read over and over by the search component and
+ * the author info servlet: title, description, last modified date and file
+ * reference. The records live off-heap in an {@link OffHeapPageStore}, so a
+ * cache covering a large site does not add to garbage collection work.
+ * <p>
+ * Callers read through the cache: on a miss they read the page themselves
+ * and {@link #put} the result. Records are removed when their page changes,
+ * and expire after a maximum age in case a change event was dropped. The
+ * live records are saved to the bundle data area when the component stops
+ * and read back when it starts, so a restarted instance starts with a warm
+ * cache. Only pass pages the current user was able to read; the cache does
+ * not check access itself.
+ */
+@Component(service = { PageMetadataCache.class, PageMetadataCacheMBean.class, ResourceChangeConsumer.class },
+        immediate = true,
+        property = {
+                "jmx.objectname=com.mysite:type=PageMetadataCache"
+        })
+@Designate(ocd = PageMetadataCache.Config.class)
+public class PageMetadataCache extends StandardMBean implements PageMetadataCacheMBean, ResourceChangeConsumer {
+
+    private static final Logger LOG = LoggerFactory.getLogger(PageMetadataCache.class);
+
+    static final String SNAPSHOT_FILE = "page-metadata.bin";
+    private static final int SNAPSHOT_MAGIC = 0x50474d44;
+    private static final int SNAPSHOT_VERSION = 1;
+    private static final int SNAPSHOT_HEADER = 16;
+
+    @ObjectClassDefinition(name = "Page Metadata Cache", description = "Off-heap cache of page titles, descriptions and dates")
+    public @interface Config {
+        @AttributeDefinition(name = "Enabled", description = "Cache page metadata")
+        boolean enabled() default true;
+
+        @AttributeDefinition(name = "Capacity (MB)", description = "Off-heap memory for the records")
+        int capacityMb() default 64;
+
+        @AttributeDefinition(name = "Max Entries", description = "Maximum number of pages cached, sizes the path index")
+        int maxEntries() default 200000;
+
+        @AttributeDefinition(name = "Max Age (s)", description = "Records older than this are read again, 0 keeps them until their page changes")
+        int maxAgeSeconds() default 3600;
+
+        @AttributeDefinition(name = "Snapshot", description = "Save the records at shutdown and read them back at startup")
+        boolean snapshot() default true;
+    }
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+
+    private OffHeapPageStore store;
+    private volatile long maxAgeMillis;
+    private File snapshotFile;
+    private volatile int snapshotEntries;
+    private volatile long rebuildMillis;
+
+    public PageMetadataCache() throws NotCompliantMBeanException {
+        super(PageMetadataCacheMBean.class);
+    }
+
+    @Activate
+    protected void activate(Config config, BundleContext bundleContext) {
+        maxAgeMillis = TimeUnit.SECONDS.toMillis(Math.max(0, config.maxAgeSeconds()));
+        snapshotFile = config.snapshot() ? bundleContext.getDataFile(SNAPSHOT_FILE) : null;
+        if (!config.enabled()) {
+            return;
+        }
+        int capacity = (int) Math.min(Integer.MAX_VALUE, Math.max(1, config.capacityMb()) * 1024L * 1024L);
+        lock.writeLock().lock();
+        try {
+            store = new OffHeapPageStore(capacity, config.maxEntries());
+            if (snapshotFile != null && snapshotFile.isFile()) {
+                loadSnapshot(snapshotFile.toPath());
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Deactivate
+    protected void deactivate() {
+        lock.writeLock().lock();
+        try {
+            if (store != null && snapshotFile != null) {
+                saveSnapshot(snapshotFile.toPath());
+            }
+            // the direct buffers are released once the store is collected
+            store = null;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return the cached metadata of the page, {@code null} if it has to be read
+     */
+    public PageMetadata get(String pagePath) {
+        PageMetadata metadata = null;
+        lock.readLock().lock();
+        try {
+            if (store != null) {
+                metadata = store.get(pagePath);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        if (metadata != null && maxAgeMillis > 0 && System.currentTimeMillis() - metadata.storedAt > maxAgeMillis) {
+            metadata = null;
+        }
+        if (metadata != null) {
+            hits.increment();
+        } else {
+            misses.increment();
+        }
+        return metadata;
+    }
+
+    public void put(String pagePath, PageMetadata metadata) {
+        lock.writeLock().lock();
+        try {
+            if (store != null && !store.put(pagePath, metadata)) {
+                rejected.increment();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void consume(List<ResourceChange> changes) {
+        lock.writeLock().lock();
+        try {
+            if (store == null) {
+                return;
+            }
+            for (ResourceChange change : changes) {
+                String path = change.getPath();
+                if (change.getType() == ResourceChange.ChangeType.REMOVED) {
+                    // a removed or moved page takes its subtree with it
+                    String prefix = path + "/";
+                    invalidations.add(store.removeIf(p -> p.equals(path) || p.startsWith(prefix)));
+                } else if (store.remove(path)) {
+                    invalidations.increment();
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void loadSnapshot(Path file) {
+        long start = System.currentTimeMillis();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer snapshot = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (snapshot.remaining() < SNAPSHOT_HEADER || snapshot.getInt() != SNAPSHOT_MAGIC
+                    || snapshot.getInt() != SNAPSHOT_VERSION) {
+                LOG.warn("Ignoring page metadata snapshot {} of an unknown format", file);
+                return;
+            }
+            long savedAt = snapshot.getLong();
+            snapshotEntries = store.load(snapshot.slice());
+            rebuildMillis = System.currentTimeMillis() - start;
+            LOG.info("Read {} page metadata records saved {}s ago in {}ms", snapshotEntries,
+                    (System.currentTimeMillis() - savedAt) / 1000, rebuildMillis);
+        } catch (IOException e) {
+            LOG.warn("Could not read page metadata snapshot {}", file, e);
+        }
+    }
+
+    private void saveSnapshot(Path file) {
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                MappedByteBuffer snapshot = channel.map(FileChannel.MapMode.READ_WRITE, 0,
+                        SNAPSHOT_HEADER + store.getLiveBytes());
+                snapshot.putInt(SNAPSHOT_MAGIC).putInt(SNAPSHOT_VERSION).putLong(System.currentTimeMillis());
+                store.copyLiveRecords(snapshot);
+                snapshot.force();
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            LOG.info("Saved {} page metadata records to {}", store.size(), file);
+        } catch (IOException e) {
+            LOG.warn("Could not save page metadata snapshot {}", file, e);
+        }
+    }
+
+    @Override
+    public long getHits() {
+        return hits.sum();
+    }
+
+    @Override
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    @Override
+    public double getHitRate() {
+        long hit = hits.sum();
+        long total = hit + misses.sum();
+        return total == 0 ? 0 : (double) hit / total;
+    }
+
+    @Override
+    public int getEntries() {
+        lock.readLock().lock();
+        try {
+            return store != null ? store.size() : 0;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public long getUsedBytes() {
+        lock.readLock().lock();
+        try {
+            return store != null ? store.getLiveBytes() : 0;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public long getAllocatedBytes() {
+        lock.readLock().lock();
+        try {
+            return store != null ? store.getAllocatedBytes() : 0;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public long getEvictions() {
+        lock.readLock().lock();
+        try {
+            return store != null ? store.getEvictions() : 0;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public long getInvalidations() {
+        return invalidations.sum();
+    }
+
+    @Override
+    public long getRejected() {
+        return rejected.sum();
+    }
+
+    @Override
+    public int getSnapshotEntries() {
+        return snapshotEntries;
+    }
+
+    @Override
+    public long getRebuildMillis() {
+        return rebuildMillis;
+    }
+
+    @Override
+    public void clear() {
+        lock.writeLock().lock();
+        try {
+            if (store != null) {
+                store.clear();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+        hits.reset();
+        misses.reset();
+        invalidations.reset();
+        rejected.reset();
+    }
+
+    /**
+     * The metadata of one page. Title and description are taken from the page
+     * content and, when it has none, from the page node itself.
+     */
+    public static final class PageMetadata {
+        private final String title;
+        private final String description;
+        private final long lastModified;
+        private final String fileReference;
+        private final long storedAt;
+
+        /**
+         * @param lastModified milliseconds since the epoch, 0 if unknown
+         */
+        public PageMetadata(String title, String description, long lastModified, String fileReference) {
+            this(title, description, lastModified, fileReference, System.currentTimeMillis());
+        }
+
+        PageMetadata(String title, String description, long lastModified, String fileReference, long storedAt) {
+            this.title = title;
+            this.description = description;
+            this.lastModified = lastModified;
+            this.fileReference = fileReference;
+            this.storedAt = storedAt;
+        }
+
+        /**
+         * Reads the metadata of a page resource.
+         */
+        public static PageMetadata read(Resource page) {
+            ValueMap pageProperties = page.getValueMap();
+            Resource content = page.getChild(JcrConstants.JCR_CONTENT);
+            ValueMap properties = content != null ? content.getValueMap() : ValueMap.EMPTY;
+            Calendar lastModified = properties.get(NameConstants.PN_PAGE_LAST_MOD, Calendar.class);
+            if (lastModified == null) {
+                lastModified = pageProperties.get(JcrConstants.JCR_LASTMODIFIED, Calendar.class);
+            }
+            return new PageMetadata(
+                    firstOf(properties, pageProperties, JcrConstants.JCR_TITLE),
+                    firstOf(properties, pageProperties, JcrConstants.JCR_DESCRIPTION),
+                    lastModified != null ? lastModified.getTimeInMillis() : 0L,
+                    properties.get("fileReference", String.class));
+        }
+
+        private static String firstOf(ValueMap content, ValueMap page, String name) {
+            String value = content.get(name, String.class);
+            return value != null ? value : page.get(name, String.class);
+        }
+
+        public String getTitle() { return title; }
+        public String getDescription() { return description; }
+        public long getLastModified() { return lastModified; }
+        public String getFileReference() { return fileReference; }
+
+        long getStoredAt() { return storedAt; }
+
+        /**
+         * @return the last modified date, {@code null} if unknown
+         */
+        public Calendar getLastModifiedCalendar() {
+            if (lastModified <= 0) {
+                return null;
+            }
+            Calendar calendar = Calendar.getInstance();
+            calendar.setTimeInMillis(lastModified);
+            return calendar;
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package com.mysite.core.services;
+
+/**
+ * JMX view of the {@link PageMetadataCache}.
+ */
+public interface PageMetadataCacheMBean {
+
+    long getHits();
+
+    long getMisses();
+
+    /**
+     * @return share of lookups answered from the cache, between 0 and 1
+     */
+    double getHitRate();
+
+    int getEntries();
+
+    /**
+     * @return bytes of off-heap memory taken by live records
+     */
+    long getUsedBytes();
+
+    /**
+     * @return bytes of off-heap memory reserved for records and the path index
+     */
+    long getAllocatedBytes();
+
+    /**
+     * @return records dropped to make room for new ones
+     */
+    long getEvictions();
+
+    /**
+     * @return records removed because their page changed
+     */
+    long getInvalidations();
+
+    /**
+     * @return records too large to be cached
+     */
+    long getRejected();
+
+    /**
+     * @return records read from the snapshot at activation
+     */
+    int getSnapshotEntries();
+
+    /**
+     * @return how long reading the snapshot at activation took, in milliseconds
+     */
+    long getRebuildMillis();
+
+    /**
+     * Drops all records and clears the counters.
+     */
+    void clear();
+}
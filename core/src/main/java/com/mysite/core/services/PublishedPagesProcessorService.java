@@ -1,6 +1,8 @@
 package com.mysite.core.services;
 
 
+import com.mysite.core.schedulers.JobSettings;
+import com.mysite.core.schedulers.ManagedJob;
 import org.apache.sling.api.resource.ResourceResolver;
 import org.apache.sling.api.resource.ResourceResolverFactory;
 import org.osgi.service.component.annotations.Activate;
@@ -23,13 +25,25 @@ import javax.jcr.query.RowIterator;
 import java.util.Calendar;
 import java.util.HashMap;
 import java.util.Map;
-
-@Component(service = PublishedPagesProcessorService.class, immediate = true)
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Marks published pages as processed. Runs as a {@link ManagedJob}, so a slow
+ * run is never overlapped by the next one, failed runs are retried and, by
+ * default, only the cluster leader processes pages.
+ * <p>
+ * Disabled by default: every run writes {@code processedDate} on the content
+ * of published pages, and the resource change listeners of this bundle treat
+ * those writes as page changes. It is meant to be enabled on author only, with
+ * a config.author configuration.
+ */
+@Component(service = { PublishedPagesProcessorService.class, ManagedJob.class }, immediate = true)
 @Designate(ocd = PublishedPagesProcessorService.Config.class)
-public class PublishedPagesProcessorService implements Runnable {
+public class PublishedPagesProcessorService implements ManagedJob {
 
     private static final Logger LOG = LoggerFactory.getLogger(PublishedPagesProcessorService.class);
     private static final String PROCESSED_DATE_PROPERTY = "processedDate";
+    private static final String JCR_CONTENT = "jcr:content";
   
     @Reference
     public ResourceResolverFactory resourceResolverFactory;
@@ -39,13 +53,22 @@ public class PublishedPagesProcessorService implements Runnable {
     @ObjectClassDefinition(name = "Published Pages Processor Service", description = "Service to process published pages")
     public @interface Config {
         @AttributeDefinition(name = "Enabled", description = "Enable the service")
-        boolean enabled() default true;
+        boolean enabled() default false;
 
         @AttributeDefinition(name = "Cron Expression", description = "Cron expression for scheduling (default: every 2 minutes)")
         String cronExpression() default "0 */2 * * * ?";
 
         @AttributeDefinition(name = "Content Path", description = "Path to search for pages")
         String contentPath() default "/content";
+
+        @AttributeDefinition(name = "Retries", description = "How often a failed run is retried")
+        int retries() default 2;
+
+        @AttributeDefinition(name = "Timeout Minutes", description = "A run taking longer is cancelled")
+        int timeoutMinutes() default 10;
+
+        @AttributeDefinition(name = "Leader Only", description = "Only run on the cluster leader")
+        boolean leaderOnly() default true;
     }
 
     @Activate
@@ -55,7 +78,15 @@ public class PublishedPagesProcessorService implements Runnable {
     }
 
     @Override
-    public void run() {
+    public JobSettings getSettings() {
+        return JobSettings.cron("PublishedPagesProcessor", config.cronExpression())
+                .withRetries(config.retries(), TimeUnit.SECONDS.toMillis(30))
+                .withTimeout(config.timeoutMinutes(), TimeUnit.MINUTES)
+                .withLeaderOnly(config.leaderOnly());
+    }
+
+    @Override
+    public void execute() throws Exception {
         if (!config.enabled()) {
             LOG.debug("Service is disabled");
             return;
@@ -82,8 +113,6 @@ public class PublishedPagesProcessorService implements Runnable {
 
             processPublishedPages(session);
             
-        } catch (Exception e) {
-            LOG.error("Error processing published pages", e);
         } finally {
             if (resourceResolver != null && resourceResolver.isLive()) {
                 resourceResolver.close();
@@ -94,9 +123,9 @@ public class PublishedPagesProcessorService implements Runnable {
     private void processPublishedPages(Session session) throws RepositoryException {
         QueryManager queryManager = session.getWorkspace().getQueryManager();
         
-        // Query to find pages that have been published (have cq:lastReplicated property)
+        // Query to find pages that have been published (have cq:lastReplicated on jcr:content)
         String query = "SELECT * FROM [cq:Page] AS page WHERE ISDESCENDANTNODE(page, '" + 
-                      config.contentPath() + "') AND page.[cq:lastReplicated] IS NOT NULL";
+                      config.contentPath() + "') AND page.[jcr:content/cq:lastReplicated] IS NOT NULL";
         
         Query jcrQuery = queryManager.createQuery(query, Query.JCR_SQL2);
         QueryResult result = jcrQuery.execute();
@@ -106,13 +135,19 @@ public class PublishedPagesProcessorService implements Runnable {
         Calendar currentTime = Calendar.getInstance();
         
         while (rows.hasNext()) {
+            if (Thread.currentThread().isInterrupted()) {
+                // the run timed out, keep what was processed so far
+                LOG.warn("Published pages processing was cancelled after {} pages", processedCount);
+                break;
+            }
             Row row = rows.nextRow();
-            Node pageNode = row.getNode();
+            // cq:Page allows no own properties, the date is kept on jcr:content
+            Node contentNode = row.getNode().getNode(JCR_CONTENT);
             
             try {
                 // Check if the page has been processed recently (within last 2 minutes)
-                if (pageNode.hasProperty(PROCESSED_DATE_PROPERTY)) {
-                    Calendar lastProcessed = pageNode.getProperty(PROCESSED_DATE_PROPERTY).getDate();
+                if (contentNode.hasProperty(PROCESSED_DATE_PROPERTY)) {
+                    Calendar lastProcessed = contentNode.getProperty(PROCESSED_DATE_PROPERTY).getDate();
                     long timeDiff = currentTime.getTimeInMillis() - lastProcessed.getTimeInMillis();
                     
                     // Skip if processed within last 2 minutes
@@ -122,13 +157,13 @@ public class PublishedPagesProcessorService implements Runnable {
                 }
                 
                 // Set the processedDate property
-                pageNode.setProperty(PROCESSED_DATE_PROPERTY, currentTime);
+                contentNode.setProperty(PROCESSED_DATE_PROPERTY, currentTime);
                 processedCount++;
                 
-                LOG.debug("Updated processedDate for page: {}", pageNode.getPath());
+                LOG.debug("Updated processedDate for page: {}", contentNode.getPath());
                 
             } catch (RepositoryException e) {
-                LOG.error("Error processing page: {}", pageNode.getPath(), e);
+                LOG.error("Error processing page: {}", contentNode.getPath(), e);
             }
         }
         
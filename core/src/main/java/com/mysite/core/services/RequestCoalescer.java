@@ -0,0 +1,157 @@
+package com.mysite.core.services;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.NotCompliantMBeanException;
+import javax.management.StandardMBean;
+
+import org.apache.sling.api.resource.ResourceResolver;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Modified;
+import org.osgi.service.metatype.annotations.AttributeDefinition;
+import org.osgi.service.metatype.annotations.Designate;
+import org.osgi.service.metatype.annotations.ObjectClassDefinition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Single-flight coalescing of identical expensive computations. The first
+ * caller for a key runs the computation; callers arriving with the same key
+ * while it runs wait for it and share its result, or its exception. Nothing
+ * is cached: the key is released as soon as the computation finishes.
+ * Results are shared between requests, so they must be plain values that do
+ * not hold on to the leader's resource resolver, and keys should be built
+ * with {@link #key} so they are scoped to the user the result was read as.
+ * Key parts are only trimmed, since repository paths and query terms are
+ * case sensitive.
+ */
+@Component(service = { RequestCoalescer.class, RequestCoalescerMBean.class },
+        property = {
+                "jmx.objectname=com.mysite:type=RequestCoalescer"
+        })
+@Designate(ocd = RequestCoalescer.Config.class)
+public class RequestCoalescer extends StandardMBean implements RequestCoalescerMBean {
+
+    private static final Logger LOG = LoggerFactory.getLogger(RequestCoalescer.class);
+
+    @ObjectClassDefinition(name = "Request Coalescer", description = "Shares the result of identical concurrent computations")
+    public @interface Config {
+        @AttributeDefinition(name = "Enabled", description = "Coalesce identical concurrent computations")
+        boolean enabled() default true;
+
+        @AttributeDefinition(name = "Wait Timeout (ms)",
+                description = "How long a caller waits for a running computation before computing on its own")
+        long waitTimeoutMs() default 5000;
+    }
+
+    private final ConcurrentMap<String, CompletableFuture<Object>> inFlight = new ConcurrentHashMap<>();
+    private final LongAdder leaders = new LongAdder();
+    private final LongAdder followers = new LongAdder();
+
+    private volatile boolean enabled = true;
+    private volatile long waitTimeoutMs = 5000;
+
+    public RequestCoalescer() throws NotCompliantMBeanException {
+        super(RequestCoalescerMBean.class);
+    }
+
+    @Activate
+    @Modified
+    protected void activate(Config config) {
+        enabled = config.enabled();
+        waitTimeoutMs = Math.max(0, config.waitTimeoutMs());
+    }
+
+    /**
+     * Builds a coalescing key from a kind of computation, the user it runs as
+     * and its normalized parameters.
+     */
+    public static String key(String kind, ResourceResolver resolver, String... parts) {
+        StringBuilder key = new StringBuilder(kind).append('|')
+                .append(resolver != null ? resolver.getUserID() : null);
+        for (String part : parts) {
+            key.append('|').append(part != null ? part.trim() : "");
+        }
+        return key.toString();
+    }
+
+    /**
+     * Runs {@code loader} unless an identical computation is already running,
+     * in which case its result is returned instead.
+     *
+     * @throws Exception the exception thrown by whichever call ran the computation
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T execute(String key, Callable<T> loader) throws Exception {
+        if (!enabled) {
+            return loader.call();
+        }
+        CompletableFuture<Object> running = inFlight.get(key);
+        if (running == null) {
+            CompletableFuture<Object> own = new CompletableFuture<>();
+            running = inFlight.putIfAbsent(key, own);
+            if (running == null) {
+                return (T) lead(key, own, loader);
+            }
+        }
+        followers.increment();
+        try {
+            return (T) running.get(waitTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            LOG.debug("Gave up waiting for {} after {}ms", key, waitTimeoutMs);
+            return loader.call();
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+        }
+    }
+
+    private Object lead(String key, CompletableFuture<Object> own, Callable<?> loader) throws Exception {
+        leaders.increment();
+        try {
+            Object result = loader.call();
+            own.complete(result);
+            return result;
+        } catch (Exception | Error e) {
+            own.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, own);
+        }
+    }
+
+    @Override
+    public long getLeaders() {
+        return leaders.sum();
+    }
+
+    @Override
+    public long getFollowers() {
+        return followers.sum();
+    }
+
+    @Override
+    public double getDeduplicationRatio() {
+        long shared = followers.sum();
+        long total = leaders.sum() + shared;
+        return total == 0 ? 0 : (double) shared / total;
+    }
+
+    @Override
+    public int getInFlight() {
+        return inFlight.size();
+    }
+
+    @Override
+    public void reset() {
+        leaders.reset();
+        followers.reset();
+    }
+}
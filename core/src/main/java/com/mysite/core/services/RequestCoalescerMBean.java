@@ -0,0 +1,32 @@
+package com.mysite.core.services;
+
+/**
+ * JMX view of the deduplication done by the {@link RequestCoalescer}.
+ */
+public interface RequestCoalescerMBean {
+
+    /**
+     * @return computations actually run
+     */
+    long getLeaders();
+
+    /**
+     * @return calls that shared the result of a computation already running
+     */
+    long getFollowers();
+
+    /**
+     * @return share of calls answered by a computation already running, between 0 and 1
+     */
+    double getDeduplicationRatio();
+
+    /**
+     * @return keys currently being computed
+     */
+    int getInFlight();
+
+    /**
+     * Clears the counters.
+     */
+    void reset();
+}
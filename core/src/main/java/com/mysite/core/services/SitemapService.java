@@ -0,0 +1,472 @@
+package com.mysite.core.services;
+
+import com.day.cq.commons.jcr.JcrConstants;
+import com.day.cq.wcm.api.NameConstants;
+import com.mysite.core.listeners.ResourceChangeConsumer;
+import com.mysite.core.schedulers.JobSettings;
+import com.mysite.core.schedulers.ManagedJob;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.resource.ResourceResolverFactory;
+import org.apache.sling.api.resource.observation.ResourceChange;
+import org.osgi.framework.BundleContext;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Reference;
+import org.osgi.service.metatype.annotations.AttributeDefinition;
+import org.osgi.service.metatype.annotations.Designate;
+import org.osgi.service.metatype.annotations.ObjectClassDefinition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.xml.stream.XMLStreamException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sitemaps of one site, split into sections: the root page, and every child
+ * page of the root with all pages below it. Pages are read depth-first from a
+ * stack of child iterators, like the {@code PageExporter}, and written one by
+ * one through a {@link SitemapWriter}, so memory use depends on the depth of
+ * the tree and not on the size of the site. Every section gets
+ * its own files of at most {@link Config#maxUrlsPerFile()} URLs, listed by a
+ * sitemap index.
+ * <p>
+ * As a {@link ManagedJob} the files are generated into a directory; after the
+ * first run only sections with changed pages are regenerated. Without a
+ * generated file the {@code SitemapServlet} streams the sitemap straight to
+ * the response instead.
+ */
+@Component(service = { SitemapService.class, ManagedJob.class, ResourceChangeConsumer.class }, immediate = true)
+@Designate(ocd = SitemapService.Config.class)
+public class SitemapService implements ManagedJob, ResourceChangeConsumer {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SitemapService.class);
+    private static final String SUBSERVICE = "sitemap";
+
+    public static final String INDEX_FILE = "sitemap-index.xml";
+    static final String SELECTOR = "sitemap";
+    static final String EXTENSION = ".xml";
+
+    @ObjectClassDefinition(name = "Sitemap Service", description = "Streams and pre-generates sitemaps of the site")
+    public @interface Config {
+        @AttributeDefinition(name = "Enabled", description = "Pre-generate the sitemap files on schedule")
+        boolean enabled() default true;
+
+        @AttributeDefinition(name = "Root Path", description = "Root page of the site")
+        String rootPath() default "/content/mysite/us/en";
+
+        @AttributeDefinition(name = "Base URL", description = "Scheme and host of the URLs in the sitemaps")
+        String baseUrl() default "https://www.mysite.com";
+
+        @AttributeDefinition(name = "Max URLs Per File", description = "The sitemap protocol allows 50000")
+        int maxUrlsPerFile() default 50000;
+
+        @AttributeDefinition(name = "Cron Expression", description = "When changed sections are regenerated")
+        String cronExpression() default "0 */15 * * * ?";
+
+        @AttributeDefinition(name = "Directory", description = "Where the files are generated, empty for the bundle data area")
+        String directory() default "";
+    }
+
+    /**
+     * Called for every page of a section in repository order.
+     */
+    @FunctionalInterface
+    interface PageVisitor {
+        void visit(String path, Instant lastModified) throws Exception;
+    }
+
+    @Reference
+    public ResourceResolverFactory resourceResolverFactory;
+
+    private final Set<String> changedSections = ConcurrentHashMap.newKeySet();
+
+    private volatile boolean regenerateAll = true;
+    private Config config;
+    private String rootPath;
+    private String baseUrl;
+    private Path directory;
+
+    @Activate
+    protected void activate(Config config, BundleContext bundleContext) throws IOException {
+        this.config = config;
+        this.rootPath = config.rootPath();
+        this.baseUrl = config.baseUrl().endsWith("/")
+                ? config.baseUrl().substring(0, config.baseUrl().length() - 1) : config.baseUrl();
+        this.directory = config.directory().isEmpty()
+                ? bundleContext.getDataFile("sitemaps").toPath() : Paths.get(config.directory());
+        Files.createDirectories(directory);
+        regenerateAll = true;
+    }
+
+    @Override
+    public JobSettings getSettings() {
+        // every instance serves its own files, so every instance generates them
+        return JobSettings.cron("SitemapGenerator", config.cronExpression())
+                .withTimeout(1, TimeUnit.HOURS)
+                .withLeaderOnly(false);
+    }
+
+    @Override
+    public void consume(List<ResourceChange> changes) {
+        for (ResourceChange change : changes) {
+            String section = sectionOf(change.getPath());
+            if (section != null) {
+                changedSections.add(section);
+            }
+        }
+    }
+
+    /**
+     * Regenerates the files of all sections with changes since the last run,
+     * or of every section on the first run.
+     */
+    @Override
+    public void execute() throws Exception {
+        if (!config.enabled()) {
+            return;
+        }
+        boolean all = regenerateAll;
+        Set<String> changed = new HashSet<>(changedSections);
+        changedSections.removeAll(changed);
+
+        long start = System.currentTimeMillis();
+        try (ResourceResolver resolver = getServiceResolver()) {
+            List<Section> sections = getSections(resolver);
+            Set<String> names = new HashSet<>();
+            int regenerated = 0;
+            for (Section section : sections) {
+                names.add(section.name);
+                if (all || changed.contains(section.name) || !Files.exists(directory.resolve(partFile(section.name, 0)))) {
+                    writeSectionFiles(resolver, section);
+                    regenerated++;
+                }
+            }
+            boolean removed = deleteStaleFiles(names);
+            if (regenerated > 0 || removed || !Files.exists(directory.resolve(INDEX_FILE))) {
+                writeIndexFile(resolver, sections);
+            }
+            regenerateAll = false;
+            LOG.info("Regenerated sitemaps of {} of {} sections in {}ms", regenerated, sections.size(),
+                    System.currentTimeMillis() - start);
+        } catch (Exception e) {
+            // retried with the next run
+            changedSections.addAll(changed);
+            throw e;
+        }
+    }
+
+    private void writeSectionFiles(ResourceResolver resolver, Section section) throws Exception {
+        List<Path> written = new ArrayList<>();
+        OutputStream[] out = new OutputStream[1];
+        SitemapWriter[] writer = new SitemapWriter[1];
+        try {
+            visitPages(resolver, section, (path, lastModified) -> {
+                if (writer[0] == null || writer[0].getEntries() >= config.maxUrlsPerFile()) {
+                    closePart(writer[0], out[0]);
+                    Path part = directory.resolve(partFile(section.name, written.size()) + ".tmp");
+                    written.add(part);
+                    out[0] = Files.newOutputStream(part);
+                    writer[0] = SitemapWriter.urlset(out[0]);
+                }
+                writer[0].write(externalize(resolver, path) + ".html", lastModified);
+            });
+            if (writer[0] == null) {
+                // a section without pages still gets an empty file, so it is not regenerated every run
+                Path part = directory.resolve(partFile(section.name, 0) + ".tmp");
+                written.add(part);
+                out[0] = Files.newOutputStream(part);
+                writer[0] = SitemapWriter.urlset(out[0]);
+            }
+            closePart(writer[0], out[0]);
+            writer[0] = null;
+        } catch (Exception e) {
+            closePart(writer[0], out[0]);
+            for (Path part : written) {
+                Files.deleteIfExists(part);
+            }
+            throw e;
+        }
+
+        // replace the files only once the whole section is written
+        for (int i = 0; i < written.size(); i++) {
+            Files.move(written.get(i), directory.resolve(partFile(section.name, i)),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        for (int i = written.size(); Files.deleteIfExists(directory.resolve(partFile(section.name, i))); i++) {
+            // parts the section no longer needs
+        }
+    }
+
+    private static void closePart(SitemapWriter writer, OutputStream out) throws XMLStreamException, IOException {
+        if (writer != null) {
+            writer.close();
+        }
+        if (out != null) {
+            out.close();
+        }
+    }
+
+    private void writeIndexFile(ResourceResolver resolver, List<Section> sections) throws Exception {
+        Path temp = directory.resolve(INDEX_FILE + ".tmp");
+        try (OutputStream out = Files.newOutputStream(temp)) {
+            SitemapWriter index = SitemapWriter.index(out);
+            String sitemapBase = externalize(resolver, rootPath);
+            for (Section section : sections) {
+                for (int part = 0; ; part++) {
+                    Path file = directory.resolve(partFile(section.name, part));
+                    if (!Files.exists(file)) {
+                        break;
+                    }
+                    index.write(sitemapUrl(sitemapBase, section.name, part),
+                            Files.getLastModifiedTime(file).toInstant());
+                }
+            }
+            index.close();
+        }
+        Files.move(temp, directory.resolve(INDEX_FILE),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private boolean deleteStaleFiles(Set<String> sectionNames) throws IOException {
+        boolean deleted = false;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "sitemap-*" + EXTENSION)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                if (INDEX_FILE.equals(name)) {
+                    continue;
+                }
+                String section = name.substring("sitemap-".length(), name.lastIndexOf('-'));
+                if (!sectionNames.contains(section)) {
+                    Files.delete(file);
+                    deleted = true;
+                }
+            }
+        }
+        return deleted;
+    }
+
+    /**
+     * @return the generated file with the given name, {@code null} if there is none
+     */
+    public Path getFile(String fileName) {
+        Path file = directory != null ? directory.resolve(fileName).normalize() : null;
+        return file != null && file.getParent().equals(directory) && Files.isRegularFile(file) ? file : null;
+    }
+
+    /**
+     * Streams the sitemap index of all sections. Without generated files the
+     * pages of every section are counted to know its number of files.
+     */
+    public void writeIndex(ResourceResolver resolver, OutputStream out) throws Exception {
+        SitemapWriter index = SitemapWriter.index(out);
+        String sitemapBase = externalize(resolver, rootPath);
+        for (Section section : getSections(resolver)) {
+            long[] count = new long[1];
+            visitPages(resolver, section, (path, lastModified) -> count[0]++);
+            long parts = Math.max(1, (count[0] + config.maxUrlsPerFile() - 1) / config.maxUrlsPerFile());
+            for (int part = 0; part < parts; part++) {
+                index.write(sitemapUrl(sitemapBase, section.name, part), null);
+            }
+        }
+        index.close();
+    }
+
+    /**
+     * Streams one sitemap file of a section.
+     *
+     * @return {@code false} if there is no such section
+     */
+    public boolean writeSection(ResourceResolver resolver, String sectionName, int part, OutputStream out)
+            throws Exception {
+        Section section = null;
+        for (Section candidate : getSections(resolver)) {
+            if (candidate.name.equals(sectionName)) {
+                section = candidate;
+            }
+        }
+        if (section == null || part < 0) {
+            return false;
+        }
+        long first = (long) part * config.maxUrlsPerFile();
+        long last = first + config.maxUrlsPerFile();
+        long[] index = new long[1];
+        SitemapWriter writer = SitemapWriter.urlset(out);
+        visitPages(resolver, section, (path, lastModified) -> {
+            if (index[0] >= first && index[0] < last) {
+                writer.write(externalize(resolver, path) + ".html", lastModified);
+            }
+            index[0]++;
+        });
+        writer.close();
+        return true;
+    }
+
+    /**
+     * Visits the section page and, for a deep section, every page below it in
+     * depth-first repository order, which is the same on every visit as long
+     * as the pages do not change.
+     */
+    void visitPages(ResourceResolver resolver, Section section, PageVisitor visitor) throws Exception {
+        visitor.visit(section.path, lastModified(resolver, section.path));
+        Resource sectionPage = section.deep ? resolver.getResource(section.path) : null;
+        if (sectionPage == null) {
+            return;
+        }
+        Deque<Iterator<Resource>> stack = new ArrayDeque<>();
+        stack.push(sectionPage.listChildren());
+        while (!stack.isEmpty()) {
+            Iterator<Resource> children = stack.peek();
+            if (!children.hasNext()) {
+                stack.pop();
+                continue;
+            }
+            Resource page = children.next();
+            if (!NameConstants.NT_PAGE.equals(page.getResourceType())) {
+                continue;
+            }
+            visitor.visit(page.getPath(), lastModified(resolver, page.getPath()));
+            stack.push(page.listChildren());
+        }
+    }
+
+    private static Instant lastModified(ResourceResolver resolver, String pagePath) {
+        Resource content = resolver.getResource(pagePath + "/" + JcrConstants.JCR_CONTENT);
+        if (content == null) {
+            return null;
+        }
+        Calendar modified = content.getValueMap().get(NameConstants.PN_PAGE_LAST_MOD, Calendar.class);
+        if (modified == null) {
+            modified = content.getValueMap().get(JcrConstants.JCR_LASTMODIFIED, Calendar.class);
+        }
+        return modified != null ? modified.toInstant() : null;
+    }
+
+    /**
+     * @return the root page and every child page of the root, in repository
+     *         order; a child page named like the root page is left out, as its
+     *         files would overwrite those of the root
+     */
+    List<Section> getSections(ResourceResolver resolver) {
+        List<Section> sections = new ArrayList<>();
+        Resource root = resolver.getResource(rootPath);
+        if (root == null) {
+            return sections;
+        }
+        String rootName = sectionName(root.getName());
+        sections.add(new Section(rootName, rootPath, false));
+        for (Resource child : root.getChildren()) {
+            if (!NameConstants.NT_PAGE.equals(child.getResourceType())) {
+                continue;
+            }
+            String name = sectionName(child.getName());
+            if (name.equals(rootName)) {
+                LOG.warn("Leaving {} out of the sitemaps, its section name {} is the root page's", child.getPath(), name);
+                continue;
+            }
+            sections.add(new Section(name, child.getPath(), true));
+        }
+        return sections;
+    }
+
+    /**
+     * @return the name of the section containing the path, {@code null} if it is outside the site
+     */
+    String sectionOf(String path) {
+        if (path.equals(rootPath)) {
+            return sectionName(rootPath.substring(rootPath.lastIndexOf('/') + 1));
+        }
+        if (!path.startsWith(rootPath + "/")) {
+            return null;
+        }
+        String relative = path.substring(rootPath.length() + 1);
+        int slash = relative.indexOf('/');
+        String child = slash >= 0 ? relative.substring(0, slash) : relative;
+        return JcrConstants.JCR_CONTENT.equals(child)
+                ? sectionName(rootPath.substring(rootPath.lastIndexOf('/') + 1))
+                : sectionName(child);
+    }
+
+    /**
+     * @return the page path for {@code page.sitemap.xml} requests of the site
+     */
+    public String getRootPath() {
+        return rootPath;
+    }
+
+    /**
+     * Encodes a page name for use in file names and selectors: letters, digits
+     * and {@code -} are kept, every other byte of the UTF-8 name, {@code _}
+     * included, is written as {@code _} and two hex digits. Distinct page names
+     * so get distinct section names.
+     */
+    static String sectionName(String pageName) {
+        StringBuilder name = new StringBuilder(pageName.length());
+        for (byte b : pageName.getBytes(StandardCharsets.UTF_8)) {
+            char c = (char) (b & 0xff);
+            if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '-') {
+                name.append(c);
+            } else {
+                name.append('_').append(Character.forDigit(c >> 4, 16)).append(Character.forDigit(c & 0xf, 16));
+            }
+        }
+        return name.toString();
+    }
+
+    /**
+     * @return the file name of one sitemap file of a section
+     */
+    public static String partFile(String section, int part) {
+        return "sitemap-" + section + "-" + part + EXTENSION;
+    }
+
+    private static String sitemapUrl(String sitemapBase, String section, int part) {
+        return sitemapBase + "." + SELECTOR + "." + section + "-" + part + EXTENSION;
+    }
+
+    private String externalize(ResourceResolver resolver, String path) {
+        String mapped = resolver.map(path);
+        return mapped.startsWith("http://") || mapped.startsWith("https://") ? mapped : baseUrl + mapped;
+    }
+
+    private ResourceResolver getServiceResolver() throws Exception {
+        Map<String, Object> authInfo = new HashMap<>();
+        authInfo.put(ResourceResolverFactory.SUBSERVICE, SUBSERVICE);
+        return resourceResolverFactory.getServiceResourceResolver(authInfo);
+    }
+
+    /**
+     * A part of the site with its own sitemap files.
+     */
+    static final class Section {
+        final String name;
+        final String path;
+        final boolean deep;
+
+        Section(String name, String path, boolean deep) {
+            this.name = name;
+            this.path = path;
+            this.deep = deep;
+        }
+    }
+}
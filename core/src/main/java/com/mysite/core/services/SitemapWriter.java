@@ -0,0 +1,75 @@
+package com.mysite.core.services;
+
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+import java.io.OutputStream;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+
+/**
+ * Writes one {@code urlset} or {@code sitemapindex} document entry by entry
+ * through a StAX writer, so nothing but the current entry is held in memory.
+ * The writer does not close the target stream.
+ */
+final class SitemapWriter implements AutoCloseable {
+
+    static final String NAMESPACE = "http://www.sitemaps.org/schemas/sitemap/0.9";
+
+    private static final XMLOutputFactory OUTPUT_FACTORY = XMLOutputFactory.newFactory();
+
+    private final XMLStreamWriter xml;
+    private final String entryElement;
+    private int entries;
+
+    private SitemapWriter(OutputStream out, String rootElement, String entryElement) throws XMLStreamException {
+        this.xml = OUTPUT_FACTORY.createXMLStreamWriter(out, "UTF-8");
+        this.entryElement = entryElement;
+        xml.writeStartDocument("UTF-8", "1.0");
+        xml.writeStartElement(rootElement);
+        xml.writeDefaultNamespace(NAMESPACE);
+    }
+
+    /**
+     * Starts a sitemap of page URLs.
+     */
+    static SitemapWriter urlset(OutputStream out) throws XMLStreamException {
+        return new SitemapWriter(out, "urlset", "url");
+    }
+
+    /**
+     * Starts a sitemap index listing sitemap files.
+     */
+    static SitemapWriter index(OutputStream out) throws XMLStreamException {
+        return new SitemapWriter(out, "sitemapindex", "sitemap");
+    }
+
+    /**
+     * @param lastModified may be {@code null}
+     */
+    void write(String loc, Instant lastModified) throws XMLStreamException {
+        xml.writeStartElement(entryElement);
+        xml.writeStartElement("loc");
+        xml.writeCharacters(loc);
+        xml.writeEndElement();
+        if (lastModified != null) {
+            xml.writeStartElement("lastmod");
+            xml.writeCharacters(lastModified.truncatedTo(ChronoUnit.SECONDS).toString());
+            xml.writeEndElement();
+        }
+        xml.writeEndElement();
+        entries++;
+    }
+
+    int getEntries() {
+        return entries;
+    }
+
+    @Override
+    public void close() throws XMLStreamException {
+        xml.writeEndElement();
+        xml.writeEndDocument();
+        xml.flush();
+        xml.close();
+    }
+}
@@ -0,0 +1,86 @@
+package com.mysite.core.services;
+
+import org.apache.felix.hc.api.HealthCheck;
+import org.apache.felix.hc.api.Result;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Reference;
+import org.osgi.service.component.annotations.ReferenceCardinality;
+import org.osgi.service.component.annotations.ReferencePolicyOption;
+import org.osgi.service.metatype.annotations.AttributeDefinition;
+import org.osgi.service.metatype.annotations.Designate;
+import org.osgi.service.metatype.annotations.ObjectClassDefinition;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Readiness of this instance for traffic: temporarily unavailable until the
+ * {@link WarmupService} is complete and, if deployed, the {@link AuthorPageIndex}
+ * is built. The index is waited for at most the configured time; an index
+ * that takes longer, failed or is not built at all is reported as a warning,
+ * since the servlet falls back to querying. Tagged {@code systemready} so the
+ * load balancer only routes requests to the instance once it is warm.
+ */
+@Component(service = HealthCheck.class,
+        property = {
+                HealthCheck.NAME + "=My Site Warm-up",
+                HealthCheck.TAGS + "=systemready",
+                HealthCheck.TAGS + "=mysite"
+        })
+@Designate(ocd = WarmupHealthCheck.Config.class)
+public class WarmupHealthCheck implements HealthCheck {
+
+    @ObjectClassDefinition(name = "My Site Warm-up Health Check",
+            description = "Readiness of the instance once warm-up and the author page index are done")
+    public @interface Config {
+        @AttributeDefinition(name = "Max Index Wait (s)",
+                description = "The instance reports ready after this time even if the author page index is still building")
+        int maxIndexWaitSeconds() default 300;
+    }
+
+    @Reference
+    public WarmupService warmupService;
+
+    @Reference(cardinality = ReferenceCardinality.OPTIONAL, policyOption = ReferencePolicyOption.GREEDY)
+    private volatile AuthorPageIndex authorPageIndex;
+
+    private volatile long maxIndexWaitMillis = TimeUnit.SECONDS.toMillis(300);
+
+    @Activate
+    protected void activate(Config config) {
+        maxIndexWaitMillis = TimeUnit.SECONDS.toMillis(Math.max(0, config.maxIndexWaitSeconds()));
+    }
+
+    @Override
+    public Result execute() {
+        WarmupService warmup = warmupService;
+        if (!warmup.isComplete()) {
+            return new Result(Result.Status.TEMPORARILY_UNAVAILABLE, String.format(
+                    "Warm-up %s for %dms, %d URLs rendered, %d queries", warmup.getState(),
+                    warmup.getDurationMillis(), warmup.getUrlsRendered(), warmup.getQueriesRun()));
+        }
+        String indexWarning = null;
+        AuthorPageIndex index = authorPageIndex;
+        if (index != null) {
+            AuthorPageIndex.State state = index.getState();
+            if (state == AuthorPageIndex.State.BUILDING) {
+                long building = System.currentTimeMillis() - index.getBuildStarted();
+                if (building < maxIndexWaitMillis) {
+                    return new Result(Result.Status.TEMPORARILY_UNAVAILABLE,
+                            String.format("Author page index building for %dms", building));
+                }
+                indexWarning = String.format("author page index still building after %dms", building);
+            } else if (state != AuthorPageIndex.State.READY) {
+                indexWarning = "author page index is " + state;
+            }
+        }
+        String summary = String.format("Warm-up %s in %dms, %d URLs rendered, %d failed, %d queries",
+                warmup.getState(), warmup.getDurationMillis(), warmup.getUrlsRendered(),
+                warmup.getUrlsFailed(), warmup.getQueriesRun());
+        if (indexWarning != null) {
+            return new Result(Result.Status.WARN, summary + ", " + indexWarning);
+        }
+        return new Result(warmup.getState() == WarmupService.State.TIMED_OUT ? Result.Status.WARN : Result.Status.OK,
+                summary);
+    }
+}
@@ -0,0 +1,323 @@
+package com.mysite.core.services;
+
+import com.day.cq.contentsync.handler.util.RequestResponseFactory;
+import com.day.cq.wcm.api.WCMMode;
+import com.mysite.core.filters.RepositoryAccountingStats;
+import com.mysite.core.models.SearchComponent;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.resource.ResourceResolverFactory;
+import org.apache.sling.engine.SlingRequestProcessor;
+import org.osgi.framework.BundleContext;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Deactivate;
+import org.osgi.service.component.annotations.Reference;
+import org.osgi.service.component.annotations.ReferenceCardinality;
+import org.osgi.service.component.annotations.ReferencePolicyOption;
+import org.osgi.service.metatype.annotations.AttributeDefinition;
+import org.osgi.service.metatype.annotations.Designate;
+import org.osgi.service.metatype.annotations.ObjectClassDefinition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.jcr.Session;
+import javax.jcr.query.Query;
+import javax.jcr.query.RowIterator;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+/**
+ * Warms up a freshly started instance before it takes traffic. At activation a
+ * background thread renders the configured URLs and the most requested URLs of
+ * the previous run through the Sling request processor, and runs the search
+ * and configured queries, which fills the Oak caches, the script and model
+ * caches and the JIT. {@link WarmupHealthCheck} reports the instance as not
+ * ready until the warm-up finished or ran out of time.
+ * <p>
+ * The recent URLs are the most expensive URLs of the {@link RepositoryAccountingStats},
+ * saved to the bundle data area when the instance shuts down.
+ */
+@Component(service = WarmupService.class, immediate = true)
+@Designate(ocd = WarmupService.Config.class)
+public class WarmupService {
+
+    private static final Logger LOG = LoggerFactory.getLogger(WarmupService.class);
+    private static final String SUBSERVICE = "warmup";
+    static final String RECENT_URLS_FILE = "warmup-urls.txt";
+
+    public enum State { PENDING, RUNNING, DONE, TIMED_OUT, DISABLED }
+
+    @ObjectClassDefinition(name = "Warm-up Service", description = "Primes caches before the instance reports ready")
+    public @interface Config {
+        @AttributeDefinition(name = "Enabled", description = "Warm up at activation; when disabled the instance is ready at once")
+        boolean enabled() default true;
+
+        @AttributeDefinition(name = "URLs", description = "Paths rendered during warm-up, may have a query string")
+        String[] urls() default { "/content/mysite/us/en.html" };
+
+        @AttributeDefinition(name = "Recent URLs", description = "Number of most requested URLs saved at shutdown and rendered at the next start, 0 disables")
+        int recentUrls() default 20;
+
+        @AttributeDefinition(name = "Passes", description = "How often every URL is rendered")
+        int passes() default 3;
+
+        @AttributeDefinition(name = "Search Terms", description = "Terms searched like the search component does")
+        String[] searchTerms() default { "page" };
+
+        @AttributeDefinition(name = "Queries", description = "Further JCR-SQL2 queries to run, for example for author profiles")
+        String[] queries() default {
+                "SELECT * FROM [nt:unstructured] AS profile WHERE ISDESCENDANTNODE(profile, '/home/users') AND NAME(profile) = 'profile'"
+        };
+
+        @AttributeDefinition(name = "Query Limit", description = "Rows read per query")
+        int queryLimit() default 500;
+
+        @AttributeDefinition(name = "Max Duration (s)", description = "The instance reports ready after this time even if the warm-up is not finished")
+        int maxDurationSeconds() default 300;
+    }
+
+    @Reference
+    public ResourceResolverFactory resourceResolverFactory;
+
+    @Reference
+    public SlingRequestProcessor requestProcessor;
+
+    @Reference
+    public RequestResponseFactory requestResponseFactory;
+
+    @Reference(cardinality = ReferenceCardinality.OPTIONAL, policyOption = ReferencePolicyOption.GREEDY)
+    private volatile RepositoryAccountingStats accountingStats;
+
+    private final AtomicInteger urlsRendered = new AtomicInteger();
+    private final AtomicInteger urlsFailed = new AtomicInteger();
+    private final AtomicInteger queriesRun = new AtomicInteger();
+
+    private volatile State state = State.PENDING;
+    private volatile long startedAt;
+    private volatile long finishedAt;
+    private volatile long deadline;
+    private Config config;
+    private File recentUrlsFile;
+    private ExecutorService executor;
+
+    @Activate
+    protected void activate(Config config, BundleContext bundleContext) {
+        this.config = config;
+        this.recentUrlsFile = bundleContext.getDataFile(RECENT_URLS_FILE);
+        if (!config.enabled()) {
+            state = State.DISABLED;
+            return;
+        }
+        startedAt = System.currentTimeMillis();
+        deadline = startedAt + TimeUnit.SECONDS.toMillis(Math.max(1, config.maxDurationSeconds()));
+        executor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "mysite-warmup");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.submit(this::warmUp);
+    }
+
+    @Deactivate
+    protected void deactivate() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+        saveRecentUrls();
+    }
+
+    void warmUp() {
+        state = State.RUNNING;
+        List<String> urls = getUrls();
+        LOG.info("Warming up with {} URLs, {} search terms and {} queries", urls.size(),
+                config.searchTerms().length, config.queries().length);
+
+        Map<String, Object> authInfo = new HashMap<>();
+        authInfo.put(ResourceResolverFactory.SUBSERVICE, SUBSERVICE);
+        try (ResourceResolver resolver = resourceResolverFactory.getServiceResourceResolver(authInfo)) {
+            List<String> queries = new ArrayList<>();
+            for (String term : config.searchTerms()) {
+                if (term != null && !term.trim().isEmpty()) {
+                    queries.add(SearchComponent.buildQuery(term.trim()));
+                }
+            }
+            Collections.addAll(queries, config.queries());
+            for (String query : queries) {
+                if (!inTime()) {
+                    break;
+                }
+                runQuery(resolver, query);
+            }
+            for (int pass = 0; pass < Math.max(1, config.passes()); pass++) {
+                for (String url : urls) {
+                    if (!inTime()) {
+                        break;
+                    }
+                    render(resolver, url);
+                }
+            }
+        } catch (Exception e) {
+            LOG.error("Warm-up failed, reporting ready without it", e);
+        } finally {
+            finishedAt = System.currentTimeMillis();
+            state = finishedAt > deadline ? State.TIMED_OUT : State.DONE;
+            LOG.info("Warm-up {} after {}ms: {} URLs rendered, {} failed, {} queries", state,
+                    finishedAt - startedAt, urlsRendered.get(), urlsFailed.get(), queriesRun.get());
+        }
+    }
+
+    private boolean inTime() {
+        if (Thread.currentThread().isInterrupted()) {
+            return false;
+        }
+        return System.currentTimeMillis() <= deadline;
+    }
+
+    private void render(ResourceResolver resolver, String url) {
+        try {
+            int query = url.indexOf('?');
+            String path = query >= 0 ? url.substring(0, query) : url;
+            HttpServletRequest request = requestResponseFactory.createRequest("GET", path,
+                    query >= 0 ? parseQuery(url.substring(query + 1)) : Collections.emptyMap());
+            WCMMode.DISABLED.toRequest(request);
+            HttpServletResponse response = requestResponseFactory.createResponse(OutputStream.nullOutputStream());
+            requestProcessor.processRequest(request, response, resolver);
+            if (response.getStatus() >= 400) {
+                urlsFailed.incrementAndGet();
+                LOG.debug("Warm-up of {} returned {}", url, response.getStatus());
+            } else {
+                urlsRendered.incrementAndGet();
+            }
+        } catch (Exception e) {
+            urlsFailed.incrementAndGet();
+            LOG.debug("Warm-up of {} failed", url, e);
+        }
+    }
+
+    private void runQuery(ResourceResolver resolver, String statement) {
+        try {
+            Session session = resolver.adaptTo(Session.class);
+            if (session == null) {
+                return;
+            }
+            Query query = session.getWorkspace().getQueryManager().createQuery(statement, Query.JCR_SQL2);
+            query.setLimit(Math.max(1, config.queryLimit()));
+            RowIterator rows = query.execute().getRows();
+            while (rows.hasNext()) {
+                // reading the node loads it into the Oak caches
+                rows.nextRow().getNode();
+            }
+            queriesRun.incrementAndGet();
+        } catch (Exception e) {
+            LOG.warn("Warm-up query failed: {}", statement, e);
+        }
+    }
+
+    static Map<String, Object> parseQuery(String queryString) {
+        Map<String, Object> parameters = new HashMap<>();
+        for (String pair : queryString.split("&")) {
+            if (pair.isEmpty()) {
+                continue;
+            }
+            int equals = pair.indexOf('=');
+            String name = URLDecoder.decode(equals >= 0 ? pair.substring(0, equals) : pair, StandardCharsets.UTF_8);
+            String value = equals >= 0 ? URLDecoder.decode(pair.substring(equals + 1), StandardCharsets.UTF_8) : "";
+            parameters.put(name, value);
+        }
+        return parameters;
+    }
+
+    /**
+     * @return the configured URLs followed by the recent URLs of the previous run, without duplicates
+     */
+    List<String> getUrls() {
+        Set<String> urls = new LinkedHashSet<>();
+        for (String url : config.urls()) {
+            if (url != null && url.startsWith("/")) {
+                urls.add(url.trim());
+            }
+        }
+        if (config.recentUrls() > 0 && recentUrlsFile != null && recentUrlsFile.isFile()) {
+            try {
+                Files.readAllLines(recentUrlsFile.toPath(), StandardCharsets.UTF_8).stream()
+                        .filter(url -> url.startsWith("/"))
+                        .limit(config.recentUrls())
+                        .forEach(urls::add);
+            } catch (IOException e) {
+                LOG.warn("Could not read recent URLs from {}", recentUrlsFile, e);
+            }
+        }
+        return new ArrayList<>(urls);
+    }
+
+    private void saveRecentUrls() {
+        RepositoryAccountingStats stats = accountingStats;
+        if (stats == null || config == null || config.recentUrls() <= 0 || recentUrlsFile == null) {
+            return;
+        }
+        List<String> urls = stats.getTop().stream()
+                .map(RepositoryAccountingStats.UrlStats::getUrl)
+                .filter(url -> url.startsWith("/"))
+                .limit(config.recentUrls())
+                .collect(Collectors.toList());
+        if (urls.isEmpty()) {
+            return;
+        }
+        try {
+            Files.write(recentUrlsFile.toPath(), urls, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            LOG.warn("Could not save recent URLs to {}", recentUrlsFile, e);
+        }
+    }
+
+    /**
+     * @return whether the warm-up is over, successfully or not, disabled, or
+     *         past its maximum duration while still rendering
+     */
+    public boolean isComplete() {
+        State current = state;
+        if (current != State.PENDING && current != State.RUNNING) {
+            return true;
+        }
+        return deadline > 0 && System.currentTimeMillis() > deadline;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    public long getDurationMillis() {
+        long end = finishedAt > 0 ? finishedAt : System.currentTimeMillis();
+        return startedAt > 0 ? end - startedAt : 0;
+    }
+
+    public int getUrlsRendered() {
+        return urlsRendered.get();
+    }
+
+    public int getUrlsFailed() {
+        return urlsFailed.get();
+    }
+
+    public int getQueriesRun() {
+        return queriesRun.get();
+    }
+}
@@ -1,26 +1,37 @@
 package com.mysite.core.servlets;
 
+import com.day.cq.commons.jcr.JcrConstants;
+import com.day.cq.wcm.api.NameConstants;
 import com.day.cq.wcm.api.Page;
-import com.day.cq.wcm.api.PageManager;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.SerializationFeature;
-import com.fasterxml.jackson.dataformat.xml.XmlMapper;
+import com.mysite.core.filters.RepositoryAccounting;
+import com.mysite.core.services.AuthorPageIndex;
+import com.mysite.core.services.MissingPathCache;
+import com.mysite.core.services.PageMetadataCache;
+import com.mysite.core.services.RequestCoalescer;
 import org.apache.sling.api.SlingHttpServletRequest;
 import org.apache.sling.api.SlingHttpServletResponse;
 import org.apache.sling.api.resource.Resource;
 import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.resource.ValueMap;
 import org.apache.sling.api.servlets.HttpConstants;
 import org.apache.sling.api.servlets.SlingSafeMethodsServlet;
+import org.osgi.service.component.annotations.Activate;
 import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Modified;
+import org.osgi.service.component.annotations.Reference;
+import org.osgi.service.component.annotations.ReferenceCardinality;
+import org.osgi.service.component.annotations.ReferencePolicyOption;
+import org.osgi.service.metatype.annotations.AttributeDefinition;
+import org.osgi.service.metatype.annotations.Designate;
+import org.osgi.service.metatype.annotations.ObjectClassDefinition;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import javax.jcr.Node;
-import javax.jcr.RepositoryException;
-import javax.jcr.Session;
+import javax.jcr.query.Query;
 import javax.servlet.ServletException;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Calendar;
 import java.util.Iterator;
 import java.util.List;
 
@@ -29,48 +40,124 @@ import java.util.List;
                 "sling.servlet.methods=" + HttpConstants.METHOD_GET,
                 "sling.servlet.resourceTypes=sling/servlet/default",
                 "sling.servlet.selectors=authorinfo",
-                "sling.servlet.extensions=json,xml"
+                "sling.servlet.extensions=json,xml,cbor,smile"
         })
+@Designate(ocd = AuthorInfoServlet.Config.class)
 public class AuthorInfoServlet extends SlingSafeMethodsServlet {
 
+    /**
+     * Responses addressed without a query string, for example
+     * {@code /content/mysite/en.authorinfo.json/content/mysite/en/page.json},
+     * can be cached by the dispatcher; all others are marked as not cacheable.
+     */
+    @ObjectClassDefinition(name = "Author Info Servlet", description = "Caching of author info responses")
+    public @interface Config {
+        @AttributeDefinition(name = "Max Age (s)",
+                description = "Cache-Control max-age of cacheable responses, 0 disables caching")
+        int maxAgeSeconds() default 300;
+    }
+
+    static final String HEADER_DISPATCHER = "Dispatcher";
+    static final String HEADER_CACHE_CONTROL = "Cache-Control";
+    static final String HEADER_VARY = "Vary";
+
     private static final Logger LOG = LoggerFactory.getLogger(AuthorInfoServlet.class);
     private static final String JCR_LAST_MODIFIED_BY = "jcr:lastModifiedBy";
+    private static final String PROFILE_GIVEN_NAME = "givenName";
+    private static final String PROFILE_FAMILY_NAME = "familyName";
+
+    private final ResponseWriterRegistry writers = ResponseWriterRegistry.defaults();
+
+    @Reference(cardinality = ReferenceCardinality.OPTIONAL, policyOption = ReferencePolicyOption.GREEDY)
+    private volatile AuthorPageIndex authorPageIndex;
+
+    @Reference(cardinality = ReferenceCardinality.OPTIONAL, policyOption = ReferencePolicyOption.GREEDY)
+    private volatile MissingPathCache missingPathCache;
+
+    @Reference(cardinality = ReferenceCardinality.OPTIONAL, policyOption = ReferencePolicyOption.GREEDY)
+    private volatile RequestCoalescer requestCoalescer;
+
+    @Reference(cardinality = ReferenceCardinality.OPTIONAL, policyOption = ReferencePolicyOption.GREEDY)
+    private volatile PageMetadataCache pageMetadataCache;
+
+    private volatile int maxAgeSeconds = 300;
+
+    @Activate
+    @Modified
+    protected void activate(Config config) {
+        maxAgeSeconds = Math.max(0, config.maxAgeSeconds());
+    }
 
     @Override
     protected void doGet(SlingHttpServletRequest request, SlingHttpServletResponse response) 
             throws ServletException, IOException {
         
         try {
-            String path = request.getParameter("path");
+            String path = getRequestedPath(request);
             if (path == null || path.isEmpty()) {
                 response.sendError(400, "Path parameter is required");
                 return;
             }
 
+            // Misses are remembered per user, a page one user may not read can exist for another
             ResourceResolver resourceResolver = request.getResourceResolver();
+            MissingPathCache missingPaths = missingPathCache;
+            if (missingPaths != null && missingPaths.isKnownMissing(resourceResolver.getUserID(), path)) {
+                response.sendError(404, "Resource not found: " + path);
+                return;
+            }
+
+            AccessCounter counter = new AccessCounter();
             Resource resource = resourceResolver.getResource(path);
+            counter.resolves++;
             
             if (resource == null) {
+                if (missingPaths != null) {
+                    missingPaths.recordMissing(resourceResolver.getUserID(), path);
+                }
                 response.sendError(404, "Resource not found: " + path);
                 return;
             }
 
-            PageManager pageManager = resourceResolver.adaptTo(PageManager.class);
-            Page page = pageManager.getPage(path);
+            // Adapting the already resolved resource avoids a second lookup through the PageManager
+            Page page = resource.adaptTo(Page.class);
             
             if (page == null) {
                 response.sendError(404, "Page not found: " + path);
                 return;
             }
 
-            AuthorInfo authorInfo = getAuthorInfo(page, resourceResolver);
+            ChildPageQuery query;
+            try {
+                query = ChildPageQuery.fromRequest(request);
+            } catch (IllegalArgumentException e) {
+                response.sendError(400, e.getMessage());
+                return;
+            }
+
+            // Identical requests running at the same time share one lookup; the format is
+            // not part of the key since each request serializes the shared result itself
+            RequestCoalescer coalescer = requestCoalescer;
+            AuthorInfo authorInfo = coalescer != null
+                    ? coalescer.execute(RequestCoalescer.key("authorinfo", resourceResolver, page.getPath(),
+                            String.valueOf(query.getLimit()), String.valueOf(query.getOffset()),
+                            query.getSort().name()),
+                            () -> getAuthorInfo(page, resourceResolver, query, counter))
+                    : getAuthorInfo(page, resourceResolver, query, counter);
             
+            setCacheHeaders(request, response);
             String extension = request.getRequestPathInfo().getExtension();
-            if ("xml".equals(extension)) {
-                sendXmlResponse(response, authorInfo);
-            } else {
-                sendJsonResponse(response, authorInfo);
+            String accept = request.getHeader("Accept");
+            if (writers.isChosenByAccept(extension, accept)) {
+                // the dispatcher caches by extension and must not store another encoding under it
+                response.setHeader(HEADER_DISPATCHER, "no-cache");
+                response.addHeader(HEADER_VARY, "Accept");
             }
+            writers.resolve(extension, accept).write(response, authorInfo);
+
+            LOG.debug("Author info for {} took {} resource resolutions and {} property reads",
+                    path, counter.resolves, counter.propertyReads);
+            RepositoryAccounting.recordReads(counter.resolves);
 
         } catch (Exception e) {
             LOG.error("Error processing author info request", e);
@@ -78,119 +165,208 @@ public class AuthorInfoServlet extends SlingSafeMethodsServlet {
         }
     }
 
-    private AuthorInfo getAuthorInfo(Page page, ResourceResolver resourceResolver) throws RepositoryException {
-        Session session = resourceResolver.adaptTo(Session.class);
-        Node pageNode = session.getNode(page.getPath());
+    /**
+     * @return the page path from the {@code path} parameter or, for cacheable
+     *         requests, from the suffix without the request extension
+     */
+    private static String getRequestedPath(SlingHttpServletRequest request) {
+        String path = request.getParameter("path");
+        if (path != null && !path.isEmpty()) {
+            return path;
+        }
+        String suffix = request.getRequestPathInfo().getSuffix();
+        String extension = request.getRequestPathInfo().getExtension();
+        if (suffix != null && extension != null && suffix.endsWith("." + extension)) {
+            return suffix.substring(0, suffix.length() - extension.length() - 1);
+        }
+        return suffix;
+    }
+
+    private void setCacheHeaders(SlingHttpServletRequest request, SlingHttpServletResponse response) {
+        int maxAge = maxAgeSeconds;
+        if (maxAge > 0 && request.getQueryString() == null) {
+            response.setHeader(HEADER_CACHE_CONTROL, "max-age=" + maxAge);
+        } else {
+            // query strings are never cached by the dispatcher, this also covers a disabled max age
+            response.setHeader(HEADER_DISPATCHER, "no-cache");
+        }
+    }
+
+    private AuthorInfo getAuthorInfo(Page page, ResourceResolver resourceResolver, ChildPageQuery query,
+                                     AccessCounter counter) {
+        ValueMap properties = page.getProperties();
+        counter.propertyReads++;
         
-        String lastModifiedBy = pageNode.hasProperty(JCR_LAST_MODIFIED_BY) ? 
-                pageNode.getProperty(JCR_LAST_MODIFIED_BY).getString() : null;
+        String lastModifiedBy = properties.get(JCR_LAST_MODIFIED_BY, String.class);
         
         if (lastModifiedBy == null) {
             return new AuthorInfo("Unknown", "Unknown", new ArrayList<>());
         }
 
         // Get author details from user profile
-        String authorFirstName = getAuthorFirstName(lastModifiedBy, resourceResolver);
-        String authorLastName = getAuthorLastName(lastModifiedBy, resourceResolver);
+        ValueMap profile = getAuthorProfile(lastModifiedBy, resourceResolver, counter);
+        String authorFirstName = profile.get(PROFILE_GIVEN_NAME, lastModifiedBy);
+        String authorLastName = profile.get(PROFILE_FAMILY_NAME, "");
         
-        // Find child pages modified by the same author
-        List<ChildPageInfo> childPages = findChildPagesModifiedByAuthor(page, lastModifiedBy, resourceResolver);
+        // Find child pages modified by the same author; one extra match tells whether there is a next page
+        List<ChildPageInfo> childPages = findChildPagesModifiedByAuthor(page, lastModifiedBy, resourceResolver,
+                query, counter);
+        String next = query.nextCursor(query.getOffset() + childPages.size());
+        if (childPages.size() > query.getLimit()) {
+            childPages = new ArrayList<>(childPages.subList(0, query.getLimit()));
+        }
         
-        return new AuthorInfo(authorFirstName, authorLastName, childPages);
+        return new AuthorInfo(authorFirstName, authorLastName, childPages, next);
     }
 
-    private String getAuthorFirstName(String userId, ResourceResolver resourceResolver) {
+    private ValueMap getAuthorProfile(String userId, ResourceResolver resourceResolver, AccessCounter counter) {
         try {
-            Resource userResource = resourceResolver.getResource("/home/users/" + userId.charAt(0) + "/" + userId);
-            if (userResource != null) {
-                Node userNode = userResource.adaptTo(Node.class);
-                if (userNode != null && userNode.hasProperty("profile/givenName")) {
-                    return userNode.getProperty("profile/givenName").getString();
-                }
+            Resource profileResource = resourceResolver.getResource(
+                    "/home/users/" + userId.charAt(0) + "/" + userId + "/profile");
+            counter.resolves++;
+            if (profileResource != null) {
+                counter.propertyReads++;
+                return profileResource.getValueMap();
             }
         } catch (Exception e) {
-            LOG.debug("Could not get first name for user: {}", userId, e);
+            LOG.debug("Could not get profile for user: {}", userId, e);
         }
-        return userId;
+        return ValueMap.EMPTY;
     }
 
-    private String getAuthorLastName(String userId, ResourceResolver resourceResolver) {
-        try {
-            Resource userResource = resourceResolver.getResource("/home/users/" + userId.charAt(0) + "/" + userId);
-            if (userResource != null) {
-                Node userNode = userResource.adaptTo(Node.class);
-                if (userNode != null && userNode.hasProperty("profile/familyName")) {
-                    return userNode.getProperty("profile/familyName").getString();
-                }
-            }
-        } catch (Exception e) {
-            LOG.debug("Could not get last name for user: {}", userId, e);
+    /**
+     * Returns up to {@code limit + 1} child pages of the requested page, starting at the query offset.
+     */
+    private List<ChildPageInfo> findChildPagesModifiedByAuthor(Page parentPage, String authorId,
+                                                               ResourceResolver resourceResolver,
+                                                               ChildPageQuery query, AccessCounter counter) {
+        AuthorPageIndex index = authorPageIndex;
+        if (index != null && index.isReady()) {
+            return findChildPagesFromIndex(index, parentPage.getPath(), authorId, resourceResolver, query, counter);
         }
-        return "";
-    }
 
-    private List<ChildPageInfo> findChildPagesModifiedByAuthor(Page parentPage, String authorId, ResourceResolver resourceResolver) {
         List<ChildPageInfo> childPages = new ArrayList<>();
+        String parentPath = parentPage.getPath();
         
+        String sql = query.toSql(parentPath, authorId);
+        long start = System.nanoTime();
+        long rowsRead = 0;
         try {
-            Session session = resourceResolver.adaptTo(Session.class);
-            
-            Iterator<Page> children = parentPage.listChildren();
-            while (children.hasNext()) {
-                Page childPage = children.next();
-                Node childNode = session.getNode(childPage.getPath());
-                
-                if (childNode.hasProperty(JCR_LAST_MODIFIED_BY)) {
-                    String childAuthor = childNode.getProperty(JCR_LAST_MODIFIED_BY).getString();
-                    if (authorId.equals(childAuthor)) {
-                        childPages.add(new ChildPageInfo(
-                                childPage.getTitle(),
-                                childPage.getPath(),
-                                childPage.getLastModified()
-                        ));
-                    }
+            Iterator<Resource> children = resourceResolver.findResources(sql, Query.JCR_SQL2);
+            int matched = 0;
+            while (children.hasNext() && matched < query.getFetchSize()) {
+                Resource childPage = children.next();
+                rowsRead++;
+                if (matched++ < query.getOffset()) {
+                    continue;
+                }
+                String childPath = childPage.getPath();
+                PageMetadataCache.PageMetadata metadata = getCachedMetadata(childPage, counter);
+                if (metadata != null) {
+                    childPages.add(new ChildPageInfo(metadata.getTitle(), childPath,
+                            metadata.getLastModifiedCalendar()));
+                    continue;
                 }
+                // Title and last modified come from the child's single content value map
+                Resource content = childPage.getChild(JcrConstants.JCR_CONTENT);
+                ValueMap childProperties = content != null ? content.getValueMap() : ValueMap.EMPTY;
+                counter.propertyReads++;
+                childPages.add(new ChildPageInfo(
+                        childProperties.get(JcrConstants.JCR_TITLE, String.class),
+                        childPath,
+                        childProperties.get(NameConstants.PN_PAGE_LAST_MOD, Calendar.class)
+                ));
             }
         } catch (Exception e) {
             LOG.error("Error finding child pages modified by author", e);
+        } finally {
+            RepositoryAccounting.recordQuery(sql, System.nanoTime() - start, rowsRead);
         }
         
         return childPages;
     }
 
-    private void sendJsonResponse(SlingHttpServletResponse response, AuthorInfo authorInfo) throws IOException {
-        response.setContentType("application/json");
-        response.setCharacterEncoding("UTF-8");
-        
-        ObjectMapper mapper = new ObjectMapper();
-        mapper.enable(SerializationFeature.INDENT_OUTPUT);
-        mapper.writeValue(response.getWriter(), authorInfo);
+    /**
+     * @return the child's metadata from the page metadata cache, read and cached on a miss;
+     *         {@code null} without a cache
+     */
+    private PageMetadataCache.PageMetadata getCachedMetadata(Resource childPage, AccessCounter counter) {
+        PageMetadataCache cache = pageMetadataCache;
+        if (cache == null) {
+            return null;
+        }
+        PageMetadataCache.PageMetadata metadata = cache.get(childPage.getPath());
+        if (metadata == null) {
+            metadata = PageMetadataCache.PageMetadata.read(childPage);
+            counter.propertyReads++;
+            cache.put(childPage.getPath(), metadata);
+        }
+        return metadata;
     }
 
-    private void sendXmlResponse(SlingHttpServletResponse response, AuthorInfo authorInfo) throws IOException {
-        response.setContentType("application/xml");
-        response.setCharacterEncoding("UTF-8");
-        
-        XmlMapper mapper = new XmlMapper();
-        mapper.enable(SerializationFeature.INDENT_OUTPUT);
-        mapper.writeValue(response.getWriter(), authorInfo);
+    /**
+     * The index is built with a service user, so every entry is checked against the
+     * requesting user's resolver; pages the user cannot read are skipped before paging.
+     */
+    private List<ChildPageInfo> findChildPagesFromIndex(AuthorPageIndex index, String parentPath, String authorId,
+                                                        ResourceResolver resourceResolver, ChildPageQuery query,
+                                                        AccessCounter counter) {
+        List<AuthorPageIndex.PageEntry> entries = index.getChildPagesByAuthor(parentPath, authorId);
+        entries.sort(query.comparator());
+
+        List<ChildPageInfo> childPages = new ArrayList<>();
+        int matched = 0;
+        for (AuthorPageIndex.PageEntry entry : entries) {
+            if (matched >= query.getFetchSize()) {
+                break;
+            }
+            counter.resolves++;
+            if (resourceResolver.getResource(entry.getPath()) == null) {
+                continue;
+            }
+            if (matched++ < query.getOffset()) {
+                continue;
+            }
+            Calendar lastModified = null;
+            if (entry.getLastModified() > 0) {
+                lastModified = Calendar.getInstance();
+                lastModified.setTimeInMillis(entry.getLastModified());
+            }
+            childPages.add(new ChildPageInfo(entry.getTitle(), entry.getPath(), lastModified));
+        }
+        return childPages;
+    }
+
+    /**
+     * Debug counters for the repository work done by a single request.
+     */
+    private static final class AccessCounter {
+        private int resolves;
+        private int propertyReads;
     }
 
     public static class AuthorInfo {
         private String firstName;
         private String lastName;
         private List<ChildPageInfo> childPages;
+        private String next;
 
         public AuthorInfo(String firstName, String lastName, List<ChildPageInfo> childPages) {
+            this(firstName, lastName, childPages, null);
+        }
+
+        public AuthorInfo(String firstName, String lastName, List<ChildPageInfo> childPages, String next) {
             this.firstName = firstName;
             this.lastName = lastName;
             this.childPages = childPages;
+            this.next = next;
         }
 
         // Getters for Jackson serialization
         public String getFirstName() { return firstName; }
         public String getLastName() { return lastName; }
         public List<ChildPageInfo> getChildPages() { return childPages; }
+        public String getNext() { return next; }
     }
 
     public static class ChildPageInfo {
@@ -0,0 +1,130 @@
+package com.mysite.core.servlets;
+
+import com.day.cq.wcm.api.NameConstants;
+import com.mysite.core.services.AuthorPageIndex;
+import org.apache.sling.api.SlingHttpServletRequest;
+
+import java.util.Comparator;
+import java.util.Locale;
+
+/**
+ * Paging and sort parameters of an author-info request. The sort is pushed
+ * into an ordered JCR-SQL2 query so that only {@code offset + limit + 1}
+ * rows are ever read; one row past the page tells whether a next page exists.
+ */
+public final class ChildPageQuery {
+
+    public static final int DEFAULT_LIMIT = 100;
+    public static final int MAX_LIMIT = 1000;
+
+    private static final String JCR_LAST_MODIFIED_BY = "jcr:lastModifiedBy";
+    private static final String JCR_CONTENT_PREFIX = "jcr:content/";
+
+    /**
+     * Supported sort orders, newest first for modification dates and
+     * alphabetical for titles.
+     */
+    public enum Sort {
+        LASTMODIFIED(NameConstants.PN_PAGE_LAST_MOD, "DESC",
+                Comparator.comparingLong(AuthorPageIndex.PageEntry::getLastModified).reversed()),
+        TITLE("jcr:title", "ASC",
+                Comparator.comparing(AuthorPageIndex.PageEntry::getTitle, Comparator.nullsLast(Comparator.naturalOrder())));
+
+        private final String property;
+        private final String direction;
+        private final Comparator<AuthorPageIndex.PageEntry> comparator;
+
+        Sort(String property, String direction, Comparator<AuthorPageIndex.PageEntry> comparator) {
+            this.property = property;
+            this.direction = direction;
+            this.comparator = comparator.thenComparing(AuthorPageIndex.PageEntry::getPath);
+        }
+    }
+
+    private final int limit;
+    private final int offset;
+    private final Sort sort;
+
+    public ChildPageQuery(int limit, int offset, Sort sort) {
+        this.limit = limit;
+        this.offset = offset;
+        this.sort = sort;
+    }
+
+    /**
+     * Reads {@code limit}, {@code offset} (or the opaque {@code cursor} returned as
+     * {@code next}) and {@code sort} from the request.
+     *
+     * @throws IllegalArgumentException if a parameter is malformed or out of range
+     */
+    public static ChildPageQuery fromRequest(SlingHttpServletRequest request) {
+        int limit = parseInt(request.getParameter("limit"), DEFAULT_LIMIT, "limit");
+        if (limit < 1 || limit > MAX_LIMIT) {
+            throw new IllegalArgumentException("limit must be between 1 and " + MAX_LIMIT);
+        }
+        String cursor = request.getParameter("cursor");
+        int offset = parseInt(cursor != null ? cursor : request.getParameter("offset"), 0, "offset");
+        if (offset < 0) {
+            throw new IllegalArgumentException("offset must not be negative");
+        }
+        String sort = request.getParameter("sort");
+        try {
+            return new ChildPageQuery(limit, offset,
+                    sort == null || sort.isEmpty() ? Sort.LASTMODIFIED : Sort.valueOf(sort.toUpperCase(Locale.ROOT)));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("sort must be lastModified or title", e);
+        }
+    }
+
+    public int getLimit() { return limit; }
+    public int getOffset() { return offset; }
+    public Sort getSort() { return sort; }
+
+    /**
+     * @return the number of matching rows that need to be read, including the
+     *         look-ahead row used to detect a next page
+     */
+    public int getFetchSize() {
+        return offset + limit + 1;
+    }
+
+    /**
+     * @return the cursor of the following page, or {@code null} if {@code matched}
+     *         rows do not extend beyond this page
+     */
+    public String nextCursor(int matched) {
+        return matched > offset + limit ? String.valueOf(offset + limit) : null;
+    }
+
+    public Comparator<AuthorPageIndex.PageEntry> comparator() {
+        return sort.comparator;
+    }
+
+    /**
+     * Builds an ordered query over the direct child pages of {@code parentPath}
+     * whose content was last modified by {@code authorId}. The constraint and the
+     * sort are on properties of the {@code jcr:content} child, which the
+     * {@code mysitePageAuthor} index holds for every page, so ordering and early
+     * termination come from the index and no deeper descendant is read.
+     */
+    public String toSql(String parentPath, String authorId) {
+        return "SELECT * FROM [cq:Page] AS page WHERE ISCHILDNODE(page, '"
+                + escape(parentPath) + "') AND page.[" + JCR_CONTENT_PREFIX + JCR_LAST_MODIFIED_BY + "] = '"
+                + escape(authorId) + "' ORDER BY page.[" + JCR_CONTENT_PREFIX + sort.property + "] " + sort.direction;
+    }
+
+    private static String escape(String value) {
+        return value.replace("'", "''");
+    }
+
+    private static int parseInt(String value, int defaultValue, String name) {
+        if (value == null || value.isEmpty()) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(name + " must be a number", e);
+        }
+    }
+}
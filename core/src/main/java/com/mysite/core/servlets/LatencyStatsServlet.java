@@ -0,0 +1,59 @@
+package com.mysite.core.servlets;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.mysite.core.filters.LatencyHistogram;
+import com.mysite.core.filters.RequestLatencyRecorder;
+import org.apache.sling.api.SlingHttpServletRequest;
+import org.apache.sling.api.SlingHttpServletResponse;
+import org.apache.sling.api.servlets.HttpConstants;
+import org.apache.sling.api.servlets.SlingSafeMethodsServlet;
+import org.apache.sling.servlets.annotations.SlingServletPaths;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Reference;
+import org.osgi.service.component.propertytypes.ServiceDescription;
+
+import javax.servlet.Servlet;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Serves the per-endpoint request latency percentiles recorded by the
+ * request filter as JSON, in milliseconds.
+ */
+@Component(service = { Servlet.class },
+        property = {
+                "sling.servlet.methods=" + HttpConstants.METHOD_GET
+        })
+@SlingServletPaths("/bin/mysite/latency")
+@ServiceDescription("Request latency statistics")
+public class LatencyStatsServlet extends SlingSafeMethodsServlet {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final ObjectWriter WRITER = new ObjectMapper().writer(SerializationFeature.INDENT_OUTPUT);
+
+    @Reference
+    private transient RequestLatencyRecorder recorder;
+
+    @Override
+    protected void doGet(final SlingHttpServletRequest request, final SlingHttpServletResponse response)
+            throws IOException {
+        final Map<String, Map<String, Object>> stats = new LinkedHashMap<>();
+        for (Map.Entry<String, LatencyHistogram> entry : recorder.getHistograms().entrySet()) {
+            final LatencyHistogram histogram = entry.getValue();
+            final Map<String, Object> values = new LinkedHashMap<>();
+            values.put("count", histogram.getCount());
+            values.put("p50", histogram.getPercentileMicros(50) / 1000.0);
+            values.put("p99", histogram.getPercentileMicros(99) / 1000.0);
+            values.put("p999", histogram.getPercentileMicros(99.9) / 1000.0);
+            values.put("max", histogram.getMaxMicros() / 1000.0);
+            stats.put(entry.getKey(), values);
+        }
+        response.setContentType("application/json");
+        response.setCharacterEncoding("UTF-8");
+        WRITER.writeValue(response.getWriter(), stats);
+    }
+}
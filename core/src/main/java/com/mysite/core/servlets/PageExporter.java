@@ -0,0 +1,191 @@
+package com.mysite.core.servlets;
+
+import com.day.cq.commons.jcr.JcrConstants;
+import com.day.cq.wcm.api.NameConstants;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.io.SerializedString;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ValueMap;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayDeque;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+
+/**
+ * Streams the pages of a subtree as NDJSON or TSV, one page per line, in
+ * depth-first order. Pages are read and written one at a time from a stack of
+ * child iterators, so memory use depends on the depth of the tree and not on
+ * the number of pages. The output is flushed every few hundred pages so the
+ * receiver gets data while the export runs, and the export stops once the
+ * client has gone away.
+ */
+final class PageExporter {
+
+    static final String[] COLUMNS = {
+            "path", "title", "description", "lastModified", "lastModifiedBy", "template", "resourceType"
+    };
+
+    // the generator only drains its buffer on flush, the response writer is flushed by the exporter
+    private static final JsonFactory JSON = new JsonFactory()
+            .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET)
+            .disable(JsonGenerator.Feature.FLUSH_PASSED_TO_STREAM);
+
+    enum Format {
+        NDJSON("ndjson", "application/x-ndjson"),
+        TSV("tsv", "text/tab-separated-values");
+
+        private final String extension;
+        private final String contentType;
+
+        Format(String extension, String contentType) {
+            this.extension = extension;
+            this.contentType = contentType;
+        }
+
+        String getContentType() {
+            return contentType;
+        }
+
+        /**
+         * @return the format for a request extension, {@code null} if it is not an export
+         */
+        static Format forExtension(String extension) {
+            for (Format format : values()) {
+                if (format.extension.equals(extension)) {
+                    return format;
+                }
+            }
+            return null;
+        }
+    }
+
+    private final Format format;
+    private final PrintWriter writer;
+    private final int flushEvery;
+    private final String[] row = new String[COLUMNS.length];
+    private JsonGenerator json;
+    private long pages;
+
+    PageExporter(Format format, PrintWriter writer, int flushEvery) {
+        this.format = format;
+        this.writer = writer;
+        this.flushEvery = Math.max(1, flushEvery);
+    }
+
+    /**
+     * Writes the root page, if it is one, and all pages below it.
+     *
+     * @return the number of pages written
+     */
+    long export(Resource root) throws IOException {
+        if (format == Format.NDJSON) {
+            json = JSON.createGenerator(writer);
+            json.setRootValueSeparator(new SerializedString("\n"));
+        } else {
+            writer.write(String.join("\t", COLUMNS));
+            writer.write('\n');
+        }
+
+        Deque<Iterator<Resource>> stack = new ArrayDeque<>();
+        stack.push(Collections.singletonList(root).iterator());
+        while (!stack.isEmpty()) {
+            Iterator<Resource> children = stack.peek();
+            if (!children.hasNext()) {
+                stack.pop();
+                continue;
+            }
+            Resource page = children.next();
+            if (!NameConstants.NT_PAGE.equals(page.getResourceType())) {
+                continue;
+            }
+            write(page);
+            stack.push(page.listChildren());
+
+            if (pages % flushEvery == 0 && flush()) {
+                break;
+            }
+        }
+
+        if (json != null) {
+            json.flush();
+            if (pages > 0) {
+                writer.write('\n');
+            }
+        }
+        writer.flush();
+        return pages;
+    }
+
+    /**
+     * @return whether the client went away
+     */
+    private boolean flush() throws IOException {
+        if (json != null) {
+            json.flush();
+        }
+        writer.flush();
+        return writer.checkError();
+    }
+
+    private void write(Resource page) throws IOException {
+        Resource content = page.getChild(JcrConstants.JCR_CONTENT);
+        ValueMap properties = content != null ? content.getValueMap() : ValueMap.EMPTY;
+        row[0] = page.getPath();
+        row[1] = properties.get(JcrConstants.JCR_TITLE, String.class);
+        row[2] = properties.get(JcrConstants.JCR_DESCRIPTION, String.class);
+        Calendar lastModified = properties.get(NameConstants.PN_PAGE_LAST_MOD, Calendar.class);
+        row[3] = lastModified != null ? lastModified.toInstant().toString() : null;
+        row[4] = properties.get(NameConstants.PN_PAGE_LAST_MOD_BY, String.class);
+        row[5] = properties.get(NameConstants.PN_TEMPLATE, String.class);
+        row[6] = content != null ? content.getResourceType() : null;
+        pages++;
+
+        if (json != null) {
+            json.writeStartObject();
+            for (int i = 0; i < COLUMNS.length; i++) {
+                if (row[i] != null) {
+                    json.writeStringField(COLUMNS[i], row[i]);
+                }
+            }
+            json.writeEndObject();
+        } else {
+            for (int i = 0; i < COLUMNS.length; i++) {
+                if (i > 0) {
+                    writer.write('\t');
+                }
+                writer.write(escapeTsv(row[i]));
+            }
+            writer.write('\n');
+        }
+    }
+
+    /**
+     * Escapes the characters TSV cannot hold in a field the way most readers expect.
+     */
+    static String escapeTsv(String value) {
+        if (value == null) {
+            return "";
+        }
+        StringBuilder escaped = null;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            String replacement = c == '\t' ? "\\t" : c == '\n' ? "\\n" : c == '\r' ? "\\r" : c == '\\' ? "\\\\" : null;
+            if (replacement != null && escaped == null) {
+                escaped = new StringBuilder(value.length() + 8).append(value, 0, i);
+            }
+            if (escaped != null) {
+                if (replacement != null) {
+                    escaped.append(replacement);
+                } else {
+                    escaped.append(c);
+                }
+            }
+        }
+        return escaped != null ? escaped.toString() : value;
+    }
+}
@@ -0,0 +1,140 @@
+package com.mysite.core.servlets;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import com.fasterxml.jackson.dataformat.smile.databind.SmileMapper;
+import com.fasterxml.jackson.dataformat.xml.XmlMapper;
+import org.apache.sling.api.SlingHttpServletResponse;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Registry of the response encodings a servlet can produce. Every format owns a
+ * pre-configured, thread-safe {@link ObjectWriter} that is built once and reused
+ * for all requests, so adding an encoding is a single {@link #register(Format)}
+ * call instead of another branch in {@code doGet}. Registering replaces the
+ * lookup maps with new immutable copies, so resolving a format takes no lock.
+ */
+public final class ResponseWriterRegistry {
+
+    public static final String JSON = "json";
+    public static final String XML = "xml";
+    public static final String CBOR = "cbor";
+    public static final String SMILE = "smile";
+
+    private volatile Map<String, Format> formatsByExtension = Collections.emptyMap();
+    private volatile Map<String, Format> formatsByMediaType = Collections.emptyMap();
+    private final String defaultExtension;
+
+    public ResponseWriterRegistry(String defaultExtension) {
+        this.defaultExtension = defaultExtension;
+    }
+
+    /**
+     * @return a registry with indented JSON (the default) and XML plus the binary CBOR and Smile encodings
+     */
+    public static ResponseWriterRegistry defaults() {
+        ResponseWriterRegistry registry = new ResponseWriterRegistry(JSON);
+        registry.register(new Format(JSON, "application/json", false,
+                new ObjectMapper().writer(SerializationFeature.INDENT_OUTPUT)));
+        registry.register(new Format(XML, "application/xml", false,
+                new XmlMapper().writer(SerializationFeature.INDENT_OUTPUT)));
+        registry.register(new Format(CBOR, "application/cbor", true, new CBORMapper().writer()));
+        registry.register(new Format(SMILE, "application/x-jackson-smile", true, new SmileMapper().writer()));
+        return registry;
+    }
+
+    public synchronized void register(Format format) {
+        Map<String, Format> byExtension = new LinkedHashMap<>(formatsByExtension);
+        byExtension.put(format.getExtension(), format);
+        Map<String, Format> byMediaType = new LinkedHashMap<>(formatsByMediaType);
+        byMediaType.put(format.getContentType(), format);
+        formatsByExtension = Collections.unmodifiableMap(byExtension);
+        formatsByMediaType = Collections.unmodifiableMap(byMediaType);
+    }
+
+    public Collection<Format> getFormats() {
+        return formatsByExtension.values();
+    }
+
+    /**
+     * Picks the format for a request. A binary media type named explicitly in the
+     * {@code Accept} header wins, since internal clients may not be able to change
+     * the URL; otherwise the request extension decides, falling back to the default.
+     * Callers must keep a response whose format came from the header out of
+     * extension-keyed caches, see {@link #isChosenByAccept(String, String)}.
+     */
+    public Format resolve(String extension, String accept) {
+        Format accepted = fromAcceptHeader(accept);
+        if (accepted != null) {
+            return accepted;
+        }
+        Format format = extension != null ? formatsByExtension.get(extension) : null;
+        return format != null ? format : formatsByExtension.get(defaultExtension);
+    }
+
+    /**
+     * @return {@code true} if the {@code Accept} header overrides the format the
+     *         extension selects, so the response differs from what the URL names
+     */
+    public boolean isChosenByAccept(String extension, String accept) {
+        Format accepted = fromAcceptHeader(accept);
+        return accepted != null && !accepted.getExtension().equals(extension);
+    }
+
+    private Format fromAcceptHeader(String accept) {
+        if (accept == null || accept.isEmpty()) {
+            return null;
+        }
+        for (String range : accept.split(",")) {
+            int parameters = range.indexOf(';');
+            String mediaType = (parameters >= 0 ? range.substring(0, parameters) : range).trim();
+            Format format = formatsByMediaType.get(mediaType);
+            if (format != null && format.isBinary()) {
+                return format;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * A single response encoding.
+     */
+    public static final class Format {
+        private final String extension;
+        private final String contentType;
+        private final boolean binary;
+        private final ObjectWriter writer;
+
+        public Format(String extension, String contentType, boolean binary, ObjectWriter writer) {
+            this.extension = extension;
+            this.contentType = contentType;
+            this.binary = binary;
+            this.writer = writer;
+        }
+
+        public String getExtension() { return extension; }
+        public String getContentType() { return contentType; }
+        public boolean isBinary() { return binary; }
+
+        /**
+         * Serializes {@code value} to the response, using the output stream for
+         * binary formats and the UTF-8 writer for text formats.
+         */
+        public void write(SlingHttpServletResponse response, Object value) throws IOException {
+            response.setContentType(contentType);
+            if (binary) {
+                writer.writeValue(response.getOutputStream(), value);
+            } else {
+                response.setCharacterEncoding("UTF-8");
+                writer.writeValue(response.getWriter(), value);
+            }
+        }
+    }
+}
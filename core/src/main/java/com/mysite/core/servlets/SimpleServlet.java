@@ -25,32 +25,65 @@ import org.apache.sling.api.servlets.SlingSafeMethodsServlet;
 import org.apache.sling.servlets.annotations.SlingServletResourceTypes;
 import org.osgi.service.component.annotations.Component;
 import org.osgi.service.component.propertytypes.ServiceDescription;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import javax.servlet.Servlet;
 import javax.servlet.ServletException;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Servlet that writes some sample content into the response. It is mounted for
  * all resources of a specific Sling resource type. The
  * {@link SlingSafeMethodsServlet} shall be used for HTTP methods that are
  * idempotent. For write operations use the {@link SlingAllMethodsServlet}.
+ * <p>
+ * With the {@code ndjson} or {@code tsv} extension the servlet exports the
+ * requested page and every page below it instead, one line per page, streamed
+ * by {@link PageExporter}.
  */
 @Component(service = { Servlet.class })
 @SlingServletResourceTypes(
         resourceTypes="mysite/components/page",
         methods=HttpConstants.METHOD_GET,
-        extensions="txt")
+        extensions={ "txt", "ndjson", "tsv" })
 @ServiceDescription("Simple Demo Servlet")
 public class SimpleServlet extends SlingSafeMethodsServlet {
 
     private static final long serialVersionUID = 1L;
 
+    private static final Logger LOG = LoggerFactory.getLogger(SimpleServlet.class);
+
+    /** Pages written between two flushes of an export. */
+    static final int FLUSH_EVERY = 500;
+
     @Override
     protected void doGet(final SlingHttpServletRequest req,
             final SlingHttpServletResponse resp) throws ServletException, IOException {
         final Resource resource = req.getResource();
+        final PageExporter.Format format = PageExporter.Format.forExtension(req.getRequestPathInfo().getExtension());
+        if (format != null) {
+            export(resource, format, resp);
+            return;
+        }
         resp.setContentType("text/plain");
         resp.getWriter().write("Title = " + resource.getValueMap().get(JcrConstants.JCR_TITLE));
     }
+
+    private void export(final Resource resource, final PageExporter.Format format,
+            final SlingHttpServletResponse resp) throws IOException {
+        // requests to a page resolve to the page, but the page's content resource is accepted as well
+        final Resource root = JcrConstants.JCR_CONTENT.equals(resource.getName()) && resource.getParent() != null
+                ? resource.getParent() : resource;
+        resp.setContentType(format.getContentType());
+        resp.setCharacterEncoding(StandardCharsets.UTF_8.name());
+
+        final long start = System.nanoTime();
+        final long pages = new PageExporter(format, resp.getWriter(), FLUSH_EVERY).export(root);
+        final long millis = Math.max(1, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        LOG.info("Exported {} pages below {} as {} in {}ms ({} pages/s)",
+                pages, root.getPath(), format, millis, pages * 1000 / millis);
+    }
 }
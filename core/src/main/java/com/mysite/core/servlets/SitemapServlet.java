@@ -0,0 +1,94 @@
+package com.mysite.core.servlets;
+
+import com.mysite.core.services.SitemapService;
+import org.apache.sling.api.SlingHttpServletRequest;
+import org.apache.sling.api.SlingHttpServletResponse;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.servlets.HttpConstants;
+import org.apache.sling.api.servlets.SlingSafeMethodsServlet;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Reference;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.servlet.ServletException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Serves the sitemaps of the site root page: {@code en.sitemap.xml} is the
+ * sitemap index, {@code en.sitemap.<section>-<part>.xml} one sitemap file.
+ * Files pre-generated by the {@link SitemapService} are copied to the
+ * response as they are; without them the sitemap is streamed from the
+ * repository.
+ */
+@Component(service = SlingSafeMethodsServlet.class,
+        property = {
+                "sling.servlet.methods=" + HttpConstants.METHOD_GET,
+                "sling.servlet.resourceTypes=mysite/components/page",
+                "sling.servlet.selectors=sitemap",
+                "sling.servlet.extensions=xml"
+        })
+public class SitemapServlet extends SlingSafeMethodsServlet {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SitemapServlet.class);
+    private static final Pattern PART_SELECTOR = Pattern.compile("([A-Za-z0-9_-]+)-(\\d{1,6})");
+
+    @Reference
+    private transient SitemapService sitemapService;
+
+    @Override
+    protected void doGet(SlingHttpServletRequest request, SlingHttpServletResponse response)
+            throws ServletException, IOException {
+        Resource resource = request.getResource();
+        if (!resource.getPath().equals(sitemapService.getRootPath())) {
+            response.sendError(404);
+            return;
+        }
+
+        String[] selectors = request.getRequestPathInfo().getSelectors();
+        String section = null;
+        int part = 0;
+        if (selectors.length == 2) {
+            Matcher matcher = PART_SELECTOR.matcher(selectors[1]);
+            if (!matcher.matches()) {
+                response.sendError(404);
+                return;
+            }
+            section = matcher.group(1);
+            part = Integer.parseInt(matcher.group(2));
+        } else if (selectors.length != 1) {
+            response.sendError(404);
+            return;
+        }
+
+        response.setContentType("application/xml");
+        response.setCharacterEncoding("UTF-8");
+        Path file = sitemapService.getFile(section == null
+                ? SitemapService.INDEX_FILE : SitemapService.partFile(section, part));
+        try {
+            if (file != null) {
+                response.setContentLengthLong(Files.size(file));
+                try (OutputStream out = response.getOutputStream()) {
+                    Files.copy(file, out);
+                }
+            } else if (section == null) {
+                sitemapService.writeIndex(request.getResourceResolver(), response.getOutputStream());
+            } else if (!sitemapService.writeSection(request.getResourceResolver(), section, part,
+                    response.getOutputStream())) {
+                response.sendError(404);
+            }
+        } catch (IOException e) {
+            throw e;
+        } catch (Exception e) {
+            LOG.error("Could not write sitemap of {}", resource.getPath(), e);
+            if (!response.isCommitted()) {
+                response.sendError(500, "Internal server error");
+            }
+        }
+    }
+}
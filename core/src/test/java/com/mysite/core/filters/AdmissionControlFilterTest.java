@@ -0,0 +1,132 @@
+package com.mysite.core.filters;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.FilterChain;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.sling.testing.mock.sling.servlet.MockRequestPathInfo;
+import org.apache.sling.testing.mock.sling.servlet.MockSlingHttpServletRequest;
+import org.apache.sling.testing.mock.sling.servlet.MockSlingHttpServletResponse;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import io.wcm.testing.mock.aem.junit5.AemContext;
+import io.wcm.testing.mock.aem.junit5.AemContextExtension;
+
+@ExtendWith(AemContextExtension.class)
+class AdmissionControlFilterTest {
+
+    private final AemContext context = new AemContext();
+
+    @Test
+    void passesRequestsWithoutLimit() throws Exception {
+        AdmissionControlFilter fixture = register(0, "selector:authorinfo|1|1|1");
+        FilterChain chain = mock(FilterChain.class);
+        MockSlingHttpServletRequest request = request("model");
+        MockSlingHttpServletResponse response = new MockSlingHttpServletResponse();
+
+        fixture.doFilter(request, response, chain);
+
+        verify(chain).doFilter(request, response);
+        assertEquals(0, fixture.getAdmitted());
+    }
+
+    @Test
+    void rejectsOverRateWith429() throws Exception {
+        AdmissionControlFilter fixture = register(0, "selector:authorinfo|0|1|1");
+
+        MockSlingHttpServletResponse first = new MockSlingHttpServletResponse();
+        fixture.doFilter(request("authorinfo"), first, mock(FilterChain.class));
+        MockSlingHttpServletResponse second = new MockSlingHttpServletResponse();
+        fixture.doFilter(request("authorinfo"), second, mock(FilterChain.class));
+
+        assertEquals(HttpServletResponse.SC_OK, first.getStatus());
+        assertEquals(AdmissionControlFilter.SC_TOO_MANY_REQUESTS, second.getStatus());
+        assertEquals("1", second.getHeader(AdmissionControlFilter.RETRY_AFTER));
+        assertEquals(1, fixture.getAdmitted());
+        assertEquals(1, fixture.getRejected());
+    }
+
+    @Test
+    void rejectsOverConcurrencyWith503() throws Exception {
+        AdmissionControlFilter fixture = register(0, "selector:authorinfo|1|0");
+        MockSlingHttpServletResponse nested = new MockSlingHttpServletResponse();
+
+        // the second request arrives while the first one still holds the only slot
+        FilterChain chain = (req, resp) -> fixture.doFilter(request("authorinfo"), nested, mock(FilterChain.class));
+        MockSlingHttpServletResponse outer = new MockSlingHttpServletResponse();
+        fixture.doFilter(request("authorinfo"), outer, chain);
+
+        assertEquals(HttpServletResponse.SC_OK, outer.getStatus());
+        assertEquals(HttpServletResponse.SC_SERVICE_UNAVAILABLE, nested.getStatus());
+        assertEquals("1", nested.getHeader(AdmissionControlFilter.RETRY_AFTER));
+
+        // the slot is released afterwards
+        MockSlingHttpServletResponse after = new MockSlingHttpServletResponse();
+        fixture.doFilter(request("authorinfo"), after, mock(FilterChain.class));
+        assertEquals(HttpServletResponse.SC_OK, after.getStatus());
+        assertEquals(2, fixture.getAdmitted());
+    }
+
+    @Test
+    void queuesBeforeRejecting() throws Exception {
+        AdmissionControlFilter fixture = register(10, "selector:authorinfo|1|0");
+        MockSlingHttpServletResponse nested = new MockSlingHttpServletResponse();
+
+        FilterChain chain = (req, resp) -> fixture.doFilter(request("authorinfo"), nested, mock(FilterChain.class));
+        fixture.doFilter(request("authorinfo"), new MockSlingHttpServletResponse(), chain);
+
+        assertEquals(HttpServletResponse.SC_SERVICE_UNAVAILABLE, nested.getStatus());
+        assertEquals(1, fixture.getQueued());
+    }
+
+    @Test
+    void matchesResourceType() throws Exception {
+        AdmissionControlFilter fixture = register(0, "type:mysite/components/search-component|1|1");
+        context.create().resource("/content/search", "sling:resourceType", "mysite/components/search-component");
+        MockSlingHttpServletRequest request = request(null);
+        request.setResource(context.resourceResolver().getResource("/content/search"));
+
+        assertNotNull(fixture.limitFor(request));
+        assertNull(fixture.limitFor(request("authorinfo")));
+    }
+
+    @Test
+    void tokenBucketAllowsBurstThenRefills() {
+        AdmissionControlFilter.Limit limit = AdmissionControlFilter.Limit.parse("selector:x|0|10|2");
+        long now = 0;
+
+        assertEquals(0, limit.acquireRate(now));
+        assertEquals(0, limit.acquireRate(now));
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(100), limit.acquireRate(now));
+        assertEquals(0, limit.acquireRate(now + TimeUnit.MILLISECONDS.toNanos(100)));
+    }
+
+    @Test
+    void ignoresInvalidLimits() {
+        assertNull(AdmissionControlFilter.Limit.parse("authorinfo|1|1"));
+        assertNull(AdmissionControlFilter.Limit.parse("selector:|1|1"));
+        assertNull(AdmissionControlFilter.Limit.parse("selector:authorinfo|one|1"));
+        assertNull(AdmissionControlFilter.Limit.parse("selector:authorinfo|-1|1"));
+    }
+
+    private AdmissionControlFilter register(long queueTimeoutMs, String... limits) throws Exception {
+        return context.registerInjectActivateService(new AdmissionControlFilter(),
+                "limits", limits, "queueTimeoutMs", queueTimeoutMs);
+    }
+
+    private MockSlingHttpServletRequest request(String selectors) {
+        MockSlingHttpServletRequest request = new MockSlingHttpServletRequest(context.resourceResolver(),
+                context.bundleContext());
+        ((MockRequestPathInfo) request.getRequestPathInfo()).setSelectorString(selectors);
+        ((MockRequestPathInfo) request.getRequestPathInfo()).setResourcePath("/content/test");
+        return request;
+    }
+}
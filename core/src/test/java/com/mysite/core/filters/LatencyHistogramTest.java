@@ -0,0 +1,53 @@
+package com.mysite.core.filters;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+class LatencyHistogramTest {
+
+    @Test
+    void bucketsAreContiguous() {
+        long previous = -1;
+        for (int i = 0; i < LatencyHistogram.BUCKET_COUNT; i++) {
+            long highest = LatencyHistogram.highestEquivalentValue(i);
+            assertEquals(i, LatencyHistogram.indexOf(highest));
+            assertEquals(i, LatencyHistogram.indexOf(previous + 1));
+            previous = highest;
+        }
+    }
+
+    @Test
+    void percentilesWithinPrecision() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long micros = 1; micros <= 100000; micros++) {
+            histogram.recordMicros(micros);
+        }
+
+        assertEquals(100000, histogram.getCount());
+        assertEquals(100000, histogram.getMaxMicros());
+        assertWithin(50000, histogram.getPercentileMicros(50));
+        assertWithin(99000, histogram.getPercentileMicros(99));
+        assertWithin(99900, histogram.getPercentileMicros(99.9));
+        assertEquals(100000, histogram.getPercentileMicros(100));
+    }
+
+    @Test
+    void emptyAndReset() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.getPercentileMicros(99));
+
+        histogram.recordNanos(5_000_000);
+        assertWithin(5000, histogram.getPercentileMicros(50));
+
+        histogram.reset();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getPercentileMicros(99));
+    }
+
+    private static void assertWithin(long expected, long actual) {
+        assertTrue(Math.abs(actual - expected) <= expected * 0.035,
+                () -> "expected " + expected + " but was " + actual);
+    }
+}
@@ -16,6 +16,7 @@
 package com.mysite.core.filters;
 
 import java.io.IOException;
+import java.nio.file.Path;
 import java.util.List;
 
 import javax.servlet.FilterChain;
@@ -28,6 +29,7 @@ import org.apache.sling.testing.mock.sling.servlet.MockSlingHttpServletResponse;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
 
 import io.wcm.testing.mock.aem.junit5.AemContext;
 import io.wcm.testing.mock.aem.junit5.AemContextExtension;
@@ -73,4 +75,58 @@ class LoggingFilterTest {
         assertEquals("/content/test", event.getArguments().get(0));
         assertEquals("selectors", event.getArguments().get(1));
     }
+
+    @Test
+    void doFilterWithAccounting(AemContext context) throws Exception {
+        RepositoryAccountingStats stats = context.registerInjectActivateService(new RepositoryAccountingStats(),
+                "debugHeader", true);
+        context.registerInjectActivateService(fixture);
+
+        MockSlingHttpServletRequest request = context.request();
+        MockSlingHttpServletResponse response = context.response();
+        MockRequestPathInfo requestPathInfo = (MockRequestPathInfo) request.getRequestPathInfo();
+        requestPathInfo.setResourcePath("/content/test");
+        requestPathInfo.setSelectorString("authorinfo");
+        requestPathInfo.setExtension("json");
+
+        FilterChain chain = (req, resp) -> {
+            RepositoryAccounting.recordQuery(2_000_000, 5);
+            RepositoryAccounting.recordReads(2);
+            resp.getWriter().write("{}");
+        };
+        fixture.doFilter(request, response, chain);
+
+        assertEquals("queries=1;queryMs=2;nodes=7", response.getHeader(RepositoryAccountingStats.HEADER));
+        assertEquals(1, stats.getTop().size());
+        assertEquals("/content/test.authorinfo.json", stats.getTop().get(0).getUrl());
+        assertEquals(7, stats.getTop().get(0).getNodesRead());
+
+        // outside of a request nothing is accounted
+        RepositoryAccounting.recordQuery(1_000_000, 1);
+        assertEquals(1, stats.getTop().get(0).getQueries());
+    }
+
+    @Test
+    void doFilterWithCapture(AemContext context, @TempDir Path directory) throws Exception {
+        QueryCaptureRecorder capture = context.registerInjectActivateService(new QueryCaptureRecorder(),
+                "enabled", true, "directory", directory.toString());
+        context.registerInjectActivateService(fixture);
+
+        MockSlingHttpServletRequest request = context.request();
+        MockRequestPathInfo requestPathInfo = (MockRequestPathInfo) request.getRequestPathInfo();
+        requestPathInfo.setResourcePath("/content/test");
+        requestPathInfo.setSelectorString("authorinfo");
+        requestPathInfo.setExtension("json");
+        request.setQueryString("path=/content/test");
+
+        FilterChain chain = (req, resp) -> RepositoryAccounting.recordQuery("SELECT 1", 2_000_000, 5);
+        fixture.doFilter(request, context.response(), chain);
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (capture.getCapturedRequests() == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(1, capture.getCapturedRequests());
+        assertEquals(1, capture.getFiles().length);
+    }
 }
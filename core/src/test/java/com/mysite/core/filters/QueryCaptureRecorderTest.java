@@ -0,0 +1,128 @@
+package com.mysite.core.filters;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Collectors;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.osgi.framework.BundleContext;
+
+class QueryCaptureRecorderTest {
+
+    @TempDir
+    Path directory;
+
+    private final QueryCaptureRecorder fixture = new QueryCaptureRecorder();
+
+    private boolean activated;
+
+    @AfterEach
+    void tearDown() throws Exception {
+        if (activated) {
+            fixture.deactivate();
+        }
+    }
+
+    @Test
+    void formatsRequestWithItsQueries() {
+        RepositoryAccounting.begin();
+        RepositoryAccounting.recordQuery("SELECT * FROM [cq:Page]\n WHERE [jcr:title] = 'a\tb'", 3_000_000, 7);
+        RepositoryAccounting.recordQuery(1_000_000, 2);
+        RepositoryAccounting.Counters counters = RepositoryAccounting.end();
+
+        String entry = QueryCaptureRecorder.format("GET", "/content/test.authorinfo.json?path=/content/a",
+                1000L, 5_500_000, counters);
+
+        assertEquals("R\t1000\t5500\tGET\t2\t/content/test.authorinfo.json?path=/content/a\n"
+                + "Q\t3000\t7\tSELECT * FROM [cq:Page]\\n WHERE [jcr:title] = 'a\\tb'\n", entry);
+    }
+
+    @Test
+    void writesRotatingFiles() throws Exception {
+        activate(config(true, 1, 2));
+
+        for (int i = 0; i < 3; i++) {
+            // every entry is larger than the file size, so each one ends its file
+            fixture.capture("GET", "/content/page-" + i + ".html?q=" + "x".repeat(1024), i, 1000, null);
+        }
+        await(() -> fixture.getCapturedRequests() == 3);
+        fixture.deactivate();
+
+        String[] files = fixture.getFiles();
+        assertEquals(2, files.length);
+        List<String> lines = read(Paths.get(files[1]));
+        assertEquals(1, lines.size());
+        assertTrue(lines.get(0).startsWith("R\t2\t1\tGET\t0\t/content/page-2.html?q=x"));
+    }
+
+    @Test
+    void rotateFinishesTheCurrentFile() throws Exception {
+        activate(config(true, 1024, 10));
+
+        fixture.capture("GET", "/content/a.html", 1, 1000, null);
+        await(() -> fixture.getCapturedRequests() == 1);
+        fixture.rotate();
+        fixture.capture("GET", "/content/b.html", 2, 1000, null);
+        await(() -> fixture.getCapturedRequests() == 2 && fixture.getFiles().length == 2);
+
+        assertEquals(1, read(Paths.get(fixture.getFiles()[0])).size());
+    }
+
+    @Test
+    void capturesNothingUntilEnabled() throws Exception {
+        activate(config(false, 1024, 10));
+
+        fixture.capture("GET", "/content/a.html", 1, 1000, null);
+        assertEquals(0, fixture.getCapturedRequests());
+
+        fixture.setCapturing(true);
+        fixture.capture("GET", "/content/a.html", 1, 1000, null);
+        await(() -> fixture.getCapturedRequests() == 1);
+        assertEquals(0, fixture.getDroppedRequests());
+    }
+
+    private void activate(QueryCaptureRecorder.Config config) throws Exception {
+        fixture.activate(config, mock(BundleContext.class));
+        activated = true;
+    }
+
+    private static List<String> read(Path file) throws Exception {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new GZIPInputStream(Files.newInputStream(file)), StandardCharsets.UTF_8))) {
+            return reader.lines().collect(Collectors.toList());
+        }
+    }
+
+    private QueryCaptureRecorder.Config config(boolean enabled, int maxFileSizeKb, int maxFiles) {
+        QueryCaptureRecorder.Config config = mock(QueryCaptureRecorder.Config.class);
+        when(config.enabled()).thenReturn(enabled);
+        when(config.directory()).thenReturn(directory.toString());
+        when(config.maxFileSizeKb()).thenReturn(maxFileSizeKb);
+        when(config.maxFiles()).thenReturn(maxFiles);
+        when(config.queueSize()).thenReturn(100);
+        return config;
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.nanoTime() < deadline, "condition not met in time");
+            Thread.sleep(10);
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package com.mysite.core.filters;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class RepositoryAccountingStatsTest {
+
+    private RepositoryAccountingStats fixture;
+
+    @BeforeEach
+    void setup() throws Exception {
+        RepositoryAccountingStats.Config config = mock(RepositoryAccountingStats.Config.class);
+        when(config.topN()).thenReturn(2);
+        when(config.maxUrls()).thenReturn(3);
+        fixture = new RepositoryAccountingStats();
+        fixture.activate(config);
+    }
+
+    @Test
+    void reportsMostExpensiveUrls() {
+        record("/content/a.html", 1_000_000, 10);
+        record("/content/b.authorinfo.json", 50_000_000, 200);
+        record("/content/b.authorinfo.json", 30_000_000, 100);
+        record("/content/c.html", 5_000_000, 1);
+
+        List<RepositoryAccountingStats.UrlStats> top = fixture.getTop();
+        assertEquals(2, top.size());
+        assertEquals("/content/b.authorinfo.json", top.get(0).getUrl());
+        assertEquals(2, top.get(0).getRequests());
+        assertEquals(300, top.get(0).getNodesRead());
+        assertEquals("/content/c.html", top.get(1).getUrl());
+        assertEquals("/content/b.authorinfo.json requests=2 queries=2 queryMs=80.0 nodes=300", fixture.getTopUrls()[0]);
+    }
+
+    @Test
+    void evictsCheapestUrlBeyondMaxUrls() {
+        record("/content/a.html", 10, 1);
+        record("/content/b.html", 1, 1);
+        record("/content/c.html", 20, 1);
+        record("/content/d.html", 100, 1);
+        record("/content/e.html", 5, 1);
+
+        List<RepositoryAccountingStats.UrlStats> top = fixture.getTop();
+        assertEquals("/content/d.html", top.get(0).getUrl());
+        assertEquals("/content/c.html", top.get(1).getUrl());
+        assertEquals("other requests=2 queries=2 queryMs=0.0 nodes=2", otherLine());
+    }
+
+    @Test
+    void laterExpensiveUrlIsStillReported() {
+        for (int i = 0; i < 10; i++) {
+            record("/content/cheap-" + i + ".html", 1, 1);
+        }
+        record("/content/expensive.html", 50_000_000, 1);
+
+        assertEquals("/content/expensive.html", fixture.getTop().get(0).getUrl());
+    }
+
+    @Test
+    void samplesEvictionCandidatesBeyondTheSampleSize() {
+        RepositoryAccountingStats.Config config = mock(RepositoryAccountingStats.Config.class);
+        when(config.topN()).thenReturn(1000);
+        when(config.maxUrls()).thenReturn(RepositoryAccountingStats.EVICTION_SAMPLES * 4);
+        fixture.activate(config);
+
+        for (int i = 0; i < 500; i++) {
+            record("/content/unique-" + i + ".html", 1, 1);
+        }
+
+        List<RepositoryAccountingStats.UrlStats> top = fixture.getTop();
+        // the tracked URLs and the overflow entry, which holds everything evicted
+        assertEquals(RepositoryAccountingStats.EVICTION_SAMPLES * 4 + 1, top.size());
+        assertEquals(500, top.stream().mapToLong(RepositoryAccountingStats.UrlStats::getRequests).sum());
+    }
+
+    private String otherLine() {
+        fixture.activate(topAll());
+        for (String line : fixture.getTopUrls()) {
+            if (line.startsWith(RepositoryAccountingStats.OTHER + " ")) {
+                return line;
+            }
+        }
+        return null;
+    }
+
+    private static RepositoryAccountingStats.Config topAll() {
+        RepositoryAccountingStats.Config config = mock(RepositoryAccountingStats.Config.class);
+        when(config.topN()).thenReturn(10);
+        when(config.maxUrls()).thenReturn(3);
+        return config;
+    }
+
+    private void record(String url, long queryNanos, long rows) {
+        RepositoryAccounting.begin();
+        RepositoryAccounting.recordQuery(queryNanos, rows);
+        fixture.record(url, RepositoryAccounting.end());
+    }
+}
@@ -0,0 +1,72 @@
+package com.mysite.core.filters;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import org.apache.sling.api.SlingHttpServletRequest;
+import org.apache.sling.api.request.RequestPathInfo;
+import org.apache.sling.api.resource.Resource;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class RequestLatencyRecorderTest {
+
+    private RequestLatencyRecorder fixture;
+
+    @BeforeEach
+    void setup() throws Exception {
+        fixture = new RequestLatencyRecorder();
+        fixture.activate(config(1, 2));
+    }
+
+    @Test
+    void recordsPerEndpoint() {
+        fixture.record(request("mysite/components/page", "authorinfo", "json"), 2_000_000);
+        fixture.record(request("mysite/components/page", "authorinfo", "json"), 4_000_000);
+        fixture.record(request("mysite/components/page", null, "html"), 1_000_000);
+
+        assertArrayEquals(new String[] { "mysite/components/page.authorinfo.json", "mysite/components/page.html" },
+                fixture.getEndpoints());
+        assertEquals(2, fixture.getHistograms().get("mysite/components/page.authorinfo.json").getCount());
+        assertTrue(fixture.getPercentile("mysite/components/page.authorinfo.json", 99) >= 3.9);
+        assertEquals(-1, fixture.getPercentile("unknown", 50));
+        assertTrue(fixture.getSummary()[0].startsWith("mysite/components/page.authorinfo.json count=2 "));
+    }
+
+    @Test
+    void capsEndpoints() {
+        LatencyHistogram first = fixture.histogram("a", "", "json");
+        fixture.histogram("b", "", "json");
+        LatencyHistogram overflow = fixture.histogram("c", "", "json");
+
+        assertSame(first, fixture.histogram("a", "", "json"));
+        assertSame(overflow, fixture.histogram("d", "", "json"));
+        assertSame(overflow, fixture.histogram("a", "unseen", "json"));
+        assertSame(overflow, fixture.histogram("a", "", "xml"));
+        overflow.recordMicros(10);
+        assertTrue(fixture.getHistograms().containsKey(RequestLatencyRecorder.OTHER));
+    }
+
+    private static SlingHttpServletRequest request(String resourceType, String selectors, String extension) {
+        SlingHttpServletRequest request = mock(SlingHttpServletRequest.class);
+        RequestPathInfo pathInfo = mock(RequestPathInfo.class);
+        Resource resource = mock(Resource.class);
+        when(request.getRequestPathInfo()).thenReturn(pathInfo);
+        when(request.getResource()).thenReturn(resource);
+        when(resource.getResourceType()).thenReturn(resourceType);
+        when(pathInfo.getSelectorString()).thenReturn(selectors);
+        when(pathInfo.getExtension()).thenReturn(extension);
+        return request;
+    }
+
+    private static RequestLatencyRecorder.Config config(int sampleRate, int maxEndpoints) {
+        RequestLatencyRecorder.Config config = mock(RequestLatencyRecorder.Config.class);
+        when(config.sampleRate()).thenReturn(sampleRate);
+        when(config.maxEndpoints()).thenReturn(maxEndpoints);
+        return config;
+    }
+}
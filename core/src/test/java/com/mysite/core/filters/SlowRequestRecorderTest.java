@@ -0,0 +1,102 @@
+package com.mysite.core.filters;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.sling.api.SlingHttpServletRequest;
+import org.apache.sling.api.request.RequestPathInfo;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class SlowRequestRecorderTest {
+
+    private SlowRequestRecorder fixture;
+
+    private SlingHttpServletRequest request;
+
+    @BeforeEach
+    void setup() throws Exception {
+        fixture = new SlowRequestRecorder();
+        request = mock(SlingHttpServletRequest.class);
+        RequestPathInfo pathInfo = mock(RequestPathInfo.class);
+        when(request.getRequestPathInfo()).thenReturn(pathInfo);
+        when(pathInfo.getResourcePath()).thenReturn("/content/test");
+        when(pathInfo.getSelectorString()).thenReturn("authorinfo");
+        when(pathInfo.getExtension()).thenReturn("json");
+    }
+
+    @AfterEach
+    void tearDown() {
+        fixture.deactivate();
+    }
+
+    @Test
+    void ignoresFastRequests() {
+        fixture.activate(config(1000, 2, false));
+
+        fixture.begin();
+        fixture.end(request, TimeUnit.MILLISECONDS.toNanos(5), null);
+
+        assertEquals(0, fixture.getSlowRequestCount());
+        assertEquals(0, fixture.getSlowRequests().length);
+    }
+
+    @Test
+    void keepsMostRecentSlowRequests() {
+        fixture.activate(config(10, 2, false));
+
+        for (int i = 1; i <= 3; i++) {
+            RepositoryAccounting.begin();
+            RepositoryAccounting.recordQuery("SELECT " + i, 1000, 1);
+            fixture.begin();
+            fixture.end(request, TimeUnit.MILLISECONDS.toNanos(100 * i), RepositoryAccounting.end());
+        }
+
+        String[] requests = fixture.getSlowRequests();
+        assertEquals(3, fixture.getSlowRequestCount());
+        assertEquals(2, requests.length);
+        assertTrue(requests[0].contains("/content/test.authorinfo.json duration=300ms"));
+        assertTrue(requests[0].contains("query: SELECT 3"));
+        assertTrue(requests[1].contains("duration=200ms"));
+    }
+
+    @Test
+    void snapshotsStackOfRunningRequest() throws Exception {
+        fixture.activate(config(10, 2, false));
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch sampled = new CountDownLatch(1);
+        Thread worker = new Thread(() -> {
+            fixture.begin();
+            started.countDown();
+            try {
+                sampled.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            fixture.end(request, TimeUnit.MILLISECONDS.toNanos(50), null);
+        });
+        worker.start();
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        Thread.sleep(20);
+
+        fixture.sampleStacks();
+        sampled.countDown();
+        worker.join(5000);
+
+        assertTrue(fixture.getSlowRequests()[0].contains("stack at threshold:"));
+    }
+
+    private static SlowRequestRecorder.Config config(long thresholdMs, int capacity, boolean stackSnapshots) {
+        SlowRequestRecorder.Config config = mock(SlowRequestRecorder.Config.class);
+        when(config.thresholdMs()).thenReturn(thresholdMs);
+        when(config.capacity()).thenReturn(capacity);
+        when(config.stackSnapshots()).thenReturn(stackSnapshots);
+        return config;
+    }
+}
@@ -0,0 +1,99 @@
+package com.mysite.core.listeners;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.sling.api.resource.observation.ResourceChange.ChangeType;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class ChangeLogSegmentTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void appendsAndReadsFromAnyOffset() throws Exception {
+        try (ChangeLogSegment segment = ChangeLogSegment.open(directory, 1000, 64 * 1024)) {
+            for (int i = 0; i < 300; i++) {
+                assertTrue(segment.append(1000 + i, 42L, i % 2 == 0 ? ChangeType.CHANGED : ChangeType.REMOVED,
+                        bytes("/content/site/page-" + i)));
+            }
+
+            List<ChangeRecord> records = new ArrayList<>();
+            segment.read(1200, 3, records);
+
+            assertEquals(1300, segment.getNextOffset());
+            assertEquals(3, records.size());
+            assertEquals(1200, records.get(0).getOffset());
+            assertEquals("/content/site/page-200", records.get(0).getPath());
+            assertEquals(ChangeType.CHANGED, records.get(0).getType());
+            assertEquals(ChangeType.REMOVED, records.get(1).getType());
+            assertEquals(42L, records.get(2).getTimestamp());
+        }
+    }
+
+    @Test
+    void reportsWhenFull() throws Exception {
+        try (ChangeLogSegment segment = ChangeLogSegment.open(directory, 0, 100)) {
+            assertTrue(segment.append(0, 0, ChangeType.ADDED, bytes("/content/site/a")));
+            assertFalse(segment.append(1, 0, ChangeType.ADDED, bytes("/content/site/page-with-a-much-longer-name")));
+            assertEquals(1, segment.getNextOffset());
+        }
+    }
+
+    @Test
+    void recoversEndAfterReopen() throws Exception {
+        try (ChangeLogSegment segment = ChangeLogSegment.open(directory, 5, 4096)) {
+            segment.append(5, 0, ChangeType.ADDED, bytes("/content/site/a"));
+            segment.append(6, 0, ChangeType.CHANGED, bytes("/content/site/b"));
+        }
+
+        try (ChangeLogSegment segment = ChangeLogSegment.open(directory, 5, 4096)) {
+            assertEquals(7, segment.getNextOffset());
+            assertTrue(segment.append(7, 0, ChangeType.REMOVED, bytes("/content/site/c")));
+            List<ChangeRecord> records = new ArrayList<>();
+            segment.read(0, 10, records);
+            assertEquals(3, records.size());
+            assertEquals("/content/site/c", records.get(2).getPath());
+        }
+    }
+
+    @Test
+    void stopsAtTornRecord() throws Exception {
+        int secondRecord;
+        try (ChangeLogSegment segment = ChangeLogSegment.open(directory, 0, 4096)) {
+            segment.append(0, 0, ChangeType.ADDED, bytes("/content/site/a"));
+            secondRecord = ChangeLogSegment.HEADER + "/content/site/a".length();
+            segment.append(1, 0, ChangeType.ADDED, bytes("/content/site/b"));
+            segment.append(2, 0, ChangeType.ADDED, bytes("/content/site/c"));
+        }
+        try (RandomAccessFile file = new RandomAccessFile(directory.resolve(ChangeLogSegment.fileName(0)).toFile(), "rw")) {
+            file.seek(secondRecord + ChangeLogSegment.HEADER);
+            file.write('X');
+        }
+
+        try (ChangeLogSegment segment = ChangeLogSegment.open(directory, 0, 4096)) {
+            assertEquals(1, segment.getNextOffset());
+        }
+    }
+
+    @Test
+    void parsesFileNames() {
+        assertEquals("00000000000000000042.log", ChangeLogSegment.fileName(42));
+        assertEquals(42, ChangeLogSegment.parseBaseOffset("00000000000000000042.log"));
+        assertEquals(-1, ChangeLogSegment.parseBaseOffset("checkpoints.properties"));
+        assertEquals(-1, ChangeLogSegment.parseBaseOffset("0000000000000000004x.log"));
+    }
+
+    private static byte[] bytes(String path) {
+        return path.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,177 @@
+package com.mysite.core.listeners;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import org.apache.sling.api.resource.observation.ResourceChange;
+import org.apache.sling.api.resource.observation.ResourceChange.ChangeType;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.osgi.framework.BundleContext;
+
+class ContentChangeLogTest {
+
+    @TempDir
+    Path directory;
+
+    private ContentChangeLog fixture;
+
+    @AfterEach
+    void tearDown() throws Exception {
+        if (fixture != null) {
+            fixture.deactivate();
+        }
+    }
+
+    @Test
+    void appendsChangesWithGrowingOffsets() throws Exception {
+        fixture = open(64, 8);
+
+        fixture.consume(Arrays.asList(
+                new ResourceChange(ChangeType.CHANGED, "/content/site/en", false),
+                new ResourceChange(ChangeType.REMOVED, "/content/site/fr", false)));
+        fixture.consume(Arrays.asList(new ResourceChange(ChangeType.ADDED, "/content/site/de", false)));
+
+        List<ChangeRecord> records = fixture.read(0, 10);
+        assertEquals(3, records.size());
+        assertEquals(0, records.get(0).getOffset());
+        assertEquals(ChangeType.REMOVED, records.get(1).getType());
+        assertEquals("/content/site/de", records.get(2).getPath());
+        assertEquals(2, records.get(2).getOffset());
+        assertEquals(1, fixture.read(2, 10).size());
+        assertEquals(0, fixture.read(3, 10).size());
+        assertEquals(3, fixture.getNextOffset());
+    }
+
+    @Test
+    void rotatesAndDropsOldSegments() throws Exception {
+        fixture = open(4, 2);
+
+        for (int i = 0; i < 500; i++) {
+            fixture.append(ChangeType.CHANGED, "/content/site/page-" + i);
+        }
+
+        assertEquals(2, fixture.getSegmentCount());
+        assertTrue(fixture.getFirstOffset() > 0);
+        List<ChangeRecord> records = fixture.read(0, 1000);
+        assertEquals(fixture.getFirstOffset(), records.get(0).getOffset());
+        assertEquals(499, records.get(records.size() - 1).getOffset());
+        assertEquals(500 - fixture.getFirstOffset(), records.size());
+    }
+
+    @Test
+    void keepsOffsetsAcrossRestarts() throws Exception {
+        fixture = open(64, 8);
+        fixture.append(ChangeType.CHANGED, "/content/site/en");
+        fixture.append(ChangeType.CHANGED, "/content/site/fr");
+        fixture.deactivate();
+
+        fixture = open(64, 8);
+
+        assertEquals(2, fixture.append(ChangeType.CHANGED, "/content/site/de"));
+        assertEquals(3, fixture.read(0, 10).size());
+    }
+
+    @Test
+    void deliversFromCheckpointAndReplaysAfterRestart() throws Exception {
+        fixture = open(64, 8);
+        fixture.append(ChangeType.CHANGED, "/content/site/before");
+        RecordingConsumer consumer = new RecordingConsumer();
+        fixture.bindConsumer(consumer);
+        await(() -> fixture.getCheckpoint("recording") == 1);
+
+        fixture.append(ChangeType.CHANGED, "/content/site/a");
+        fixture.append(ChangeType.CHANGED, "/content/site/b");
+        fixture.consume(new ArrayList<>());
+        await(() -> consumer.paths.size() == 2);
+        assertEquals(Arrays.asList("/content/site/a", "/content/site/b"), consumer.paths);
+        await(() -> fixture.getCheckpoint("recording") == 3);
+        fixture.deactivate();
+        assertTrue(Files.readAllLines(directory.resolve(ContentChangeLog.CHECKPOINTS_FILE)).contains("recording=3"));
+
+        fixture = open(64, 8);
+        fixture.setCheckpoint("recording", 2);
+        RecordingConsumer restarted = new RecordingConsumer();
+        fixture.bindConsumer(restarted);
+        await(() -> restarted.paths.size() == 1);
+        assertEquals("/content/site/b", restarted.paths.get(0));
+    }
+
+    @Test
+    void retriesFailedBatches() throws Exception {
+        fixture = open(64, 8);
+        AtomicInteger calls = new AtomicInteger();
+        List<String> paths = new CopyOnWriteArrayList<>();
+        fixture.bindConsumer(new ChangeLogConsumer() {
+            @Override
+            public String getName() {
+                return "flaky";
+            }
+
+            @Override
+            public void consume(List<ChangeRecord> records) throws Exception {
+                if (calls.incrementAndGet() == 1) {
+                    throw new Exception("index not available");
+                }
+                records.forEach(record -> paths.add(record.getPath()));
+            }
+        });
+        await(() -> fixture.getCheckpoint("flaky") == 0);
+
+        fixture.append(ChangeType.CHANGED, "/content/site/en");
+        fixture.consume(new ArrayList<>());
+
+        await(() -> paths.size() == 1);
+        assertEquals(2, calls.get());
+        assertEquals("/content/site/en", paths.get(0));
+    }
+
+    private ContentChangeLog open(int segmentSizeKb, int maxSegments) throws Exception {
+        ContentChangeLog.Config config = mock(ContentChangeLog.Config.class);
+        when(config.directory()).thenReturn(directory.toString());
+        when(config.segmentSizeKb()).thenReturn(segmentSizeKb);
+        when(config.maxSegments()).thenReturn(maxSegments);
+        when(config.batchSize()).thenReturn(100);
+        when(config.pollIntervalMs()).thenReturn(20L);
+        when(config.syncOnAppend()).thenReturn(true);
+        ContentChangeLog log = new ContentChangeLog();
+        log.activate(config, mock(BundleContext.class));
+        return log;
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.nanoTime() < deadline, "condition not met in time");
+            Thread.sleep(10);
+        }
+    }
+
+    private static final class RecordingConsumer implements ChangeLogConsumer {
+
+        private final List<String> paths = new CopyOnWriteArrayList<>();
+
+        @Override
+        public String getName() {
+            return "recording";
+        }
+
+        @Override
+        public void consume(List<ChangeRecord> records) {
+            records.forEach(record -> paths.add(record.getPath()));
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package com.mysite.core.listeners;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.apache.sling.api.resource.observation.ResourceChange;
+import org.apache.sling.api.resource.observation.ResourceChange.ChangeType;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+@ExtendWith(MockitoExtension.class)
+class ExternalResourceListenerTest {
+
+    @Mock
+    private SimpleResourceListener listener;
+
+    @InjectMocks
+    private ExternalResourceListener fixture;
+
+    @Test
+    void forwardsOnlyExternalChanges() {
+        ResourceChange external = new ResourceChange(ChangeType.CHANGED, "/content/site/en", true);
+
+        fixture.onChange(Arrays.asList(
+                new ResourceChange(ChangeType.ADDED, "/content/site/de", false),
+                external));
+
+        verify(listener).process(Collections.singletonList(external));
+    }
+
+    @Test
+    void ignoresLocalBatches() {
+        fixture.onChange(Collections.singletonList(new ResourceChange(ChangeType.ADDED, "/content/site/de", false)));
+
+        verify(listener, never()).process(any());
+    }
+}
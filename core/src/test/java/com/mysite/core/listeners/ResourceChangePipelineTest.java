@@ -0,0 +1,116 @@
+package com.mysite.core.listeners;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.sling.api.resource.observation.ResourceChange;
+import org.apache.sling.api.resource.observation.ResourceChange.ChangeType;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+class ResourceChangePipelineTest {
+
+    private final ResourceChangePipeline fixture;
+
+    private final List<List<ResourceChange>> batches = new CopyOnWriteArrayList<>();
+
+    ResourceChangePipelineTest() throws Exception {
+        fixture = new ResourceChangePipeline();
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        fixture.deactivate();
+    }
+
+    @Test
+    void coalescesChangesPerPage() throws Exception {
+        CountDownLatch latch = new CountDownLatch(1);
+        fixture.activate(config(100, 100, 20, 0));
+        fixture.bindConsumer(batch -> {
+            batches.add(new ArrayList<>(batch));
+            latch.countDown();
+        });
+
+        assertTrue(fixture.submit(Arrays.asList(
+                new ResourceChange(ChangeType.CHANGED, "/content/site/en/jcr:content", false),
+                new ResourceChange(ChangeType.ADDED, "/content/site/en/jcr:content/root/text", false),
+                new ResourceChange(ChangeType.CHANGED, "/content/site/en/jcr:content/root", false),
+                new ResourceChange(ChangeType.ADDED, "/content/site/fr", false))));
+
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        List<ResourceChange> batch = batches.get(0);
+        assertEquals(2, batch.size());
+        assertEquals("/content/site/en", batch.get(0).getPath());
+        assertEquals(ChangeType.CHANGED, batch.get(0).getType());
+        assertEquals("/content/site/fr", batch.get(1).getPath());
+        assertEquals(ChangeType.ADDED, batch.get(1).getType());
+        assertEquals(4, fixture.getReceivedCount());
+        assertEquals(2, fixture.getCoalescedCount());
+        assertEquals(1, fixture.getBatchCount());
+    }
+
+    @Test
+    void flushesWhenBatchIsFull() throws Exception {
+        CountDownLatch latch = new CountDownLatch(2);
+        fixture.activate(config(100, 2, 60000, 0));
+        fixture.bindConsumer(batch -> {
+            batches.add(new ArrayList<>(batch));
+            latch.countDown();
+        });
+
+        for (int i = 0; i < 4; i++) {
+            fixture.submit(Collections.singletonList(new ResourceChange(ChangeType.CHANGED, "/content/page" + i, false)));
+        }
+
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        assertEquals(2, batches.get(0).size());
+        assertEquals(2, batches.get(1).size());
+    }
+
+    @Test
+    void dropsWhenQueueIsFull() throws Exception {
+        CountDownLatch blocked = new CountDownLatch(1);
+        fixture.activate(config(1, 1, 60000, 0));
+        fixture.bindConsumer(batch -> {
+            try {
+                blocked.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+
+        fixture.submit(Collections.singletonList(new ResourceChange(ChangeType.CHANGED, "/content/a", false)));
+        // wait until the worker is stuck in the consumer with the first change
+        long deadline = System.currentTimeMillis() + 5000;
+        while (fixture.getQueueDepth() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        fixture.submit(Collections.singletonList(new ResourceChange(ChangeType.CHANGED, "/content/b", false)));
+
+        assertFalse(fixture.submit(Collections.singletonList(new ResourceChange(ChangeType.CHANGED, "/content/c", false))));
+        assertEquals(1, fixture.getDroppedCount());
+        blocked.countDown();
+    }
+
+    private static ResourceChangePipeline.Config config(int maxPending, int batchSize, long flushIntervalMs,
+                                                        long offerTimeoutMs) {
+        ResourceChangePipeline.Config config = mock(ResourceChangePipeline.Config.class);
+        when(config.maxPending()).thenReturn(maxPending);
+        when(config.batchSize()).thenReturn(batchSize);
+        when(config.flushIntervalMs()).thenReturn(flushIntervalMs);
+        when(config.offerTimeoutMs()).thenReturn(offerTimeoutMs);
+        return config;
+    }
+}
@@ -16,13 +16,18 @@
 package com.mysite.core.listeners;
 
 import static org.junit.jupiter.api.Assertions.assertAll;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
 
 import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 
 import org.apache.sling.api.resource.observation.ResourceChange;
 import org.apache.sling.api.resource.observation.ResourceChange.ChangeType;
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.Test;
 
 import uk.org.lidalia.slf4jext.Level;
@@ -32,9 +37,19 @@ import uk.org.lidalia.slf4jtest.TestLoggerFactory;
 
 class SimpleResourceListenerTest {
 
-    private SimpleResourceListener fixture = new SimpleResourceListener();
+    private SimpleResourceListener fixture;
 
-    private TestLogger logger = TestLoggerFactory.getTestLogger(fixture.getClass());
+    private TestLogger logger;
+
+    SimpleResourceListenerTest() throws Exception {
+        fixture = new SimpleResourceListener();
+        logger = TestLoggerFactory.getTestLogger(fixture.getClass());
+    }
+
+    @AfterEach
+    void clearLogger() {
+        logger.clear();
+    }
 
     @Test
     void handleEvent() {
@@ -55,4 +70,35 @@ class SimpleResourceListenerTest {
                 () -> assertEquals(Boolean.FALSE,event.getArguments().get(2))
         );
     }
+
+    @Test
+    void summarizesEventsPerPrefix() {
+
+        fixture.onChange(Arrays.asList(
+                new ResourceChange(ChangeType.CHANGED,"/content/test", false),
+                new ResourceChange(ChangeType.CHANGED,"/var/test", false)));
+
+        assertArrayEquals(new String[] { "/content: 0.00/s, 1 total", "other: 0.00/s, 1 total" }, fixture.getSummary());
+    }
+
+    @Test
+    void countEventsPerPrefix() {
+        SimpleResourceListener.Config config = mock(SimpleResourceListener.Config.class);
+        when(config.ratePrefixes()).thenReturn(new String[] { "/content", "/content/dam" });
+        when(config.rateWindowSeconds()).thenReturn(60L);
+        fixture.activate(config);
+
+        fixture.onChange(Arrays.asList(
+                new ResourceChange(ChangeType.CHANGED,"/content/site/en", true),
+                new ResourceChange(ChangeType.ADDED,"/content/dam/site/asset.jpg", false),
+                new ResourceChange(ChangeType.ADDED,"/var/audit/entry", false)));
+
+        Map<String, Long> totals = fixture.getEventTotals();
+        assertAll(
+                () -> assertEquals(3, logger.getLoggingEvents().size()),
+                () -> assertEquals(Long.valueOf(1), totals.get("/content")),
+                () -> assertEquals(Long.valueOf(1), totals.get("/content/dam")),
+                () -> assertEquals(Long.valueOf(1), totals.get(EventRateCounter.OTHER))
+        );
+    }
 }
\ No newline at end of file
@@ -0,0 +1,42 @@
+package com.mysite.core.models;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+
+class ExcerptHighlighterTest {
+
+    @Test
+    void highlightsEveryOccurrenceIgnoringCase() {
+        assertEquals("A <strong>Test</strong> of the <strong>test</strong> page",
+                ExcerptHighlighter.highlight("A Test of the test page", "test", 160));
+    }
+
+    @Test
+    void cutsFragmentAroundMatchAtWordBoundaries() {
+        String text = "The quick brown fox jumps over the lazy dog and then the Dog sleeps under a tree in the sun";
+
+        assertEquals("&hellip;the lazy <strong>dog</strong> and then the <strong>Dog</strong>&hellip;",
+                ExcerptHighlighter.highlight(text, "dog", 30));
+    }
+
+    @Test
+    void startsAtBeginningWithoutMatch() {
+        assertEquals("one two three four&hellip;",
+                ExcerptHighlighter.highlight("one two three four five six seven eight nine ten", "missing", 20));
+        assertEquals("Short text", ExcerptHighlighter.highlight("Short text", "missing", 160));
+    }
+
+    @Test
+    void escapesDescription() {
+        assertEquals("Fish &amp; &lt;chips&gt; are <strong>&quot;fresh&quot;</strong>",
+                ExcerptHighlighter.highlight("Fish & <chips> are \"fresh\"", "\"fresh\"", 160));
+    }
+
+    @Test
+    void handlesMissingTextAndTerm() {
+        assertEquals("", ExcerptHighlighter.highlight(null, "test", 160));
+        assertEquals("", ExcerptHighlighter.highlight("", "test", 160));
+        assertEquals("no term", ExcerptHighlighter.highlight("no term", "", 160));
+    }
+}
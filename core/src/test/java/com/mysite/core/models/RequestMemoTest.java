@@ -0,0 +1,86 @@
+package com.mysite.core.models;
+
+import com.day.cq.wcm.api.Page;
+import io.wcm.testing.mock.aem.junit5.AemContext;
+import io.wcm.testing.mock.aem.junit5.AemContextExtension;
+import com.mysite.core.testcontext.AppAemContext;
+import org.apache.sling.api.resource.Resource;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@ExtendWith(AemContextExtension.class)
+class RequestMemoTest {
+
+    private static final int COMPONENTS = 50;
+
+    private final AemContext context = AppAemContext.newAemContext();
+
+    @Test
+    void rendersFiftyComponentsWithOnePageLookup() {
+        Page page = context.create().page("/content/mypage");
+        for (int i = 0; i < COMPONENTS; i++) {
+            Resource resource = context.create().resource(page, "root/hello" + i,
+                    "sling:resourceType", "mysite/components/helloworld");
+            HelloWorldModel model = resource.adaptTo(HelloWorldModel.class);
+            assertTrue(model.getMessage().contains("/content/mypage"));
+        }
+
+        // without the memo every component adapted the resolver and resolved the page again
+        assertEquals(1, RequestMemo.of(context.resourceResolver()).getPageLookups());
+    }
+
+    @Test
+    void sharesLookupsPerResolver() {
+        RequestMemo memo = RequestMemo.of(context.resourceResolver());
+
+        assertSame(memo, RequestMemo.of(context.resourceResolver()));
+        assertSame(memo.getPageManager(), memo.getPageManager());
+    }
+
+    @Test
+    void resolvesContainingPages() {
+        Page parent = context.create().page("/content/parent");
+        Page child = context.create().page("/content/parent/child");
+        Resource component = context.create().resource(child, "root/text");
+        Resource folder = context.create().resource("/content/folder");
+        RequestMemo memo = RequestMemo.of(context.resourceResolver());
+
+        assertEquals(child.getPath(), memo.getContainingPage(component).getPath());
+        assertEquals(parent.getPath(), memo.getContainingPage(parent.getContentResource()).getPath());
+        assertNull(memo.getContainingPage(folder));
+        assertEquals(3, memo.getPageLookups());
+    }
+
+    @Test
+    void keepsRecentlyUsedPagesOnly() {
+        RequestMemo memo = RequestMemo.of(context.resourceResolver());
+        Resource first = context.create().resource("/content/folder-0");
+        memo.getContainingPage(first);
+        for (int i = 1; i <= RequestMemo.MAX_PAGES; i++) {
+            memo.getContainingPage(context.create().resource("/content/folder-" + i));
+        }
+
+        memo.getContainingPage(first);
+        assertEquals(RequestMemo.MAX_PAGES + 2, memo.getPageLookups());
+    }
+
+    @Test
+    void sharesNothingWhenDisabled() {
+        context.resourceResolver().getPropertyMap().put(RequestMemo.DISABLED, Boolean.TRUE);
+
+        assertNotSame(RequestMemo.of(context.resourceResolver()), RequestMemo.of(context.resourceResolver()));
+    }
+
+    @Test
+    void keysResourcesByPage() {
+        assertEquals("/content/a", RequestMemo.pageKey("/content/a/jcr:content/root/text"));
+        assertEquals("/content/a", RequestMemo.pageKey("/content/a/jcr:content"));
+        assertEquals("/content/a/b", RequestMemo.pageKey("/content/a/b"));
+    }
+}
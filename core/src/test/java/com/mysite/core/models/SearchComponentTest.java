@@ -55,6 +55,14 @@ class SearchComponentTest {
         assertEquals(2, results.size());
     }
 
+    @Test
+    void testSearchResultsCarryHighlightedExcerpts() {
+        for (SearchComponent.SearchResult result : searchComponent.getSearchResults()) {
+            assertTrue(result.getExcerpt().contains("<strong>test</strong>"), result.getExcerpt());
+        }
+        assertEquals(SearchComponent.DEFAULT_EXCERPT_LENGTH, searchComponent.getExcerptLength());
+    }
+
     @Test
     void testInitWithEmptySearchTerm() {
         resource = context.create().resource("/content/test-page/jcr:content/search-component-empty",
@@ -131,6 +139,44 @@ class SearchComponentTest {
         assertEquals(calendar, searchResult.getLastModified());
     }
 
+    @Test
+    void testCreateSearchResult_PrefersPageContent() throws Exception {
+        Node mockPageNode = mock(Node.class);
+        Node mockContentNode = mock(Node.class);
+        Property titleProp = mock(Property.class);
+        Property modProp = mock(Property.class);
+        Calendar calendar = Calendar.getInstance();
+
+        when(mockPageNode.getPath()).thenReturn("/content/sample");
+        when(mockPageNode.hasNode("jcr:content")).thenReturn(true);
+        when(mockPageNode.getNode("jcr:content")).thenReturn(mockContentNode);
+        when(mockContentNode.hasProperty("jcr:title")).thenReturn(true);
+        when(mockContentNode.getProperty("jcr:title")).thenReturn(titleProp);
+        when(titleProp.getString()).thenReturn("Content Title");
+        when(mockContentNode.hasProperty("cq:lastModified")).thenReturn(true);
+        when(mockContentNode.getProperty("cq:lastModified")).thenReturn(modProp);
+        when(modProp.getDate()).thenReturn(calendar);
+
+        Method method = SearchComponent.class.getDeclaredMethod("createSearchResult", Node.class);
+        method.setAccessible(true);
+        SearchComponent.SearchResult searchResult =
+                (SearchComponent.SearchResult) method.invoke(new SearchComponent(), mockPageNode);
+
+        assertEquals("Content Title", searchResult.getTitle());
+        assertEquals(calendar, searchResult.getLastModified());
+        verify(mockPageNode, never()).getProperty("jcr:title");
+    }
+
+    @Test
+    void testQueryMatchesWherePropertiesAreRead() {
+        String query = SearchComponent.buildQuery("news");
+
+        assertTrue(query.contains("page.[jcr:content/jcr:title] LIKE '%news%'"));
+        assertTrue(query.contains("page.[jcr:content/jcr:description] LIKE '%news%'"));
+        assertTrue(query.contains("page.[jcr:title] LIKE '%news%'"));
+        assertTrue(query.contains("page.[jcr:description] LIKE '%news%'"));
+    }
+
     // ✅ TEST: createSearchResult – missing fields
     @Test
     void testCreateSearchResult_MissingOptionalFields() throws Exception {
@@ -0,0 +1,142 @@
+package com.mysite.core.schedulers;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+class JobRunnerTest {
+
+    private final ExecutorService workers = Executors.newCachedThreadPool();
+
+    @AfterEach
+    void tearDown() {
+        workers.shutdownNow();
+    }
+
+    @Test
+    void recordsSuccessfulRun() {
+        AtomicInteger calls = new AtomicInteger();
+        JobRunner runner = runner(JobSettings.cron("job", "0 * * * * ?"), calls::incrementAndGet);
+
+        runner.run();
+
+        assertEquals(1, calls.get());
+        assertEquals(1, runner.getSucceeded());
+        assertEquals(JobRunner.Outcome.SUCCEEDED, runner.getHistory()[0].outcome);
+        assertFalse(runner.isRunning());
+    }
+
+    @Test
+    void retriesWithBackoff() {
+        AtomicInteger calls = new AtomicInteger();
+        JobRunner runner = runner(JobSettings.cron("job", "0 * * * * ?").withRetries(2, 1), () -> {
+            if (calls.incrementAndGet() < 3) {
+                throw new IllegalStateException("attempt " + calls.get());
+            }
+        });
+
+        runner.run();
+
+        assertEquals(3, calls.get());
+        assertEquals(2, runner.getRetried());
+        assertEquals(1, runner.getSucceeded());
+        assertEquals(3, runner.getHistory()[0].attempts);
+    }
+
+    @Test
+    void failsAfterLastRetry() {
+        JobRunner runner = runner(JobSettings.cron("job", "0 * * * * ?").withRetries(1, 1), () -> {
+            throw new IllegalStateException("broken");
+        });
+
+        runner.run();
+
+        assertEquals(1, runner.getFailed());
+        JobRunner.Execution execution = runner.getHistory()[0];
+        assertEquals(JobRunner.Outcome.FAILED, execution.outcome);
+        assertEquals(2, execution.attempts);
+        assertEquals("broken", execution.error.getMessage());
+    }
+
+    @Test
+    void doublesBackoff() {
+        JobRunner runner = runner(JobSettings.cron("job", "0 * * * * ?").withRetries(5, 100), () -> { });
+
+        assertEquals(100, runner.backoffMillis(1));
+        assertEquals(200, runner.backoffMillis(2));
+        assertEquals(TimeUnit.MINUTES.toMillis(10), runner.backoffMillis(40));
+    }
+
+    @Test
+    void skipsWhileTimedOutAttemptIsStillRunning() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger calls = new AtomicInteger();
+        JobRunner runner = runner(JobSettings.cron("job", "0 * * * * ?")
+                .withRetries(3, 1)
+                .withTimeout(50, TimeUnit.MILLISECONDS), () -> {
+            calls.incrementAndGet();
+            // ignores the interrupt, like a job stuck in a blocking call
+            while (release.getCount() > 0) {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    // keep waiting
+                }
+            }
+        });
+
+        runner.run();
+        runner.run();
+
+        assertEquals(1, runner.getTimedOut());
+        assertEquals(1, runner.getSkipped());
+        assertEquals(1, calls.get());
+        assertTrue(runner.isRunning());
+
+        release.countDown();
+        for (int i = 0; i < 100 && runner.isRunning(); i++) {
+            Thread.sleep(10);
+        }
+        assertFalse(runner.isRunning());
+    }
+
+    @Test
+    void waitsForFixedDelay() {
+        AtomicInteger calls = new AtomicInteger();
+        JobRunner runner = runner(JobSettings.fixedDelay("job", 3600), calls::incrementAndGet);
+
+        runner.run();
+        runner.run();
+
+        assertEquals(1, calls.get());
+        assertEquals(0, runner.getSkipped());
+    }
+
+    private JobRunner runner(JobSettings settings, ThrowingRunnable body) {
+        ManagedJob job = new ManagedJob() {
+            @Override
+            public JobSettings getSettings() {
+                return settings;
+            }
+
+            @Override
+            public void execute() throws Exception {
+                body.run();
+            }
+        };
+        return new JobRunner(job, settings, workers);
+    }
+
+    private interface ThrowingRunnable {
+        void run() throws Exception;
+    }
+}
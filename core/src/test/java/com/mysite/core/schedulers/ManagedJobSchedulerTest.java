@@ -0,0 +1,119 @@
+package com.mysite.core.schedulers;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.sling.commons.scheduler.ScheduleOptions;
+import org.apache.sling.commons.scheduler.Scheduler;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+@ExtendWith(MockitoExtension.class)
+class ManagedJobSchedulerTest {
+
+    @Mock
+    private Scheduler scheduler;
+
+    @Mock
+    private ScheduleOptions options;
+
+    @InjectMocks
+    private ManagedJobScheduler fixture;
+
+    private final AtomicInteger calls = new AtomicInteger();
+
+    @BeforeEach
+    void setUp() {
+        when(options.name(anyString())).thenReturn(options);
+        when(options.canRunConcurrently(anyBoolean())).thenReturn(options);
+        when(options.onSingleInstanceOnly(anyBoolean())).thenReturn(options);
+        when(scheduler.schedule(any(), eq(options))).thenReturn(true);
+    }
+
+    @Test
+    void schedulesJobsBoundBeforeActivation() {
+        when(scheduler.EXPR("0 0 * * * ?")).thenReturn(options);
+        fixture.bindJob(job(JobSettings.cron("cleanup", "0 0 * * * ?").withLeaderOnly(true)));
+        verify(scheduler, never()).schedule(any(), any());
+
+        fixture.activate();
+
+        verify(options).name("mysite.managed.cleanup");
+        verify(options).canRunConcurrently(false);
+        verify(options).onSingleInstanceOnly(true);
+        verify(scheduler).schedule(any(JobRunner.class), eq(options));
+    }
+
+    @Test
+    void triggersFixedDelayJobsEveryTenthOfTheDelay() {
+        when(scheduler.NOW(-1, 60)).thenReturn(options);
+        fixture.activate();
+
+        fixture.bindJob(job(JobSettings.fixedDelay("reindex", 600)));
+
+        verify(scheduler).NOW(-1, 60);
+    }
+
+    @Test
+    void runsAndReportsJobs() {
+        when(scheduler.EXPR(anyString())).thenReturn(options);
+        fixture.activate();
+        ManagedJob job = job(JobSettings.cron("cleanup", "0 0 * * * ?"));
+        fixture.bindJob(job);
+
+        fixture.runNow("cleanup");
+
+        assertEquals(1, calls.get());
+        assertEquals(1, fixture.getHistory("cleanup").length);
+        assertTrue(fixture.getJobs()[0].startsWith("cleanup [cron '0 0 * * * ?'"));
+        assertTrue(fixture.getJobs()[0].contains("succeeded=1"));
+
+        fixture.unbindJob(job);
+        verify(scheduler).unschedule("mysite.managed.cleanup");
+        assertEquals(0, fixture.getJobs().length);
+        fixture.deactivate();
+    }
+
+    @Test
+    void runsLeaderOnlyJobsThroughTheScheduler() {
+        when(scheduler.EXPR(anyString())).thenReturn(options);
+        when(scheduler.NOW()).thenReturn(options);
+        fixture.activate();
+        fixture.bindJob(job(JobSettings.cron("cleanup", "0 0 * * * ?").withLeaderOnly(true)));
+
+        fixture.runNow("cleanup");
+
+        assertEquals(0, calls.get());
+        verify(options).name("mysite.managed.cleanup.now");
+        verify(scheduler).NOW();
+        verify(scheduler, times(2)).schedule(any(JobRunner.class), eq(options));
+    }
+
+    private ManagedJob job(JobSettings settings) {
+        return new ManagedJob() {
+            @Override
+            public JobSettings getSettings() {
+                return settings;
+            }
+
+            @Override
+            public void execute() {
+                calls.incrementAndGet();
+            }
+        };
+    }
+}
@@ -49,7 +49,7 @@ class SimpleScheduledTaskTest {
         when(config.myParameter()).thenReturn("parameter value");
 
         fixture.activate(config);
-        fixture.run();
+        fixture.execute();
 
         List<LoggingEvent> events = logger.getLoggingEvents();
         assertEquals(1, events.size());
@@ -58,4 +58,15 @@ class SimpleScheduledTaskTest {
         assertEquals(1, event.getArguments().size());
         assertEquals("parameter value", event.getArguments().get(0));
     }
+
+    @Test
+    void settings() {
+        SimpleScheduledTask.Config config = mock(SimpleScheduledTask.Config.class);
+        when(config.scheduler_expression()).thenReturn("*/30 * * * * ?");
+
+        fixture.activate(config);
+
+        assertEquals("SimpleScheduledTask", fixture.getSettings().getName());
+        assertEquals("*/30 * * * * ?", fixture.getSettings().getCronExpression());
+    }
 }
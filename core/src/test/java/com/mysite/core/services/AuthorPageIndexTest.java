@@ -0,0 +1,195 @@
+package com.mysite.core.services;
+
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.resource.ResourceResolverFactory;
+import org.apache.sling.api.resource.observation.ResourceChange;
+import org.apache.sling.api.resource.observation.ResourceChange.ChangeType;
+import org.apache.sling.api.wrappers.ValueMapDecorator;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class AuthorPageIndexTest {
+
+    @Mock
+    private ResourceResolverFactory resourceResolverFactory;
+
+    @Mock
+    private ResourceResolver resourceResolver;
+
+    @InjectMocks
+    private AuthorPageIndex index;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        AuthorPageIndex.Config config = mock(AuthorPageIndex.Config.class);
+        when(config.rootPath()).thenReturn("/content");
+        when(config.rebuildOnActivate()).thenReturn(false);
+        index.activate(config);
+
+        lenient().when(resourceResolverFactory.getServiceResourceResolver(anyMap())).thenReturn(resourceResolver);
+    }
+
+    @Test
+    void testToPagePath() {
+        assertEquals("/content/site/en", AuthorPageIndex.toPagePath("/content/site/en/jcr:content"));
+        assertEquals("/content/site/en", AuthorPageIndex.toPagePath("/content/site/en/jcr:content/root/title"));
+        assertEquals("/content/site/en", AuthorPageIndex.toPagePath("/content/site/en"));
+        assertNull(AuthorPageIndex.toPagePath("/content/site/en/jcr:contentx"));
+    }
+
+    @Test
+    void testIndexesChangedPages() {
+        mockContent("/content/site/en", "Home", "alice");
+        mockContent("/content/site/en/about", "About", "alice");
+        mockContent("/content/site/en/about/team", "Team", "alice");
+        mockContent("/content/site/en/news", "News", "bob");
+
+        index.onChange(Arrays.asList(
+                new ResourceChange(ChangeType.CHANGED, "/content/site/en/jcr:content", false),
+                new ResourceChange(ChangeType.CHANGED, "/content/site/en/about/jcr:content", false),
+                new ResourceChange(ChangeType.ADDED, "/content/site/en/about/team/jcr:content/root", false),
+                new ResourceChange(ChangeType.CHANGED, "/content/site/en/news/jcr:content", false)));
+
+        assertEquals(4, index.getPageCount());
+        assertEquals(2, index.getAuthorCount());
+        assertEquals(3, index.getPagesByAuthor("alice").size());
+
+        List<AuthorPageIndex.PageEntry> children = index.getChildPagesByAuthor("/content/site/en", "alice");
+        assertEquals(1, children.size());
+        assertEquals("/content/site/en/about", children.get(0).getPath());
+        assertEquals("About", children.get(0).getTitle());
+        assertTrue(children.get(0).getLastModified() > 0);
+        assertSame(index.getPagesByAuthor("alice").get(0).getAuthorId(),
+                index.getPagesByAuthor("alice").get(1).getAuthorId());
+        assertTrue(index.getMemoryFootprint() > 0);
+        assertTrue(index.getStalenessMillis() >= 0);
+    }
+
+    @Test
+    void testReassignsAndRemovesPages() {
+        mockContent("/content/site/en/about", "About", "alice");
+        index.onChange(Collections.singletonList(
+                new ResourceChange(ChangeType.CHANGED, "/content/site/en/about/jcr:content", false)));
+
+        mockContent("/content/site/en/about", "About", "bob");
+        index.onChange(Collections.singletonList(
+                new ResourceChange(ChangeType.CHANGED, "/content/site/en/about/jcr:content", false)));
+
+        assertTrue(index.getPagesByAuthor("alice").isEmpty());
+        assertEquals(1, index.getPagesByAuthor("bob").size());
+
+        index.onChange(Collections.singletonList(
+                new ResourceChange(ChangeType.REMOVED, "/content/site/en", false)));
+
+        assertEquals(0, index.getPageCount());
+        assertEquals(0, index.getAuthorCount());
+    }
+
+    @Test
+    void testNotReadyUntilBuilt() {
+        assertFalse(index.isReady());
+        assertEquals(AuthorPageIndex.State.EMPTY, index.getState());
+    }
+
+    @Test
+    void testRebuildSwapsInNewContents() {
+        mockContent("/content/site/en/old", "Old", "alice");
+        index.onChange(Collections.singletonList(
+                new ResourceChange(ChangeType.CHANGED, "/content/site/en/old/jcr:content", false)));
+
+        Resource content = mockContent("/content/site/en/news", "News", "bob");
+        Resource page = mock(Resource.class);
+        when(page.getPath()).thenReturn("/content/site/en/news");
+        when(content.getParent()).thenReturn(page);
+        when(resourceResolver.findResources(anyString(), eq("JCR-SQL2")))
+                .thenReturn(Collections.singletonList(content).iterator());
+
+        index.rebuild();
+
+        assertTrue(index.isReady());
+        assertEquals("READY", index.getStatus());
+        assertEquals(1, index.getPageCount());
+        assertTrue(index.getPagesByAuthor("alice").isEmpty());
+        assertEquals(1, index.getPagesByAuthor("bob").size());
+    }
+
+    @Test
+    void testFailedRebuildKeepsBuiltIndex() {
+        when(resourceResolver.findResources(anyString(), eq("JCR-SQL2")))
+                .thenReturn(Collections.<Resource>emptyList().iterator())
+                .thenThrow(new IllegalStateException("query failed"));
+
+        index.rebuild();
+        assertTrue(index.isReady());
+
+        index.rebuild();
+        assertTrue(index.isReady());
+    }
+
+    @Test
+    void testFailedFirstBuildIsReported() {
+        when(resourceResolver.findResources(anyString(), eq("JCR-SQL2")))
+                .thenThrow(new IllegalStateException("query failed"));
+
+        index.rebuild();
+
+        assertFalse(index.isReady());
+        assertEquals(AuthorPageIndex.State.FAILED, index.getState());
+    }
+
+    @Test
+    void testIgnoresChangesOutsideRoot() {
+        index.onChange(Collections.singletonList(
+                new ResourceChange(ChangeType.CHANGED, "/conf/site/jcr:content", false)));
+
+        assertEquals(0, index.getPageCount());
+        verifyNoInteractions(resourceResolverFactory);
+    }
+
+    @Test
+    void testIgnoresNonPageContent() {
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("jcr:primaryType", "dam:AssetContent");
+        properties.put("jcr:lastModifiedBy", "alice");
+        Resource content = mock(Resource.class);
+        when(content.getValueMap()).thenReturn(new ValueMapDecorator(properties));
+        when(resourceResolver.getResource("/content/dam/site/logo.png/jcr:content")).thenReturn(content);
+
+        index.onChange(Collections.singletonList(
+                new ResourceChange(ChangeType.CHANGED, "/content/dam/site/logo.png/jcr:content", false)));
+
+        assertEquals(0, index.getPageCount());
+        assertTrue(index.getPagesByAuthor("alice").isEmpty());
+    }
+
+    private Resource mockContent(String pagePath, String title, String author) {
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("jcr:primaryType", "cq:PageContent");
+        properties.put("jcr:title", title);
+        properties.put("jcr:lastModifiedBy", author);
+        properties.put("cq:lastModified", Calendar.getInstance());
+        Resource content = mock(Resource.class);
+        when(content.getValueMap()).thenReturn(new ValueMapDecorator(properties));
+        lenient().when(resourceResolver.getResource(pagePath + "/jcr:content")).thenReturn(content);
+        return content;
+    }
+}
@@ -0,0 +1,163 @@
+package com.mysite.core.services;
+
+import com.day.cq.replication.ReplicationAction;
+import com.day.cq.replication.ReplicationActionType;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.sling.api.resource.observation.ResourceChange;
+import org.apache.sling.api.resource.observation.ResourceChange.ChangeType;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.lenient;
+
+@ExtendWith(MockitoExtension.class)
+class DispatcherInvalidationServiceTest {
+
+    @Mock
+    private DispatcherInvalidationService.Config config;
+
+    private final List<String> flushed = Collections.synchronizedList(new ArrayList<>());
+
+    private HttpServer dispatcher;
+
+    private DispatcherInvalidationService service;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        dispatcher = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        dispatcher.createContext("/dispatcher/invalidate.cache", exchange -> {
+            flushed.add(exchange.getRequestHeaders().getFirst(DispatcherInvalidationService.CQ_ACTION) + " "
+                    + exchange.getRequestHeaders().getFirst(DispatcherInvalidationService.CQ_HANDLE));
+            exchange.sendResponseHeaders(200, -1);
+            exchange.close();
+        });
+        dispatcher.start();
+
+        String endpoint = "http://127.0.0.1:" + dispatcher.getAddress().getPort() + "/dispatcher/invalidate.cache";
+        lenient().when(config.endpoints()).thenReturn(new String[] { endpoint });
+        lenient().when(config.statFilesLevel()).thenReturn(2);
+        lenient().when(config.maxHandles()).thenReturn(50);
+        lenient().when(config.windowMs()).thenReturn(60_000L);
+        lenient().when(config.paths()).thenReturn(new String[] { "/content" });
+        lenient().when(config.resourceEvents()).thenReturn(true);
+        lenient().when(config.connectTimeoutMs()).thenReturn(2000);
+        lenient().when(config.readTimeoutMs()).thenReturn(2000);
+        service = new DispatcherInvalidationService();
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        service.deactivate();
+        dispatcher.stop(0);
+    }
+
+    @Test
+    void bulkActivationTurnsIntoFewFlushes() {
+        service.activate(config);
+        List<String> paths = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            paths.add("/content/mysite/en/page-" + i);
+        }
+        paths.add("/content/other/de");
+        paths.add("/var/audit/entry");
+
+        service.invalidate(paths);
+        service.flush();
+
+        assertEquals(Arrays.asList("Activate /content/mysite", "Activate /content/other"), flushed);
+        assertEquals(201, service.getReceivedCount());
+        assertEquals(2, service.getFlushCount());
+        assertEquals(0, service.getFailureCount());
+
+        // nothing pending, nothing sent
+        service.flush();
+        assertEquals(2, flushed.size());
+    }
+
+    @Test
+    void collectsPipelineBatches() {
+        service.activate(config);
+
+        service.consume(Arrays.asList(
+                new ResourceChange(ChangeType.CHANGED, "/content/mysite/en", false),
+                new ResourceChange(ChangeType.REMOVED, "/content/mysite/fr", false)));
+        service.flush();
+
+        assertEquals(Arrays.asList("Activate /content/mysite/en", "Activate /content/mysite/fr"), flushed);
+    }
+
+    @Test
+    void flushesPendingPathsOnDeactivate() throws Exception {
+        service.activate(config);
+
+        service.invalidate(Collections.singletonList("/content/mysite/en"));
+        assertEquals(1, service.getPendingCount());
+        service.deactivate();
+
+        assertEquals(Collections.singletonList("Activate /content/mysite/en"), flushed);
+        assertEquals(0, service.getPendingCount());
+    }
+
+    @Test
+    void ignoresReplicationEventsUnlessEnabled() {
+        service.activate(config);
+
+        service.handleEvent(new ReplicationAction(ReplicationActionType.ACTIVATE, "/content/mysite/en").toEvent());
+        service.flush();
+
+        assertEquals(0, service.getReceivedCount());
+    }
+
+    @Test
+    void countsFailedFlushes() {
+        lenient().when(config.endpoints()).thenReturn(new String[] { "http://127.0.0.1:"
+                + dispatcher.getAddress().getPort() + "/missing" });
+        service.activate(config);
+
+        service.invalidate(Collections.singletonList("/content/mysite/en"));
+        service.flush();
+
+        assertEquals(1, service.getFailureCount());
+    }
+
+    @Test
+    void sendsChangedPagesWithoutDescendants() {
+        Set<String> handles = DispatcherInvalidationService.handlesFor(Arrays.asList(
+                "/content/a/x/y", "/content/a-b/z/jcr:content/root/text", "/content/a", "/content/a-b/z"), 2, 10);
+        assertEquals(new TreeSet<>(Arrays.asList("/content/a", "/content/a-b/z")), handles);
+
+        handles = DispatcherInvalidationService.handlesFor(Arrays.asList(
+                "/content/a/x/y", "/content/a-b/z", "/content"), 2, 10);
+        assertEquals(Collections.singleton("/content"), handles);
+
+        assertEquals("/content/a", DispatcherInvalidationService.pageOf("/content/a/jcr:content"));
+        assertEquals("/content/a/jcr:contentx", DispatcherInvalidationService.pageOf("/content/a/jcr:contentx"));
+    }
+
+    @Test
+    void cutsLargeWindowsToTheStatFilesLevel() {
+        Set<String> handles = DispatcherInvalidationService.handlesFor(Arrays.asList(
+                "/content/a/x/y", "/content/a-b/z", "/content/a/w"), 3, 2);
+        assertEquals(new TreeSet<>(Arrays.asList("/content/a/w", "/content/a/x", "/content/a-b/z")), handles);
+
+        handles = DispatcherInvalidationService.handlesFor(Arrays.asList(
+                "/content/a/x/y", "/content/a-b/z", "/content/a/w"), 2, 2);
+        assertEquals(new TreeSet<>(Arrays.asList("/content/a", "/content/a-b")), handles);
+
+        assertEquals("/", DispatcherInvalidationService.ancestorAtLevel("/content/a", 0));
+        assertEquals("/content", DispatcherInvalidationService.ancestorAtLevel("/content", 2));
+    }
+}
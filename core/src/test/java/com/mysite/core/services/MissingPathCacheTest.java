@@ -0,0 +1,129 @@
+package com.mysite.core.services;
+
+import org.apache.sling.api.resource.observation.ResourceChange;
+import org.apache.sling.api.resource.observation.ResourceChange.ChangeType;
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class MissingPathCacheTest {
+
+    private static final String USER = "jdoe";
+
+    private final MissingPathCache cache;
+
+    MissingPathCacheTest() throws Exception {
+        cache = new MissingPathCache();
+    }
+
+    @Test
+    void testRemembersMissingPaths() {
+        cache.activate(config(100, 30));
+
+        assertFalse(cache.isKnownMissing(USER, "/content/site/random"));
+        cache.recordMissing(USER, "/content/site/random");
+
+        assertTrue(cache.isKnownMissing(USER, "/content/site/random"));
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+    }
+
+    @Test
+    void testIgnoresPathsOutsideRoots() {
+        cache.activate(config(100, 30));
+
+        cache.recordMissing(USER, "/etc/random");
+
+        assertFalse(cache.isKnownMissing(USER, "/etc/random"));
+        assertEquals(0, cache.getSize());
+    }
+
+    @Test
+    void testExpiresEntries() {
+        cache.activate(config(100, 0));
+
+        cache.recordMissing(USER, "/content/site/random");
+
+        assertFalse(cache.isKnownMissing(USER, "/content/site/random"));
+        assertEquals(0, cache.getSize());
+    }
+
+    @Test
+    void testEvictsBeyondMaxEntries() {
+        cache.activate(config(2, 30));
+
+        cache.recordMissing(USER, "/content/a");
+        cache.recordMissing(USER, "/content/b");
+        cache.recordMissing(USER, "/content/c");
+
+        assertEquals(2, cache.getSize());
+        assertFalse(cache.isKnownMissing(USER, "/content/a"));
+        assertTrue(cache.isKnownMissing(USER, "/content/c"));
+    }
+
+    @Test
+    void testInvalidatesOnAddedResources() {
+        cache.activate(config(100, 30));
+        cache.recordMissing(USER, "/content/site/new/child");
+        cache.recordMissing(USER, "/content/site/other");
+
+        cache.onChange(Collections.singletonList(new ResourceChange(ChangeType.ADDED, "/content/site/new", false)));
+
+        assertFalse(cache.isKnownMissing(USER, "/content/site/new/child"));
+        assertTrue(cache.isKnownMissing(USER, "/content/site/other"));
+        assertEquals(1, cache.getInvalidationCount());
+    }
+
+    @Test
+    void testRemembersMissesPerUser() {
+        cache.activate(config(100, 30));
+
+        cache.recordMissing("anonymous", "/content/site/protected");
+
+        assertTrue(cache.isKnownMissing("anonymous", "/content/site/protected"));
+        assertFalse(cache.isKnownMissing(USER, "/content/site/protected"));
+    }
+
+    @Test
+    void testInvalidatesAncestorsAndDescendantsOnly() {
+        cache.activate(config(100, 30));
+        cache.recordMissing(USER, "/content/site");
+        cache.recordMissing("anonymous", "/content/site/new");
+        cache.recordMissing(USER, "/content/site/new/child/grandchild");
+        cache.recordMissing(USER, "/content/site/newer");
+        cache.recordMissing(USER, "/content/other");
+
+        cache.onChange(Collections.singletonList(new ResourceChange(ChangeType.ADDED, "/content/site/new", false)));
+
+        assertEquals(3, cache.getInvalidationCount());
+        assertFalse(cache.isKnownMissing(USER, "/content/site"));
+        assertFalse(cache.isKnownMissing("anonymous", "/content/site/new"));
+        assertFalse(cache.isKnownMissing(USER, "/content/site/new/child/grandchild"));
+        assertTrue(cache.isKnownMissing(USER, "/content/site/newer"));
+        assertTrue(cache.isKnownMissing(USER, "/content/other"));
+    }
+
+    @Test
+    void testEvictedEntriesAreNotInvalidated() {
+        cache.activate(config(1, 30));
+        cache.recordMissing(USER, "/content/a");
+        cache.recordMissing(USER, "/content/b");
+
+        cache.onChange(Collections.singletonList(new ResourceChange(ChangeType.ADDED, "/content/a", false)));
+
+        assertEquals(0, cache.getInvalidationCount());
+        assertEquals(1, cache.getSize());
+    }
+
+    private static MissingPathCache.Config config(int maxEntries, int ttlSeconds) {
+        MissingPathCache.Config config = mock(MissingPathCache.Config.class);
+        when(config.enabled()).thenReturn(true);
+        when(config.maxEntries()).thenReturn(maxEntries);
+        when(config.ttlSeconds()).thenReturn(ttlSeconds);
+        when(config.resource_paths()).thenReturn(new String[] { "/content" });
+        return config;
+    }
+}
@@ -0,0 +1,103 @@
+package com.mysite.core.services;
+
+import com.mysite.core.services.PageMetadataCache.PageMetadata;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class OffHeapPageStoreTest {
+
+    @Test
+    void storesAndReplacesRecords() {
+        OffHeapPageStore store = new OffHeapPageStore(64 * 1024, 100);
+        store.put("/content/site/en", new PageMetadata("Home", null, 1000L, "/content/dam/home.jpg", 5L));
+        store.put("/content/site/de", new PageMetadata("Startseite über", "Beschreibung", 0L, null, 5L));
+        store.put("/content/site/en", new PageMetadata("Welcome", "Start", 2000L, null, 6L));
+
+        PageMetadata en = store.get("/content/site/en");
+        assertEquals("Welcome", en.getTitle());
+        assertEquals("Start", en.getDescription());
+        assertEquals(2000L, en.getLastModified());
+        assertNull(en.getFileReference());
+        assertEquals(6L, en.getStoredAt());
+        assertEquals("Startseite über", store.get("/content/site/de").getTitle());
+        assertNull(store.get("/content/site/fr"));
+        assertEquals(2, store.size());
+    }
+
+    @Test
+    void removesRecordsAndSubtrees() {
+        OffHeapPageStore store = new OffHeapPageStore(64 * 1024, 100);
+        for (String path : new String[] { "/content/a", "/content/a/b", "/content/a/b/c", "/content/ab" }) {
+            store.put(path, new PageMetadata(path, null, 0L, null));
+        }
+
+        assertTrue(store.remove("/content/ab"));
+        assertFalse(store.remove("/content/ab"));
+        assertEquals(2, store.removeIf(path -> path.startsWith("/content/a/")));
+
+        assertEquals(1, store.size());
+        assertNotNull(store.get("/content/a"));
+        assertNull(store.get("/content/a/b/c"));
+    }
+
+    @Test
+    void evictsOldestRecordsWhenFull() {
+        OffHeapPageStore store = new OffHeapPageStore(16 * 1024, 50);
+        for (int i = 0; i < 500; i++) {
+            store.put("/content/site/page-" + i, new PageMetadata("Page " + i, "A page", i, null));
+        }
+
+        assertTrue(store.size() <= 50);
+        assertTrue(store.getEvictions() > 0);
+        assertNotNull(store.get("/content/site/page-499"));
+        assertNull(store.get("/content/site/page-0"));
+        assertTrue(store.getLiveBytes() <= 16 * 1024);
+    }
+
+    @Test
+    void rejectsOversizedRecords() {
+        OffHeapPageStore store = new OffHeapPageStore(1024, 10);
+        StringBuilder description = new StringBuilder();
+        for (int i = 0; i < 300; i++) {
+            description.append('x');
+        }
+
+        assertFalse(store.put("/content/site/en", new PageMetadata("Home", description.toString(), 0L, null)));
+        assertNull(store.get("/content/site/en"));
+    }
+
+    @Test
+    void copiesAndLoadsLiveRecords() {
+        OffHeapPageStore store = new OffHeapPageStore(64 * 1024, 100);
+        store.put("/content/site/en", new PageMetadata("Old", null, 0L, null));
+        store.put("/content/site/en", new PageMetadata("Home", null, 0L, null));
+        store.put("/content/site/de", new PageMetadata("Start", null, 0L, null));
+        store.remove("/content/site/de");
+
+        ByteBuffer snapshot = ByteBuffer.allocate((int) store.getLiveBytes());
+        store.copyLiveRecords(snapshot);
+        snapshot.flip();
+        OffHeapPageStore loaded = new OffHeapPageStore(64 * 1024, 100);
+
+        assertEquals(1, loaded.load(snapshot));
+        assertEquals("Home", loaded.get("/content/site/en").getTitle());
+        assertNull(loaded.get("/content/site/de"));
+    }
+
+    @Test
+    void stopsLoadingAtMalformedRecords() {
+        ByteBuffer garbage = ByteBuffer.allocate(64);
+        garbage.putInt(0, 60);
+        OffHeapPageStore store = new OffHeapPageStore(64 * 1024, 100);
+
+        assertEquals(0, store.load(garbage));
+        assertEquals(0, store.size());
+    }
+}
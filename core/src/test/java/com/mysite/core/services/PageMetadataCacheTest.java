@@ -0,0 +1,151 @@
+package com.mysite.core.services;
+
+import com.mysite.core.services.PageMetadataCache.PageMetadata;
+import io.wcm.testing.mock.aem.junit5.AemContext;
+import io.wcm.testing.mock.aem.junit5.AemContextExtension;
+import org.apache.sling.api.resource.observation.ResourceChange;
+import org.apache.sling.api.resource.observation.ResourceChange.ChangeType;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.osgi.framework.BundleContext;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(AemContextExtension.class)
+class PageMetadataCacheTest {
+
+    @TempDir
+    Path directory;
+
+    private PageMetadataCache.Config config;
+    private BundleContext bundleContext;
+    private PageMetadataCache cache;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        config = mock(PageMetadataCache.Config.class);
+        lenient().when(config.enabled()).thenReturn(true);
+        lenient().when(config.capacityMb()).thenReturn(1);
+        lenient().when(config.maxEntries()).thenReturn(1000);
+        lenient().when(config.maxAgeSeconds()).thenReturn(3600);
+        lenient().when(config.snapshot()).thenReturn(true);
+        bundleContext = mock(BundleContext.class);
+        when(bundleContext.getDataFile(PageMetadataCache.SNAPSHOT_FILE))
+                .thenReturn(directory.resolve(PageMetadataCache.SNAPSHOT_FILE).toFile());
+        cache = new PageMetadataCache();
+        cache.activate(config, bundleContext);
+    }
+
+    @Test
+    void countsHitsAndMisses() {
+        assertNull(cache.get("/content/site/en"));
+        cache.put("/content/site/en", new PageMetadata("Home", "Start", 1000L, null));
+
+        PageMetadata metadata = cache.get("/content/site/en");
+
+        assertEquals("Home", metadata.getTitle());
+        assertEquals(1000L, metadata.getLastModifiedCalendar().getTimeInMillis());
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+        assertEquals(0.5, cache.getHitRate(), 0.001);
+        assertEquals(1, cache.getEntries());
+        assertTrue(cache.getUsedBytes() > 0);
+        assertTrue(cache.getAllocatedBytes() >= 1024 * 1024);
+    }
+
+    @Test
+    void expiresOldRecords() {
+        cache.put("/content/site/en", new PageMetadata("Home", null, 0L, null,
+                System.currentTimeMillis() - 3_601_000L));
+
+        assertNull(cache.get("/content/site/en"));
+    }
+
+    @Test
+    void removesChangedPagesAndRemovedSubtrees() {
+        for (String path : new String[] { "/content/site/en", "/content/site/en/news", "/content/site/en/news/a",
+                "/content/site/de" }) {
+            cache.put(path, new PageMetadata(path, null, 0L, null));
+        }
+
+        cache.consume(Arrays.asList(
+                new ResourceChange(ChangeType.CHANGED, "/content/site/de", false),
+                new ResourceChange(ChangeType.REMOVED, "/content/site/en/news", false)));
+
+        assertNotNull(cache.get("/content/site/en"));
+        assertNull(cache.get("/content/site/de"));
+        assertNull(cache.get("/content/site/en/news/a"));
+        assertEquals(3, cache.getInvalidations());
+    }
+
+    @Test
+    void survivesRestartThroughSnapshot() {
+        cache.put("/content/site/en", new PageMetadata("Home", "Start", 1000L, "/content/dam/home.jpg"));
+        cache.deactivate();
+        assertTrue(Files.isRegularFile(directory.resolve(PageMetadataCache.SNAPSHOT_FILE)));
+
+        cache.activate(config, bundleContext);
+
+        assertEquals(1, cache.getSnapshotEntries());
+        assertEquals("/content/dam/home.jpg", cache.get("/content/site/en").getFileReference());
+    }
+
+    @Test
+    void ignoresForeignSnapshot() throws Exception {
+        cache.deactivate();
+        Files.write(directory.resolve(PageMetadataCache.SNAPSHOT_FILE), new byte[] { 1, 2, 3, 4, 5, 6, 7, 8 });
+
+        cache.activate(config, bundleContext);
+
+        assertEquals(0, cache.getEntries());
+    }
+
+    @Test
+    void doesNothingWhenDisabled() {
+        cache.deactivate();
+        when(config.enabled()).thenReturn(false);
+        cache.activate(config, bundleContext);
+
+        cache.put("/content/site/en", new PageMetadata("Home", null, 0L, null));
+
+        assertNull(cache.get("/content/site/en"));
+        assertEquals(0, cache.getEntries());
+    }
+
+    @Test
+    void readsMetadataFromPageContent(AemContext context) {
+        Calendar modified = Calendar.getInstance();
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("jcr:description", "About us");
+        properties.put("cq:lastModified", modified);
+        properties.put("fileReference", "/content/dam/about.jpg");
+        context.create().page("/content/site/en/about", null, "About", properties);
+        context.create().resource("/content/site/en/legacy", Collections.singletonMap("jcr:title", "Legacy"));
+
+        PageMetadata about = PageMetadata.read(context.resourceResolver().getResource("/content/site/en/about"));
+        PageMetadata legacy = PageMetadata.read(context.resourceResolver().getResource("/content/site/en/legacy"));
+
+        assertEquals("About", about.getTitle());
+        assertEquals("About us", about.getDescription());
+        assertEquals(modified.getTimeInMillis(), about.getLastModified());
+        assertEquals("/content/dam/about.jpg", about.getFileReference());
+        assertEquals("Legacy", legacy.getTitle());
+        assertNull(legacy.getLastModifiedCalendar());
+    }
+}
@@ -20,6 +20,7 @@ import javax.jcr.query.QueryResult;
 import javax.jcr.query.Row;
 import javax.jcr.query.RowIterator;
 import java.util.Calendar;
+import java.util.Collections;
 
 import static org.mockito.ArgumentMatchers.anyMap;
 import static org.mockito.ArgumentMatchers.anyString;
@@ -55,6 +56,9 @@ class PublishedPagesProcessorServiceTest {
     @Mock
     private Node pageNode;
 
+    @Mock
+    private Node contentNode;
+
     @Mock
     private Property processedDateProperty;
 
@@ -86,15 +90,16 @@ class PublishedPagesProcessorServiceTest {
         when(rowIterator.hasNext()).thenReturn(true, false);
         when(rowIterator.nextRow()).thenReturn(row);
         when(row.getNode()).thenReturn(pageNode);
-        when(pageNode.getPath()).thenReturn("/content/test-page");
-        when(pageNode.hasProperty("processedDate")).thenReturn(false);
+        when(pageNode.getNode("jcr:content")).thenReturn(contentNode);
+        when(contentNode.getPath()).thenReturn("/content/test-page/jcr:content");
+        when(contentNode.hasProperty("processedDate")).thenReturn(false);
 
         // When
-        service.run();
+        service.execute();
 
         // Then
         verify(queryManager).createQuery(anyString(), eq(Query.JCR_SQL2));
-        verify(pageNode).setProperty(eq("processedDate"), any(Calendar.class));
+        verify(contentNode).setProperty(eq("processedDate"), any(Calendar.class));
         verify(session).save();
         verify(resourceResolver).close();
     }
@@ -108,15 +113,16 @@ class PublishedPagesProcessorServiceTest {
         when(rowIterator.hasNext()).thenReturn(true, false);
         when(rowIterator.nextRow()).thenReturn(row);
         when(row.getNode()).thenReturn(pageNode);
-        when(pageNode.hasProperty("processedDate")).thenReturn(true);
-        when(pageNode.getProperty("processedDate")).thenReturn(processedDateProperty);
+        when(pageNode.getNode("jcr:content")).thenReturn(contentNode);
+        when(contentNode.hasProperty("processedDate")).thenReturn(true);
+        when(contentNode.getProperty("processedDate")).thenReturn(processedDateProperty);
         when(processedDateProperty.getDate()).thenReturn(recentTime);
 
         // When
-        service.run();
+        service.execute();
 
         // Then
-        verify(pageNode, never()).setProperty(eq("processedDate"), any(Calendar.class));
+        verify(contentNode, never()).setProperty(eq("processedDate"), any(Calendar.class));
         verify(session, never()).save();
         verify(resourceResolver).close();
     }
@@ -131,20 +137,35 @@ class PublishedPagesProcessorServiceTest {
         when(rowIterator.hasNext()).thenReturn(true, false);
         when(rowIterator.nextRow()).thenReturn(row);
         when(row.getNode()).thenReturn(pageNode);
-        when(pageNode.getPath()).thenReturn("/content/test-page");
-        when(pageNode.hasProperty("processedDate")).thenReturn(false);
-        doThrow(new RepositoryException("Node error")).when(pageNode).setProperty(anyString(), any(Calendar.class));
+        when(pageNode.getNode("jcr:content")).thenReturn(contentNode);
+        when(contentNode.getPath()).thenReturn("/content/test-page/jcr:content");
+        when(contentNode.hasProperty("processedDate")).thenReturn(false);
+        doThrow(new RepositoryException("Node error")).when(contentNode).setProperty(anyString(), any(Calendar.class));
 
         // When
-        service.run();
+        service.execute();
 
         // Then
         verify(queryManager).createQuery(anyString(), eq(Query.JCR_SQL2));
-        verify(pageNode).setProperty(eq("processedDate"), any(Calendar.class));
+        verify(contentNode).setProperty(eq("processedDate"), any(Calendar.class));
         verify(session, never()).save(); // Save not called due to exception
         verify(resourceResolver).close();
     }
 
+    @Test
+    void testQueriesReplicationDateOnPageContent() throws Exception {
+        setupQueryMocks();
+        when(rowIterator.hasNext()).thenReturn(false);
+
+        service.execute();
+
+        verify(queryManager).createQuery(
+                "SELECT * FROM [cq:Page] AS page WHERE ISDESCENDANTNODE(page, '/content') "
+                        + "AND page.[jcr:content/cq:lastReplicated] IS NOT NULL", Query.JCR_SQL2);
+        verify(resourceResolverFactory).getServiceResourceResolver(
+                Collections.singletonMap(ResourceResolverFactory.SUBSERVICE, "publish-processor"));
+    }
+
     private void setupQueryMocks() throws Exception {
         when(resourceResolverFactory.getServiceResourceResolver(anyMap())).thenReturn(resourceResolver);
         when(resourceResolver.adaptTo(Session.class)).thenReturn(session);
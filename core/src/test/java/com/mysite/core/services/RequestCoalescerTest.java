@@ -0,0 +1,128 @@
+package com.mysite.core.services;
+
+import org.apache.sling.api.resource.ResourceResolver;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class RequestCoalescerTest {
+
+    @Mock
+    private RequestCoalescer.Config config;
+
+    private RequestCoalescer coalescer;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        coalescer = new RequestCoalescer();
+    }
+
+    @Test
+    void sharesResultOfRunningComputation() throws Exception {
+        activate(true);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger calls = new AtomicInteger();
+        Object result = new Object();
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            Future<Object> leader = executor.submit(() -> coalescer.execute("key", () -> {
+                calls.incrementAndGet();
+                started.countDown();
+                release.await(5, TimeUnit.SECONDS);
+                return result;
+            }));
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+
+            List<Future<Object>> followers = new ArrayList<>();
+            for (int i = 0; i < 3; i++) {
+                followers.add(executor.submit(() -> coalescer.execute("key", () -> {
+                    calls.incrementAndGet();
+                    return new Object();
+                })));
+            }
+            while (coalescer.getFollowers() < 3) {
+                Thread.sleep(1);
+            }
+            release.countDown();
+
+            assertSame(result, leader.get(5, TimeUnit.SECONDS));
+            for (Future<Object> follower : followers) {
+                assertSame(result, follower.get(5, TimeUnit.SECONDS));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(1, calls.get());
+        assertEquals(1, coalescer.getLeaders());
+        assertEquals(0.75, coalescer.getDeduplicationRatio(), 0.0001);
+        assertEquals(0, coalescer.getInFlight());
+    }
+
+    @Test
+    void doesNotCacheFinishedComputations() throws Exception {
+        activate(true);
+        AtomicInteger calls = new AtomicInteger();
+
+        coalescer.execute("key", calls::incrementAndGet);
+        coalescer.execute("key", calls::incrementAndGet);
+
+        assertEquals(2, calls.get());
+        assertEquals(0, coalescer.getFollowers());
+    }
+
+    @Test
+    void rethrowsLoaderException() throws Exception {
+        activate(true);
+
+        IllegalStateException thrown = assertThrows(IllegalStateException.class,
+                () -> coalescer.execute("key", () -> {
+                    throw new IllegalStateException("failed");
+                }));
+
+        assertEquals("failed", thrown.getMessage());
+        assertEquals(0, coalescer.getInFlight());
+    }
+
+    @Test
+    void runsDirectlyWhenDisabled() throws Exception {
+        activate(false);
+
+        assertEquals("value", coalescer.execute("key", () -> "value"));
+        assertEquals(0, coalescer.getLeaders());
+    }
+
+    @Test
+    void scopesKeyToUser() {
+        ResourceResolver resolver = org.mockito.Mockito.mock(ResourceResolver.class);
+        when(resolver.getUserID()).thenReturn("anonymous");
+
+        assertEquals("search|anonymous|Term|", RequestCoalescer.key("search", resolver, " Term ", null));
+    }
+
+    private void activate(boolean enabled) {
+        when(config.enabled()).thenReturn(enabled);
+        when(config.waitTimeoutMs()).thenReturn(5000L);
+        coalescer.activate(config);
+    }
+}
@@ -0,0 +1,198 @@
+package com.mysite.core.services;
+
+import io.wcm.testing.mock.aem.junit5.AemContext;
+import io.wcm.testing.mock.aem.junit5.AemContextExtension;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.resource.ResourceResolverFactory;
+import org.apache.sling.api.resource.observation.ResourceChange;
+import org.apache.sling.api.resource.observation.ResourceChange.ChangeType;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.osgi.framework.BundleContext;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.List;
+import java.util.TimeZone;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(AemContextExtension.class)
+class SitemapServiceTest {
+
+    private static final String ROOT = "/content/mysite/us/en";
+    private static final FileTime OLD = FileTime.fromMillis(0);
+
+    private final AemContext context = new AemContext();
+
+    @TempDir
+    Path directory;
+
+    private SitemapService service;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        Calendar modified = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
+        modified.setTimeInMillis(1_700_000_000_123L);
+        context.create().page(ROOT, null, Collections.singletonMap("cq:lastModified", modified));
+        context.create().page(ROOT + "/about");
+        for (int i = 0; i < 3; i++) {
+            context.create().page(ROOT + "/about/team-" + i);
+        }
+        context.create().page(ROOT + "/news");
+        for (int i = 0; i < 5; i++) {
+            context.create().page(ROOT + "/news/article-" + i);
+        }
+
+        SitemapService.Config config = mock(SitemapService.Config.class);
+        when(config.enabled()).thenReturn(true);
+        when(config.rootPath()).thenReturn(ROOT);
+        when(config.baseUrl()).thenReturn("https://www.mysite.com/");
+        when(config.maxUrlsPerFile()).thenReturn(4);
+        when(config.cronExpression()).thenReturn("0 */15 * * * ?");
+        when(config.directory()).thenReturn(directory.toString());
+
+        service = new SitemapService();
+        service.resourceResolverFactory = context.getService(ResourceResolverFactory.class);
+        service.activate(config, mock(BundleContext.class));
+    }
+
+    @Test
+    void splitsSectionsIntoFilesOfMaxUrls() throws Exception {
+        service.execute();
+
+        assertEquals(1, urls(SitemapService.partFile("en", 0)));
+        assertEquals(4, urls(SitemapService.partFile("about", 0)));
+        assertEquals(4, urls(SitemapService.partFile("news", 0)));
+        assertEquals(2, urls(SitemapService.partFile("news", 1)));
+        assertFalse(Files.exists(directory.resolve(SitemapService.partFile("news", 2))));
+
+        String index = read(SitemapService.INDEX_FILE);
+        assertEquals(4, count(index, "<sitemap>"));
+        assertTrue(index.contains("<loc>https://www.mysite.com" + ROOT + ".sitemap.news-1.xml</loc>"));
+
+        String root = read(SitemapService.partFile("en", 0));
+        assertTrue(root.contains("<loc>https://www.mysite.com" + ROOT + ".html</loc>"));
+        assertTrue(root.contains("<lastmod>2023-11-14T22:13:20Z</lastmod>"));
+    }
+
+    @Test
+    void visitsPagesDepthFirst() throws Exception {
+        context.create().page(ROOT + "/about/team-0/lead");
+        context.create().resource(ROOT + "/about/folder");
+        List<String> paths = new ArrayList<>();
+
+        service.visitPages(context.resourceResolver(), new SitemapService.Section("about", ROOT + "/about", true),
+                (path, lastModified) -> paths.add(path));
+
+        assertEquals(Arrays.asList(ROOT + "/about", ROOT + "/about/team-0", ROOT + "/about/team-0/lead",
+                ROOT + "/about/team-1", ROOT + "/about/team-2"), paths);
+    }
+
+    @Test
+    void regeneratesOnlyChangedSections() throws Exception {
+        service.execute();
+        for (String file : new String[] { SitemapService.partFile("about", 0), SitemapService.partFile("news", 0),
+                SitemapService.partFile("news", 1) }) {
+            Files.setLastModifiedTime(directory.resolve(file), OLD);
+        }
+
+        context.create().page(ROOT + "/news/article-5");
+        context.create().page(ROOT + "/news/article-6");
+        service.consume(Collections.singletonList(
+                new ResourceChange(ChangeType.ADDED, ROOT + "/news/article-5", false)));
+        service.execute();
+
+        assertEquals(OLD, Files.getLastModifiedTime(directory.resolve(SitemapService.partFile("about", 0))));
+        assertTrue(Files.getLastModifiedTime(directory.resolve(SitemapService.partFile("news", 0))).compareTo(OLD) > 0);
+        assertEquals(4, urls(SitemapService.partFile("news", 1)));
+    }
+
+    @Test
+    void removesFilesOfDeletedSections() throws Exception {
+        service.execute();
+
+        ResourceResolver resolver = context.resourceResolver();
+        resolver.delete(resolver.getResource(ROOT + "/about"));
+        resolver.commit();
+        service.consume(Collections.singletonList(new ResourceChange(ChangeType.REMOVED, ROOT + "/about", false)));
+        service.execute();
+
+        assertFalse(Files.exists(directory.resolve(SitemapService.partFile("about", 0))));
+        assertEquals(3, count(read(SitemapService.INDEX_FILE), "<sitemap>"));
+    }
+
+    @Test
+    void streamsSectionsWithoutGeneratedFiles() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertTrue(service.writeSection(context.resourceResolver(), "news", 1, out));
+        String sitemap = out.toString(StandardCharsets.UTF_8.name());
+        assertEquals(2, count(sitemap, "<url>"));
+        assertTrue(sitemap.contains("/news/article-3.html"));
+
+        assertFalse(service.writeSection(context.resourceResolver(), "missing", 0, new ByteArrayOutputStream()));
+
+        out.reset();
+        service.writeIndex(context.resourceResolver(), out);
+        assertEquals(4, count(out.toString(StandardCharsets.UTF_8.name()), "<sitemap>"));
+        assertNull(service.getFile(SitemapService.INDEX_FILE));
+    }
+
+    @Test
+    void mapsChangedPathsToSections() {
+        assertEquals("en", service.sectionOf(ROOT));
+        assertEquals("en", service.sectionOf(ROOT + "/jcr:content"));
+        assertEquals("news", service.sectionOf(ROOT + "/news/article-1/jcr:content"));
+        assertNull(service.sectionOf("/content/mysite/us/de/news"));
+    }
+
+    @Test
+    void encodesSectionNamesReversibly() {
+        assertEquals("a-b", SitemapService.sectionName("a-b"));
+        assertEquals("a_5fb", SitemapService.sectionName("a_b"));
+        assertEquals("caf_c3_a9", SitemapService.sectionName("caf\u00e9"));
+    }
+
+    @Test
+    void leavesOutSectionsNamedLikeTheRoot() throws Exception {
+        context.create().page(ROOT + "/en");
+        context.create().page(ROOT + "/a-b");
+        context.create().page(ROOT + "/a_b");
+
+        service.execute();
+
+        assertEquals(1, urls(SitemapService.partFile("en", 0)));
+        assertEquals(1, urls(SitemapService.partFile("a-b", 0)));
+        assertEquals(1, urls(SitemapService.partFile("a_5fb", 0)));
+    }
+
+    private int urls(String file) throws Exception {
+        return count(read(file), "<url>");
+    }
+
+    private String read(String file) throws Exception {
+        return new String(Files.readAllBytes(directory.resolve(file)), StandardCharsets.UTF_8);
+    }
+
+    private static int count(String text, String token) {
+        int count = 0;
+        for (int i = text.indexOf(token); i >= 0; i = text.indexOf(token, i + 1)) {
+            count++;
+        }
+        return count;
+    }
+}
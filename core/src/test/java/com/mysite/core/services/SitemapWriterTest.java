@@ -0,0 +1,45 @@
+package com.mysite.core.services;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SitemapWriterTest {
+
+    @Test
+    void writesEscapedUrlset() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        SitemapWriter writer = SitemapWriter.urlset(out);
+        writer.write("https://www.mysite.com/a.html?x=1&y=2", Instant.parse("2024-01-02T03:04:05.678Z"));
+        writer.write("https://www.mysite.com/b.html", null);
+        writer.close();
+
+        String xml = out.toString(StandardCharsets.UTF_8.name());
+        assertEquals(2, writer.getEntries());
+        assertTrue(xml.startsWith("<?xml version=\"1.0\" encoding=\"UTF-8\"?>"));
+        assertTrue(xml.contains("<urlset xmlns=\"" + SitemapWriter.NAMESPACE + "\">"));
+        assertTrue(xml.contains("<url><loc>https://www.mysite.com/a.html?x=1&amp;y=2</loc>"
+                + "<lastmod>2024-01-02T03:04:05Z</lastmod></url>"));
+        assertTrue(xml.contains("<url><loc>https://www.mysite.com/b.html</loc></url>"));
+        assertTrue(xml.endsWith("</urlset>"));
+    }
+
+    @Test
+    void writesIndex() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (SitemapWriter writer = SitemapWriter.index(out)) {
+            writer.write("https://www.mysite.com/en.sitemap.en-0.xml", null);
+        }
+
+        String xml = out.toString(StandardCharsets.UTF_8.name());
+        assertTrue(xml.contains("<sitemapindex xmlns=\"" + SitemapWriter.NAMESPACE + "\">"
+                + "<sitemap><loc>https://www.mysite.com/en.sitemap.en-0.xml</loc></sitemap></sitemapindex>"));
+        assertFalse(xml.contains("<url>"));
+    }
+}
@@ -0,0 +1,86 @@
+package com.mysite.core.services;
+
+import org.apache.felix.hc.api.Result;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class WarmupHealthCheckTest {
+
+    @Mock
+    private WarmupService warmupService;
+    @Mock
+    private AuthorPageIndex authorPageIndex;
+
+    @InjectMocks
+    private WarmupHealthCheck healthCheck;
+
+    @Test
+    void unavailableWhileWarmingUp() {
+        when(warmupService.isComplete()).thenReturn(false);
+        when(warmupService.getState()).thenReturn(WarmupService.State.RUNNING);
+
+        assertEquals(Result.Status.TEMPORARILY_UNAVAILABLE, healthCheck.execute().getStatus());
+    }
+
+    @Test
+    void unavailableWhileAuthorIndexIsBuilding() {
+        when(warmupService.isComplete()).thenReturn(true);
+        when(authorPageIndex.getState()).thenReturn(AuthorPageIndex.State.BUILDING);
+        when(authorPageIndex.getBuildStarted()).thenReturn(System.currentTimeMillis());
+
+        assertEquals(Result.Status.TEMPORARILY_UNAVAILABLE, healthCheck.execute().getStatus());
+    }
+
+    @Test
+    void warnsWhenAuthorIndexBuildsTooLong() {
+        when(warmupService.isComplete()).thenReturn(true);
+        when(warmupService.getState()).thenReturn(WarmupService.State.DONE);
+        when(authorPageIndex.getState()).thenReturn(AuthorPageIndex.State.BUILDING);
+        when(authorPageIndex.getBuildStarted()).thenReturn(System.currentTimeMillis() - TimeUnit.MINUTES.toMillis(2));
+        WarmupHealthCheck.Config config = mock(WarmupHealthCheck.Config.class);
+        when(config.maxIndexWaitSeconds()).thenReturn(60);
+        healthCheck.activate(config);
+
+        assertEquals(Result.Status.WARN, healthCheck.execute().getStatus());
+    }
+
+    @Test
+    void warnsWhenAuthorIndexFailed() {
+        when(warmupService.isComplete()).thenReturn(true);
+        when(warmupService.getState()).thenReturn(WarmupService.State.DONE);
+        when(authorPageIndex.getState()).thenReturn(AuthorPageIndex.State.FAILED);
+
+        Result result = healthCheck.execute();
+        assertEquals(Result.Status.WARN, result.getStatus());
+        assertTrue(result.iterator().next().getMessage().endsWith("author page index is FAILED"));
+    }
+
+    @Test
+    void okOnceWarm() {
+        when(warmupService.isComplete()).thenReturn(true);
+        when(warmupService.getState()).thenReturn(WarmupService.State.DONE);
+        when(authorPageIndex.getState()).thenReturn(AuthorPageIndex.State.READY);
+
+        assertEquals(Result.Status.OK, healthCheck.execute().getStatus());
+    }
+
+    @Test
+    void warnsWhenWarmUpTimedOut() {
+        when(warmupService.isComplete()).thenReturn(true);
+        when(warmupService.getState()).thenReturn(WarmupService.State.TIMED_OUT);
+        when(authorPageIndex.getState()).thenReturn(AuthorPageIndex.State.READY);
+
+        assertEquals(Result.Status.WARN, healthCheck.execute().getStatus());
+    }
+}
@@ -0,0 +1,204 @@
+package com.mysite.core.services;
+
+import com.day.cq.contentsync.handler.util.RequestResponseFactory;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.resource.ResourceResolverFactory;
+import org.apache.sling.engine.SlingRequestProcessor;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.osgi.framework.BundleContext;
+
+import javax.jcr.Session;
+import javax.jcr.Workspace;
+import javax.jcr.query.Query;
+import javax.jcr.query.QueryManager;
+import javax.jcr.query.QueryResult;
+import javax.jcr.query.RowIterator;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.contains;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class WarmupServiceTest {
+
+    @Mock
+    private WarmupService.Config config;
+    @Mock
+    private BundleContext bundleContext;
+    @Mock
+    private ResourceResolverFactory resourceResolverFactory;
+    @Mock
+    private SlingRequestProcessor requestProcessor;
+    @Mock
+    private RequestResponseFactory requestResponseFactory;
+    @Mock
+    private ResourceResolver resolver;
+    @Mock
+    private Session session;
+    @Mock
+    private Workspace workspace;
+    @Mock
+    private QueryManager queryManager;
+    @Mock
+    private Query query;
+    @Mock
+    private QueryResult queryResult;
+    @Mock
+    private RowIterator rows;
+    @Mock
+    private HttpServletRequest request;
+    @Mock
+    private HttpServletResponse response;
+
+    @InjectMocks
+    private WarmupService service;
+
+    @TempDir
+    Path dataDir;
+
+    private final List<String> rendered = Collections.synchronizedList(new ArrayList<>());
+
+    @BeforeEach
+    void setUp() throws Exception {
+        lenient().when(config.enabled()).thenReturn(true);
+        lenient().when(config.urls()).thenReturn(new String[] { "/content/mysite/us/en.html" });
+        lenient().when(config.recentUrls()).thenReturn(20);
+        lenient().when(config.passes()).thenReturn(2);
+        lenient().when(config.searchTerms()).thenReturn(new String[] { "page" });
+        lenient().when(config.queries()).thenReturn(new String[] { "SELECT * FROM [nt:base]" });
+        lenient().when(config.queryLimit()).thenReturn(100);
+        lenient().when(config.maxDurationSeconds()).thenReturn(60);
+        lenient().when(bundleContext.getDataFile(WarmupService.RECENT_URLS_FILE))
+                .thenReturn(dataDir.resolve(WarmupService.RECENT_URLS_FILE).toFile());
+
+        lenient().when(resourceResolverFactory.getServiceResourceResolver(any())).thenReturn(resolver);
+        lenient().when(resolver.adaptTo(Session.class)).thenReturn(session);
+        lenient().when(session.getWorkspace()).thenReturn(workspace);
+        lenient().when(workspace.getQueryManager()).thenReturn(queryManager);
+        lenient().when(queryManager.createQuery(anyString(), eq(Query.JCR_SQL2))).thenReturn(query);
+        lenient().when(query.execute()).thenReturn(queryResult);
+        lenient().when(queryResult.getRows()).thenReturn(rows);
+
+        lenient().when(requestResponseFactory.createRequest(eq("GET"), anyString(), anyMap())).thenAnswer(invocation -> {
+            Map<?, ?> parameters = invocation.getArgument(2);
+            rendered.add(invocation.getArgument(1) + (parameters.isEmpty() ? "" : " " + parameters));
+            return request;
+        });
+        lenient().when(requestResponseFactory.createResponse(any())).thenReturn(response);
+        lenient().when(response.getStatus()).thenReturn(200);
+    }
+
+    @AfterEach
+    void tearDown() {
+        service.deactivate();
+    }
+
+    @Test
+    void rendersUrlsAndRunsQueriesBeforeCompleting() throws Exception {
+        service.activate(config, bundleContext);
+        awaitComplete();
+
+        assertEquals(WarmupService.State.DONE, service.getState());
+        assertEquals(Arrays.asList("/content/mysite/us/en.html", "/content/mysite/us/en.html"), rendered);
+        assertEquals(2, service.getUrlsRendered());
+        assertEquals(2, service.getQueriesRun());
+        verify(queryManager).createQuery(contains("LIKE '%page%'"), eq(Query.JCR_SQL2));
+        verify(query, times(2)).setLimit(100);
+    }
+
+    @Test
+    void replaysRecentUrlsOfThePreviousRun() throws Exception {
+        when(config.passes()).thenReturn(1);
+        Files.write(dataDir.resolve(WarmupService.RECENT_URLS_FILE),
+                Arrays.asList("/content/mysite/us/en.authorinfo.json", "/content/mysite/us/en.html", "invalid"),
+                StandardCharsets.UTF_8);
+
+        service.activate(config, bundleContext);
+        awaitComplete();
+
+        assertEquals(Arrays.asList("/content/mysite/us/en.html", "/content/mysite/us/en.authorinfo.json"), rendered);
+    }
+
+    @Test
+    void passesQueryStringsAsParameters() throws Exception {
+        when(config.passes()).thenReturn(1);
+        when(config.urls()).thenReturn(new String[] { "/content/mysite/us/en.html?q=news+room&page=2" });
+
+        service.activate(config, bundleContext);
+        awaitComplete();
+
+        assertEquals(1, rendered.size());
+        assertTrue(rendered.get(0).startsWith("/content/mysite/us/en.html "));
+        assertEquals("news room", WarmupService.parseQuery("q=news+room&page=2").get("q"));
+    }
+
+    @Test
+    void countsFailedUrls() throws Exception {
+        when(response.getStatus()).thenReturn(500);
+
+        service.activate(config, bundleContext);
+        awaitComplete();
+
+        assertEquals(0, service.getUrlsRendered());
+        assertEquals(2, service.getUrlsFailed());
+        assertEquals(WarmupService.State.DONE, service.getState());
+    }
+
+    @Test
+    void disabledIsCompleteAtOnce() {
+        when(config.enabled()).thenReturn(false);
+
+        service.activate(config, bundleContext);
+
+        assertTrue(service.isComplete());
+        assertEquals(WarmupService.State.DISABLED, service.getState());
+        assertTrue(rendered.isEmpty());
+    }
+
+    @Test
+    void isNotCompleteWhileRunning() throws Exception {
+        when(requestResponseFactory.createResponse(any())).thenAnswer(invocation -> {
+            Thread.sleep(200);
+            return response;
+        });
+
+        service.activate(config, bundleContext);
+
+        assertFalse(service.isComplete());
+        awaitComplete();
+    }
+
+    private void awaitComplete() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!service.isComplete() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(service.isComplete(), "warm-up did not complete");
+    }
+}
@@ -3,17 +3,19 @@ package com.mysite.core.servlets;
 import com.day.cq.wcm.api.Page;
 import com.day.cq.wcm.api.PageManager;
 
+import com.mysite.core.services.AuthorPageIndex;
 import com.mysite.core.servlets.AuthorInfoServlet.ChildPageInfo;
 
 import org.apache.sling.api.SlingHttpServletRequest;
 import org.apache.sling.api.SlingHttpServletResponse;
 import org.apache.sling.api.resource.*;
 import org.apache.sling.api.request.RequestPathInfo;
+import org.apache.sling.api.wrappers.ValueMapDecorator;
 import org.junit.jupiter.api.*;
 import org.mockito.*;
 
-import javax.jcr.Node;
 import javax.jcr.Session;
+import javax.servlet.ServletOutputStream;
 import java.io.PrintWriter;
 import java.io.StringWriter;
 
@@ -21,6 +23,7 @@ import java.util.*;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.contains;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
@@ -45,19 +48,11 @@ class AuthorInfoServletTest {
     @Mock
     private Session session;
     @Mock
-    private Node pageNode;
-    @Mock
-    private Node userNode;
-    @Mock
     private Resource userResource;
     @Mock
-    private Iterator<Page> childIterator;
-    @Mock
-    private Page childPage;
-    @Mock
-    private Node childNode;
-    @Mock
     private RequestPathInfo requestPathInfo;
+    @Mock
+    private AuthorPageIndex authorPageIndex;
 
     private AutoCloseable closeable;
     private StringWriter responseWriter;
@@ -101,7 +96,7 @@ class AuthorInfoServletTest {
     void testDoGet_PageNotFound() throws Exception {
         when(request.getParameter("path")).thenReturn("/content/mysite/home");
         when(resourceResolver.getResource(any())).thenReturn(resource);
-        when(pageManager.getPage(any())).thenReturn(null);
+        when(resource.adaptTo(Page.class)).thenReturn(null);
 
         servlet.doGet(request, response);
 
@@ -114,9 +109,8 @@ class AuthorInfoServletTest {
         when(requestPathInfo.getExtension()).thenReturn("json");
 
         when(resourceResolver.getResource(any())).thenReturn(resource);
-        when(pageManager.getPage(any())).thenReturn(page);
-        when(session.getNode(any())).thenReturn(pageNode);
-        when(pageNode.hasProperty("jcr:lastModifiedBy")).thenReturn(false);
+        when(resource.adaptTo(Page.class)).thenReturn(page);
+        when(page.getProperties()).thenReturn(ValueMap.EMPTY);
 
         servlet.doGet(request, response);
 
@@ -125,28 +119,168 @@ class AuthorInfoServletTest {
     }
 
     @Test
-    void testDoGet_ExceptionHandling() throws Exception {
-        when(request.getParameter("path")).thenReturn("/error/path");
-        when(resourceResolver.getResource(any())).thenThrow(new RuntimeException("Simulated Exception"));
+    void testDoGet_ResolvesEachPageOnce() throws Exception {
+        when(request.getParameter("path")).thenReturn("/content/mysite/home");
+        when(requestPathInfo.getExtension()).thenReturn("json");
+
+        when(resourceResolver.getResource("/content/mysite/home")).thenReturn(resource);
+        when(resource.adaptTo(Page.class)).thenReturn(page);
+        when(page.getProperties()).thenReturn(properties("jcr:lastModifiedBy", "jdoe"));
+        when(resourceResolver.getResource("/home/users/j/jdoe/profile")).thenReturn(userResource);
+        when(userResource.getValueMap()).thenReturn(properties("givenName", "Jane", "familyName", "Doe"));
+
+        when(page.getPath()).thenReturn("/content/mysite/home");
+        Resource child = childPage("/content/mysite/home/child", "Child");
+        Resource childContent = child.getChild("jcr:content");
+        when(resourceResolver.findResources(anyString(), eq("JCR-SQL2")))
+                .thenReturn(Collections.singletonList(child).iterator());
 
         servlet.doGet(request, response);
 
-        verify(response).sendError(eq(500), contains("Internal server error"));
+        verify(resourceResolver).findResources(contains("ISCHILDNODE(page, '/content/mysite/home')"), eq("JCR-SQL2"));
+        String json = responseWriter.toString();
+        assertTrue(json.contains("\"firstName\" : \"Jane\""));
+        assertTrue(json.contains("\"lastName\" : \"Doe\""));
+        assertTrue(json.contains("/content/mysite/home/child"));
+        assertTrue(json.contains("\"next\" : null"));
+        verify(resourceResolver, times(2)).getResource(any());
+        verify(resourceResolver, never()).adaptTo(Session.class);
+        verify(pageManager, never()).getPage(any());
+        verify(childContent, times(1)).getValueMap();
     }
 
     @Test
-    void testDoGet_WithValidJsonResponse() throws Exception {
-        // Arrange and mock setup
+    void testDoGet_PaginatesChildPages() throws Exception {
+        when(request.getParameter("path")).thenReturn("/content/mysite/home");
+        when(request.getParameter("limit")).thenReturn("2");
+        when(request.getParameter("cursor")).thenReturn("1");
+        when(request.getParameter("sort")).thenReturn("title");
+        when(requestPathInfo.getExtension()).thenReturn("xml");
+
+        when(resourceResolver.getResource("/content/mysite/home")).thenReturn(resource);
+        when(resource.adaptTo(Page.class)).thenReturn(page);
+        when(page.getPath()).thenReturn("/content/mysite/home");
+        when(page.getProperties()).thenReturn(properties("jcr:lastModifiedBy", "jdoe"));
+        when(resourceResolver.findResources(anyString(), eq("JCR-SQL2"))).thenReturn(Arrays.asList(
+                childPage("/content/mysite/home/a", "A"),
+                childPage("/content/mysite/home/b", "B"),
+                childPage("/content/mysite/home/c", "C"),
+                childPage("/content/mysite/home/d", "D"),
+                childPage("/content/mysite/home/e", "E")).iterator());
 
-        // Act and assert response
+        servlet.doGet(request, response);
 
+        verify(resourceResolver).findResources(contains("ORDER BY page.[jcr:content/jcr:title] ASC"), eq("JCR-SQL2"));
+        String xml = responseWriter.toString();
+        assertFalse(xml.contains("/content/mysite/home/a<"));
+        assertTrue(xml.contains("/content/mysite/home/b"));
+        assertTrue(xml.contains("/content/mysite/home/c"));
+        assertFalse(xml.contains("/content/mysite/home/d"));
+        assertTrue(xml.contains("<next>3</next>"));
     }
 
     @Test
-    void testDoGet_WithValidXmlResponse() throws Exception {
-        // Arrange and mock setup
+    void testDoGet_InvalidLimit() throws Exception {
+        when(request.getParameter("path")).thenReturn("/content/mysite/home");
+        when(request.getParameter("limit")).thenReturn("abc");
+        when(resourceResolver.getResource(any())).thenReturn(resource);
+        when(resource.adaptTo(Page.class)).thenReturn(page);
+
+        servlet.doGet(request, response);
+
+        verify(response).sendError(400, "limit must be a number");
+    }
+
+    @Test
+    void testDoGet_SuffixAddressingIsCacheable() throws Exception {
+        when(requestPathInfo.getSuffix()).thenReturn("/content/mysite/home.json");
+        when(requestPathInfo.getExtension()).thenReturn("json");
+        when(resourceResolver.getResource("/content/mysite/home")).thenReturn(resource);
+        when(resource.adaptTo(Page.class)).thenReturn(page);
+        when(page.getProperties()).thenReturn(ValueMap.EMPTY);
+
+        servlet.doGet(request, response);
+
+        verify(response).setHeader("Cache-Control", "max-age=300");
+        verify(response, never()).setHeader(eq("Dispatcher"), anyString());
+        assertTrue(responseWriter.toString().contains("Unknown"));
+    }
+
+    @Test
+    void testDoGet_QueryStringIsNotCached() throws Exception {
+        when(request.getParameter("path")).thenReturn("/content/mysite/home");
+        when(request.getQueryString()).thenReturn("path=/content/mysite/home");
+        when(requestPathInfo.getExtension()).thenReturn("json");
+        when(resourceResolver.getResource(any())).thenReturn(resource);
+        when(resource.adaptTo(Page.class)).thenReturn(page);
+        when(page.getProperties()).thenReturn(ValueMap.EMPTY);
+
+        servlet.doGet(request, response);
+
+        verify(response).setHeader("Dispatcher", "no-cache");
+        verify(response, never()).setHeader(eq("Cache-Control"), anyString());
+    }
+
+    @Test
+    void testDoGet_AcceptHeaderFormatIsNotCached() throws Exception {
+        when(requestPathInfo.getSuffix()).thenReturn("/content/mysite/home.json");
+        when(requestPathInfo.getExtension()).thenReturn("json");
+        when(request.getHeader("Accept")).thenReturn("application/cbor");
+        when(resourceResolver.getResource(any())).thenReturn(resource);
+        when(resource.adaptTo(Page.class)).thenReturn(page);
+        when(page.getProperties()).thenReturn(ValueMap.EMPTY);
+        when(response.getOutputStream()).thenReturn(mock(ServletOutputStream.class));
+
+        servlet.doGet(request, response);
+
+        verify(response).setContentType("application/cbor");
+        verify(response).setHeader("Dispatcher", "no-cache");
+        verify(response).addHeader("Vary", "Accept");
+    }
+
+    @Test
+    void testDoGet_IndexSkipsUnreadablePages() throws Exception {
+        when(request.getParameter("path")).thenReturn("/content/mysite/home");
+        when(request.getParameter("limit")).thenReturn("1");
+        when(requestPathInfo.getExtension()).thenReturn("json");
+        when(resourceResolver.getResource("/content/mysite/home")).thenReturn(resource);
+        when(resource.adaptTo(Page.class)).thenReturn(page);
+        when(page.getPath()).thenReturn("/content/mysite/home");
+        when(page.getProperties()).thenReturn(properties("jcr:lastModifiedBy", "jdoe"));
+
+        when(authorPageIndex.isReady()).thenReturn(true);
+        when(authorPageIndex.getChildPagesByAuthor("/content/mysite/home", "jdoe")).thenReturn(new ArrayList<>(Arrays.asList(
+                new AuthorPageIndex.PageEntry("/content/mysite/home/a", "A", 3L, "jdoe"),
+                new AuthorPageIndex.PageEntry("/content/mysite/home/b", "B", 2L, "jdoe"),
+                new AuthorPageIndex.PageEntry("/content/mysite/home/c", "C", 1L, "jdoe"))));
+        when(resourceResolver.getResource("/content/mysite/home/b")).thenReturn(mock(Resource.class));
+        when(resourceResolver.getResource("/content/mysite/home/c")).thenReturn(mock(Resource.class));
+
+        servlet.doGet(request, response);
+
+        String json = responseWriter.toString();
+        assertFalse(json.contains("/content/mysite/home/a"));
+        assertTrue(json.contains("/content/mysite/home/b"));
+        assertFalse(json.contains("/content/mysite/home/c\""));
+        assertTrue(json.contains("\"next\" : \"1\""));
+        verify(resourceResolver, never()).findResources(anyString(), anyString());
+    }
+
+    private static Resource childPage(String path, String title) {
+        Resource content = mock(Resource.class);
+        lenient().when(content.getValueMap()).thenReturn(properties("jcr:lastModifiedBy", "jdoe", "jcr:title", title));
+        Resource childPage = mock(Resource.class);
+        lenient().when(childPage.getPath()).thenReturn(path);
+        lenient().when(childPage.getChild("jcr:content")).thenReturn(content);
+        return childPage;
+    }
 
-        // Act and assert response
+    private static ValueMap properties(String... keyValues) {
+        Map<String, Object> map = new HashMap<>();
+        for (int i = 0; i < keyValues.length; i += 2) {
+            map.put(keyValues[i], keyValues[i + 1]);
+        }
+        return new ValueMapDecorator(map);
     }
 
     // Test for ChildPageInfo constructor (Improving coverage)
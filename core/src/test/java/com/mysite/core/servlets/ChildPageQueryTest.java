@@ -0,0 +1,49 @@
+package com.mysite.core.servlets;
+
+import org.apache.sling.api.SlingHttpServletRequest;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class ChildPageQueryTest {
+
+    @Test
+    void testDefaults() {
+        ChildPageQuery query = ChildPageQuery.fromRequest(mock(SlingHttpServletRequest.class));
+
+        assertEquals(ChildPageQuery.DEFAULT_LIMIT, query.getLimit());
+        assertEquals(0, query.getOffset());
+        assertEquals(ChildPageQuery.Sort.LASTMODIFIED, query.getSort());
+    }
+
+    @Test
+    void testRejectsInvalidParameters() {
+        SlingHttpServletRequest request = mock(SlingHttpServletRequest.class);
+        when(request.getParameter("limit")).thenReturn("5000");
+        assertThrows(IllegalArgumentException.class, () -> ChildPageQuery.fromRequest(request));
+
+        when(request.getParameter("limit")).thenReturn("10");
+        when(request.getParameter("sort")).thenReturn("random");
+        assertThrows(IllegalArgumentException.class, () -> ChildPageQuery.fromRequest(request));
+    }
+
+    @Test
+    void testToSql() {
+        ChildPageQuery query = new ChildPageQuery(10, 0, ChildPageQuery.Sort.LASTMODIFIED);
+
+        assertEquals("SELECT * FROM [cq:Page] AS page WHERE ISCHILDNODE(page, '/content/site') "
+                        + "AND page.[jcr:content/jcr:lastModifiedBy] = 'o''brien' "
+                        + "ORDER BY page.[jcr:content/cq:lastModified] DESC",
+                query.toSql("/content/site", "o'brien"));
+    }
+
+    @Test
+    void testNextCursor() {
+        ChildPageQuery query = new ChildPageQuery(10, 20, ChildPageQuery.Sort.TITLE);
+
+        assertEquals(31, query.getFetchSize());
+        assertEquals("30", query.nextCursor(31));
+        assertNull(query.nextCursor(30));
+    }
+}
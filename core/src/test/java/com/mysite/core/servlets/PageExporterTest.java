@@ -0,0 +1,92 @@
+package com.mysite.core.servlets;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import io.wcm.testing.mock.aem.junit5.AemContext;
+import io.wcm.testing.mock.aem.junit5.AemContextExtension;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@ExtendWith(AemContextExtension.class)
+class PageExporterTest {
+
+    @Test
+    void escapesTsvSpecialCharacters() {
+        assertEquals("", PageExporter.escapeTsv(null));
+        assertEquals("plain", PageExporter.escapeTsv("plain"));
+        assertEquals("a\\tb\\nc\\rd\\\\e", PageExporter.escapeTsv("a\tb\nc\rd\\e"));
+    }
+
+    @Test
+    void selectsFormatByExtension() {
+        assertEquals(PageExporter.Format.NDJSON, PageExporter.Format.forExtension("ndjson"));
+        assertEquals(PageExporter.Format.TSV, PageExporter.Format.forExtension("tsv"));
+        assertNull(PageExporter.Format.forExtension("txt"));
+        assertNull(PageExporter.Format.forExtension(null));
+    }
+
+    @Test
+    void flushesPeriodically(AemContext context) throws IOException {
+        createPages(context, 10);
+        CountingWriter out = new CountingWriter();
+
+        long pages = new PageExporter(PageExporter.Format.NDJSON, new PrintWriter(out), 3)
+                .export(context.resourceResolver().getResource("/content/site"));
+
+        assertEquals(11, pages);
+        // after pages 3, 6 and 9 and once at the end
+        assertEquals(4, out.flushes);
+        assertEquals(11, out.toString().split("\n").length);
+    }
+
+    @Test
+    void stopsWhenClientIsGone(AemContext context) throws IOException {
+        createPages(context, 10);
+        PrintWriter broken = new PrintWriter(new Writer() {
+            @Override
+            public void write(char[] buffer, int offset, int length) throws IOException {
+                throw new IOException("Connection reset");
+            }
+
+            @Override
+            public void flush() throws IOException {
+                throw new IOException("Connection reset");
+            }
+
+            @Override
+            public void close() {
+            }
+        });
+
+        long pages = new PageExporter(PageExporter.Format.TSV, broken, 2)
+                .export(context.resourceResolver().getResource("/content/site"));
+
+        assertEquals(2, pages);
+        assertTrue(broken.checkError());
+    }
+
+    private static void createPages(AemContext context, int count) {
+        context.create().page("/content/site");
+        for (int i = 0; i < count; i++) {
+            context.create().page("/content/site/page-" + i);
+        }
+    }
+
+    private static final class CountingWriter extends StringWriter {
+        private int flushes;
+
+        @Override
+        public void flush() {
+            flushes++;
+            super.flush();
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package com.mysite.core.servlets;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import com.mysite.core.servlets.AuthorInfoServlet.AuthorInfo;
+import org.apache.sling.api.SlingHttpServletResponse;
+import org.junit.jupiter.api.Test;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import java.io.ByteArrayOutputStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.ArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class ResponseWriterRegistryTest {
+
+    private final ResponseWriterRegistry registry = ResponseWriterRegistry.defaults();
+
+    @Test
+    void testResolveByExtension() {
+        assertEquals("json", registry.resolve("json", null).getExtension());
+        assertEquals("xml", registry.resolve("xml", null).getExtension());
+        assertEquals("cbor", registry.resolve("cbor", null).getExtension());
+        assertEquals("smile", registry.resolve("smile", null).getExtension());
+        assertEquals("json", registry.resolve("unknown", null).getExtension());
+    }
+
+    @Test
+    void testBinaryAcceptHeaderOverridesExtension() {
+        assertEquals("cbor", registry.resolve("json", "application/cbor").getExtension());
+        assertEquals("smile", registry.resolve("json", "text/plain, application/x-jackson-smile;q=0.9").getExtension());
+        // Text media types in Accept do not override the extension, browsers send them by default
+        assertEquals("json", registry.resolve("json", "text/html,application/xml;q=0.9").getExtension());
+    }
+
+    @Test
+    void testIsChosenByAccept() {
+        assertTrue(registry.isChosenByAccept("json", "application/cbor"));
+        assertTrue(registry.isChosenByAccept(null, "application/cbor"));
+        assertFalse(registry.isChosenByAccept("cbor", "application/cbor"));
+        assertFalse(registry.isChosenByAccept("json", "text/html,application/xml;q=0.9"));
+        assertFalse(registry.isChosenByAccept("json", null));
+    }
+
+    @Test
+    void testWriteText() throws Exception {
+        SlingHttpServletResponse response = mock(SlingHttpServletResponse.class);
+        StringWriter out = new StringWriter();
+        when(response.getWriter()).thenReturn(new PrintWriter(out));
+
+        registry.resolve("json", null).write(response, new AuthorInfo("Jane", "Doe", new ArrayList<>()));
+
+        verify(response).setContentType("application/json");
+        verify(response).setCharacterEncoding("UTF-8");
+        assertTrue(out.toString().contains("\"firstName\" : \"Jane\""));
+    }
+
+    @Test
+    void testWriteBinary() throws Exception {
+        SlingHttpServletResponse response = mock(SlingHttpServletResponse.class);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        when(response.getOutputStream()).thenReturn(new ServletOutputStream() {
+            @Override
+            public void write(int b) {
+                bytes.write(b);
+            }
+
+            @Override
+            public boolean isReady() {
+                return true;
+            }
+
+            @Override
+            public void setWriteListener(WriteListener writeListener) {
+            }
+        });
+
+        registry.resolve("cbor", null).write(response, new AuthorInfo("Jane", "Doe", new ArrayList<>()));
+
+        verify(response).setContentType("application/cbor");
+        verify(response, never()).getWriter();
+        JsonNode decoded = new CBORMapper().readTree(bytes.toByteArray());
+        assertEquals("Jane", decoded.get("firstName").asText());
+        assertEquals("Doe", decoded.get("lastName").asText());
+    }
+}
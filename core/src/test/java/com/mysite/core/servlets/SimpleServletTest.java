@@ -16,6 +16,10 @@
 package com.mysite.core.servlets;
 
 import java.io.IOException;
+import java.util.Calendar;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TimeZone;
 
 import javax.servlet.ServletException;
 
@@ -28,10 +32,13 @@ import io.wcm.testing.mock.aem.junit5.AemContext;
 import io.wcm.testing.mock.aem.junit5.AemContextExtension;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 @ExtendWith(AemContextExtension.class)
 class SimpleServletTest {
 
+    private static final String TEMPLATE = "/conf/mysite/settings/wcm/templates/page-content";
+
     private SimpleServlet fixture = new SimpleServlet();
 
     @Test
@@ -46,4 +53,58 @@ class SimpleServletTest {
 
         assertEquals("Title = resource title", response.getOutputAsString());
     }
+
+    @Test
+    void exportsPageSubtreeAsNdjson(AemContext context) throws ServletException, IOException {
+        createSite(context);
+        context.currentResource("/content/site");
+        context.requestPathInfo().setExtension("ndjson");
+
+        fixture.doGet(context.request(), context.response());
+
+        assertEquals("application/x-ndjson;charset=UTF-8", context.response().getContentType());
+        String[] lines = context.response().getOutputAsString().split("\n");
+        assertEquals(4, lines.length);
+        assertEquals("{\"path\":\"/content/site\",\"title\":\"Site\","
+                + "\"lastModified\":\"2024-01-02T03:04:05Z\",\"lastModifiedBy\":\"editor\","
+                + "\"template\":\"" + TEMPLATE + "\",\"resourceType\":\"mysite/components/page\"}", lines[0]);
+        assertTrue(lines[1].startsWith("{\"path\":\"/content/site/a\",\"title\":\"A\""));
+        assertTrue(lines[2].startsWith("{\"path\":\"/content/site/a/a1\""));
+        assertTrue(lines[3].startsWith("{\"path\":\"/content/site/b\""));
+    }
+
+    @Test
+    void exportsPageSubtreeAsTsvFromContentResource(AemContext context) throws ServletException, IOException {
+        createSite(context);
+        context.currentResource("/content/site/a/jcr:content");
+        context.requestPathInfo().setExtension("tsv");
+
+        fixture.doGet(context.request(), context.response());
+
+        assertEquals("path\ttitle\tdescription\tlastModified\tlastModifiedBy\ttemplate\tresourceType\n"
+                + "/content/site/a\tA\t\t\t\t" + TEMPLATE + "\tmysite/components/page\n"
+                + "/content/site/a/a1\tTab\\there\t\t\t\t" + TEMPLATE + "\tmysite/components/page\n",
+                context.response().getOutputAsString());
+    }
+
+    private static void createSite(AemContext context) {
+        Calendar modified = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
+        modified.setTimeInMillis(1704164645000L);
+        context.create().page("/content/site", TEMPLATE, properties("Site",
+                "cq:lastModified", modified, "cq:lastModifiedBy", "editor"));
+        context.create().page("/content/site/a", TEMPLATE, properties("A"));
+        context.create().page("/content/site/a/a1", TEMPLATE, properties("Tab\there"));
+        context.create().resource("/content/site/a/not-a-page");
+        context.create().page("/content/site/b", TEMPLATE, properties("B"));
+    }
+
+    private static Map<String, Object> properties(String title, Object... more) {
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("jcr:title", title);
+        properties.put("sling:resourceType", "mysite/components/page");
+        for (int i = 0; i < more.length; i += 2) {
+            properties.put((String) more[i], more[i + 1]);
+        }
+        return properties;
+    }
 }
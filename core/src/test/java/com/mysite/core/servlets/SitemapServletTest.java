@@ -0,0 +1,101 @@
+package com.mysite.core.servlets;
+
+import com.mysite.core.services.SitemapService;
+import io.wcm.testing.mock.aem.junit5.AemContext;
+import io.wcm.testing.mock.aem.junit5.AemContextExtension;
+import org.apache.sling.testing.mock.sling.servlet.MockRequestPathInfo;
+import org.apache.sling.testing.mock.sling.servlet.MockSlingHttpServletRequest;
+import org.apache.sling.testing.mock.sling.servlet.MockSlingHttpServletResponse;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(AemContextExtension.class)
+class SitemapServletTest {
+
+    private static final String ROOT = "/content/mysite/us/en";
+
+    private final AemContext context = new AemContext();
+
+    @TempDir
+    Path directory;
+
+    private SitemapService sitemapService;
+    private SitemapServlet servlet;
+
+    @BeforeEach
+    void setUp() {
+        context.create().page(ROOT);
+        context.create().page(ROOT + "/news");
+        sitemapService = mock(SitemapService.class);
+        when(sitemapService.getRootPath()).thenReturn(ROOT);
+        context.registerService(SitemapService.class, sitemapService);
+        servlet = context.registerInjectActivateService(new SitemapServlet());
+    }
+
+    @Test
+    void servesGeneratedFile() throws Exception {
+        Path file = directory.resolve(SitemapService.partFile("news", 1));
+        Files.write(file, "<urlset/>".getBytes(StandardCharsets.UTF_8));
+        when(sitemapService.getFile(SitemapService.partFile("news", 1))).thenReturn(file);
+
+        MockSlingHttpServletResponse response = get(ROOT, "sitemap.news-1");
+
+        assertEquals(200, response.getStatus());
+        assertEquals("application/xml;charset=UTF-8", response.getContentType());
+        assertEquals("<urlset/>", response.getOutputAsString());
+        verify(sitemapService, never()).writeSection(any(), anyString(), anyInt(), any());
+    }
+
+    @Test
+    void streamsIndexWithoutGeneratedFile() throws Exception {
+        doAnswer(invocation -> {
+            invocation.getArgument(1, OutputStream.class).write("<sitemapindex/>".getBytes(StandardCharsets.UTF_8));
+            return null;
+        }).when(sitemapService).writeIndex(any(), any());
+
+        MockSlingHttpServletResponse response = get(ROOT, "sitemap");
+
+        assertEquals(200, response.getStatus());
+        assertEquals("<sitemapindex/>", response.getOutputAsString());
+    }
+
+    @Test
+    void rejectsUnknownSectionsAndPages() throws Exception {
+        when(sitemapService.writeSection(any(), eq("missing"), eq(0), any())).thenReturn(false);
+
+        assertEquals(404, get(ROOT, "sitemap.missing-0").getStatus());
+        assertEquals(404, get(ROOT, "sitemap.../etc-0").getStatus());
+        assertEquals(404, get(ROOT, "sitemap.news-1.extra").getStatus());
+        assertEquals(404, get(ROOT + "/news", "sitemap").getStatus());
+    }
+
+    private MockSlingHttpServletResponse get(String path, String selectors) throws Exception {
+        MockSlingHttpServletRequest request = new MockSlingHttpServletRequest(context.resourceResolver(),
+                context.bundleContext());
+        request.setResource(context.resourceResolver().getResource(path));
+        MockRequestPathInfo pathInfo = (MockRequestPathInfo) request.getRequestPathInfo();
+        pathInfo.setSelectorString(selectors);
+        pathInfo.setExtension("xml");
+        MockSlingHttpServletResponse response = new MockSlingHttpServletResponse();
+        servlet.doGet(request, response);
+        return response;
+    }
+}
@@ -0,0 +1,169 @@
+package com.mysite.it.load;
+
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Sends the requests of a {@link LoadProfile} with open-model arrivals: the
+ * send times follow a Poisson process at the target rate and do not wait for
+ * earlier responses, like independent visitors. A slow server therefore builds
+ * up requests in flight instead of slowing the generator down. Requests due
+ * while {@link LoadProfile#getMaxInFlight()} are in flight are not sent and
+ * reported as dropped.
+ */
+public final class LoadGenerator {
+
+    private static final Logger LOG = LoggerFactory.getLogger(LoadGenerator.class);
+
+    private final LoadProfile profile;
+    private final HttpClient client;
+    private final ExecutorService executor;
+    private final String authorization;
+    private final Random random;
+    private final int totalWeight;
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    public LoadGenerator(LoadProfile profile) {
+        this.profile = profile;
+        this.executor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "mysite-load-client");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.client = HttpClient.newBuilder()
+                .connectTimeout(profile.getTimeout())
+                .version(HttpClient.Version.HTTP_1_1)
+                .followRedirects(HttpClient.Redirect.NEVER)
+                .executor(executor)
+                .build();
+        this.authorization = profile.getUser() != null
+                ? "Basic " + Base64.getEncoder().encodeToString(
+                        (profile.getUser() + ":" + profile.getPassword()).getBytes(StandardCharsets.UTF_8))
+                : null;
+        this.random = new Random(profile.getSeed());
+        this.totalWeight = profile.getMix().stream().mapToInt(LoadProfile.Request::getWeight).sum();
+    }
+
+    /**
+     * Runs the warm-up and the recorded part of the profile and waits for the
+     * outstanding responses.
+     */
+    public LoadReport run() throws InterruptedException {
+        LoadReport report = new LoadReport(profile);
+        long start = System.nanoTime();
+        long recordFrom = start + profile.getWarmup().toNanos();
+        long end = recordFrom + profile.getDuration().toNanos();
+        LOG.info("Sending {} requests/s to {} for {}s after {}s warm-up", profile.getRate(),
+                profile.getBaseUrl(), profile.getDuration().getSeconds(), profile.getWarmup().getSeconds());
+
+        try {
+            long intended = start;
+            while (intended < end) {
+                long wait = intended - System.nanoTime();
+                if (wait > 0) {
+                    LockSupport.parkNanos(wait);
+                    continue;
+                }
+                if (Thread.currentThread().isInterrupted()) {
+                    throw new InterruptedException();
+                }
+                send(next(), intended, intended >= recordFrom ? report : null);
+                intended += nextInterval();
+            }
+            awaitInFlight();
+            report.setElapsedNanos(end - recordFrom);
+            return report;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private void send(LoadProfile.Request request, long intended, LoadReport report) {
+        if (inFlight.get() >= profile.getMaxInFlight()) {
+            if (report != null) {
+                report.recordDropped(request.getName());
+            }
+            return;
+        }
+        inFlight.incrementAndGet();
+        HttpRequest.Builder http = HttpRequest.newBuilder(URI.create(profile.getBaseUrl() + path(request)))
+                .timeout(profile.getTimeout())
+                .GET();
+        if (authorization != null) {
+            http.header("Authorization", authorization);
+        }
+        client.sendAsync(http.build(), HttpResponse.BodyHandlers.discarding())
+                .whenComplete((response, failure) -> {
+                    inFlight.decrementAndGet();
+                    if (report == null) {
+                        return;
+                    }
+                    long latency = System.nanoTime() - intended;
+                    if (failure != null) {
+                        report.record(request.getName(), latency, -1, failureKind(failure));
+                    } else {
+                        report.record(request.getName(), latency, response.statusCode(), null);
+                    }
+                });
+    }
+
+    private static String failureKind(Throwable failure) {
+        Throwable cause = failure.getCause() != null ? failure.getCause() : failure;
+        return cause instanceof HttpTimeoutException ? "timeout" : cause.getClass().getSimpleName();
+    }
+
+    LoadProfile.Request next() {
+        int pick = random.nextInt(totalWeight);
+        for (LoadProfile.Request request : profile.getMix()) {
+            pick -= request.getWeight();
+            if (pick < 0) {
+                return request;
+            }
+        }
+        throw new IllegalStateException("Weights changed");
+    }
+
+    private String path(LoadProfile.Request request) {
+        if (!request.hasTerm()) {
+            return request.getPath();
+        }
+        List<String> terms = profile.getTerms();
+        String term = terms.isEmpty() ? "" : terms.get(random.nextInt(terms.size()));
+        return request.getPath().replace(LoadProfile.Request.TERM,
+                URLEncoder.encode(term, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @return the exponentially distributed time to the next arrival
+     */
+    long nextInterval() {
+        double seconds = -Math.log(1 - random.nextDouble()) / profile.getRate();
+        return (long) (seconds * TimeUnit.SECONDS.toNanos(1));
+    }
+
+    private void awaitInFlight() throws InterruptedException {
+        long deadline = System.nanoTime() + profile.getTimeout().toNanos();
+        while (inFlight.get() > 0 && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        if (inFlight.get() > 0) {
+            LOG.warn("{} requests still in flight at the end of the run", inFlight.get());
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package com.mysite.it.load;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Properties;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Checks the load harness against a local {@link StandInServer}; it does not
+ * need an AEM instance.
+ */
+public class LoadGeneratorIT {
+
+    private StandInServer server;
+
+    @Before
+    public void setUp() throws Exception {
+        server = StandInServer.start(2, 20);
+    }
+
+    @After
+    public void tearDown() {
+        server.close();
+    }
+
+    @Test
+    public void sendsTheMixAtTheTargetRate() throws Exception {
+        LoadReport report = new LoadGenerator(profile("page|3|/content/page.html,search|1|/content/page.html?q={term}"))
+                .run();
+
+        long total = report.getCount(LoadReport.TOTAL);
+        // 2s at 100 requests/s with Poisson arrivals
+        assertTrue("sent " + total, total > 140 && total < 260);
+        assertEquals(0, report.getErrors(LoadReport.TOTAL));
+        assertTrue(report.getCount("page") > report.getCount("search"));
+        assertTrue(report.getPercentileMillis(LoadReport.TOTAL, 50) >= 2);
+    }
+
+    @Test
+    public void recordsErrorsByStatus() throws Exception {
+        LoadReport report = new LoadGenerator(profile("page|1|/content/page.html,broken|1|/content/error.html"))
+                .run();
+
+        assertEquals(0, report.getErrors("page"));
+        assertEquals(1.0, report.getErrorRate("broken"), 0.0);
+        assertEquals(Long.valueOf(report.getCount("broken")), report.getOutcomes("broken").get("500"));
+    }
+
+    @Test
+    public void dropsRequestsBeyondMaxInFlight() throws Exception {
+        server.close();
+        server = StandInServer.start(500, 20);
+        Properties properties = properties("page|1|/content/page.html");
+        properties.setProperty("load.maxInFlight", "5");
+
+        LoadReport report = new LoadGenerator(LoadProfile.fromProperties(properties)).run();
+
+        assertTrue(report.getOutcomes("page").get(LoadReport.DROPPED) > 0);
+    }
+
+    private LoadProfile profile(String mix) {
+        return LoadProfile.fromProperties(properties(mix));
+    }
+
+    private Properties properties(String mix) {
+        Properties properties = new Properties();
+        properties.setProperty("load.baseUrl", server.getBaseUrl());
+        properties.setProperty("load.rate", "100");
+        properties.setProperty("load.warmup", "0");
+        properties.setProperty("load.duration", "2");
+        properties.setProperty("load.mix", mix);
+        return properties;
+    }
+}
@@ -0,0 +1,161 @@
+package com.mysite.it.load;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.stream.Collectors;
+
+/**
+ * What a load test sends and how fast: the base URL, the target arrival rate,
+ * the run length and the weighted request mix. Profiles are read from
+ * properties, usually the system properties of the run:
+ * <pre>
+ * load.baseUrl=http://localhost:4503
+ * load.rate=50                  requests per second, arrivals are random (Poisson)
+ * load.warmup=10                seconds sent but not recorded
+ * load.duration=60              seconds recorded
+ * load.mix=page|70|/content/mysite/us/en.html,search|10|/content/mysite/us/en.html?q={term}
+ * load.terms=aem,news           substituted for {term}, URL encoded
+ * </pre>
+ */
+public final class LoadProfile {
+
+    static final String PREFIX = "load.";
+
+    static final String DEFAULT_MIX = "page|70|/content/mysite/us/en.html,"
+            + "authorinfo|20|/content/mysite/us/en.authorinfo.json/content/mysite/us/en.json,"
+            + "search|10|/content/mysite/us/en.html?q={term}";
+
+    static final String DEFAULT_TERMS = "aem,page,news,contact";
+
+    private final String baseUrl;
+    private final double rate;
+    private final Duration warmup;
+    private final Duration duration;
+    private final Duration timeout;
+    private final int maxInFlight;
+    private final long seed;
+    private final String user;
+    private final String password;
+    private final List<Request> mix;
+    private final List<String> terms;
+    private final Path report;
+
+    private LoadProfile(Properties properties) {
+        baseUrl = stripTrailingSlash(get(properties, "baseUrl", "http://localhost:4503"));
+        rate = Double.parseDouble(get(properties, "rate", "50"));
+        warmup = Duration.ofSeconds(Long.parseLong(get(properties, "warmup", "10")));
+        duration = Duration.ofSeconds(Long.parseLong(get(properties, "duration", "60")));
+        timeout = Duration.ofMillis(Long.parseLong(get(properties, "timeoutMs", "10000")));
+        maxInFlight = Integer.parseInt(get(properties, "maxInFlight", "1000"));
+        seed = Long.parseLong(get(properties, "seed", "42"));
+        user = get(properties, "user", null);
+        password = get(properties, "password", null);
+        mix = Collections.unmodifiableList(Arrays.stream(get(properties, "mix", DEFAULT_MIX).split(","))
+                .map(String::trim)
+                .filter(entry -> !entry.isEmpty())
+                .map(Request::parse)
+                .collect(Collectors.toList()));
+        terms = Collections.unmodifiableList(Arrays.stream(get(properties, "terms", DEFAULT_TERMS).split(","))
+                .map(String::trim)
+                .filter(term -> !term.isEmpty())
+                .collect(Collectors.toList()));
+        report = Paths.get(get(properties, "report", "target/load-report.csv"));
+
+        if (rate <= 0) {
+            throw new IllegalArgumentException("load.rate must be positive: " + rate);
+        }
+        if (mix.isEmpty()) {
+            throw new IllegalArgumentException("load.mix has no requests");
+        }
+    }
+
+    /**
+     * @param properties the {@code load.*} properties, missing ones use the defaults
+     */
+    public static LoadProfile fromProperties(Properties properties) {
+        return new LoadProfile(properties);
+    }
+
+    public static LoadProfile fromSystemProperties() {
+        return fromProperties(System.getProperties());
+    }
+
+    private static String get(Properties properties, String name, String defaultValue) {
+        String value = properties.getProperty(PREFIX + name);
+        return value != null && !value.trim().isEmpty() ? value.trim() : defaultValue;
+    }
+
+    private static String stripTrailingSlash(String url) {
+        return url.endsWith("/") ? url.substring(0, url.length() - 1) : url;
+    }
+
+    public String getBaseUrl() { return baseUrl; }
+    public double getRate() { return rate; }
+    public Duration getWarmup() { return warmup; }
+    public Duration getDuration() { return duration; }
+    public Duration getTimeout() { return timeout; }
+    public int getMaxInFlight() { return maxInFlight; }
+    public long getSeed() { return seed; }
+    public String getUser() { return user; }
+    public String getPassword() { return password; }
+    public List<Request> getMix() { return mix; }
+    public List<String> getTerms() { return terms; }
+    public Path getReport() { return report; }
+
+    /**
+     * @return all request names in mix order, without duplicates
+     */
+    List<String> getRequestNames() {
+        List<String> names = new ArrayList<>();
+        for (Request request : mix) {
+            if (!names.contains(request.getName())) {
+                names.add(request.getName());
+            }
+        }
+        return names;
+    }
+
+    /**
+     * One entry of the request mix, {@code name|weight|path}. Requests with the
+     * same name are reported together.
+     */
+    public static final class Request {
+        static final String TERM = "{term}";
+
+        private final String name;
+        private final int weight;
+        private final String path;
+
+        Request(String name, int weight, String path) {
+            this.name = name;
+            this.weight = weight;
+            this.path = path;
+        }
+
+        static Request parse(String entry) {
+            String[] parts = entry.split("\\|", 3);
+            if (parts.length != 3) {
+                throw new IllegalArgumentException("Expected name|weight|path: " + entry);
+            }
+            int weight = Integer.parseInt(parts[1].trim());
+            if (weight <= 0 || !parts[2].trim().startsWith("/")) {
+                throw new IllegalArgumentException("Invalid request mix entry: " + entry);
+            }
+            return new Request(parts[0].trim(), weight, parts[2].trim());
+        }
+
+        public String getName() { return name; }
+        public int getWeight() { return weight; }
+        public String getPath() { return path; }
+
+        boolean hasTerm() {
+            return path.contains(TERM);
+        }
+    }
+}
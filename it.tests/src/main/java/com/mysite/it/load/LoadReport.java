@@ -0,0 +1,174 @@
+package com.mysite.it.load;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.mysite.core.filters.LatencyHistogram;
+
+/**
+ * Results of one load test run per request name: latency histogram, error
+ * count and the errors by status. Latencies are measured from the intended
+ * send time of each request, so a server that falls behind shows up in the
+ * percentiles instead of silently lowering the sent rate. The report is
+ * written as CSV with fixed columns so runs can be diffed and compared.
+ */
+public final class LoadReport {
+
+    static final String TOTAL = "total";
+
+    static final String DROPPED = "dropped";
+
+    static final String CSV_HEADER = "request,count,errors,errorRate,throughput,p50Ms,p90Ms,p99Ms,p999Ms,maxMs";
+
+    private final Map<String, Stats> stats = new LinkedHashMap<>();
+    private final Stats total = new Stats();
+    private final LoadProfile profile;
+    private volatile long elapsedNanos;
+
+    LoadReport(LoadProfile profile) {
+        this.profile = profile;
+        for (String name : profile.getRequestNames()) {
+            stats.put(name, new Stats());
+        }
+    }
+
+    /**
+     * @param status the HTTP status, or a negative value if no response was received
+     */
+    void record(String name, long latencyNanos, int status, String failure) {
+        Stats request = stats.get(name);
+        boolean error = status < 200 || status >= 400;
+        String outcome = failure != null ? failure : String.valueOf(status);
+        request.record(latencyNanos, error, outcome);
+        total.record(latencyNanos, error, outcome);
+    }
+
+    /**
+     * Counts a request that was due but not sent because too many were in
+     * flight. It is an error without a latency.
+     */
+    void recordDropped(String name) {
+        stats.get(name).record(-1, true, DROPPED);
+        total.record(-1, true, DROPPED);
+    }
+
+    void setElapsedNanos(long elapsedNanos) {
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    public LoadProfile getProfile() {
+        return profile;
+    }
+
+    public long getCount(String name) {
+        return statsOf(name).requests.sum();
+    }
+
+    public long getErrors(String name) {
+        return statsOf(name).errors.sum();
+    }
+
+    public double getErrorRate(String name) {
+        long count = getCount(name);
+        return count > 0 ? (double) getErrors(name) / count : 0;
+    }
+
+    /**
+     * @return the responses per second over the recorded part of the run, dropped requests excluded
+     */
+    public double getThroughput(String name) {
+        return elapsedNanos > 0 ? statsOf(name).histogram.getCount() * 1e9 / elapsedNanos : 0;
+    }
+
+    public double getPercentileMillis(String name, double percentile) {
+        return statsOf(name).histogram.getPercentileMicros(percentile) / 1000.0;
+    }
+
+    /**
+     * @return the number of failed requests by status code or failure kind
+     */
+    public Map<String, Long> getOutcomes(String name) {
+        Map<String, Long> outcomes = new TreeMap<>();
+        statsOf(name).outcomes.forEach((outcome, count) -> outcomes.put(outcome, count.sum()));
+        return outcomes;
+    }
+
+    private Stats statsOf(String name) {
+        return TOTAL.equals(name) ? total : stats.get(name);
+    }
+
+    private List<String> rows() {
+        List<String> names = new ArrayList<>(stats.keySet());
+        names.add(TOTAL);
+        return names;
+    }
+
+    /**
+     * Writes the report as CSV, one row per request name and a total row.
+     */
+    public void write(Path file) throws IOException {
+        List<String> lines = new ArrayList<>();
+        lines.add(CSV_HEADER);
+        for (String name : rows()) {
+            lines.add(String.format(Locale.ROOT, "%s,%d,%d,%.4f,%.2f,%.3f,%.3f,%.3f,%.3f,%.3f",
+                    name, getCount(name), getErrors(name), getErrorRate(name), getThroughput(name),
+                    getPercentileMillis(name, 50), getPercentileMillis(name, 90),
+                    getPercentileMillis(name, 99), getPercentileMillis(name, 99.9),
+                    statsOf(name).histogram.getMaxMicros() / 1000.0));
+        }
+        if (file.getParent() != null) {
+            Files.createDirectories(file.getParent());
+        }
+        Files.write(file, lines, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder out = new StringBuilder(String.format(Locale.ROOT,
+                "Load test of %s at %.1f requests/s for %ds%n", profile.getBaseUrl(), profile.getRate(),
+                TimeUnit.NANOSECONDS.toSeconds(elapsedNanos)));
+        out.append(String.format(Locale.ROOT, "%-12s %8s %7s %8s %9s %9s %9s %9s%n",
+                "request", "count", "errors", "req/s", "p50 ms", "p90 ms", "p99 ms", "p99.9 ms"));
+        for (String name : rows()) {
+            out.append(String.format(Locale.ROOT, "%-12s %8d %6.2f%% %8.1f %9.1f %9.1f %9.1f %9.1f%n",
+                    name, getCount(name), getErrorRate(name) * 100, getThroughput(name),
+                    getPercentileMillis(name, 50), getPercentileMillis(name, 90),
+                    getPercentileMillis(name, 99), getPercentileMillis(name, 99.9)));
+            Map<String, Long> failures = getOutcomes(name);
+            if (!failures.isEmpty() && !TOTAL.equals(name)) {
+                out.append("             errors: ").append(failures).append(System.lineSeparator());
+            }
+        }
+        return out.toString();
+    }
+
+    private static final class Stats {
+        private final LatencyHistogram histogram = new LatencyHistogram();
+        private final LongAdder requests = new LongAdder();
+        private final LongAdder errors = new LongAdder();
+        private final ConcurrentMap<String, LongAdder> outcomes = new ConcurrentHashMap<>();
+
+        void record(long latencyNanos, boolean error, String outcome) {
+            requests.increment();
+            if (latencyNanos >= 0) {
+                histogram.recordNanos(latencyNanos);
+            }
+            if (error) {
+                errors.increment();
+                outcomes.computeIfAbsent(outcome, k -> new LongAdder()).increment();
+            }
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package com.mysite.it.load;
+
+import java.util.Properties;
+
+/**
+ * Command line entry point of the load harness. The profile is read from the
+ * {@code load.*} system properties, see {@link LoadProfile}; the report is
+ * printed and written to {@code load.report}. With
+ * {@code -Dload.baseUrl=standin} the load goes to a local {@link StandInServer}
+ * answering after {@code load.standinDelayMs}, to try a profile out.
+ */
+public final class LoadTest {
+
+    static final String STANDIN = "standin";
+
+    private LoadTest() {
+        // static methods only
+    }
+
+    public static void main(String[] args) throws Exception {
+        Properties properties = new Properties();
+        properties.putAll(System.getProperties());
+        StandInServer standIn = null;
+        if (STANDIN.equals(properties.getProperty(LoadProfile.PREFIX + "baseUrl"))) {
+            long delay = Long.parseLong(properties.getProperty(LoadProfile.PREFIX + "standinDelayMs", "5"));
+            standIn = StandInServer.start(delay, 50);
+            properties.setProperty(LoadProfile.PREFIX + "baseUrl", standIn.getBaseUrl());
+        }
+
+        try {
+            LoadProfile profile = LoadProfile.fromProperties(properties);
+            LoadReport report = new LoadGenerator(profile).run();
+            System.out.print(report);
+            report.write(profile.getReport());
+            System.out.println("Report written to " + profile.getReport().toAbsolutePath());
+        } finally {
+            if (standIn != null) {
+                standIn.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package com.mysite.it.load;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Local HTTP server that answers every GET with a small page after a fixed
+ * delay, as a stand-in for a publish instance. It is used to check the load
+ * harness itself and to dry-run a profile before pointing it at a real
+ * environment. Paths containing {@code /error} are answered with a 500.
+ */
+public final class StandInServer implements AutoCloseable {
+
+    private static final byte[] BODY = "<html><body>stand-in</body></html>".getBytes(StandardCharsets.UTF_8);
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final long delayMillis;
+    private final LongAdder requests = new LongAdder();
+
+    private StandInServer(long delayMillis, int threads) throws IOException {
+        this.delayMillis = delayMillis;
+        this.server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        this.executor = Executors.newFixedThreadPool(threads);
+        server.createContext("/", this::handle);
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    /**
+     * Starts a server on a free local port.
+     */
+    public static StandInServer start(long delayMillis, int threads) throws IOException {
+        return new StandInServer(delayMillis, threads);
+    }
+
+    public String getBaseUrl() {
+        return "http://localhost:" + server.getAddress().getPort();
+    }
+
+    public long getRequests() {
+        return requests.sum();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        requests.increment();
+        try {
+            if (delayMillis > 0) {
+                Thread.sleep(delayMillis);
+            }
+            int status = exchange.getRequestURI().getPath().contains("/error") ? 500 : 200;
+            exchange.getResponseHeaders().set("Content-Type", "text/html");
+            exchange.sendResponseHeaders(status, BODY.length);
+            try (OutputStream body = exchange.getResponseBody()) {
+                body.write(BODY);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            exchange.close();
+        }
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+}